@@ -18,7 +18,6 @@ import com.juvetic.rssi.model.AccessPoint;
 import com.juvetic.rssi.util.ApComparator;
 import com.juvetic.rssi.util.ToolUtil;
 import com.juvetic.rssi.util.formulas.Formula;
-import com.juvetic.rssi.util.helper.AssetsHelper;
 import id.recharge.library.SVGMapView;
 import id.recharge.library.SVGMapViewListener;
 import id.recharge.library.overlay.SVGMapLocationOverlay;
@@ -108,7 +107,7 @@ public class MapActivity extends BaseActivity {
             public void onMapLoadError() {
             }
         });
-        mapView.loadMap(AssetsHelper.getContent(this, "hes_lab_v2.svg"));
+        mapView.loadMapFromAsset("hes_lab_v2.svg");
 
         mapView.getController()
                 .sparkAtPoint(new PointF(Float.valueOf(x1), Float.valueOf(y1)), 20, Color.YELLOW, 10000);
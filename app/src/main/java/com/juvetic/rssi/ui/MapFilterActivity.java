@@ -17,7 +17,6 @@ import com.juvetic.rssi.model.AccessPoint;
 import com.juvetic.rssi.util.ApComparator;
 import com.juvetic.rssi.util.ToolUtil;
 import com.juvetic.rssi.util.formulas.Formula;
-import com.juvetic.rssi.util.helper.AssetsHelper;
 import id.recharge.library.SVGMapView;
 import id.recharge.library.SVGMapViewListener;
 import id.recharge.library.overlay.SVGMapLocationOverlay;
@@ -162,7 +161,7 @@ public class MapFilterActivity extends BaseActivity {
             public void onMapLoadError() {
             }
         });
-        mapView.loadMap(AssetsHelper.getContent(this, "hes_lab_v2.svg"));
+        mapView.loadMapFromAsset("hes_lab_v2.svg");
 
         mapView.getController().sparkAtPoint(new PointF(Float.valueOf(x1), Float.valueOf(y1)), 20, Color.RED, 1000);
         mapView.getController().sparkAtPoint(new PointF(Float.valueOf(x2), Float.valueOf(y2)), 20, Color.GREEN, 1000);
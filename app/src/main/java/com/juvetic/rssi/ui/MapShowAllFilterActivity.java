@@ -7,10 +7,15 @@ import android.content.IntentFilter;
 import android.graphics.Bitmap;
 import android.graphics.Color;
 import android.graphics.PointF;
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
 import android.net.wifi.ScanResult;
 import android.net.wifi.WifiManager;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -19,14 +24,27 @@ import com.juvetic.rssi.R;
 import com.juvetic.rssi.model.AccessPoint;
 import com.juvetic.rssi.util.ApComparator;
 import com.juvetic.rssi.util.ToolUtil;
+import com.juvetic.rssi.util.formulas.FixedLagSmoother;
 import com.juvetic.rssi.util.formulas.Formula;
-import com.juvetic.rssi.util.helper.AssetsHelper;
+import com.juvetic.rssi.util.formulas.LogDistanceModel;
+import com.juvetic.rssi.util.formulas.MultiWallModel;
+import com.juvetic.rssi.util.formulas.ParticleFilter;
+import com.juvetic.rssi.util.formulas.PedestrianDeadReckoning;
+import com.juvetic.rssi.util.formulas.PositionEstimate;
+import com.juvetic.rssi.util.formulas.SensorRingBuffer;
+import com.juvetic.rssi.util.formulas.UKFAlgorithmData;
 import id.recharge.library.SVGMapView;
 import id.recharge.library.SVGMapViewListener;
+import id.recharge.library.core.helper.map.SVGParseException;
+import id.recharge.library.core.helper.map.SVGWallExtractor;
+import id.recharge.library.core.helper.map.WallIndex;
+import id.recharge.library.overlay.SVGMapEllipseOverlay;
 import id.recharge.library.overlay.SVGMapLocationOverlay;
+import id.recharge.library.overlay.SVGMapTrailOverlay;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -40,6 +58,44 @@ public class MapShowAllFilterActivity extends BaseActivity {
 
     private static final String TAG = MapShowAllFilterActivity.class.getSimpleName();
 
+    private static final String MAP_ASSET = "hes_lab_v2.svg";
+
+    private static final int PARTICLE_COUNT = 2000;
+
+    // how far particles spread out between two scans, in map units
+    private static final float PARTICLE_MOTION_SIGMA = 40;
+
+    // spread of a reading around the path-loss model, in dB
+    private static final float RSSI_SIGMA = 6;
+
+    // acceleration noise of the unscented filter, (half a meter per second squared)^2 in map units
+    private static final double UKF_PROCESS_NOISE = 4500;
+
+    // position drift of the unscented filter when dead reckoning moves it, (half a meter)^2 per
+    // second in map units
+    private static final double UKF_PDR_PROCESS_NOISE = 4500;
+
+    // scans the smoothed track of the unscented filter lags behind
+    private static final int SMOOTHER_LAG = 5;
+
+    // about two seconds of the three sensors at the game rate
+    private static final int SENSOR_BUFFER_SIZE = 1024;
+
+    private static final long PDR_PERIOD_MILLIS = 50;
+
+    // angle from the plan's up direction to magnetic north, clockwise: MAP_ASSET carries no
+    // orientation, so it is taken as drawn north-up. Measure it on site and set it here for
+    // any other plan, or dead reckoning pushes the tracker the wrong way.
+    private static final float MAP_NORTH_ROTATION = 0;
+
+    // worst trilateration fix still drawn on the trail: radius in map units (about 4 m), and GDOP
+    private static final float MAX_FIX_RADIUS = 540;
+
+    private static final float MAX_FIX_GDOP = 6;
+
+    // taken for an AP not heard yet
+    private static final float NO_SIGNAL_RSSI = -100;
+
     private SVGMapView mapView;
 
     private List<AccessPoint> accessPointList = new ArrayList<>();
@@ -50,7 +106,71 @@ public class MapShowAllFilterActivity extends BaseActivity {
 
     AccessPoint accessPoint;
 
-    SVGMapLocationOverlay locationOverlay, locationOverlayKalman1, locationOverlayKalman2, locationOverlayFeedback;
+    SVGMapLocationOverlay locationOverlay, locationOverlayKalman1, locationOverlayKalman2, locationOverlayFeedback,
+            locationOverlayParticle, locationOverlayUkf;
+
+    SVGMapTrailOverlay trailOverlay, trailOverlayKalman1, trailOverlayKalman2, trailOverlayFeedback,
+            trailOverlayParticle, trailOverlayUkf;
+
+    SVGMapEllipseOverlay ellipseOverlayParticle, ellipseOverlayUkf;
+
+    // quality of the plain trilateration fix, the one in xPos and yPos
+    final PositionEstimate fix = new PositionEstimate();
+
+    ParticleFilter particleFilter;
+
+    boolean particleFilterStarted = false;
+
+    // same path-loss model and readings as the particle filter, to compare the two; moved by dead
+    // reckoning on phones with the sensors for it, by a constant velocity model otherwise
+    UKFAlgorithmData ukf;
+
+    FixedLagSmoother smoother;
+
+    final float[] smootherTailX = new float[SMOOTHER_LAG];
+
+    final float[] smootherTailY = new float[SMOOTHER_LAG];
+
+    ArrayList<Long> xUkf = new ArrayList<>();
+
+    ArrayList<Long> yUkf = new ArrayList<>();
+
+    ArrayList<Long> xUkfSmooth = new ArrayList<>();
+
+    ArrayList<Long> yUkfSmooth = new ArrayList<>();
+
+    long lastScanTime;
+
+    SensorManager sensorManager;
+
+    final SensorRingBuffer sensorBuffer = new SensorRingBuffer(SENSOR_BUFFER_SIZE);
+
+    final PedestrianDeadReckoning pdr = new PedestrianDeadReckoning(Formula.PIXELS_PER_METER);
+
+    boolean pdrAvailable = false;
+
+    final double[] pdrMove = new double[3];
+
+    // runs on the main thread, the only writer of the buffer
+    final SensorEventListener sensorListener = new SensorEventListener() {
+        @Override
+        public void onSensorChanged(SensorEvent event) {
+            sensorBuffer.offer(event.sensor.getType(), event.timestamp,
+                    event.values[0], event.values[1], event.values[2]);
+        }
+
+        @Override
+        public void onAccuracyChanged(Sensor sensor, int accuracy) {
+        }
+    };
+
+    WallIndex walls;
+
+    LogDistanceModel pathLoss;
+
+    final int[] apIds = new int[3];
+
+    final float[] apRssi = new float[3];
 
     double d1 = 0;
 
@@ -92,6 +212,36 @@ public class MapShowAllFilterActivity extends BaseActivity {
 
         mapView = findViewById(R.id.location_mapview);
 
+        trailOverlay = new SVGMapTrailOverlay(mapView, "default");
+        trailOverlayKalman1 = new SVGMapTrailOverlay(mapView, "kalman1");
+        trailOverlayKalman2 = new SVGMapTrailOverlay(mapView, "kalman2");
+        trailOverlayFeedback = new SVGMapTrailOverlay(mapView, "feedback");
+        trailOverlayParticle = new SVGMapTrailOverlay(mapView, "particle");
+        trailOverlayUkf = new SVGMapTrailOverlay(mapView, "ukf");
+        mapView.getOverLays().add(trailOverlay);
+        mapView.getOverLays().add(trailOverlayKalman1);
+        mapView.getOverLays().add(trailOverlayKalman2);
+        mapView.getOverLays().add(trailOverlayFeedback);
+        mapView.getOverLays().add(trailOverlayParticle);
+        mapView.getOverLays().add(trailOverlayUkf);
+        ellipseOverlayParticle = new SVGMapEllipseOverlay(mapView, "particle");
+        ellipseOverlayUkf = new SVGMapEllipseOverlay(mapView, "ukf");
+        mapView.getOverLays().add(ellipseOverlayParticle);
+        mapView.getOverLays().add(ellipseOverlayUkf);
+
+        particleFilter = new ParticleFilter(PARTICLE_COUNT, System.nanoTime());
+        particleFilter.setBounds(MIN_X, MIN_Y, MAX_X, MAX_Y);
+
+        sensorManager = (SensorManager) getSystemService(Context.SENSOR_SERVICE);
+        pdrAvailable = sensorManager.getDefaultSensor(Sensor.TYPE_ACCELEROMETER) != null
+                && sensorManager.getDefaultSensor(Sensor.TYPE_MAGNETIC_FIELD) != null;
+        int ukfState = pdrAvailable ? UKFAlgorithmData.STATIC : UKFAlgorithmData.CONSTANT_VELOCITY;
+        ukf = new UKFAlgorithmData(ukfState, 3);
+        ukf.setProcessNoise(pdrAvailable ? UKF_PDR_PROCESS_NOISE : UKF_PROCESS_NOISE);
+        smoother = new FixedLagSmoother(ukfState, SMOOTHER_LAG);
+        pdr.setMapRotation(MAP_NORTH_ROTATION);
+        loadWalls();
+
         Intent intent = getIntent();
         filter = intent.getStringExtra(EXTRA_FILTER);
 
@@ -116,6 +266,7 @@ public class MapShowAllFilterActivity extends BaseActivity {
                 wifiManager.startScan();
                 return true;
             case R.id.menu_main_export:
+                int smootherTail = smoother.tail(smootherTailX, smootherTailY);
                 saveExcelFile(MapShowAllFilterActivity.this, "List RSSI and Position.xls",
                         rssiListAp1, rssiKFListAp1,
                         rssiListAp2, rssiKFListAp2,
@@ -126,7 +277,10 @@ public class MapShowAllFilterActivity extends BaseActivity {
                         xRaw, yRaw,
                         xKF1, yKF1,
                         xKF2, yKF2,
-                        xFB, yFB);
+                        xFB, yFB,
+                        xUkf, yUkf,
+                        withTail(xUkfSmooth, smootherTailX, smootherTail),
+                        withTail(yUkfSmooth, smootherTailY, smootherTail));
                 return true;
             default:
                 return super.onOptionsItemSelected(item);
@@ -139,10 +293,21 @@ public class MapShowAllFilterActivity extends BaseActivity {
         return true;
     }
 
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        particleFilter.shutdown();
+    }
+
     protected void onPause() {
         super.onPause();
 
         unregisterReceiver(wifiReceiver);
+        if (pdrAvailable) {
+            sensorManager.unregisterListener(sensorListener);
+            // the worker stays with the sensors, so a paused activity keeps no thread polling
+            pdr.stop();
+        }
     }
 
     protected void onResume() {
@@ -162,7 +327,7 @@ public class MapShowAllFilterActivity extends BaseActivity {
             public void onMapLoadError() {
             }
         });
-        mapView.loadMap(AssetsHelper.getContent(this, "hes_lab_v2.svg"));
+        mapView.loadMapFromAsset(MAP_ASSET);
 
         mapView.getController()
                 .sparkAtPoint(new PointF(Float.valueOf(x1), Float.valueOf(y1)), 20, Color.YELLOW, 10000);
@@ -176,6 +341,73 @@ public class MapShowAllFilterActivity extends BaseActivity {
                 wifiReceiver,
                 new IntentFilter(WifiManager.SCAN_RESULTS_AVAILABLE_ACTION)
         );
+        if (pdrAvailable) {
+            registerSensor(Sensor.TYPE_ACCELEROMETER);
+            registerSensor(Sensor.TYPE_GYROSCOPE);
+            registerSensor(Sensor.TYPE_MAGNETIC_FIELD);
+            pdr.start(sensorBuffer, PDR_PERIOD_MILLIS);
+        }
+    }
+
+    /**
+     * Parses the walls of the plan on a background thread, next to the map view's own load. Until
+     * they arrive the particles are only kept in bounds and RSSI follows the plain log-distance model.
+     */
+    private void loadWalls() {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                InputStream map = null;
+                try {
+                    map = getAssets().open(MAP_ASSET);
+                    final WallIndex extracted = SVGWallExtractor.extract(map, SVGWallExtractor.ALL);
+                    // scans are handled on the UI thread, so the filters change walls between two of them
+                    runOnUiThread(new Runnable() {
+                        @Override
+                        public void run() {
+                            if (isFinishing()) {
+                                return;
+                            }
+                            walls = extracted;
+                            particleFilter.setWalls(walls);
+                            if (pathLoss != null) {
+                                createPathLoss();
+                            }
+                        }
+                    });
+                } catch (IOException | SVGParseException e) {
+                    Log.e(TAG, "Walls not loaded, particles only kept in bounds", e);
+                } finally {
+                    if (map != null) {
+                        try {
+                            map.close();
+                        } catch (IOException e) {
+                            Log.e(TAG, "Error closing map asset", e);
+                        }
+                    }
+                }
+            }
+        }, "WallExtractor").start();
+    }
+
+    private void createPathLoss() {
+        double n = Double.parseDouble(ToolUtil.Storage.getValueString(this, "n"));
+        // walls between each AP and the particles, counted on a half meter grid
+        pathLoss = walls != null
+                ? new MultiWallModel(walls, n, Formula.PIXELS_PER_METER, MIN_X, MIN_Y, MAX_X, MAX_Y,
+                (float) (Formula.PIXELS_PER_METER / 2))
+                : new LogDistanceModel(n, Formula.PIXELS_PER_METER);
+        apIds[0] = pathLoss.addAccessPoint(Float.valueOf(x1), Float.valueOf(y1));
+        apIds[1] = pathLoss.addAccessPoint(Float.valueOf(x2), Float.valueOf(y2));
+        apIds[2] = pathLoss.addAccessPoint(Float.valueOf(x3), Float.valueOf(y3));
+    }
+
+    // a missing gyroscope only leaves heading to the compass
+    private void registerSensor(int type) {
+        Sensor sensor = sensorManager.getDefaultSensor(type);
+        if (sensor != null) {
+            sensorManager.registerListener(sensorListener, sensor, SensorManager.SENSOR_DELAY_GAME);
+        }
     }
 
     class WifiScanReceiver extends BroadcastReceiver {
@@ -564,6 +796,10 @@ public class MapShowAllFilterActivity extends BaseActivity {
 
                 xRaw.add(Math.round(xy.get(0)));
                 yRaw.add(Math.round(xy.get(1)));
+                Formula.koordinat(
+                        Double.valueOf(x1), Double.valueOf(y1), d1,
+                        Double.valueOf(x2), Double.valueOf(y2), d2,
+                        Double.valueOf(x3), Double.valueOf(y3), d3, fix);
 
                 xyKalman1 = Formula.koordinat(
                         Double.valueOf(x1), Double.valueOf(y1), d1Kalman1,
@@ -589,6 +825,38 @@ public class MapShowAllFilterActivity extends BaseActivity {
                 xFB.add(Math.round(xyFeedback.get(0)));
                 yFB.add(Math.round(xyFeedback.get(1)));
 
+                apRssi[0] = lastRssi(rssiListAp1);
+                apRssi[1] = lastRssi(rssiListAp2);
+                apRssi[2] = lastRssi(rssiListAp3);
+                long now = SystemClock.elapsedRealtime();
+                double dt = (now - lastScanTime) / 1000.0;
+                if (!particleFilterStarted) {
+                    createPathLoss();
+                    // start around the first fix, clamped into the building
+                    float startX = Math.max(MIN_X, Math.min(MAX_X, xy.get(0).floatValue()));
+                    float startY = Math.max(MIN_Y, Math.min(MAX_Y, xy.get(1).floatValue()));
+                    particleFilter.initialize(startX, startY, (float) (2 * Formula.PIXELS_PER_METER));
+                    ukf.initialize(startX, startY, (float) (2 * Formula.PIXELS_PER_METER),
+                            (float) Formula.PIXELS_PER_METER);
+                    // the walk so far led to the first fix, not from it
+                    pdr.takeDisplacement(pdrMove);
+                    particleFilterStarted = true;
+                } else {
+                    particleFilter.predict(0, 0, PARTICLE_MOTION_SIGMA);
+                    pdr.takeDisplacement(pdrMove);
+                    ukf.predict(dt, pdrMove[0], pdrMove[1], pdrMove[2]);
+                }
+                lastScanTime = now;
+                particleFilter.update(pathLoss, apIds, apRssi, 3, RSSI_SIGMA);
+                ukf.update(pathLoss, apIds, apRssi, 3, RSSI_SIGMA);
+
+                xUkf.add((long) Math.round(ukf.getX()));
+                yUkf.add((long) Math.round(ukf.getY()));
+                if (smoother.add(ukf, dt)) {
+                    xUkfSmooth.add((long) Math.round(smoother.getX()));
+                    yUkfSmooth.add((long) Math.round(smoother.getY()));
+                }
+
                 ToolUtil.Storage
                         .setValueString(MapShowAllFilterActivity.this, "xPos",
                                 String.valueOf(Math.round(xy.get(0))));
@@ -627,6 +895,8 @@ public class MapShowAllFilterActivity extends BaseActivity {
                 mapView.getOverLays().remove(locationOverlayKalman1);
                 mapView.getOverLays().remove(locationOverlayKalman2);
                 mapView.getOverLays().remove(locationOverlayFeedback);
+                mapView.getOverLays().remove(locationOverlayParticle);
+                mapView.getOverLays().remove(locationOverlayUkf);
 
                 float x_smooth = Float.valueOf(xPos);
                 if (x_smooth < MIN_X) {
@@ -700,10 +970,34 @@ public class MapShowAllFilterActivity extends BaseActivity {
                 locationOverlay.setPosition(
                         new PointF(x_smooth, y_smooth));
 
+                locationOverlayParticle = new SVGMapLocationOverlay(mapView, "particle");
+                locationOverlayParticle.setPosition(
+                        new PointF(particleFilter.getX(), particleFilter.getY()));
+
+                float x_ukf = Math.max(MIN_X, Math.min(MAX_X, ukf.getX()));
+                float y_ukf = Math.max(MIN_Y, Math.min(MAX_Y, ukf.getY()));
+                locationOverlayUkf = new SVGMapLocationOverlay(mapView, "ukf");
+                locationOverlayUkf.setPosition(new PointF(x_ukf, y_ukf));
+
+                // a fix from APs nearly in line, or with circles far from meeting, would only
+                // zigzag the trail
+                if (fix.isWithin(MAX_FIX_RADIUS, MAX_FIX_GDOP)) {
+                    trailOverlay.addPosition(x_smooth, y_smooth);
+                }
+                trailOverlayKalman1.addPosition(x_smooth_kalman1, y_smooth_kalman1);
+                trailOverlayKalman2.addPosition(x_smooth_kalman2, y_smooth_kalman2);
+                trailOverlayFeedback.addPosition(x_smooth_feedback, y_smooth_feedback);
+                trailOverlayParticle.addPosition(particleFilter.getX(), particleFilter.getY());
+                trailOverlayUkf.addPosition(x_ukf, y_ukf);
+                setEllipse(ellipseOverlayParticle, particleFilter.getEstimate());
+                setEllipse(ellipseOverlayUkf, ukf.getEstimate());
+
                 mapView.getOverLays().add(locationOverlay);
                 mapView.getOverLays().add(locationOverlayKalman1);
                 mapView.getOverLays().add(locationOverlayKalman2);
                 mapView.getOverLays().add(locationOverlayFeedback);
+                mapView.getOverLays().add(locationOverlayParticle);
+                mapView.getOverLays().add(locationOverlayUkf);
                 mapView.refresh();
             }
 
@@ -713,6 +1007,24 @@ public class MapShowAllFilterActivity extends BaseActivity {
         }
     }
 
+    private static void setEllipse(SVGMapEllipseOverlay overlay, PositionEstimate estimate) {
+        overlay.setEllipse(estimate.getX(), estimate.getY(), estimate.getSemiMajor(), estimate.getSemiMinor(),
+                estimate.getOrientation());
+    }
+
+    private static float lastRssi(ArrayList<Double> rssiList) {
+        return rssiList.isEmpty() ? NO_SIGNAL_RSSI : rssiList.get(rssiList.size() - 1).floatValue();
+    }
+
+    // smoothed track so far, with the last scans smoothed as far as they can be yet
+    private static ArrayList<Long> withTail(ArrayList<Long> given, float[] tail, int count) {
+        ArrayList<Long> track = new ArrayList<>(given);
+        for (int i = 0; i < count; i++) {
+            track.add((long) Math.round(tail[i]));
+        }
+        return track;
+    }
+
     private static boolean saveExcelFile(Context context, String fileName,
             ArrayList<Double> rssiListAp1, ArrayList<Double> rssiKFListAp1,
             ArrayList<Double> rssiListAp2, ArrayList<Double> rssiKFListAp2,
@@ -723,7 +1035,9 @@ public class MapShowAllFilterActivity extends BaseActivity {
             ArrayList<Long> xRaw, ArrayList<Long> yRaw,
             ArrayList<Long> xKF1, ArrayList<Long> yKF1,
             ArrayList<Long> xKF2, ArrayList<Long> yKF2,
-            ArrayList<Long> xFeedback, ArrayList<Long> yFeedback) {
+            ArrayList<Long> xFeedback, ArrayList<Long> yFeedback,
+            ArrayList<Long> xUkf, ArrayList<Long> yUkf,
+            ArrayList<Long> xUkfSmooth, ArrayList<Long> yUkfSmooth) {
 
         // check if available and not read only
         if (!isExternalStorageAvailable() || isExternalStorageReadOnly()) {
@@ -757,6 +1071,10 @@ public class MapShowAllFilterActivity extends BaseActivity {
         Sheet sheetYKF2 = wb.createSheet("Y KFv2");
         Sheet sheetXFB = wb.createSheet("X Feedback");
         Sheet sheetYFB = wb.createSheet("Y Feedback");
+        Sheet sheetXUkf = wb.createSheet("X UKF");
+        Sheet sheetYUkf = wb.createSheet("Y UKF");
+        Sheet sheetXUkfSmooth = wb.createSheet("X UKF Smooth");
+        Sheet sheetYUkfSmooth = wb.createSheet("Y UKF Smooth");
 
         // AP1 RSSI
         for (int i = 0; i < rssiListAp1.size(); i++) {
@@ -797,6 +1115,16 @@ public class MapShowAllFilterActivity extends BaseActivity {
             sheetYFB.createRow(i).createCell(0).setCellValue(yFeedback.get(i));
         }
 
+        // XY UKF, raw and smoothed over the whole session
+        for (int i = 0; i < xUkf.size(); i++) {
+            sheetXUkf.createRow(i).createCell(0).setCellValue(xUkf.get(i));
+            sheetYUkf.createRow(i).createCell(0).setCellValue(yUkf.get(i));
+        }
+        for (int i = 0; i < xUkfSmooth.size(); i++) {
+            sheetXUkfSmooth.createRow(i).createCell(0).setCellValue(xUkfSmooth.get(i));
+            sheetYUkfSmooth.createRow(i).createCell(0).setCellValue(yUkfSmooth.get(i));
+        }
+
         // Create a path where we will place our List of objects on external storage
         File file = new File(context.getExternalFilesDir(null), fileName);
 
@@ -0,0 +1,175 @@
+package com.juvetic.rssi.util.formulas;
+
+/**
+ * Splits the steps of an estimator over a fixed set of worker threads, for the estimators whose
+ * updates must not allocate.
+ *
+ * A step runs as {@code chunks} calls of {@link Task#runChunk(int, int)}: chunk 0 on the calling
+ * thread, the others on workers started once, and {@link #run(int)} returns when all are done.
+ * Writes made before {@code run} are seen by the workers, and theirs are seen after it returns.
+ * If a chunk throws, the others still finish and {@code run} rethrows the first failure on the
+ * calling thread; the workers keep serving later steps.
+ */
+final class ChunkPool {
+
+    interface Task {
+
+        /**
+         * @param phase what to do, as passed to {@link ChunkPool#run(int)}
+         * @param chunk which part of the work, from 0 to the chunk count excluded
+         */
+        void runChunk(int phase, int chunk);
+    }
+
+    private final Task task;
+
+    private final int chunks;
+
+    private final Object lock = new Object();
+
+    private final Thread[] workers;
+
+    // guarded by lock
+    private int phase, pending;
+
+    private long generation;
+
+    private boolean stopped;
+
+    private Throwable failure;
+
+    /**
+     * @param chunks number of parts, the workers are one fewer
+     * @param name   prefix of the worker thread names
+     */
+    ChunkPool(int chunks, Task task, String name) {
+        this.task = task;
+        this.chunks = Math.max(1, chunks);
+        workers = new Thread[this.chunks - 1];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new Thread(new Worker(i + 1), name + "-" + (i + 1));
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+    }
+
+    /**
+     * @return chunks used for the count of items, 1 below the threshold, otherwise up to the cores
+     */
+    static int chunksFor(long items, long threshold, int maxChunks) {
+        if (items < threshold) {
+            return 1;
+        }
+        return Math.max(1, Math.min(maxChunks, Runtime.getRuntime().availableProcessors()));
+    }
+
+    int getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Runs every chunk of the phase and waits for them.
+     *
+     * @throws RuntimeException or Error, the first one thrown by a chunk
+     */
+    void run(int phase) {
+        if (workers.length == 0) {
+            task.runChunk(phase, 0);
+            return;
+        }
+        synchronized (lock) {
+            this.phase = phase;
+            pending = workers.length;
+            failure = null;
+            generation++;
+            lock.notifyAll();
+        }
+        Throwable thrown = null;
+        try {
+            task.runChunk(phase, 0);
+        } catch (RuntimeException | Error e) {
+            // the workers still use the task: wait for them before giving up
+            thrown = e;
+        }
+        synchronized (lock) {
+            boolean interrupted = false;
+            while (pending > 0) {
+                try {
+                    lock.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (thrown == null) {
+                thrown = failure;
+            }
+            failure = null;
+        }
+        if (thrown instanceof RuntimeException) {
+            throw (RuntimeException) thrown;
+        } else if (thrown instanceof Error) {
+            throw (Error) thrown;
+        } else if (thrown != null) {
+            throw new RuntimeException(thrown);
+        }
+    }
+
+    /**
+     * Stops the workers; {@link #run(int)} must not be called afterwards.
+     */
+    void shutdown() {
+        synchronized (lock) {
+            stopped = true;
+            lock.notifyAll();
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        private final int chunk;
+
+        Worker(int chunk) {
+            this.chunk = chunk;
+        }
+
+        @Override
+        public void run() {
+            long seen = 0;
+            while (true) {
+                int current;
+                synchronized (lock) {
+                    while (generation == seen && !stopped) {
+                        try {
+                            lock.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (stopped) {
+                        return;
+                    }
+                    seen = generation;
+                    current = phase;
+                }
+                Throwable thrown = null;
+                try {
+                    task.runChunk(current, chunk);
+                } catch (Throwable t) {
+                    thrown = t;
+                } finally {
+                    synchronized (lock) {
+                        if (thrown != null && failure == null) {
+                            failure = thrown;
+                        }
+                        if (--pending == 0) {
+                            lock.notifyAll();
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,543 @@
+package com.juvetic.rssi.util.formulas;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Finds the reference fingerprints of a radio map that resemble a scan, without comparing the
+ * scan to all of them, for radio maps of hundreds of thousands of reference points.
+ *
+ * A fingerprint is the RSSI of each AP heard at a reference point, APs not heard counting as
+ * {@link #MISSING_RSSI}. Each of several hash tables keys a fingerprint by the signs of a few
+ * random projections of it (random-projection LSH), so similar fingerprints tend to share a
+ * bucket. The projections are drawn from the BSSID and the seed and never stored. A query looks
+ * up the scan's bucket in every table and, with multi-probe, also the buckets of the projections
+ * closest to flipping sign; the candidates found are ranked by their actual RSSI distance.
+ * More tables and probes find more of the true neighbours and cost more time.
+ *
+ * The index is one flat buffer, written by {@link #write(File)} and memory-mapped back by
+ * {@link #read(File)}, so it is available right away whatever its size. Layout, big endian:
+ * header (magic, version, tables, bits, seed, counts), sorted BSSIDs, reference positions,
+ * fingerprints (offsets, AP indices, RSSI bytes), then per table the bucket offsets and members.
+ *
+ * Queries allocate nothing. Not thread safe: queries share buffers.
+ */
+public class FingerprintIndex {
+
+    public static final String FILE_EXTENSION = ".fpix";
+
+    /**
+     * RSSI of an AP not heard.
+     */
+    public static final int MISSING_RSSI = -100;
+
+    /**
+     * Most bits per table key, which makes 2^bits buckets per table.
+     */
+    public static final int MAX_BITS = 20;
+
+    static final int MAGIC = 0x46504958; // "FPIX"
+
+    static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 4 * 4 + 8 + 3 * 4;
+
+    private final ByteBuffer buffer;
+
+    private final int tables, bits, apCount, refCount;
+
+    private final long seed;
+
+    // offsets of the sections in the buffer
+    private final int macsAt, xAt, yAt, startAt, apAt, rssiAt, tablesAt, tableSize;
+
+    // these are predeclared for efficiency reasons
+    private int[] queryAp = new int[16];
+
+    private float[] queryWeight = new float[16];
+
+    private final float[] projections;
+
+    private final int[] order;
+
+    private final int[] stamp;
+
+    private int generation;
+
+    /**
+     * Memory-maps an index file.
+     *
+     * @throws IOException if the file can not be read or is not an index of this version
+     */
+    public static FingerprintIndex read(File file) throws IOException {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = input.getChannel();
+            return new FingerprintIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            input.close();
+        }
+    }
+
+    FingerprintIndex(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a fingerprint index of version " + VERSION);
+        }
+        tables = buffer.getInt(8);
+        bits = buffer.getInt(12);
+        seed = buffer.getLong(16);
+        apCount = buffer.getInt(24);
+        refCount = buffer.getInt(28);
+        int entries = buffer.getInt(32);
+        if (bits < 1 || bits > MAX_BITS || tables < 1 || apCount < 0 || refCount < 0 || entries < 0) {
+            throw new IOException("Corrupt fingerprint index header");
+        }
+        macsAt = HEADER_SIZE;
+        xAt = macsAt + 8 * apCount;
+        yAt = xAt + 4 * refCount;
+        startAt = yAt + 4 * refCount;
+        apAt = startAt + 4 * (refCount + 1);
+        rssiAt = apAt + 4 * entries;
+        tablesAt = align(rssiAt + entries);
+        tableSize = 4 * ((1 << bits) + 1) + 4 * refCount;
+        if ((long) tablesAt + (long) tables * tableSize > buffer.capacity()) {
+            throw new IOException("Truncated fingerprint index");
+        }
+        projections = new float[tables * bits];
+        order = new int[bits];
+        stamp = new int[refCount];
+    }
+
+    public int getReferenceCount() {
+        return refCount;
+    }
+
+    public float getX(int ref) {
+        return buffer.getFloat(xAt + 4 * ref);
+    }
+
+    public float getY(int ref) {
+        return buffer.getFloat(yAt + 4 * ref);
+    }
+
+    /**
+     * Finds the reference points most like a scan.
+     *
+     * @param bssids    BSSIDs of the scan, as "aa:bb:cc:dd:ee:ff"
+     * @param rssi      reading of each, in dBm
+     * @param count     number of readings
+     * @param probes    buckets looked up per table, 1 for the scan's own; more raise recall and
+     *                  cost
+     * @param refs      receives the reference points, nearest first, as many as fit
+     * @param distances receives their RSSI distance to the scan, in dB
+     * @return number of reference points written, 0 if the scan shares no AP with the map
+     */
+    public int query(String[] bssids, int[] rssi, int count, int probes, int[] refs, float[] distances) {
+        int known = prepare(bssids, rssi, count);
+        if (known == 0 || refs.length == 0 || distances.length == 0) {
+            return 0;
+        }
+        project(known);
+        generation++;
+        int found = 0;
+        int mask = (1 << bits) - 1;
+        probes = Math.min(probes, 1 << bits);
+        for (int t = 0; t < tables; t++) {
+            int base = t * bits;
+            int key = 0;
+            for (int b = 0; b < bits; b++) {
+                if (projections[base + b] > 0) {
+                    key |= 1 << b;
+                }
+            }
+            sortByMargin(base);
+            int table = tablesAt + t * tableSize;
+            int members = table + 4 * ((1 << bits) + 1);
+            for (int probe = 0; probe < probes; probe++) {
+                // flip the bits closest to their sign change first, counting in binary over them
+                int flip = 0;
+                for (int b = 0; b < bits && (probe >>> b) != 0; b++) {
+                    if ((probe >>> b & 1) != 0) {
+                        flip |= 1 << order[b];
+                    }
+                }
+                int bucket = (key ^ flip) & mask;
+                int end = buffer.getInt(table + 4 * (bucket + 1));
+                for (int m = buffer.getInt(table + 4 * bucket); m < end; m++) {
+                    int ref = buffer.getInt(members + 4 * m);
+                    if (stamp[ref] == generation) {
+                        continue;
+                    }
+                    stamp[ref] = generation;
+                    int capacity = Math.min(refs.length, distances.length);
+                    float bound = found == capacity ? distances[found - 1] : Float.MAX_VALUE;
+                    float distance = distance(ref, known, bound);
+                    if (distance < bound) {
+                        found = keepNearest(ref, distance, refs, distances, found);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Writes the index to a temporary file next to the target and renames it into place, so
+     * readers never see a partial file.
+     */
+    public void write(File file) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temp);
+        try {
+            FileChannel channel = output.getChannel();
+            ByteBuffer content = buffer.duplicate();
+            content.clear();
+            while (content.hasRemaining()) {
+                channel.write(content);
+            }
+        } finally {
+            output.close();
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Could not move fingerprint index to " + file);
+        }
+    }
+
+    // query APs known to the map, sorted by AP index, with their weights; returns their count
+    private int prepare(String[] bssids, int[] rssi, int count) {
+        if (count > queryAp.length) {
+            queryAp = new int[count];
+            queryWeight = new float[count];
+        }
+        int known = 0;
+        for (int i = 0; i < count; i++) {
+            long mac = parseMac(bssids[i]);
+            int ap = mac < 0 ? -1 : findAp(mac);
+            if (ap < 0) {
+                continue;
+            }
+            // insertion sort, scans hold a few dozen APs
+            int j = known++;
+            while (j > 0 && queryAp[j - 1] > ap) {
+                queryAp[j] = queryAp[j - 1];
+                queryWeight[j] = queryWeight[j - 1];
+                j--;
+            }
+            queryAp[j] = ap;
+            queryWeight[j] = weight(rssi[i]);
+        }
+        return known;
+    }
+
+    private void project(int known) {
+        Arrays.fill(projections, 0);
+        for (int i = 0; i < known; i++) {
+            addProjections(projections, tables, bits, seed, buffer.getLong(macsAt + 8 * queryAp[i]),
+                    queryWeight[i]);
+        }
+    }
+
+    // bits of a table by how close their projection is to zero
+    private void sortByMargin(int base) {
+        for (int b = 0; b < bits; b++) {
+            float margin = Math.abs(projections[base + b]);
+            int j = b;
+            while (j > 0 && Math.abs(projections[base + order[j - 1]]) > margin) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = b;
+        }
+    }
+
+    // Euclidean RSSI distance, merging the sorted APs of the scan and the reference; stops as
+    // soon as it is past the bound
+    private float distance(int ref, int known, float bound) {
+        int entry = buffer.getInt(startAt + 4 * ref);
+        int end = buffer.getInt(startAt + 4 * (ref + 1));
+        int i = 0;
+        float sum = 0;
+        while (i < known || entry < end) {
+            int scanAp = i < known ? queryAp[i] : Integer.MAX_VALUE;
+            int refAp = entry < end ? buffer.getInt(apAt + 4 * entry) : Integer.MAX_VALUE;
+            float d;
+            if (scanAp == refAp) {
+                d = queryWeight[i++] - weight(buffer.get(rssiAt + entry++));
+            } else if (scanAp < refAp) {
+                d = queryWeight[i++];
+            } else {
+                d = weight(buffer.get(rssiAt + entry++));
+            }
+            sum += d * d;
+            if (sum >= bound * bound) {
+                return bound;
+            }
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    // inserts into the sorted results, dropping the last if full; returns the new result count
+    private static int keepNearest(int ref, float distance, int[] refs, float[] distances, int found) {
+        int capacity = Math.min(refs.length, distances.length);
+        int j = found < capacity ? found++ : found - 1;
+        while (j > 0 && distances[j - 1] > distance) {
+            refs[j] = refs[j - 1];
+            distances[j] = distances[j - 1];
+            j--;
+        }
+        refs[j] = ref;
+        distances[j] = distance;
+        return found;
+    }
+
+    private int findAp(long mac) {
+        int low = 0, high = apCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = buffer.getLong(macsAt + 8 * mid);
+            if (value < mac) {
+                low = mid + 1;
+            } else if (value > mac) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    static float weight(int rssi) {
+        return Math.max(0, rssi - MISSING_RSSI);
+    }
+
+    // adds one AP's share to the projections of every table, drawn from its BSSID
+    static void addProjections(float[] projections, int tables, int bits, long seed, long mac, float weight) {
+        for (int t = 0; t < tables; t++) {
+            long state = XorShift.seed(mac ^ seed, t);
+            for (int b = 0; b < bits; b++) {
+                state = XorShift.next(state);
+                projections[t * bits + b] += weight * (float) (2 * XorShift.uniform(state) - 1);
+            }
+        }
+    }
+
+    /**
+     * @return the 48 bit address of "aa:bb:cc:dd:ee:ff", any case, or -1 if malformed
+     */
+    static long parseMac(String bssid) {
+        if (bssid == null || bssid.length() != 17) {
+            return -1;
+        }
+        long mac = 0;
+        for (int i = 0; i < 17; i++) {
+            char c = bssid.charAt(i);
+            if (i % 3 == 2) {
+                if (c != ':' && c != '-') {
+                    return -1;
+                }
+                continue;
+            }
+            int digit = Character.digit(c, 16);
+            if (digit < 0) {
+                return -1;
+            }
+            mac = mac << 4 | digit;
+        }
+        return mac;
+    }
+
+    private static int align(int offset) {
+        return (offset + 3) & ~3;
+    }
+
+    /**
+     * Collects reference fingerprints and hashes them into an index.
+     */
+    public static class Builder {
+
+        private final int tables, bits;
+
+        private final long seed;
+
+        private final HashMap<Long, Integer> apIndices = new HashMap<>();
+
+        private final ArrayList<Long> macs = new ArrayList<>();
+
+        private float[] xs = new float[64], ys = new float[64];
+
+        private int[] starts = new int[65];
+
+        private int[] entryAps = new int[256];
+
+        private byte[] entryRssi = new byte[256];
+
+        private int refCount, entryCount;
+
+        /**
+         * @param tables hash tables, more raise recall and cost
+         * @param bits   bits per table key, more make buckets smaller: about log2 of the
+         *               reference count over the bucket size wanted
+         * @param seed   seed of the random projections
+         */
+        public Builder(int tables, int bits, long seed) {
+            if (bits < 1 || bits > MAX_BITS || tables < 1) {
+                throw new IllegalArgumentException("Need 1 to " + MAX_BITS + " bits and a table, got "
+                        + bits + " bits and " + tables + " tables");
+            }
+            this.tables = tables;
+            this.bits = bits;
+            this.seed = seed;
+        }
+
+        /**
+         * @param bssids BSSIDs heard at the reference point; malformed ones are skipped
+         * @param rssi   mean reading of each, in dBm
+         * @return index of the reference point, as returned by queries
+         */
+        public int addReference(float x, float y, String[] bssids, int[] rssi, int count) {
+            if (refCount == xs.length) {
+                xs = Arrays.copyOf(xs, refCount * 2);
+                ys = Arrays.copyOf(ys, refCount * 2);
+                starts = Arrays.copyOf(starts, refCount * 2 + 1);
+            }
+            if (entryCount + count > entryAps.length) {
+                int size = Math.max(entryAps.length * 2, entryCount + count);
+                entryAps = Arrays.copyOf(entryAps, size);
+                entryRssi = Arrays.copyOf(entryRssi, size);
+            }
+            int start = starts[refCount];
+            int end = start;
+            for (int i = 0; i < count; i++) {
+                long mac = parseMac(bssids[i]);
+                if (mac < 0) {
+                    continue;
+                }
+                Integer ap = apIndices.get(mac);
+                if (ap == null) {
+                    ap = macs.size();
+                    apIndices.put(mac, ap);
+                    macs.add(mac);
+                }
+                entryAps[end] = ap;
+                entryRssi[end] = (byte) Math.max(Byte.MIN_VALUE, Math.min(0, rssi[i]));
+                end++;
+            }
+            xs[refCount] = x;
+            ys[refCount] = y;
+            starts[refCount + 1] = end;
+            entryCount = end;
+            return refCount++;
+        }
+
+        public FingerprintIndex build() {
+            // APs sorted by address, for the binary search of queries
+            int apCount = macs.size();
+            long[] sorted = new long[apCount];
+            for (int i = 0; i < apCount; i++) {
+                sorted[i] = macs.get(i);
+            }
+            Arrays.sort(sorted);
+            int[] remap = new int[apCount];
+            for (int i = 0; i < apCount; i++) {
+                remap[apIndices.get(sorted[i])] = i;
+            }
+
+            int buckets = 1 << bits;
+            int tablesAt = align(HEADER_SIZE + 8 * apCount + 8 * refCount + 4 * (refCount + 1) + 5 * entryCount);
+            int tableSize = 4 * (buckets + 1) + 4 * refCount;
+            ByteBuffer buffer = ByteBuffer.allocate(tablesAt + tables * tableSize);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(tables).putInt(bits).putLong(seed)
+                    .putInt(apCount).putInt(refCount).putInt(entryCount);
+            for (long mac : sorted) {
+                buffer.putLong(mac);
+            }
+            for (int r = 0; r < refCount; r++) {
+                buffer.putFloat(xs[r]);
+            }
+            for (int r = 0; r < refCount; r++) {
+                buffer.putFloat(ys[r]);
+            }
+            for (int r = 0; r <= refCount; r++) {
+                buffer.putInt(starts[r]);
+            }
+            // each fingerprint sorted by AP, for the merge of queries
+            int[] aps = new int[entryCount];
+            byte[] levels = new byte[entryCount];
+            for (int r = 0; r < refCount; r++) {
+                for (int e = starts[r]; e < starts[r + 1]; e++) {
+                    int ap = remap[entryAps[e]];
+                    byte level = entryRssi[e];
+                    int j = e;
+                    while (j > starts[r] && aps[j - 1] > ap) {
+                        aps[j] = aps[j - 1];
+                        levels[j] = levels[j - 1];
+                        j--;
+                    }
+                    aps[j] = ap;
+                    levels[j] = level;
+                }
+            }
+            for (int e = 0; e < entryCount; e++) {
+                buffer.putInt(aps[e]);
+            }
+            buffer.put(levels);
+
+            // keys of every reference in every table, then one counting sort per table
+            float[] projections = new float[tables * bits];
+            int[] keys = new int[tables * refCount];
+            for (int r = 0; r < refCount; r++) {
+                Arrays.fill(projections, 0);
+                for (int e = starts[r]; e < starts[r + 1]; e++) {
+                    addProjections(projections, tables, bits, seed, sorted[aps[e]], weight(levels[e]));
+                }
+                for (int t = 0; t < tables; t++) {
+                    int key = 0;
+                    for (int b = 0; b < bits; b++) {
+                        if (projections[t * bits + b] > 0) {
+                            key |= 1 << b;
+                        }
+                    }
+                    keys[t * refCount + r] = key;
+                }
+            }
+            int[] offsets = new int[buckets + 1];
+            int[] members = new int[refCount];
+            for (int t = 0; t < tables; t++) {
+                Arrays.fill(offsets, 0);
+                for (int r = 0; r < refCount; r++) {
+                    offsets[keys[t * refCount + r] + 1]++;
+                }
+                for (int k = 0; k < buckets; k++) {
+                    offsets[k + 1] += offsets[k];
+                }
+                for (int r = 0; r < refCount; r++) {
+                    members[offsets[keys[t * refCount + r]]++] = r;
+                }
+                // the fill moved each offset to the start of the next bucket
+                buffer.position(tablesAt + t * tableSize);
+                buffer.putInt(0);
+                for (int k = 0; k < buckets; k++) {
+                    buffer.putInt(offsets[k]);
+                }
+                for (int r = 0; r < refCount; r++) {
+                    buffer.putInt(members[r]);
+                }
+            }
+            buffer.clear();
+            try {
+                return new FingerprintIndex(buffer);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+package com.juvetic.rssi.util.formulas;
+
+/**
+ * Refines the track of a {@link UKFAlgorithmData} after the fact, with a Rauch-Tung-Striebel
+ * smoother over the last scans.
+ *
+ * The filtered state and covariance of each scan go into a ring buffer of lag + 1 steps. Once it
+ * is full, every scan runs the RTS recursion back over the buffer and gives the smoothed position
+ * of the scan lag steps back, which has then seen lag scans of its future. The steps not given
+ * out yet can be read at any time with {@link #tail(float[], float[])}, smoothed with all that was
+ * seen so far.
+ *
+ * For a whole recorded session, a smoother with a lag at least as long as the session followed
+ * by one call to {@link #tail(float[], float[])} is the fixed interval RTS smoother.
+ *
+ * Buffers are allocated up front: adding a scan allocates nothing. Not thread safe.
+ */
+public class FixedLagSmoother {
+
+    private final int dimenX;
+
+    private final int lag;
+
+    private final int capacity;
+
+    // ring buffer: filtered state and covariance of each step, with the time since the step
+    // before, and the process noise and control input of the prediction in between
+    private final double[] states, covariances, dts, noises, moves;
+
+    private int newest = -1;
+
+    private int size;
+
+    private float smoothedX, smoothedY;
+
+    private final PositionEstimate estimate = new PositionEstimate();
+
+    // these are predeclared for efficiency reasons
+    private final double[] xs, ps, xp, pp, sqrtPp, pf, gain, dx, dp, tmp;
+
+    /**
+     * @param stateDimension {@link UKFAlgorithmData#STATIC} or
+     *                       {@link UKFAlgorithmData#CONSTANT_VELOCITY}, as the filter
+     * @param lag            scans between a scan and its smoothed position
+     */
+    public FixedLagSmoother(int stateDimension, int lag) {
+        if (lag < 1) {
+            throw new IllegalArgumentException("Lag must be at least 1, got " + lag);
+        }
+        int n = stateDimension;
+        dimenX = n;
+        this.lag = lag;
+        capacity = lag + 1;
+        states = new double[capacity * n];
+        covariances = new double[capacity * n * n];
+        dts = new double[capacity];
+        noises = new double[capacity];
+        moves = new double[capacity * 3];
+        xs = new double[n];
+        ps = new double[n * n];
+        xp = new double[n];
+        pp = new double[n * n];
+        sqrtPp = new double[n * n];
+        pf = new double[n * n];
+        gain = new double[n * n];
+        dx = new double[n];
+        dp = new double[n * n];
+        tmp = new double[n * n];
+    }
+
+    public int getLag() {
+        return lag;
+    }
+
+    /**
+     * Records the filter state right after a scan.
+     *
+     * @param dt seconds since the scan before, as given to {@link UKFAlgorithmData#predict(double)};
+     *           ignored for the first scan. A displacement given to the prediction is taken from
+     *           the filter
+     * @return true if the smoothed position of the scan lag steps back is in {@link #getX()} and
+     * {@link #getY()}
+     */
+    public boolean add(UKFAlgorithmData filter, double dt) {
+        int n = dimenX;
+        if (filter.getDimension() != n) {
+            throw new IllegalArgumentException("Filter state dimension " + filter.getDimension()
+                    + ", smoother built for " + n);
+        }
+        newest = (newest + 1) % capacity;
+        System.arraycopy(filter.x.data, 0, states, newest * n, n);
+        System.arraycopy(filter.P.data, 0, covariances, newest * n * n, n * n);
+        dts[newest] = dt;
+        noises[newest] = filter.getProcessNoise();
+        moves[newest * 3] = filter.getMoveX();
+        moves[newest * 3 + 1] = filter.getMoveY();
+        moves[newest * 3 + 2] = filter.getMoveVariance();
+        if (size < capacity) {
+            size++;
+        }
+        if (size < capacity) {
+            return false;
+        }
+        smooth(size, null, null, 0);
+        smoothedX = (float) xs[0];
+        smoothedY = (float) xs[1];
+        estimate.setPosition(smoothedX, smoothedY);
+        estimate.setCovariance(ps[0], ps[1], ps[n + 1]);
+        return true;
+    }
+
+    /**
+     * @return smoothed x of the scan lag steps before the last one added
+     */
+    public float getX() {
+        return smoothedX;
+    }
+
+    public float getY() {
+        return smoothedY;
+    }
+
+    /**
+     * @return smoothed position and covariance of the scan lag steps back, without residuals or
+     * geometry; refilled by every {@link #add(UKFAlgorithmData, double)} that gives a position
+     */
+    public PositionEstimate getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * Smoothed positions of the scans not given out by {@link #add(UKFAlgorithmData, double)}
+     * yet, oldest first. Leaves the smoother as it is, so scans can still be added afterwards.
+     *
+     * @param outX room for at least lag positions
+     * @return number of positions written, at most the lag
+     */
+    public int tail(float[] outX, float[] outY) {
+        int count = Math.min(size, lag);
+        if (count > 0) {
+            smooth(size, outX, outY, count);
+        }
+        return count;
+    }
+
+    /**
+     * Forgets all scans, e.g. when the filter starts over.
+     */
+    public void reset() {
+        newest = -1;
+        size = 0;
+    }
+
+    // RTS recursion back from the newest step over span steps; writes the newest count of them
+    // to the output arrays, and leaves the oldest in xs and ps
+    private void smooth(int span, float[] outX, float[] outY, int count) {
+        int n = dimenX;
+        int slot = newest;
+        System.arraycopy(states, slot * n, xs, 0, n);
+        System.arraycopy(covariances, slot * n * n, ps, 0, n * n);
+        if (count > 0) {
+            outX[count - 1] = (float) xs[0];
+            outY[count - 1] = (float) xs[1];
+        }
+        for (int back = 1; back < span; back++) {
+            int next = slot;
+            slot = (slot + capacity - 1) % capacity;
+            int xo = slot * n;
+            int po = slot * n * n;
+            double dt = dts[next];
+
+            // prediction from this step to the next one, as the filter made it
+            System.arraycopy(states, xo, xp, 0, n);
+            System.arraycopy(covariances, po, pp, 0, n * n);
+            UKFAlgorithmData.propagate(xp, pp, n, dt, noises[next],
+                    moves[next * 3], moves[next * 3 + 1], moves[next * 3 + 2]);
+
+            // P F', with F the identity plus dt coupling each position to its velocity
+            System.arraycopy(covariances, po, pf, 0, n * n);
+            if (n == UKFAlgorithmData.CONSTANT_VELOCITY && dt > 0) {
+                for (int r = 0; r < n; r++) {
+                    pf[r * n] += dt * covariances[po + r * n + 2];
+                    pf[r * n + 1] += dt * covariances[po + r * n + 3];
+                }
+            }
+
+            // C = P F' Pp^(-1), row by row: Pp c' = (P F')(r)'
+            if (!UKFAlgorithmData.cholesky(pp, n, sqrtPp)) {
+                // nothing to learn from the future: keep the filtered step
+                System.arraycopy(states, xo, xs, 0, n);
+                System.arraycopy(covariances, po, ps, 0, n * n);
+            } else {
+                for (int r = 0; r < n; r++) {
+                    solve(pf, r, n);
+                }
+                for (int i = 0; i < n; i++) {
+                    dx[i] = xs[i] - xp[i];
+                }
+                for (int i = 0; i < n * n; i++) {
+                    dp[i] = ps[i] - pp[i];
+                }
+                // xs = x + C (xs - xp), ps = P + C (ps - Pp) C'
+                for (int r = 0; r < n; r++) {
+                    double sum = states[xo + r];
+                    for (int k = 0; k < n; k++) {
+                        sum += gain[r * n + k] * dx[k];
+                    }
+                    xs[r] = sum;
+                }
+                for (int r = 0; r < n; r++) {
+                    for (int c = 0; c < n; c++) {
+                        double sum = 0;
+                        for (int k = 0; k < n; k++) {
+                            sum += gain[r * n + k] * dp[k * n + c];
+                        }
+                        tmp[r * n + c] = sum;
+                    }
+                }
+                for (int r = 0; r < n; r++) {
+                    for (int c = 0; c < n; c++) {
+                        double sum = covariances[po + r * n + c];
+                        for (int k = 0; k < n; k++) {
+                            sum += tmp[r * n + k] * gain[c * n + k];
+                        }
+                        ps[r * n + c] = sum;
+                    }
+                }
+            }
+            if (back < count) {
+                outX[count - 1 - back] = (float) xs[0];
+                outY[count - 1 - back] = (float) xs[1];
+            }
+        }
+    }
+
+    // row r of the smoother gain, by forward and back substitution with the factor of Pp
+    private void solve(double[] rhs, int r, int n) {
+        for (int j = 0; j < n; j++) {
+            double sum = rhs[r * n + j];
+            for (int k = 0; k < j; k++) {
+                sum -= sqrtPp[j * n + k] * dx[k];
+            }
+            dx[j] = sum / sqrtPp[j * n + j];
+        }
+        for (int j = n - 1; j >= 0; j--) {
+            double sum = dx[j];
+            for (int k = j + 1; k < n; k++) {
+                sum -= sqrtPp[k * n + j] * gain[r * n + k];
+            }
+            gain[r * n + j] = sum / sqrtPp[j * n + j];
+        }
+    }
+}
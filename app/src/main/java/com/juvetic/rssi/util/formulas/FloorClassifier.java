@@ -0,0 +1,357 @@
+package com.juvetic.rssi.util.formulas;
+
+import java.util.Arrays;
+
+/**
+ * Tells which floor a scan was taken on from the set of APs it heard, for buildings whose floors
+ * share some BSSIDs.
+ *
+ * Every floor is kept as a MinHash signature of the APs heard on it: for each of a fixed family
+ * of hash functions, the smallest hash over the set. Two signatures agree in a slot with a
+ * probability equal to the Jaccard similarity of the two sets, so the share of agreeing slots
+ * estimates it. The signature of the current scan is built as its APs come in. Floors are found
+ * by banding (locality-sensitive hashing): the slots are cut into bands and only the floors that
+ * agree with the scan on a whole band are compared, so a scan costs about the same whether the
+ * site has ten floors or ten thousand.
+ *
+ * The floor only changes once another one has beaten it by a margin for a few scans in a row,
+ * so walking past a stairwell does not flip the map back and forth. Likewise it is only dropped,
+ * back to {@link #UNKNOWN}, once neither it nor any other floor has reached the minimum
+ * similarity for as many scans in a row, e.g. when leaving the building.
+ *
+ * Nothing is allocated per scan; the band index is rebuilt on the first scan after floors
+ * change. Not thread safe.
+ */
+public class FloorClassifier {
+
+    /**
+     * Told when the floor changes, e.g. to load the plan of the new floor.
+     */
+    public interface Listener {
+
+        /**
+         * @param floor the new floor, or {@link #UNKNOWN} when the scans no longer resemble any
+         * @param name  its name, null for {@link #UNKNOWN}
+         */
+        void onFloorChanged(int floor, String name);
+    }
+
+    /**
+     * No floor yet, or the last scans resembled none.
+     */
+    public static final int UNKNOWN = -1;
+
+    private static final int EMPTY = Integer.MAX_VALUE;
+
+    private final int bands, rows, hashes;
+
+    // hash family: h(i) = (base * multiplier(i) + increment(i)) >>> 33
+    private final long[] multipliers, increments;
+
+    // one signature per floor, back to back
+    private int[] signatures;
+
+    private String[] names = new String[4];
+
+    private int floorCount;
+
+    private final int[] scan;
+
+    private int scanSize;
+
+    // band index: open addressing table from band key to a chain of floors
+    private boolean indexDirty = true;
+
+    private long[] tableKeys = new long[0];
+
+    private int[] tableHeads = new int[0], entryFloor = new int[0], entryNext = new int[0];
+
+    private int tableMask;
+
+    // floors already taken as candidates in this scan
+    private int[] seen = new int[4], candidates = new int[4];
+
+    private int generation;
+
+    private float minSimilarity = 0.1f, switchMargin = 0.1f;
+
+    private int switchScans = 2;
+
+    private int current = UNKNOWN, pending = UNKNOWN, pendingScans;
+
+    // scans in a row in which no floor, the current one included, reached the minimum similarity
+    private int lostScans;
+
+    private float similarity;
+
+    private Listener listener;
+
+    /**
+     * Banding with 32 bands of 2 slots, which finds floors from a similarity of about 0.2 on.
+     */
+    public FloorClassifier(long seed) {
+        this(32, 2, seed);
+    }
+
+    /**
+     * @param bands more bands find less similar floors, at the cost of more candidates
+     * @param rows  slots per band, more makes each band more selective
+     * @param seed  seed of the hash family; signatures only compare under the same seed
+     */
+    public FloorClassifier(int bands, int rows, long seed) {
+        this.bands = bands;
+        this.rows = rows;
+        hashes = bands * rows;
+        multipliers = new long[hashes];
+        increments = new long[hashes];
+        for (int i = 0; i < hashes; i++) {
+            multipliers[i] = XorShift.seed(seed, 2 * i);
+            increments[i] = XorShift.seed(seed, 2 * i + 1);
+        }
+        signatures = new int[4 * hashes];
+        scan = new int[hashes];
+        beginScan();
+    }
+
+    /**
+     * @return index of the new floor, for {@link #addAccessPoint(int, String)}
+     */
+    public int addFloor(String name) {
+        if (floorCount == names.length) {
+            names = Arrays.copyOf(names, floorCount * 2);
+            signatures = Arrays.copyOf(signatures, floorCount * 2 * hashes);
+            seen = new int[floorCount * 2];
+            candidates = new int[floorCount * 2];
+        }
+        names[floorCount] = name;
+        Arrays.fill(signatures, floorCount * hashes, (floorCount + 1) * hashes, EMPTY);
+        indexDirty = true;
+        return floorCount++;
+    }
+
+    /**
+     * Adds an AP heard on a floor to its signature.
+     *
+     * @param bssid as in the scan results, the same case as the scans will use
+     */
+    public void addAccessPoint(int floor, String bssid) {
+        mix(signatures, floor * hashes, bssid);
+        indexDirty = true;
+    }
+
+    public int getFloorCount() {
+        return floorCount;
+    }
+
+    public String getFloorName(int floor) {
+        return names[floor];
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @param minSimilarity lowest estimated Jaccard similarity at which a floor is taken at all
+     * @param switchMargin  how much more similar another floor must be to take over
+     * @param switchScans   scans in a row it must win before it takes over, and in which no floor
+     *                      may reach minSimilarity before the current one is dropped
+     */
+    public void setHysteresis(float minSimilarity, float switchMargin, int switchScans) {
+        this.minSimilarity = minSimilarity;
+        this.switchMargin = switchMargin;
+        this.switchScans = switchScans;
+    }
+
+    /**
+     * Starts the signature of a new scan.
+     */
+    public void beginScan() {
+        Arrays.fill(scan, EMPTY);
+        scanSize = 0;
+    }
+
+    /**
+     * Adds an AP of the current scan.
+     */
+    public void addToScan(String bssid) {
+        mix(scan, 0, bssid);
+        scanSize++;
+    }
+
+    /**
+     * Picks the floor of the scan built since {@link #beginScan()}, and tells the listener if it
+     * changed.
+     *
+     * @return the current floor, or {@link #UNKNOWN}
+     */
+    public int classify() {
+        if (scanSize == 0 || floorCount == 0) {
+            return current;
+        }
+        if (indexDirty) {
+            buildIndex();
+        }
+        generation++;
+        int count = 0;
+        for (int band = 0; band < bands; band++) {
+            long key = bandKey(scan, 0, band);
+            for (int e = lookup(key); e >= 0; e = entryNext[e]) {
+                int floor = entryFloor[e];
+                if (seen[floor] != generation) {
+                    seen[floor] = generation;
+                    candidates[count++] = floor;
+                }
+            }
+        }
+        int best = UNKNOWN;
+        float bestSimilarity = 0;
+        for (int i = 0; i < count; i++) {
+            float s = similarity(candidates[i]);
+            if (s > bestSimilarity) {
+                best = candidates[i];
+                bestSimilarity = s;
+            }
+        }
+        float currentSimilarity = current == UNKNOWN ? 0 : similarity(current);
+
+        if (current != UNKNOWN && currentSimilarity < minSimilarity
+                && (best == UNKNOWN || bestSimilarity < minSimilarity)) {
+            pending = UNKNOWN;
+            pendingScans = 0;
+            if (++lostScans >= switchScans) {
+                changeFloor(UNKNOWN);
+            }
+            similarity = current == UNKNOWN ? 0 : currentSimilarity;
+            return current;
+        }
+        lostScans = 0;
+
+        if (best == UNKNOWN || best == current || bestSimilarity < minSimilarity) {
+            pending = UNKNOWN;
+            pendingScans = 0;
+        } else if (current == UNKNOWN) {
+            changeFloor(best);
+        } else if (bestSimilarity >= currentSimilarity + switchMargin) {
+            if (best == pending) {
+                pendingScans++;
+            } else {
+                pending = best;
+                pendingScans = 1;
+            }
+            if (pendingScans >= switchScans) {
+                changeFloor(best);
+            }
+        } else {
+            pending = UNKNOWN;
+            pendingScans = 0;
+        }
+        similarity = current == UNKNOWN ? 0 : similarity(current);
+        return current;
+    }
+
+    public int getFloor() {
+        return current;
+    }
+
+    /**
+     * @return estimated Jaccard similarity of the last scan to the current floor
+     */
+    public float getSimilarity() {
+        return similarity;
+    }
+
+    /**
+     * Forgets the current floor, e.g. when entering another building.
+     */
+    public void reset() {
+        current = pending = UNKNOWN;
+        pendingScans = lostScans = 0;
+        similarity = 0;
+    }
+
+    private void changeFloor(int floor) {
+        current = floor;
+        pending = UNKNOWN;
+        pendingScans = lostScans = 0;
+        if (listener != null) {
+            listener.onFloorChanged(floor, floor == UNKNOWN ? null : names[floor]);
+        }
+    }
+
+    // share of the slots in which the floor agrees with the scan
+    private float similarity(int floor) {
+        int offset = floor * hashes;
+        int same = 0;
+        for (int i = 0; i < hashes; i++) {
+            if (signatures[offset + i] == scan[i] && scan[i] != EMPTY) {
+                same++;
+            }
+        }
+        return (float) same / hashes;
+    }
+
+    private void mix(int[] signature, int offset, String bssid) {
+        long base = XorShift.seed(bssid.hashCode(), 0);
+        for (int i = 0; i < hashes; i++) {
+            int h = (int) ((base * multipliers[i] + increments[i]) >>> 33);
+            if (h < signature[offset + i]) {
+                signature[offset + i] = h;
+            }
+        }
+    }
+
+    private long bandKey(int[] signature, int offset, int band) {
+        long key = band;
+        for (int r = 0; r < rows; r++) {
+            key = XorShift.seed(key, signature[offset + band * rows + r]);
+        }
+        return key;
+    }
+
+    private void buildIndex() {
+        int entries = floorCount * bands;
+        int size = Integer.highestOneBit(Math.max(2, entries * 2 - 1)) << 1;
+        if (tableKeys.length < size) {
+            tableKeys = new long[size];
+            tableHeads = new int[size];
+        }
+        if (entryFloor.length < entries) {
+            entryFloor = new int[entries];
+            entryNext = new int[entries];
+        }
+        tableMask = size - 1;
+        Arrays.fill(tableHeads, 0, size, -1);
+        int e = 0;
+        for (int floor = 0; floor < floorCount; floor++) {
+            if (signatures[floor * hashes] == EMPTY) {
+                // no APs yet
+                continue;
+            }
+            for (int band = 0; band < bands; band++) {
+                long key = bandKey(signatures, floor * hashes, band);
+                int slot = (int) key & tableMask;
+                while (tableHeads[slot] >= 0 && tableKeys[slot] != key) {
+                    slot = (slot + 1) & tableMask;
+                }
+                tableKeys[slot] = key;
+                entryFloor[e] = floor;
+                entryNext[e] = tableHeads[slot];
+                tableHeads[slot] = e++;
+            }
+        }
+        indexDirty = false;
+    }
+
+    // first entry of the chain for a band key, or -1
+    private int lookup(long key) {
+        int slot = (int) key & tableMask;
+        while (tableHeads[slot] >= 0) {
+            if (tableKeys[slot] == key) {
+                return tableHeads[slot];
+            }
+            slot = (slot + 1) & tableMask;
+        }
+        return -1;
+    }
+}
@@ -8,10 +8,46 @@ import java.util.Queue;
 
 public class Formula {
 
+    /**
+     * Scale of the floor plan: map units per meter of measured distance.
+     */
+    public static final double PIXELS_PER_METER = 134;
+
+    /**
+     * Log-distance path-loss model: RSSI at the reference distance, in dBm.
+     */
+    public static final int REFERENCE_RSSI = -40;
+
+    /**
+     * Reference distance of the path-loss model, in meters.
+     */
+    public static final int REFERENCE_DISTANCE = 1;
+
+    // smallest standard deviation of a trilaterated range, in map units (about a quarter meter)
+    private static final double MIN_RANGE_SIGMA = 30;
+
     public static String distance(double rssi, double n) {
-        int d0 = 1;
-        int p = -40;
-        return String.format("%.2f", d0 * (Math.pow(10, (p - rssi) / (float) (n * 10))));
+        return String.format("%.2f", distanceMeters(rssi, n));
+    }
+
+    /**
+     * @param rssi received signal strength, in dBm
+     * @param n    path-loss exponent
+     * @return distance to the AP in meters
+     */
+    public static double distanceMeters(double rssi, double n) {
+        return REFERENCE_DISTANCE * (Math.pow(10, (REFERENCE_RSSI - rssi) / (float) (n * 10)));
+    }
+
+    /**
+     * Inverse of {@link #distanceMeters(double, double)}.
+     *
+     * @param meters distance to the AP
+     * @param n      path-loss exponent
+     * @return RSSI expected at that distance, in dBm
+     */
+    public static double expectedRssi(double meters, double n) {
+        return REFERENCE_RSSI - 10 * n * Math.log10(meters / REFERENCE_DISTANCE);
     }
 
     public static List<Double> koordinat(
@@ -19,27 +55,79 @@ public class Formula {
             double x2, double y2, double d2,
             double x3, double y3, double d3) {
 
-        d1 *= 134;
-        d2 *= 134;
-        d3 *= 134;
+        d1 *= PIXELS_PER_METER;
+        d2 *= PIXELS_PER_METER;
+        d3 *= PIXELS_PER_METER;
+
+        double x = trilaterateX(x1, y1, d1, x2, y2, d2, x3, y3, d3);
+        double y = trilaterateY(x1, y1, d1, x2, y2, d2, x3, y3, d3);
+
+        List<Double> koordinat = new ArrayList<>();
+        koordinat.add(x);
+        koordinat.add(y);
 
+        return koordinat;
+    }
+
+    /**
+     * Same as {@link #koordinat(double, double, double, double, double, double, double, double,
+     * double)}, into an estimate that tells how good the fix is, without allocating.
+     *
+     * @param d1  distance to the first AP, in meters
+     * @param out filled with the fix, or marked invalid if the three APs are on one line
+     * @return out
+     */
+    public static PositionEstimate koordinat(
+            double x1, double y1, double d1,
+            double x2, double y2, double d2,
+            double x3, double y3, double d3,
+            PositionEstimate out) {
+
+        d1 *= PIXELS_PER_METER;
+        d2 *= PIXELS_PER_METER;
+        d3 *= PIXELS_PER_METER;
+
+        double x = trilaterateX(x1, y1, d1, x2, y2, d2, x3, y3, d3);
+        double y = trilaterateY(x1, y1, d1, x2, y2, d2, x3, y3, d3);
+        if (Double.isNaN(x) || Double.isNaN(y) || Double.isInfinite(x) || Double.isInfinite(y)) {
+            out.invalidate();
+            return out;
+        }
+        out.setPosition((float) x, (float) y);
+        out.beginAnchors();
+        out.addAnchor((float) x1, (float) y1, d1 - Math.hypot(x - x1, y - y1));
+        out.addAnchor((float) x2, (float) y2, d2 - Math.hypot(x - x2, y - y2));
+        out.addAnchor((float) x3, (float) y3, d3 - Math.hypot(x - x3, y - y3));
+        out.endAnchors();
+        out.setRangeCovariance(MIN_RANGE_SIGMA);
+        return out;
+    }
+
+    // the two linear equations left by subtracting the circles, solved by Cramer's rule
+    private static double trilaterateX(
+            double x1, double y1, double d1,
+            double x2, double y2, double d2,
+            double x3, double y3, double d3) {
         double A = Math.pow(x1, 2) + Math.pow(y1, 2) - Math.pow(d1, 2);
         double B = Math.pow(x2, 2) + Math.pow(y2, 2) - Math.pow(d2, 2);
         double C = Math.pow(x3, 2) + Math.pow(y3, 2) - Math.pow(d3, 2);
-        double X32 = x3 - x2;
-        double X13 = x1 - x3;
-        double X21 = x2 - x1;
         double Y32 = y3 - y2;
         double Y13 = y1 - y3;
         double Y21 = y2 - y1;
-        double x = (A * Y32 + B * Y13 + C * Y21) / (2 * (x1 * Y32 + x2 * Y13 + x3 * Y21));
-        double y = (A * X32 + B * X13 + C * X21) / (2 * (y1 * X32 + y2 * X13 + y3 * X21));
-
-        List<Double> koordinat = new ArrayList<>();
-        koordinat.add(x);
-        koordinat.add(y);
+        return (A * Y32 + B * Y13 + C * Y21) / (2 * (x1 * Y32 + x2 * Y13 + x3 * Y21));
+    }
 
-        return koordinat;
+    private static double trilaterateY(
+            double x1, double y1, double d1,
+            double x2, double y2, double d2,
+            double x3, double y3, double d3) {
+        double A = Math.pow(x1, 2) + Math.pow(y1, 2) - Math.pow(d1, 2);
+        double B = Math.pow(x2, 2) + Math.pow(y2, 2) - Math.pow(d2, 2);
+        double C = Math.pow(x3, 2) + Math.pow(y3, 2) - Math.pow(d3, 2);
+        double X32 = x3 - x2;
+        double X13 = x1 - x3;
+        double X21 = x2 - x1;
+        return (A * X32 + B * X13 + C * X21) / (2 * (y1 * X32 + y2 * X13 + y3 * X21));
     }
 
 
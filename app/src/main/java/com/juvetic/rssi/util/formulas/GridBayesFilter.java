@@ -0,0 +1,394 @@
+package com.juvetic.rssi.util.formulas;
+
+import java.util.Arrays;
+
+/**
+ * Estimates user position with a discrete Bayes (histogram) filter over a grid covering the
+ * floor plan, in map coordinates.
+ *
+ * For every AP the RSSI expected in each cell is computed once from a {@link PathLossModel},
+ * by default the log-distance model of {@link Formula#distanceMeters(double, double)}. The likelihood of an observed RSSI given an
+ * expected one is quantized to whole dBm and kept in one lookup table, so an update is a
+ * table read and a multiply per cell and AP. Only cells holding a non-negligible share of the
+ * probability are visited: the rest are pruned from an active set, which motion grows again
+ * cell by cell. The cost of a scan is bounded by the grid size and does not depend on the
+ * signal, and the estimate can keep several modes until the APs tell them apart.
+ *
+ * Nothing is allocated after the APs are added. Not thread safe.
+ */
+public class GridBayesFilter {
+
+    /**
+     * Weakest RSSI in the tables; weaker readings are clamped to it.
+     */
+    public static final int MIN_RSSI = -110;
+
+    /**
+     * Strongest RSSI in the tables; stronger readings are clamped to it.
+     */
+    public static final int MAX_RSSI = -10;
+
+    private static final int LEVELS = MAX_RSSI - MIN_RSSI + 1;
+
+    // share of the total below which a cell drops out of the active set
+    private static final float PRUNE_FRACTION = 1e-6f;
+
+    // likelihood floor, so one bad reading cannot rule a cell out for good
+    private static final float MIN_LIKELIHOOD = 1e-4f;
+
+    // variance a blur pass adds per axis, in cells^2, when its kernel is flat
+    private static final float MAX_PASS_VARIANCE = 2f / 3;
+
+    private final float left, top, cellSize;
+
+    private final int columns, rows, cellCount;
+
+    private float[] probability, scratch;
+
+    // active cells, and the pass in which each cell was last added to them
+    private int[] active, nextActive;
+
+    private int activeCount;
+
+    private final int[] stamp;
+
+    private int generation;
+
+    // per AP: expected RSSI of each cell, as a column of the likelihood table (fits a byte)
+    private byte[][] expected = new byte[4][];
+
+    private int apCount;
+
+    private float[] apX = new float[4], apY = new float[4];
+
+    // row of the likelihood table for each reading of the current update
+    private int[] observedRows = new int[4];
+
+    // likelihood[observed * LEVELS + expected], both relative to MIN_RSSI
+    private final float[] likelihood = new float[LEVELS * LEVELS];
+
+    private float estimateX, estimateY;
+
+    private int modeCell;
+
+    private final PositionEstimate estimate = new PositionEstimate();
+
+    /**
+     * @param cellSize side of a cell in map units, e.g. half a meter
+     */
+    public GridBayesFilter(float left, float top, float right, float bottom, float cellSize) {
+        this.left = left;
+        this.top = top;
+        this.cellSize = cellSize;
+        columns = Math.max(1, (int) Math.ceil((right - left) / cellSize));
+        rows = Math.max(1, (int) Math.ceil((bottom - top) / cellSize));
+        cellCount = columns * rows;
+        probability = new float[cellCount];
+        scratch = new float[cellCount];
+        active = new int[cellCount];
+        nextActive = new int[cellCount];
+        stamp = new int[cellCount];
+        setRssiSigma(6);
+        reset();
+    }
+
+    /**
+     * Precomputes the RSSI this AP should give in every cell.
+     *
+     * @param x          AP position, in map units
+     * @param y          AP position, in map units
+     * @param n          path-loss exponent, as given to {@link Formula#distance(double, double)}
+     * @param unitsPerMeter map units per meter, {@link Formula#PIXELS_PER_METER} for the bundled plans
+     * @return index of the AP for {@link #update(int[], int[], int)}
+     */
+    public int addAccessPoint(float x, float y, double n, double unitsPerMeter) {
+        LogDistanceModel model = new LogDistanceModel(n, unitsPerMeter);
+        return addAccessPoint(model, model.addAccessPoint(x, y));
+    }
+
+    /**
+     * Precomputes the RSSI an AP should give in every cell, according to any path-loss model.
+     *
+     * @param ap index of the AP in the model
+     * @return index of the AP for {@link #update(int[], int[], int)}
+     */
+    public int addAccessPoint(PathLossModel model, int ap) {
+        if (apCount == expected.length) {
+            byte[][] grown = new byte[apCount * 2][];
+            System.arraycopy(expected, 0, grown, 0, apCount);
+            expected = grown;
+            observedRows = new int[apCount * 2];
+            apX = Arrays.copyOf(apX, apCount * 2);
+            apY = Arrays.copyOf(apY, apCount * 2);
+        }
+        apX[apCount] = model.getAccessPointX(ap);
+        apY[apCount] = model.getAccessPointY(ap);
+        byte[] levels = new byte[cellCount];
+        for (int cell = 0; cell < cellCount; cell++) {
+            levels[cell] = (byte) level((int) Math.round(model.expectedRssi(ap, getCellX(cell), getCellY(cell))));
+        }
+        expected[apCount] = levels;
+        return apCount++;
+    }
+
+    public int getAccessPointCount() {
+        return apCount;
+    }
+
+    /**
+     * @param sigma standard deviation of an RSSI reading around the model, in dB
+     */
+    public void setRssiSigma(float sigma) {
+        for (int observed = 0; observed < LEVELS; observed++) {
+            for (int level = 0; level < LEVELS; level++) {
+                float error = (observed - level) / sigma;
+                likelihood[observed * LEVELS + level] = Math.max(MIN_LIKELIHOOD, (float) Math.exp(-error * error / 2));
+            }
+        }
+    }
+
+    /**
+     * Forgets everything: every cell is equally likely.
+     */
+    public void reset() {
+        for (int cell = 0; cell < cellCount; cell++) {
+            probability[cell] = 1f / cellCount;
+            scratch[cell] = 0;
+            active[cell] = cell;
+        }
+        activeCount = cellCount;
+        collect();
+        estimate.beginAnchors();
+        estimate.endAnchors();
+    }
+
+    /**
+     * Motion model: blurs the distribution with a Gaussian of the given spread, which is how
+     * far the user may have walked since the last scan.
+     *
+     * @param sigma standard deviation per axis, in map units
+     */
+    public void predict(float sigma) {
+        if (sigma <= 0) {
+            return;
+        }
+        // a pass of [side, 1, side] per axis adds a variance of 2 side / (1 + 2 side) cells^2,
+        // at most 2/3 with side <= 1; more passes add up their variances
+        float cells = sigma / cellSize;
+        float variance = cells * cells;
+        int passes = Math.max(1, (int) Math.ceil(variance / MAX_PASS_VARIANCE));
+        float perPass = variance / passes;
+        float side = perPass / (2 * (1 - perPass));
+        float corner = side * side;
+        float norm = 1 + 4 * side + 4 * corner;
+        side /= norm;
+        corner /= norm;
+        float center = 1 / norm;
+        for (int pass = 0; pass < passes; pass++) {
+            blur(center, side, corner);
+        }
+        collect();
+    }
+
+    /**
+     * Multiplies in the likelihood of one scan and renormalizes.
+     *
+     * @param aps   AP indices, as returned by {@link #addAccessPoint(float, float, double, double)}
+     * @param rssi  reading of each of those APs, in dBm
+     * @param count number of readings
+     */
+    public void update(int[] aps, int[] rssi, int count) {
+        for (int i = 0; i < count; i++) {
+            observedRows[i] = level(rssi[i]) * LEVELS;
+        }
+        double total = 0;
+        for (int k = 0; k < activeCount; k++) {
+            int cell = active[k];
+            float p = probability[cell];
+            for (int i = 0; i < count; i++) {
+                p *= likelihood[observedRows[i] + expected[aps[i]][cell]];
+            }
+            probability[cell] = p;
+            total += p;
+        }
+        if (!(total > 0)) {
+            // underflow, or readings that fit nowhere
+            reset();
+            return;
+        }
+        // normalize and prune in one pass
+        float scale = (float) (1 / total);
+        float threshold = PRUNE_FRACTION;
+        int kept = 0;
+        for (int k = 0; k < activeCount; k++) {
+            int cell = active[k];
+            float p = probability[cell] * scale;
+            if (p < threshold) {
+                probability[cell] = 0;
+            } else {
+                probability[cell] = p;
+                active[kept++] = cell;
+            }
+        }
+        activeCount = kept;
+        collect();
+
+        // residuals against the cell under the mean, in whole dB as the tables hold them
+        int cell = cellAt(estimateX, estimateY);
+        estimate.beginAnchors();
+        for (int i = 0; i < count; i++) {
+            estimate.addAnchor(apX[aps[i]], apY[aps[i]], level(rssi[i]) - expected[aps[i]][cell]);
+        }
+        estimate.endAnchors();
+    }
+
+    /**
+     * @return mean x of the distribution
+     */
+    public float getX() {
+        return estimateX;
+    }
+
+    /**
+     * @return mean y of the distribution
+     */
+    public float getY() {
+        return estimateY;
+    }
+
+    /**
+     * @return the mean and covariance of the distribution, with the residuals and geometry of
+     * the last update at the mean; refilled by every call
+     */
+    public PositionEstimate getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * @return x of the most likely cell's center, better than the mean while the distribution
+     * still has several modes
+     */
+    public float getModeX() {
+        return getCellX(modeCell);
+    }
+
+    public float getModeY() {
+        return getCellY(modeCell);
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return cells in the active set, all the others have probability 0
+     */
+    public int getActiveCount() {
+        return activeCount;
+    }
+
+    /**
+     * @return probability of each cell, row by row. Must not be modified.
+     */
+    public float[] getProbabilities() {
+        return probability;
+    }
+
+    public float getCellX(int cell) {
+        return left + (cell % columns + 0.5f) * cellSize;
+    }
+
+    public float getCellY(int cell) {
+        return top + (cell / columns + 0.5f) * cellSize;
+    }
+
+    // spreads the active cells into their 3x3 neighbourhoods
+    private void blur(float center, float side, float corner) {
+        generation++;
+        int count = 0;
+        for (int k = 0; k < activeCount; k++) {
+            int cell = active[k];
+            float p = probability[cell];
+            probability[cell] = 0;
+            int column = cell % columns;
+            int row = cell / columns;
+            float spread = 0;
+            for (int dy = -1; dy <= 1; dy++) {
+                int r = row + dy;
+                if (r < 0 || r >= rows) {
+                    continue;
+                }
+                for (int dx = -1; dx <= 1; dx++) {
+                    int c = column + dx;
+                    if (c < 0 || c >= columns) {
+                        continue;
+                    }
+                    int target = r * columns + c;
+                    float share = dx == 0 ? (dy == 0 ? center : side) : (dy == 0 ? side : corner);
+                    scratch[target] += p * share;
+                    spread += share;
+                    if (stamp[target] != generation) {
+                        stamp[target] = generation;
+                        nextActive[count++] = target;
+                    }
+                }
+            }
+            // what would leave the grid stays in the cell
+            scratch[cell] += p * (1 - spread);
+        }
+        float[] swap = probability;
+        probability = scratch;
+        scratch = swap;
+        int[] swapActive = active;
+        active = nextActive;
+        nextActive = swapActive;
+        activeCount = count;
+    }
+
+    private void collect() {
+        double total = 0, sumX = 0, sumY = 0, sumXX = 0, sumXY = 0, sumYY = 0;
+        float best = -1;
+        for (int k = 0; k < activeCount; k++) {
+            int cell = active[k];
+            float p = probability[cell];
+            double cx = getCellX(cell);
+            double cy = getCellY(cell);
+            total += p;
+            sumX += p * cx;
+            sumY += p * cy;
+            sumXX += p * cx * cx;
+            sumXY += p * cx * cy;
+            sumYY += p * cy * cy;
+            if (p > best) {
+                best = p;
+                modeCell = cell;
+            }
+        }
+        if (total > 0) {
+            double meanX = sumX / total;
+            double meanY = sumY / total;
+            estimateX = (float) meanX;
+            estimateY = (float) meanY;
+            // a cell is spread uniformly over its side, cellSize^2 / 12 per axis
+            double within = (double) cellSize * cellSize / 12;
+            estimate.setPosition(estimateX, estimateY);
+            estimate.setCovariance(Math.max(0, sumXX / total - meanX * meanX) + within,
+                    sumXY / total - meanX * meanY, Math.max(0, sumYY / total - meanY * meanY) + within);
+        }
+    }
+
+    private int cellAt(float x, float y) {
+        int column = Math.max(0, Math.min(columns - 1, (int) ((x - left) / cellSize)));
+        int row = Math.max(0, Math.min(rows - 1, (int) ((y - top) / cellSize)));
+        return row * columns + column;
+    }
+
+    // table index of an RSSI
+    private static int level(int rssi) {
+        return Math.max(MIN_RSSI, Math.min(MAX_RSSI, rssi)) - MIN_RSSI;
+    }
+}
@@ -0,0 +1,67 @@
+package com.juvetic.rssi.util.formulas;
+
+import java.util.Arrays;
+
+/**
+ * The log-distance path-loss model of {@link Formula#distanceMeters(double, double)}, for APs at
+ * known positions.
+ */
+public class LogDistanceModel implements PathLossModel {
+
+    final double n;
+
+    private final double unitsPerMeter;
+
+    private float[] apX = new float[4], apY = new float[4];
+
+    private int apCount;
+
+    /**
+     * @param n             path-loss exponent
+     * @param unitsPerMeter map units per meter, {@link Formula#PIXELS_PER_METER} for the bundled plans
+     */
+    public LogDistanceModel(double n, double unitsPerMeter) {
+        this.n = n;
+        this.unitsPerMeter = unitsPerMeter;
+    }
+
+    /**
+     * @return index of the AP in the other calls
+     */
+    public int addAccessPoint(float x, float y) {
+        if (apCount == apX.length) {
+            apX = Arrays.copyOf(apX, apCount * 2);
+            apY = Arrays.copyOf(apY, apCount * 2);
+        }
+        apX[apCount] = x;
+        apY[apCount] = y;
+        return apCount++;
+    }
+
+    @Override
+    public double expectedRssi(int ap, float x, float y) {
+        return Formula.expectedRssi(metersTo(ap, x, y), n);
+    }
+
+    @Override
+    public double distanceMeters(int ap, double rssi, float x, float y) {
+        return Formula.distanceMeters(rssi, n);
+    }
+
+    @Override
+    public float getAccessPointX(int ap) {
+        return apX[ap];
+    }
+
+    @Override
+    public float getAccessPointY(int ap) {
+        return apY[ap];
+    }
+
+    // inside the reference distance the model no longer holds
+    double metersTo(int ap, float x, float y) {
+        double dx = x - apX[ap];
+        double dy = y - apY[ap];
+        return Math.max(Formula.REFERENCE_DISTANCE, Math.sqrt(dx * dx + dy * dy) / unitsPerMeter);
+    }
+}
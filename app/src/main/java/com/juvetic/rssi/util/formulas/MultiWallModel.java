@@ -0,0 +1,107 @@
+package com.juvetic.rssi.util.formulas;
+
+import id.recharge.library.core.helper.map.WallIndex;
+import java.util.Arrays;
+
+/**
+ * Multi-wall path-loss model: the log-distance model plus a fixed attenuation for every wall
+ * between the AP and the device, walls coming from the floor plan (see {@code
+ * SVGWallExtractor}).
+ *
+ * Walls are counted by casting a ray through the {@link WallIndex} from each AP to the center of
+ * every cell of a grid over the plan, once, when the AP is added. After that the wall count for a
+ * position is one table read, so the model costs the estimators about as much as the plain one.
+ * A wall drawn as an outline is crossed twice; set the attenuation per crossing accordingly.
+ */
+public class MultiWallModel extends LogDistanceModel {
+
+    private final WallIndex walls;
+
+    private final float left, top, cellSize;
+
+    private final int columns, rows;
+
+    // per AP: walls crossed on the way to each cell
+    private byte[][] wallCounts = new byte[4][];
+
+    private int apCount;
+
+    private double wallAttenuation = 3.5;
+
+    private int maxWalls = 8;
+
+    /**
+     * @param walls         walls of the plan
+     * @param n             path-loss exponent, of free space between the walls
+     * @param unitsPerMeter map units per meter, {@link Formula#PIXELS_PER_METER} for the bundled plans
+     * @param cellSize      side of a cell of the wall count grid, in map units
+     */
+    public MultiWallModel(WallIndex walls, double n, double unitsPerMeter,
+            float left, float top, float right, float bottom, float cellSize) {
+        super(n, unitsPerMeter);
+        this.walls = walls;
+        this.left = left;
+        this.top = top;
+        this.cellSize = cellSize;
+        columns = Math.max(1, (int) Math.ceil((right - left) / cellSize));
+        rows = Math.max(1, (int) Math.ceil((bottom - top) / cellSize));
+    }
+
+    /**
+     * @param dB attenuation per wall crossed. Default 3.5, about a light interior wall.
+     */
+    public void setWallAttenuation(double dB) {
+        this.wallAttenuation = dB;
+    }
+
+    /**
+     * @param walls walls counted at most, beyond them the signal is mostly reflected around them.
+     *              Default 8.
+     */
+    public void setMaxWalls(int walls) {
+        this.maxWalls = walls;
+    }
+
+    /**
+     * Adds an AP and counts the walls between it and every cell.
+     */
+    @Override
+    public int addAccessPoint(float x, float y) {
+        int ap = super.addAccessPoint(x, y);
+        if (apCount == wallCounts.length) {
+            wallCounts = Arrays.copyOf(wallCounts, apCount * 2);
+        }
+        byte[] counts = new byte[columns * rows];
+        for (int cell = 0; cell < counts.length; cell++) {
+            float cx = left + (cell % columns + 0.5f) * cellSize;
+            float cy = top + (cell / columns + 0.5f) * cellSize;
+            counts[cell] = (byte) Math.min(Byte.MAX_VALUE, walls.countCrossings(x, y, cx, cy));
+        }
+        wallCounts[apCount++] = counts;
+        return ap;
+    }
+
+    /**
+     * @return walls between the AP and the cell containing (x, y)
+     */
+    public int getWallCount(int ap, float x, float y) {
+        int column = Math.max(0, Math.min(columns - 1, (int) Math.floor((x - left) / cellSize)));
+        int row = Math.max(0, Math.min(rows - 1, (int) Math.floor((y - top) / cellSize)));
+        return wallCounts[ap][row * columns + column];
+    }
+
+    @Override
+    public double expectedRssi(int ap, float x, float y) {
+        return super.expectedRssi(ap, x, y) - attenuation(ap, x, y);
+    }
+
+    @Override
+    public double distanceMeters(int ap, double rssi, float x, float y) {
+        // the walls account for part of the loss, the rest is distance
+        return Formula.distanceMeters(rssi + attenuation(ap, x, y), n);
+    }
+
+    private double attenuation(int ap, float x, float y) {
+        return wallAttenuation * Math.min(maxWalls, getWallCount(ap, x, y));
+    }
+}
@@ -0,0 +1,537 @@
+package com.juvetic.rssi.util.formulas;
+
+import id.recharge.library.core.helper.map.WallIndex;
+import java.util.Arrays;
+
+/**
+ * Estimates user position with a particle filter constrained by the floor plan.
+ *
+ * Particles are kept in plain float arrays (struct of arrays) in map coordinates. Each scan
+ * moves them with a random walk ({@link #predict(float, float, float)}), weights them by how
+ * well their distances to the APs match the measured ranges ({@link #update(float[], float[],
+ * float[], int)}) or their expected RSSI matches the readings ({@link #update(PathLossModel, int[],
+ * float[], int, float)}), and resamples them systematically when too few carry the weight. A particle
+ * whose move crosses a wall or leaves the walkable bounds keeps its old position and loses its
+ * weight, so the estimate cannot jump through walls the way trilateration does.
+ *
+ * All buffers are allocated up front: an update allocates nothing. From {@link
+ * #PARALLEL_THRESHOLD} particles on, each step is split over the cores by a small pool of
+ * worker threads owned by the filter; call {@link #shutdown()} when done with it. The particles
+ * are split into blocks fixed by their count, each with its own random stream and partial sums,
+ * and the cores take whole blocks, so the estimates do not depend on how many cores there are.
+ *
+ * Not thread safe: call it from one thread at a time.
+ */
+public class ParticleFilter {
+
+    /**
+     * Particle count from which updates are split across cores.
+     */
+    public static final int PARALLEL_THRESHOLD = 10000;
+
+    private static final int MAX_CHUNKS = 4;
+
+    // blocks from PARALLEL_THRESHOLD particles on, shared out evenly over up to MAX_CHUNKS cores
+    private static final int PARALLEL_BLOCKS = 12;
+
+    private static final int PHASE_PREDICT = 0;
+
+    private static final int PHASE_LIKELIHOOD = 1;
+
+    private static final int PHASE_WEIGHT = 2;
+
+    private static final int PHASE_RESAMPLE = 3;
+
+    private final int count;
+
+    // particle state
+    private float[] x, y;
+
+    private final float[] weight;
+
+    // log likelihood of the last update, then resampled positions
+    private final float[] logLikelihood;
+
+    private float[] nextX, nextY;
+
+    // per block: first particle, random state and partial results
+    private final int blocks;
+
+    private final int[] blockStart;
+
+    private final long[] random;
+
+    private final double[] blockWeight, blockX, blockY, blockSquared;
+
+    // weighted second moments of the positions
+    private final double[] blockXX, blockXY, blockYY;
+
+    private final float[] blockMax;
+
+    private final double[] blockCumulative;
+
+    // first block of each chunk run by the pool
+    private final int[] chunkBlock;
+
+    // walkable space
+    private WallIndex walls;
+
+    private float left = Float.NEGATIVE_INFINITY, top = Float.NEGATIVE_INFINITY;
+
+    private float right = Float.POSITIVE_INFINITY, bottom = Float.POSITIVE_INFINITY;
+
+    // range noise: sigma = absolute + relative * range
+    private float rangeSigma = 50, rangeSigmaRelative = 0.25f;
+
+    // arguments of the running phase
+    private float moveX, moveY, moveSigma;
+
+    private float[] anchorX, anchorY, ranges;
+
+    private int anchorCount;
+
+    private PathLossModel model;
+
+    private int[] aps;
+
+    private float[] rssi;
+
+    private float rssiSigma;
+
+    private float maxLogLikelihood;
+
+    private double resampleOffset, resampleTotal;
+
+    // brings the weights back to a sum of 1 in the next weighting
+    private float weightScale = 1;
+
+    private float estimateX, estimateY;
+
+    private final PositionEstimate estimate = new PositionEstimate();
+
+    private final ChunkPool pool;
+
+    /**
+     * @param count number of particles, more is more accurate and slower
+     * @param seed  seed of the random numbers, the same seed and count give the same estimates on
+     *              any device
+     */
+    public ParticleFilter(int count, long seed) {
+        this.count = count;
+        x = new float[count];
+        y = new float[count];
+        weight = new float[count];
+        logLikelihood = new float[count];
+        nextX = new float[count];
+        nextY = new float[count];
+
+        blocks = count < PARALLEL_THRESHOLD ? 1 : PARALLEL_BLOCKS;
+        blockStart = new int[blocks + 1];
+        for (int b = 0; b <= blocks; b++) {
+            blockStart[b] = (int) ((long) count * b / blocks);
+        }
+        random = new long[blocks + 1];
+        for (int b = 0; b <= blocks; b++) {
+            random[b] = XorShift.seed(seed, b);
+        }
+        blockWeight = new double[blocks];
+        blockX = new double[blocks];
+        blockY = new double[blocks];
+        blockSquared = new double[blocks];
+        blockXX = new double[blocks];
+        blockXY = new double[blocks];
+        blockYY = new double[blocks];
+        blockMax = new float[blocks];
+        blockCumulative = new double[blocks + 1];
+        int chunks = Math.min(blocks, ChunkPool.chunksFor(count, PARALLEL_THRESHOLD, MAX_CHUNKS));
+        chunkBlock = new int[chunks + 1];
+        for (int c = 0; c <= chunks; c++) {
+            chunkBlock[c] = blocks * c / chunks;
+        }
+        pool = new ChunkPool(chunks, new ChunkPool.Task() {
+            @Override
+            public void runChunk(int phase, int chunk) {
+                ParticleFilter.this.runChunk(phase, chunk);
+            }
+        }, "ParticleFilter");
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    /**
+     * @param walls walls particles may not cross, or null for none
+     */
+    public void setWalls(WallIndex walls) {
+        this.walls = walls;
+    }
+
+    /**
+     * Particles outside these bounds are rejected like those crossing a wall.
+     */
+    public void setBounds(float left, float top, float right, float bottom) {
+        this.left = left;
+        this.top = top;
+        this.right = right;
+        this.bottom = bottom;
+    }
+
+    /**
+     * @param absolute standard deviation of a range measurement, in map units
+     * @param relative part of the measured range added to it, RSSI ranging gets worse with distance
+     */
+    public void setRangeNoise(float absolute, float relative) {
+        this.rangeSigma = absolute;
+        this.rangeSigmaRelative = relative;
+    }
+
+    /**
+     * Spreads the particles uniformly over a disc, with equal weights.
+     */
+    public void initialize(float centerX, float centerY, float radius) {
+        long state = random[blocks];
+        for (int i = 0; i < count; i++) {
+            state = XorShift.next(state);
+            double r = radius * Math.sqrt(XorShift.uniform(state));
+            state = XorShift.next(state);
+            double angle = 2 * Math.PI * XorShift.uniform(state);
+            x[i] = centerX + (float) (r * Math.cos(angle));
+            y[i] = centerY + (float) (r * Math.sin(angle));
+            weight[i] = 1f / count;
+        }
+        random[blocks] = state;
+        weightScale = 1;
+        estimateX = centerX;
+        estimateY = centerY;
+        // uniform over a disc: radius^2 / 4 per axis
+        estimate.setPosition(centerX, centerY);
+        estimate.setCovariance(radius * radius / 4.0, 0, radius * radius / 4.0);
+        estimate.beginAnchors();
+        estimate.endAnchors();
+    }
+
+    /**
+     * Motion model: moves every particle by (dx, dy) plus Gaussian noise. Use (0, 0) without
+     * odometry, the noise then covers how far the user may have walked since the last scan.
+     *
+     * @param sigma standard deviation of the noise per axis, in map units
+     */
+    public void predict(float dx, float dy, float sigma) {
+        moveX = dx;
+        moveY = dy;
+        moveSigma = sigma;
+        pool.run(PHASE_PREDICT);
+        collectEstimate();
+    }
+
+    /**
+     * Weights the particles by range measurements and resamples them when needed.
+     *
+     * @param anchorX x of each AP, in map units
+     * @param anchorY y of each AP
+     * @param ranges  measured distance to each AP, in map units
+     * @param count   number of APs used
+     */
+    public void update(float[] anchorX, float[] anchorY, float[] ranges, int count) {
+        this.anchorX = anchorX;
+        this.anchorY = anchorY;
+        this.ranges = ranges;
+        this.anchorCount = count;
+        weigh();
+        collectAnchors();
+        this.anchorX = this.anchorY = this.ranges = null;
+    }
+
+    private void weigh() {
+        pool.run(PHASE_LIKELIHOOD);
+        maxLogLikelihood = Float.NEGATIVE_INFINITY;
+        for (int b = 0; b < blocks; b++) {
+            maxLogLikelihood = Math.max(maxLogLikelihood, blockMax[b]);
+        }
+        pool.run(PHASE_WEIGHT);
+
+        double total = collectEstimate();
+        double squared = 0;
+        for (int b = 0; b < blocks; b++) {
+            squared += blockSquared[b];
+        }
+        // effective sample size below half the particles
+        if (total > 0 && total * total < squared * count / 2) {
+            resample(total);
+        }
+    }
+
+    /**
+     * Weights the particles by RSSI readings, compared with what a path-loss model expects at
+     * each particle, and resamples them when needed. Unlike ranges, this lets a model such as
+     * {@link MultiWallModel} account for the walls between each particle and the APs.
+     *
+     * @param aps   AP indices in the model
+     * @param rssi  reading of each AP, in dBm
+     * @param count number of readings
+     * @param sigma standard deviation of a reading around the model, in dB
+     */
+    public void update(PathLossModel model, int[] aps, float[] rssi, int count, float sigma) {
+        this.model = model;
+        this.aps = aps;
+        this.rssi = rssi;
+        this.anchorCount = count;
+        this.rssiSigma = sigma;
+        weigh();
+        collectAnchors();
+        this.model = null;
+        this.aps = null;
+        this.rssi = null;
+    }
+
+    public float getX() {
+        return estimateX;
+    }
+
+    public float getY() {
+        return estimateY;
+    }
+
+    /**
+     * @return the weighted mean and covariance of the particles, with the residuals and geometry
+     * of the last update at the mean; refilled by every call
+     */
+    public PositionEstimate getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * @return particle x coordinates, valid until the next call. Must not be modified.
+     */
+    public float[] getParticleX() {
+        return x;
+    }
+
+    /**
+     * @return particle y coordinates, valid until the next call. Must not be modified.
+     */
+    public float[] getParticleY() {
+        return y;
+    }
+
+    /**
+     * Stops the worker threads. The filter cannot be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // weighted mean of the particles; weights are renormalized, returns their sum before
+    private double collectEstimate() {
+        // summed in block order, so the rounding is the same whatever the chunks
+        double total = 0, sumX = 0, sumY = 0, sumXX = 0, sumXY = 0, sumYY = 0;
+        for (int b = 0; b < blocks; b++) {
+            total += blockWeight[b];
+            sumX += blockX[b];
+            sumY += blockY[b];
+            sumXX += blockXX[b];
+            sumXY += blockXY[b];
+            sumYY += blockYY[b];
+        }
+        if (total > 0) {
+            double meanX = sumX / total;
+            double meanY = sumY / total;
+            estimateX = (float) meanX;
+            estimateY = (float) meanY;
+            weightScale = (float) (1 / total);
+            estimate.setPosition(estimateX, estimateY);
+            estimate.setCovariance(Math.max(0, sumXX / total - meanX * meanX), sumXY / total - meanX * meanY,
+                    Math.max(0, sumYY / total - meanY * meanY));
+        } else {
+            // every particle was rejected: forget the weights, keep the positions
+            for (int i = 0; i < count; i++) {
+                weight[i] = 1f / count;
+            }
+            weightScale = 1;
+        }
+        return total;
+    }
+
+    // residuals at the estimate, in map units for ranges and in dB for RSSI
+    private void collectAnchors() {
+        float ex = estimateX, ey = estimateY;
+        estimate.beginAnchors();
+        for (int a = 0; a < anchorCount; a++) {
+            if (model != null) {
+                estimate.addAnchor(model.getAccessPointX(aps[a]), model.getAccessPointY(aps[a]),
+                        rssi[a] - model.expectedRssi(aps[a], ex, ey));
+            } else {
+                double dx = ex - anchorX[a];
+                double dy = ey - anchorY[a];
+                estimate.addAnchor(anchorX[a], anchorY[a], ranges[a] - Math.sqrt(dx * dx + dy * dy));
+            }
+        }
+        estimate.endAnchors();
+    }
+
+    private void resample(double total) {
+        blockCumulative[0] = 0;
+        for (int b = 0; b < blocks; b++) {
+            blockCumulative[b + 1] = blockCumulative[b] + blockWeight[b] / total;
+        }
+        long state = XorShift.next(random[blocks]);
+        random[blocks] = state;
+        resampleOffset = XorShift.uniform(state);
+        resampleTotal = total;
+        pool.run(PHASE_RESAMPLE);
+        // only now: a block's draws land in other blocks' particles, whose weights they still read
+        Arrays.fill(weight, 1f / count);
+        weightScale = 1;
+        float[] swap = x;
+        x = nextX;
+        nextX = swap;
+        swap = y;
+        y = nextY;
+        nextY = swap;
+    }
+
+    private void runChunk(int phase, int chunk) {
+        for (int block = chunkBlock[chunk]; block < chunkBlock[chunk + 1]; block++) {
+            switch (phase) {
+                case PHASE_PREDICT:
+                    predictBlock(block);
+                    break;
+                case PHASE_LIKELIHOOD:
+                    likelihoodBlock(block);
+                    break;
+                case PHASE_WEIGHT:
+                    weightBlock(block);
+                    break;
+                case PHASE_RESAMPLE:
+                    resampleBlock(block);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown phase " + phase);
+            }
+        }
+    }
+
+    private void predictBlock(int block) {
+        long state = random[block];
+        double total = 0, sumX = 0, sumY = 0, sumXX = 0, sumXY = 0, sumYY = 0;
+        for (int i = blockStart[block]; i < blockStart[block + 1]; i++) {
+            state = XorShift.next(state);
+            double u1 = XorShift.uniform(state);
+            state = XorShift.next(state);
+            double u2 = XorShift.uniform(state);
+            // Box-Muller, both values of the pair
+            double r = moveSigma * Math.sqrt(-2 * Math.log(1 - u1));
+            float px = x[i];
+            float py = y[i];
+            float nx = px + moveX + (float) (r * Math.cos(2 * Math.PI * u2));
+            float ny = py + moveY + (float) (r * Math.sin(2 * Math.PI * u2));
+            if (nx < left || nx > right || ny < top || ny > bottom
+                    || (walls != null && walls.intersects(px, py, nx, ny))) {
+                weight[i] = 0;
+            } else {
+                x[i] = nx;
+                y[i] = ny;
+            }
+            float w = weight[i];
+            double wx = (double) w * x[i];
+            double wy = (double) w * y[i];
+            total += w;
+            sumX += wx;
+            sumY += wy;
+            sumXX += wx * x[i];
+            sumXY += wx * y[i];
+            sumYY += wy * y[i];
+        }
+        random[block] = state;
+        blockWeight[block] = total;
+        blockX[block] = sumX;
+        blockY[block] = sumY;
+        blockXX[block] = sumXX;
+        blockXY[block] = sumXY;
+        blockYY[block] = sumYY;
+    }
+
+    private void likelihoodBlock(int block) {
+        float max = Float.NEGATIVE_INFINITY;
+        for (int i = blockStart[block]; i < blockStart[block + 1]; i++) {
+            float sum = 0;
+            if (model != null) {
+                for (int a = 0; a < anchorCount; a++) {
+                    float error = (rssi[a] - (float) model.expectedRssi(aps[a], x[i], y[i])) / rssiSigma;
+                    sum -= error * error / 2;
+                }
+            } else {
+                for (int a = 0; a < anchorCount; a++) {
+                    float dx = x[i] - anchorX[a];
+                    float dy = y[i] - anchorY[a];
+                    float error = (float) Math.sqrt(dx * dx + dy * dy) - ranges[a];
+                    float sigma = rangeSigma + rangeSigmaRelative * ranges[a];
+                    sum -= error * error / (2 * sigma * sigma);
+                }
+            }
+            logLikelihood[i] = sum;
+            if (weight[i] > 0 && sum > max) {
+                max = sum;
+            }
+        }
+        blockMax[block] = max;
+    }
+
+    private void weightBlock(int block) {
+        double total = 0, sumX = 0, sumY = 0, squared = 0, sumXX = 0, sumXY = 0, sumYY = 0;
+        float max = maxLogLikelihood;
+        float scale = weightScale;
+        for (int i = blockStart[block]; i < blockStart[block + 1]; i++) {
+            // relative to the best particle, so the weights cannot all underflow
+            float w = weight[i] * scale * (float) Math.exp(logLikelihood[i] - max);
+            weight[i] = w;
+            double wx = (double) w * x[i];
+            double wy = (double) w * y[i];
+            total += w;
+            sumX += wx;
+            sumY += wy;
+            sumXX += wx * x[i];
+            sumXY += wx * y[i];
+            sumYY += wy * y[i];
+            squared += (double) w * w;
+        }
+        blockWeight[block] = total;
+        blockX[block] = sumX;
+        blockY[block] = sumY;
+        blockXX[block] = sumXX;
+        blockXY[block] = sumXY;
+        blockYY[block] = sumYY;
+        blockSquared[block] = squared;
+    }
+
+    // systematic resampling; block b writes the draws falling in its share of the weight
+    private void resampleBlock(int block) {
+        int start = blockStart[block];
+        int end = blockStart[block + 1];
+        int first = firstDraw(blockCumulative[block]);
+        int last = block == blocks - 1 ? count : firstDraw(blockCumulative[block + 1]);
+        double total = resampleTotal;
+        double cumulative = blockCumulative[block];
+        int k = first;
+        for (int i = start; i < end && k < last; i++) {
+            cumulative += weight[i] / total;
+            while (k < last && (k + resampleOffset) / count < cumulative) {
+                nextX[k] = x[i];
+                nextY[k] = y[i];
+                k++;
+            }
+        }
+        // rounding left a draw or two at the end of the share
+        for (; k < last; k++) {
+            nextX[k] = x[end - 1];
+            nextY[k] = y[end - 1];
+        }
+    }
+
+    // first draw (k + offset) / count at or past the cumulative weight
+    private int firstDraw(double cumulative) {
+        int k = (int) Math.ceil(cumulative * count - resampleOffset);
+        return Math.max(0, Math.min(count, k));
+    }
+}
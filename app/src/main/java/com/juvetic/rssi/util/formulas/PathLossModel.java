@@ -0,0 +1,32 @@
+package com.juvetic.rssi.util.formulas;
+
+/**
+ * Relates the RSSI of an AP to where the device is. Estimators that used {@link
+ * Formula#distance(double, double)} take a model instead, so the plain log-distance model can
+ * be swapped for one that knows the floor plan.
+ *
+ * Positions are in map coordinates; APs are identified by the index the model gave them when
+ * they were added. Implementations must be safe to query from several threads at once.
+ */
+public interface PathLossModel {
+
+    /**
+     * @return RSSI expected from the AP at (x, y), in dBm
+     */
+    double expectedRssi(int ap, float x, float y);
+
+    /**
+     * @param rssi reading from the AP, in dBm
+     * @param x    where the device is believed to be, for models that depend on more than the
+     *             distance
+     * @return distance to the AP, in meters
+     */
+    double distanceMeters(int ap, double rssi, float x, float y);
+
+    /**
+     * @return x of the AP, in map units, e.g. for the geometry of a fix
+     */
+    float getAccessPointX(int ap);
+
+    float getAccessPointY(int ap);
+}
@@ -0,0 +1,375 @@
+package com.juvetic.rssi.util.formulas;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Tracks the user's walk between WiFi scans from the phone's inertial sensors (pedestrian dead
+ * reckoning), as a displacement in map units to feed the motion model of a tracker, see
+ * {@link UKFAlgorithmData#predict(double, double, double, double)}.
+ *
+ * Steps are the peaks of the acceleration magnitude above gravity, and each step's length comes
+ * from how hard it was (Weinberg: a constant times the fourth root of the peak to valley
+ * swing). Heading follows the gyroscope around the vertical, pulled slowly towards the
+ * tilt-compensated compass so gyro drift does not build up and magnetic disturbances are
+ * smoothed over.
+ *
+ * Plain Java: samples come either from a {@link SensorRingBuffer} drained by the background
+ * thread of {@link #start(SensorRingBuffer, long)}, or from a recorded log through
+ * {@link #replay(Reader)}, e.g. on the JVM. The displacement is read from any thread.
+ */
+public class PedestrianDeadReckoning {
+
+    /**
+     * Sensor types, the same values as Android's {@code Sensor.TYPE_*}. Accelerometer in m/s^2,
+     * including gravity.
+     */
+    public static final int TYPE_ACCELEROMETER = 1;
+
+    /**
+     * Magnetometer, in microtesla.
+     */
+    public static final int TYPE_MAGNETIC_FIELD = 2;
+
+    /**
+     * Gyroscope, in rad/s, counter-clockwise.
+     */
+    public static final int TYPE_GYROSCOPE = 4;
+
+    private static final float GRAVITY = 9.80665f;
+
+    // smoothing of the step signal and of the gravity direction, in seconds
+    private static final float STEP_TIME_CONSTANT = 0.04f;
+
+    private static final float GRAVITY_TIME_CONSTANT = 0.3f;
+
+    // a step rises above the high threshold and falls back below the low one, in m/s^2
+    private static final float STEP_HIGH = 1.2f;
+
+    private static final float STEP_LOW = -0.3f;
+
+    private static final long MIN_STEP_NANOS = 250000000L;
+
+    private static final float MIN_STEP_LENGTH = 0.3f, MAX_STEP_LENGTH = 1.2f;
+
+    // uncertainty of a step: share of its length, and heading in radians
+    private static final float LENGTH_SIGMA = 0.1f, HEADING_SIGMA = 0.15f;
+
+    private final double unitsPerMeter;
+
+    private float mapRotation;
+
+    private float weinberg = 0.45f;
+
+    private float compassGain = 0.02f;
+
+    // accelerometer state
+    private long accelTime;
+
+    private float stepSignal;
+
+    private final float[] gravity = new float[3];
+
+    private boolean inPeak;
+
+    private float peak, valley;
+
+    private long lastStepTime;
+
+    // heading, clockwise from magnetic north in radians
+    private volatile float heading;
+
+    private volatile boolean headingKnown;
+
+    private long gyroTime;
+
+    private volatile int stepCount;
+
+    // displacement not taken yet, guarded by this
+    private double moveX, moveY, moveVariance;
+
+    // guards the worker; not this, which the worker takes for every step
+    private final Object lifecycle = new Object();
+
+    private Thread worker;
+
+    private volatile boolean running;
+
+    /**
+     * @param unitsPerMeter map units per meter, {@link Formula#PIXELS_PER_METER} for the bundled
+     *                      plans
+     */
+    public PedestrianDeadReckoning(double unitsPerMeter) {
+        this.unitsPerMeter = unitsPerMeter;
+    }
+
+    /**
+     * @param radians angle from the map's up direction to magnetic north, clockwise; 0 for a plan
+     *                drawn with north up
+     */
+    public void setMapRotation(float radians) {
+        this.mapRotation = radians;
+    }
+
+    /**
+     * @param k step length in meters per fourth root of the swing in m/s^2, about 0.45 for an
+     *          adult; calibrate per user for best results
+     */
+    public void setStepConstant(float k) {
+        this.weinberg = k;
+    }
+
+    /**
+     * @param gain share of the gap to the compass heading closed per magnetometer sample
+     */
+    public void setCompassGain(float gain) {
+        this.compassGain = gain;
+    }
+
+    /**
+     * Processes one sample; samples must come in time order.
+     *
+     * @param timestamp in nanoseconds
+     */
+    public void process(int type, long timestamp, float x, float y, float z) {
+        switch (type) {
+            case TYPE_ACCELEROMETER:
+                accelerometer(timestamp, x, y, z);
+                break;
+            case TYPE_GYROSCOPE:
+                gyroscope(timestamp, x, y, z);
+                break;
+            case TYPE_MAGNETIC_FIELD:
+                magnetometer(x, y, z);
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Returns the walk since the last call and starts over.
+     *
+     * @param out receives dx and dy in map units, then the variance of each, in squared map units
+     */
+    public synchronized void takeDisplacement(double[] out) {
+        out[0] = moveX;
+        out[1] = moveY;
+        out[2] = moveVariance;
+        moveX = moveY = moveVariance = 0;
+    }
+
+    public int getStepCount() {
+        return stepCount;
+    }
+
+    /**
+     * @return heading in radians clockwise from magnetic north, NaN until the compass was read
+     */
+    public float getHeading() {
+        return headingKnown ? heading : Float.NaN;
+    }
+
+    /**
+     * Replays a recorded sensor log, one sample per line: type, timestamp in nanoseconds, x, y, z,
+     * comma separated. Blank lines and lines starting with # are skipped.
+     *
+     * @return number of samples processed
+     * @throws IOException if the log can not be read or a line is malformed
+     */
+    public int replay(Reader log) throws IOException {
+        BufferedReader reader = new BufferedReader(log);
+        int samples = 0;
+        int lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split(",");
+            if (fields.length != 5) {
+                throw new IOException("Line " + lineNumber + ": expected 5 fields, got " + fields.length);
+            }
+            try {
+                process(Integer.parseInt(fields[0].trim()), Long.parseLong(fields[1].trim()),
+                        Float.parseFloat(fields[2]), Float.parseFloat(fields[3]), Float.parseFloat(fields[4]));
+            } catch (NumberFormatException e) {
+                throw new IOException("Line " + lineNumber + ": " + e.getMessage(), e);
+            }
+            samples++;
+        }
+        return samples;
+    }
+
+    /**
+     * Processes the samples of the buffer in batches, on a background thread, until
+     * {@link #stop()}.
+     *
+     * @param periodMillis time between batches
+     */
+    public void start(final SensorRingBuffer buffer, final long periodMillis) {
+        synchronized (lifecycle) {
+            if (worker != null) {
+                return;
+            }
+            running = true;
+            worker = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (running) {
+                            buffer.drainTo(PedestrianDeadReckoning.this);
+                            Thread.sleep(periodMillis);
+                        }
+                    } catch (InterruptedException e) {
+                        // stopping
+                    } finally {
+                        // the samples from before stop(), so they are not mixed with those after
+                        buffer.drainTo(PedestrianDeadReckoning.this);
+                    }
+                }
+            }, "PedestrianDeadReckoning");
+            worker.setDaemon(true);
+            worker.start();
+        }
+    }
+
+    /**
+     * Stops the background thread once it has processed the samples buffered so far, and waits
+     * for it to exit, so a following {@link #start(SensorRingBuffer, long)} never has two threads
+     * reading the buffer. The gap until then is not integrated: the gyroscope and the gravity
+     * estimate start over from the next samples, while the heading is kept.
+     */
+    public void stop() {
+        synchronized (lifecycle) {
+            if (worker == null) {
+                return;
+            }
+            running = false;
+            worker.interrupt();
+            boolean interrupted = false;
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            worker = null;
+            accelTime = gyroTime = 0;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void accelerometer(long timestamp, float x, float y, float z) {
+        if (accelTime == 0) {
+            accelTime = timestamp;
+            gravity[0] = x;
+            gravity[1] = y;
+            gravity[2] = z;
+            return;
+        }
+        float dt = (timestamp - accelTime) / 1e9f;
+        accelTime = timestamp;
+        if (dt <= 0) {
+            return;
+        }
+        float g = dt / (GRAVITY_TIME_CONSTANT + dt);
+        gravity[0] += g * (x - gravity[0]);
+        gravity[1] += g * (y - gravity[1]);
+        gravity[2] += g * (z - gravity[2]);
+
+        float magnitude = (float) Math.sqrt(x * x + y * y + z * z) - GRAVITY;
+        stepSignal += dt / (STEP_TIME_CONSTANT + dt) * (magnitude - stepSignal);
+        if (!inPeak) {
+            valley = Math.min(valley, stepSignal);
+            if (stepSignal > STEP_HIGH && timestamp - lastStepTime >= MIN_STEP_NANOS) {
+                inPeak = true;
+                peak = stepSignal;
+            }
+        } else {
+            peak = Math.max(peak, stepSignal);
+            if (stepSignal < STEP_LOW) {
+                inPeak = false;
+                lastStepTime = timestamp;
+                step(peak - valley);
+                valley = stepSignal;
+            }
+        }
+    }
+
+    private void step(float swing) {
+        stepCount++;
+        if (!headingKnown) {
+            // no direction yet: the step is lost to the tracker, which falls back on its own motion model
+            return;
+        }
+        float length = weinberg * (float) Math.sqrt(Math.sqrt(Math.max(0, swing)));
+        length = Math.max(MIN_STEP_LENGTH, Math.min(MAX_STEP_LENGTH, length));
+        double angle = heading + mapRotation;
+        double units = length * unitsPerMeter;
+        double sigma = Math.hypot(LENGTH_SIGMA, HEADING_SIGMA) * units;
+        synchronized (this) {
+            // map y points down
+            moveX += Math.sin(angle) * units;
+            moveY -= Math.cos(angle) * units;
+            moveVariance += sigma * sigma;
+        }
+    }
+
+    private void gyroscope(long timestamp, float x, float y, float z) {
+        if (gyroTime == 0 || !headingKnown) {
+            gyroTime = timestamp;
+            return;
+        }
+        float dt = (timestamp - gyroTime) / 1e9f;
+        gyroTime = timestamp;
+        float norm = (float) Math.sqrt(gravity[0] * gravity[0] + gravity[1] * gravity[1] + gravity[2] * gravity[2]);
+        if (dt <= 0 || norm == 0) {
+            return;
+        }
+        // turn rate around up, counter-clockwise, while heading is clockwise
+        float up = (x * gravity[0] + y * gravity[1] + z * gravity[2]) / norm;
+        heading = wrap(heading - up * dt);
+    }
+
+    private void magnetometer(float x, float y, float z) {
+        float ax = gravity[0], ay = gravity[1], az = gravity[2];
+        // east = field x up, north = up x east, in device axes
+        float ex = y * az - z * ay;
+        float ey = z * ax - x * az;
+        float ez = x * ay - y * ax;
+        float eastNorm = (float) Math.sqrt(ex * ex + ey * ey + ez * ez);
+        float upNorm = (float) Math.sqrt(ax * ax + ay * ay + az * az);
+        if (eastNorm < 0.1f || upNorm < 0.1f * GRAVITY) {
+            // free fall, or the field along gravity
+            return;
+        }
+        ex /= eastNorm;
+        ey /= eastNorm;
+        ez /= eastNorm;
+        float ny = (az * ex - ax * ez) / upNorm;
+        float azimuth = (float) Math.atan2(ey, ny);
+        if (!headingKnown) {
+            heading = azimuth;
+            headingKnown = true;
+        } else {
+            heading = wrap(heading + compassGain * wrap(azimuth - heading));
+        }
+    }
+
+    private static float wrap(float angle) {
+        while (angle > Math.PI) {
+            angle -= 2 * Math.PI;
+        }
+        while (angle < -Math.PI) {
+            angle += 2 * Math.PI;
+        }
+        return angle;
+    }
+}
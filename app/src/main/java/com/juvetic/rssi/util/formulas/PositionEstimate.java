@@ -0,0 +1,231 @@
+package com.juvetic.rssi.util.formulas;
+
+/**
+ * A position fix together with how far it can be trusted: the covariance of the position, the
+ * root mean square residual of the measurements at the fix, the number of APs used and the
+ * geometric dilution of precision (GDOP) of where those APs are.
+ *
+ * Every estimator in this package keeps one and refills it on every update, so reading it
+ * allocates nothing; copy it with {@link #set(PositionEstimate)} to keep it past the next update.
+ * Consumers can skip fixes that fail {@link #isWithin(float, float)}, or weight fixes by the
+ * inverse of {@link #getRadius()} squared.
+ */
+public class PositionEstimate {
+
+    // below this determinant, H'H is taken as singular: the APs are all on one line
+    private static final double SINGULAR = 1e-9;
+
+    private float x, y;
+
+    // covariance of the position, in squared map units
+    private double varX, covXY, varY;
+
+    private float residualRms = Float.NaN;
+
+    private int anchorCount;
+
+    private float gdop = Float.NaN;
+
+    // H'H of the unit vectors from the APs to the fix, and the sum of squared residuals
+    private double hxx, hxy, hyy, squaredResiduals;
+
+    public PositionEstimate() {
+        invalidate();
+    }
+
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    /**
+     * @return variance of x, in squared map units
+     */
+    public double getVarianceX() {
+        return varX;
+    }
+
+    public double getVarianceY() {
+        return varY;
+    }
+
+    public double getCovarianceXY() {
+        return covXY;
+    }
+
+    /**
+     * @return root mean square residual of the measurements at the fix: in map units for ranges,
+     * in dB for RSSI readings; NaN without measurements
+     */
+    public float getResidualRms() {
+        return residualRms;
+    }
+
+    public int getAnchorCount() {
+        return anchorCount;
+    }
+
+    /**
+     * @return GDOP of the APs seen from the fix: how much range errors are magnified into
+     * position errors, about 1.2 for three APs around the fix, less with more APs and more as
+     * they line up; infinite for APs on one line, NaN without APs
+     */
+    public float getGdop() {
+        return gdop;
+    }
+
+    /**
+     * @return distance root mean square error, sqrt(varX + varY), in map units
+     */
+    public float getRadius() {
+        return (float) Math.sqrt(varX + varY);
+    }
+
+    /**
+     * @return standard deviation along the major axis of the covariance ellipse, in map units
+     */
+    public float getSemiMajor() {
+        return (float) Math.sqrt(Math.max(0, eigenMean() + eigenSpread()));
+    }
+
+    /**
+     * @return standard deviation along the minor axis of the covariance ellipse, in map units
+     */
+    public float getSemiMinor() {
+        return (float) Math.sqrt(Math.max(0, eigenMean() - eigenSpread()));
+    }
+
+    /**
+     * @return angle from the x axis to the major axis, in degrees towards y, as canvas rotations
+     * take it
+     */
+    public float getOrientation() {
+        return (float) Math.toDegrees(Math.atan2(2 * covXY, varX - varY) / 2);
+    }
+
+    /**
+     * @return false if the estimator could not make a fix, e.g. APs on one line
+     */
+    public boolean isValid() {
+        return !Float.isNaN(x) && !Float.isNaN(y) && !Double.isNaN(varX) && !Double.isNaN(varY)
+                && !Double.isInfinite(varX) && !Double.isInfinite(varY);
+    }
+
+    /**
+     * @param maxRadius largest {@link #getRadius()} accepted, in map units
+     * @param maxGdop   largest GDOP accepted; not checked for estimates made without APs
+     * @return whether the fix is good enough, e.g. to be matched to the map or logged
+     */
+    public boolean isWithin(float maxRadius, float maxGdop) {
+        return isValid() && getRadius() <= maxRadius && !(gdop > maxGdop);
+    }
+
+    /**
+     * Copies another estimate.
+     */
+    public void set(PositionEstimate other) {
+        x = other.x;
+        y = other.y;
+        varX = other.varX;
+        covXY = other.covXY;
+        varY = other.varY;
+        residualRms = other.residualRms;
+        anchorCount = other.anchorCount;
+        gdop = other.gdop;
+    }
+
+    /**
+     * Marks the estimate as no fix.
+     */
+    void invalidate() {
+        x = y = Float.NaN;
+        varX = varY = Double.POSITIVE_INFINITY;
+        covXY = 0;
+        residualRms = gdop = Float.NaN;
+        anchorCount = 0;
+    }
+
+    void setPosition(float x, float y) {
+        this.x = x;
+        this.y = y;
+    }
+
+    void setCovariance(double varX, double covXY, double varY) {
+        this.varX = varX;
+        this.covXY = covXY;
+        this.varY = varY;
+    }
+
+    /**
+     * Starts over the APs of the fix, see {@link #addAnchor(float, float, double)}.
+     */
+    void beginAnchors() {
+        hxx = hxy = hyy = squaredResiduals = 0;
+        anchorCount = 0;
+    }
+
+    /**
+     * Adds an AP used for the fix; call after {@link #setPosition(float, float)}.
+     *
+     * @param residual measurement minus what the fix predicts, in the unit of the measurement
+     */
+    void addAnchor(float anchorX, float anchorY, double residual) {
+        double dx = x - anchorX;
+        double dy = y - anchorY;
+        double d = Math.sqrt(dx * dx + dy * dy);
+        if (d > 0) {
+            hxx += dx * dx / (d * d);
+            hxy += dx * dy / (d * d);
+            hyy += dy * dy / (d * d);
+        }
+        squaredResiduals += residual * residual;
+        anchorCount++;
+    }
+
+    /**
+     * Derives the residual RMS and GDOP from the APs added.
+     */
+    void endAnchors() {
+        if (anchorCount == 0) {
+            residualRms = gdop = Float.NaN;
+            return;
+        }
+        residualRms = (float) Math.sqrt(squaredResiduals / anchorCount);
+        double det = hxx * hyy - hxy * hxy;
+        gdop = det > SINGULAR ? (float) Math.sqrt((hxx + hyy) / det) : Float.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Covariance of a least squares fix on ranges, sigma^2 (H'H)^-1, with sigma estimated from
+     * the residuals when there are more APs than unknowns. Call after
+     * {@link #endAnchors()}.
+     *
+     * @param minSigma smallest standard deviation of a range taken, in map units, so a fix whose
+     *                 circles happen to meet is not taken as exact
+     */
+    void setRangeCovariance(double minSigma) {
+        double det = hxx * hyy - hxy * hxy;
+        if (!(det > SINGULAR)) {
+            setCovariance(Double.POSITIVE_INFINITY, 0, Double.POSITIVE_INFINITY);
+            return;
+        }
+        double variance = minSigma * minSigma;
+        if (anchorCount > 2) {
+            variance = Math.max(variance, squaredResiduals / (anchorCount - 2));
+        }
+        setCovariance(variance * hyy / det, -variance * hxy / det, variance * hxx / det);
+    }
+
+    // mean and half the spread of the two eigenvalues of the covariance
+    private double eigenMean() {
+        return (varX + varY) / 2;
+    }
+
+    private double eigenSpread() {
+        double half = (varX - varY) / 2;
+        return Math.sqrt(half * half + covXY * covXY);
+    }
+}
@@ -0,0 +1,310 @@
+package com.juvetic.rssi.util.formulas;
+
+/**
+ * Estimates user position from ranges to any number of APs, robust to the ones hit by multipath.
+ *
+ * Where {@link Formula#koordinat} trusts all three circles, this draws many random triples of
+ * APs, solves each in closed form, and scores every solution against all the APs with a
+ * truncated quadratic loss (MSAC). The best solution decides which APs are inliers, and the
+ * position is then refined by least squares (Gauss-Newton) on the inliers only.
+ *
+ * Hypotheses are drawn and scored in batches; from {@link #PARALLEL_THRESHOLD} AP-hypothesis
+ * pairs on, the batches are split over the cores. Each hypothesis draws from its own random
+ * stream derived from the seed, so a replay with the same seed gives the same fixes whatever the
+ * number of cores. Buffers are allocated up front: solving allocates nothing. Not thread safe.
+ */
+public class RansacMultilateration {
+
+    /**
+     * AP count times hypotheses from which scoring is split across cores.
+     */
+    public static final int PARALLEL_THRESHOLD = 20000;
+
+    private static final int MAX_CHUNKS = 4;
+
+    private static final int MAX_REFINE_ITERATIONS = 10;
+
+    private final int maxAnchors;
+
+    private final int hypotheses;
+
+    private final long seed;
+
+    private long solveCount;
+
+    private float inlierThreshold = 200;
+
+    // hypotheses of the current solve
+    private final float[] hypothesisX, hypothesisY;
+
+    private final double[] score;
+
+    private int hypothesisCount;
+
+    private float[] anchorX, anchorY, ranges;
+
+    private int anchorCount;
+
+    // result
+    private final boolean[] inlier;
+
+    private int inlierCount;
+
+    private float estimateX, estimateY, residualRms;
+
+    private final PositionEstimate estimate = new PositionEstimate();
+
+    private final int chunks;
+
+    private final ChunkPool pool;
+
+    /**
+     * @param maxAnchors most APs passed to one solve
+     * @param hypotheses triples drawn per solve, more finds the inliers with more outliers around
+     * @param seed       seed of the random draws, the same seed replays the same fixes
+     */
+    public RansacMultilateration(int maxAnchors, int hypotheses, long seed) {
+        this.maxAnchors = maxAnchors;
+        this.hypotheses = hypotheses;
+        this.seed = seed;
+        hypothesisX = new float[hypotheses];
+        hypothesisY = new float[hypotheses];
+        score = new double[hypotheses];
+        inlier = new boolean[maxAnchors];
+        chunks = ChunkPool.chunksFor((long) maxAnchors * hypotheses, PARALLEL_THRESHOLD, MAX_CHUNKS);
+        pool = new ChunkPool(chunks, new ChunkPool.Task() {
+            @Override
+            public void runChunk(int phase, int chunk) {
+                scoreHypotheses(chunk);
+            }
+        }, "RansacMultilateration");
+    }
+
+    /**
+     * @param threshold largest range residual of an inlier, in map units. Default 200, about 1.5 m
+     *                  on the bundled plans.
+     */
+    public void setInlierThreshold(float threshold) {
+        this.inlierThreshold = threshold;
+    }
+
+    /**
+     * Starts the random draws over, so the next solves replay the first ones.
+     */
+    public void resetSeed() {
+        solveCount = 0;
+    }
+
+    /**
+     * @param anchorX x of each AP, in map units
+     * @param anchorY y of each AP
+     * @param ranges  measured distance to each AP, in map units
+     * @param count   number of APs, at least 3 and at most the maximum given to the constructor
+     * @return false if no three APs give a fix, e.g. all on one line
+     */
+    public boolean solve(float[] anchorX, float[] anchorY, float[] ranges, int count) {
+        if (count > maxAnchors) {
+            throw new IllegalArgumentException("At most " + maxAnchors + " APs, got " + count);
+        }
+        inlierCount = 0;
+        if (count < 3) {
+            estimate.invalidate();
+            return false;
+        }
+        this.anchorX = anchorX;
+        this.anchorY = anchorY;
+        this.ranges = ranges;
+        this.anchorCount = count;
+        // three APs have only one triple
+        hypothesisCount = count == 3 ? 1 : hypotheses;
+        pool.run(0);
+        solveCount++;
+
+        int best = -1;
+        for (int h = 0; h < hypothesisCount; h++) {
+            if (score[h] < Double.POSITIVE_INFINITY && (best < 0 || score[h] < score[best])) {
+                best = h;
+            }
+        }
+        boolean solved = best >= 0;
+        if (solved) {
+            estimateX = hypothesisX[best];
+            estimateY = hypothesisY[best];
+            findInliers();
+            if (inlierCount >= 3) {
+                refine();
+                findInliers();
+            }
+            collectEstimate();
+        } else {
+            estimate.invalidate();
+        }
+        this.anchorX = this.anchorY = this.ranges = null;
+        return solved;
+    }
+
+    public float getX() {
+        return estimateX;
+    }
+
+    public float getY() {
+        return estimateY;
+    }
+
+    public int getInlierCount() {
+        return inlierCount;
+    }
+
+    /**
+     * @return whether the AP agreed with the last fix
+     */
+    public boolean isInlier(int anchor) {
+        return inlier[anchor];
+    }
+
+    /**
+     * @return the last fix with its quality, over the inliers; refilled by every solve
+     */
+    public PositionEstimate getEstimate() {
+        return estimate;
+    }
+
+    /**
+     * @return root mean square range residual of the inliers of the last fix, in map units
+     */
+    public float getResidualRms() {
+        return residualRms;
+    }
+
+    /**
+     * Stops the worker threads. Must not be used afterwards.
+     */
+    public void shutdown() {
+        pool.shutdown();
+    }
+
+    // draws, solves and scores the hypotheses of one chunk
+    private void scoreHypotheses(int chunk) {
+        int start = (int) ((long) hypothesisCount * chunk / chunks);
+        int end = (int) ((long) hypothesisCount * (chunk + 1) / chunks);
+        double threshold = (double) inlierThreshold * inlierThreshold;
+        for (int h = start; h < end; h++) {
+            int i = 0, j = 1, k = 2;
+            if (anchorCount > 3) {
+                long state = XorShift.seed(seed, solveCount * hypotheses + h);
+                state = XorShift.next(state);
+                i = (int) (XorShift.uniform(state) * anchorCount);
+                do {
+                    state = XorShift.next(state);
+                    j = (int) (XorShift.uniform(state) * anchorCount);
+                } while (j == i);
+                do {
+                    state = XorShift.next(state);
+                    k = (int) (XorShift.uniform(state) * anchorCount);
+                } while (k == i || k == j);
+            }
+            if (!solveTriple(i, j, k, h)) {
+                score[h] = Double.POSITIVE_INFINITY;
+                continue;
+            }
+            double sum = 0;
+            for (int a = 0; a < anchorCount; a++) {
+                double e = residual(a, hypothesisX[h], hypothesisY[h]);
+                sum += Math.min(e * e, threshold);
+            }
+            score[h] = sum;
+        }
+    }
+
+    // intersects three circles: subtracting the first equation leaves a linear 2x2 system
+    private boolean solveTriple(int i, int j, int k, int h) {
+        double xi = anchorX[i], yi = anchorY[i], ri = ranges[i];
+        double xj = anchorX[j], yj = anchorY[j], rj = ranges[j];
+        double xk = anchorX[k], yk = anchorY[k], rk = ranges[k];
+        double a11 = 2 * (xj - xi), a12 = 2 * (yj - yi);
+        double a21 = 2 * (xk - xi), a22 = 2 * (yk - yi);
+        double b1 = ri * ri - rj * rj + xj * xj - xi * xi + yj * yj - yi * yi;
+        double b2 = ri * ri - rk * rk + xk * xk - xi * xi + yk * yk - yi * yi;
+        double det = a11 * a22 - a12 * a21;
+        // collinear APs, relative to the size of the triangle
+        if (Math.abs(det) <= 1e-9 * (a11 * a11 + a12 * a12 + a21 * a21 + a22 * a22)) {
+            return false;
+        }
+        hypothesisX[h] = (float) ((b1 * a22 - b2 * a12) / det);
+        hypothesisY[h] = (float) ((a11 * b2 - a21 * b1) / det);
+        return true;
+    }
+
+    private void findInliers() {
+        inlierCount = 0;
+        double sum = 0;
+        for (int a = 0; a < anchorCount; a++) {
+            double e = residual(a, estimateX, estimateY);
+            inlier[a] = Math.abs(e) <= inlierThreshold;
+            if (inlier[a]) {
+                inlierCount++;
+                sum += e * e;
+            }
+        }
+        residualRms = inlierCount > 0 ? (float) Math.sqrt(sum / inlierCount) : 0;
+    }
+
+    // range noise from the inlier residuals, at least an eighth of the threshold so a fix whose
+    // few inliers happen to agree is not taken as exact
+    private void collectEstimate() {
+        estimate.setPosition(estimateX, estimateY);
+        estimate.beginAnchors();
+        for (int a = 0; a < anchorCount; a++) {
+            if (inlier[a]) {
+                estimate.addAnchor(anchorX[a], anchorY[a], -residual(a, estimateX, estimateY));
+            }
+        }
+        estimate.endAnchors();
+        estimate.setRangeCovariance(inlierThreshold / 8.0);
+    }
+
+    // Gauss-Newton on the range residuals of the inliers
+    private void refine() {
+        double x = estimateX, y = estimateY;
+        for (int iteration = 0; iteration < MAX_REFINE_ITERATIONS; iteration++) {
+            double jxx = 0, jxy = 0, jyy = 0, gx = 0, gy = 0;
+            for (int a = 0; a < anchorCount; a++) {
+                if (!inlier[a]) {
+                    continue;
+                }
+                double dx = x - anchorX[a];
+                double dy = y - anchorY[a];
+                double d = Math.sqrt(dx * dx + dy * dy);
+                if (d == 0) {
+                    continue;
+                }
+                double ux = dx / d, uy = dy / d;
+                double e = d - ranges[a];
+                jxx += ux * ux;
+                jxy += ux * uy;
+                jyy += uy * uy;
+                gx += ux * e;
+                gy += uy * e;
+            }
+            double det = jxx * jyy - jxy * jxy;
+            if (Math.abs(det) < 1e-12) {
+                break;
+            }
+            double stepX = -(jyy * gx - jxy * gy) / det;
+            double stepY = -(jxx * gy - jxy * gx) / det;
+            x += stepX;
+            y += stepY;
+            if (stepX * stepX + stepY * stepY < 1e-4) {
+                break;
+            }
+        }
+        estimateX = (float) x;
+        estimateY = (float) y;
+    }
+
+    private double residual(int anchor, float x, float y) {
+        double dx = x - anchorX[anchor];
+        double dy = y - anchorY[anchor];
+        return Math.sqrt(dx * dx + dy * dy) - ranges[anchor];
+    }
+}
@@ -0,0 +1,81 @@
+package com.juvetic.rssi.util.formulas;
+
+/**
+ * Hands raw sensor samples from the sensor callback to the thread that processes them, without
+ * locks or allocation: one writer and one reader, each side owning its index of a fixed ring of
+ * primitive arrays. When the reader falls behind by the whole ring, new samples are dropped.
+ */
+public final class SensorRingBuffer {
+
+    private final int mask;
+
+    private final int[] types;
+
+    private final long[] timestamps;
+
+    private final float[] xs, ys, zs;
+
+    // written only by the writer and the reader respectively
+    private volatile long head, tail;
+
+    private volatile long dropped;
+
+    /**
+     * @param capacity samples held, rounded up to a power of two
+     */
+    public SensorRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        mask = size - 1;
+        types = new int[size];
+        timestamps = new long[size];
+        xs = new float[size];
+        ys = new float[size];
+        zs = new float[size];
+    }
+
+    /**
+     * Adds a sample. Writer thread only.
+     *
+     * @param type      sensor type, as in {@link PedestrianDeadReckoning}
+     * @param timestamp in nanoseconds
+     * @return false if the ring was full and the sample dropped
+     */
+    public boolean offer(int type, long timestamp, float x, float y, float z) {
+        long h = head;
+        if (h - tail > mask) {
+            dropped++;
+            return false;
+        }
+        int i = (int) h & mask;
+        types[i] = type;
+        timestamps[i] = timestamp;
+        xs[i] = x;
+        ys[i] = y;
+        zs[i] = z;
+        head = h + 1;
+        return true;
+    }
+
+    /**
+     * Feeds the samples waiting, oldest first, to the dead reckoning. Reader thread only.
+     *
+     * @return number of samples processed
+     */
+    public int drainTo(PedestrianDeadReckoning pdr) {
+        long t = tail;
+        long h = head;
+        for (long k = t; k < h; k++) {
+            int i = (int) k & mask;
+            pdr.process(types[i], timestamps[i], xs[i], ys[i], zs[i]);
+        }
+        tail = h;
+        return (int) (h - t);
+    }
+
+    /**
+     * @return samples dropped so far because the reader fell behind
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
@@ -0,0 +1,495 @@
+package com.juvetic.rssi.util.formulas;
+
+import org.ejml.data.DenseMatrix64F;
+
+/**
+ * Algorithm class which estimates user position by applying an Unscented Kalman Filter, for
+ * the ranges or RSSI of any number of APs.
+ *
+ * Where {@link EKFAlgorithmData} would linearize the measurement model around the estimate,
+ * which breaks down close to an AP, this pushes 2n + 1 sigma points through the exact model
+ * and takes the mean and covariance of what comes out. The state is either the position
+ * ({@link #STATIC}) or the position and velocity ({@link #CONSTANT_VELOCITY}), in map units.
+ * The motion model is linear and is propagated exactly; only the update is unscented. It can
+ * take a measured displacement as control input, e.g. from {@link PedestrianDeadReckoning}.
+ *
+ * The estimate and covariance are {@link #x} and {@link #P}, laid out as in the EKF so the two
+ * can be swapped. Sigma points and all other buffers are allocated up front and the small
+ * factorizations are written out by hand, so a scan allocates nothing. Not thread safe.
+ */
+public class UKFAlgorithmData {
+
+    /**
+     * State x, y: the user stands still, up to the process noise.
+     */
+    public static final int STATIC = 2;
+
+    /**
+     * State x, y, vx, vy: the user walks at a constant velocity, up to the process noise.
+     */
+    public static final int CONSTANT_VELOCITY = 4;
+
+    // system state estimate
+    public DenseMatrix64F x, P;
+
+    private final int dimenX;
+
+    private final int maxZ;
+
+    private final int points;
+
+    // sigma point spread and weights
+    private double lambda;
+
+    private final double[] weightMean, weightCov;
+
+    // process noise: variance rate of the position (static) or of the velocity (constant velocity)
+    private double processNoise = 4500;
+
+    private float rangeNoise = 30, rangeNoiseRel = 0.2f;
+
+    // control input of the last prediction, for the smoother
+    private double moveX, moveY, moveVariance;
+
+    // these are predeclared for efficiency reasons
+    private final double[] sqrtP, sigma, predicted, zMean, innovation, noise;
+
+    private final double[] S, sqrtS, crossCov, K, column;
+
+    // measurement of the current update: ranges to anchors, or RSSI through a model
+    private float[] anchorX, anchorY, measured;
+
+    private PathLossModel model;
+
+    private int[] aps;
+
+    private final PositionEstimate estimate = new PositionEstimate();
+
+    /**
+     * @param stateDimension  {@link #STATIC} or {@link #CONSTANT_VELOCITY}
+     * @param maxMeasurements most APs passed to one update
+     */
+    public UKFAlgorithmData(int stateDimension, int maxMeasurements) {
+        if (stateDimension != STATIC && stateDimension != CONSTANT_VELOCITY) {
+            throw new IllegalArgumentException("State dimension must be 2 or 4, got " + stateDimension);
+        }
+        dimenX = stateDimension;
+        maxZ = maxMeasurements;
+        points = 2 * dimenX + 1;
+        x = new DenseMatrix64F(dimenX, 1);
+        P = new DenseMatrix64F(dimenX, dimenX);
+        weightMean = new double[points];
+        weightCov = new double[points];
+        sqrtP = new double[dimenX * dimenX];
+        sigma = new double[points * dimenX];
+        predicted = new double[points * maxZ];
+        zMean = new double[maxZ];
+        innovation = new double[maxZ];
+        noise = new double[maxZ];
+        S = new double[maxZ * maxZ];
+        sqrtS = new double[maxZ * maxZ];
+        crossCov = new double[dimenX * maxZ];
+        K = new double[dimenX * maxZ];
+        column = new double[maxZ];
+        setParameters(1, 2, Math.max(0, 3 - dimenX));
+    }
+
+    /**
+     * Sigma point spread, as in the scaled unscented transform. The defaults (1, 2, max(0, 3 - n))
+     * keep every weight non-negative.
+     */
+    public void setParameters(double alpha, double beta, double kappa) {
+        lambda = alpha * alpha * (dimenX + kappa) - dimenX;
+        double rest = 1 / (2 * (dimenX + lambda));
+        weightMean[0] = lambda / (dimenX + lambda);
+        weightCov[0] = weightMean[0] + 1 - alpha * alpha + beta;
+        for (int i = 1; i < points; i++) {
+            weightMean[i] = weightCov[i] = rest;
+        }
+    }
+
+    /**
+     * @param q for a static state, variance added to the position per second, in squared map
+     *          units; for a constant velocity one, spectral density of the acceleration
+     */
+    public void setProcessNoise(double q) {
+        this.processNoise = q;
+    }
+
+    /**
+     * Standard deviation of a range: absolute part in map units plus a share of the range.
+     */
+    public void setRangeNoise(float absolute, float relative) {
+        this.rangeNoise = absolute;
+        this.rangeNoiseRel = relative;
+    }
+
+    /**
+     * Starts over at a position, at rest.
+     *
+     * @param positionSigma standard deviation of the position, in map units
+     * @param velocitySigma standard deviation of the velocity, in map units per second, unused
+     *                      for a static state
+     */
+    public void initialize(float x0, float y0, float positionSigma, float velocitySigma) {
+        x.zero();
+        P.zero();
+        moveX = moveY = moveVariance = 0;
+        x.data[0] = x0;
+        x.data[1] = y0;
+        P.data[0] = P.data[dimenX + 1] = (double) positionSigma * positionSigma;
+        if (dimenX == CONSTANT_VELOCITY) {
+            P.data[2 * dimenX + 2] = P.data[3 * dimenX + 3] = (double) velocitySigma * velocitySigma;
+        }
+        collectEstimate(0);
+    }
+
+    /**
+     * Motion model, x = F x and P = F P F' + Q.
+     *
+     * @param dt seconds since the last step
+     */
+    public void predict(double dt) {
+        predict(dt, 0, 0, 0);
+    }
+
+    /**
+     * Motion model with a measured displacement as control input, x = F x + u and
+     * P = F P F' + Q + U. The displacement is added on top of any velocity in the state, so it
+     * is best used with a {@link #STATIC} state.
+     *
+     * @param dt           seconds since the last step
+     * @param dx           displacement since the last step, in map units
+     * @param dy           displacement since the last step
+     * @param moveVariance variance of each of dx and dy, in squared map units
+     */
+    public void predict(double dt, double dx, double dy, double moveVariance) {
+        this.moveX = dx;
+        this.moveY = dy;
+        this.moveVariance = moveVariance;
+        propagate(x.data, P.data, dimenX, dt, processNoise, dx, dy, moveVariance);
+        estimate.setPosition(getX(), getY());
+        estimate.setCovariance(P.data[0], P.data[1], P.data[dimenX + 1]);
+    }
+
+    /**
+     * Corrects the state with measured ranges.
+     *
+     * @param anchorX x of each AP, in map units
+     * @param anchorY y of each AP
+     * @param ranges  measured distance to each AP, in map units
+     * @param count   number of APs
+     * @return false if the scan was skipped because the covariance lost positive definiteness
+     */
+    public boolean update(float[] anchorX, float[] anchorY, float[] ranges, int count) {
+        this.anchorX = anchorX;
+        this.anchorY = anchorY;
+        this.measured = ranges;
+        for (int j = 0; j < count; j++) {
+            double sd = rangeNoise + rangeNoiseRel * ranges[j];
+            noise[j] = sd * sd;
+        }
+        boolean updated = correct(count);
+        collectEstimate(count);
+        this.anchorX = this.anchorY = this.measured = null;
+        return updated;
+    }
+
+    /**
+     * Corrects the state with RSSI readings, against the RSSI a path-loss model expects.
+     *
+     * @param aps   AP indices in the model
+     * @param rssi  reading of each of those APs, in dBm
+     * @param count number of readings
+     * @param sigma standard deviation of a reading around the model, in dB
+     * @return false if the scan was skipped because the covariance lost positive definiteness
+     */
+    public boolean update(PathLossModel model, int[] aps, float[] rssi, int count, float sigma) {
+        this.model = model;
+        this.aps = aps;
+        this.measured = rssi;
+        for (int j = 0; j < count; j++) {
+            noise[j] = (double) sigma * sigma;
+        }
+        boolean updated = correct(count);
+        collectEstimate(count);
+        this.model = null;
+        this.aps = null;
+        this.measured = null;
+        return updated;
+    }
+
+    public float getX() {
+        return (float) x.data[0];
+    }
+
+    public float getY() {
+        return (float) x.data[1];
+    }
+
+    /**
+     * @return the position with its covariance, and the residuals and geometry of the last
+     * update; refilled by every call
+     */
+    public PositionEstimate getEstimate() {
+        return estimate;
+    }
+
+    int getDimension() {
+        return dimenX;
+    }
+
+    double getProcessNoise() {
+        return processNoise;
+    }
+
+    double getMoveX() {
+        return moveX;
+    }
+
+    double getMoveY() {
+        return moveY;
+    }
+
+    double getMoveVariance() {
+        return moveVariance;
+    }
+
+    /**
+     * The motion model on raw row major arrays, shared with {@link FixedLagSmoother}.
+     */
+    static void propagate(double[] x, double[] p, int n, double dt, double processNoise,
+            double dx, double dy, double moveVariance) {
+        x[0] += dx;
+        x[1] += dy;
+        p[0] += moveVariance;
+        p[n + 1] += moveVariance;
+        if (dt <= 0) {
+            return;
+        }
+        if (n == STATIC) {
+            p[0] += processNoise * dt;
+            p[3] += processNoise * dt;
+            return;
+        }
+        x[0] += dt * x[2];
+        x[1] += dt * x[3];
+        // F P, then (F P) F'
+        for (int c = 0; c < n; c++) {
+            p[c] += dt * p[2 * n + c];
+            p[n + c] += dt * p[3 * n + c];
+        }
+        for (int r = 0; r < n; r++) {
+            p[r * n] += dt * p[r * n + 2];
+            p[r * n + 1] += dt * p[r * n + 3];
+        }
+        // white noise acceleration, per axis
+        double q3 = processNoise * dt * dt * dt / 3;
+        double q2 = processNoise * dt * dt / 2;
+        double q1 = processNoise * dt;
+        for (int axis = 0; axis < 2; axis++) {
+            int pos = axis, vel = axis + 2;
+            p[pos * n + pos] += q3;
+            p[pos * n + vel] += q2;
+            p[vel * n + pos] += q2;
+            p[vel * n + vel] += q1;
+        }
+    }
+
+    private boolean correct(int count) {
+        if (count > maxZ) {
+            throw new IllegalArgumentException("At most " + maxZ + " measurements, got " + count);
+        }
+        int n = dimenX;
+        if (!sigmaPoints()) {
+            return false;
+        }
+        for (int i = 0; i < points; i++) {
+            double px = sigma[i * n];
+            double py = sigma[i * n + 1];
+            for (int j = 0; j < count; j++) {
+                predicted[i * maxZ + j] = measure(j, px, py);
+            }
+        }
+        for (int j = 0; j < count; j++) {
+            double mean = 0;
+            for (int i = 0; i < points; i++) {
+                mean += weightMean[i] * predicted[i * maxZ + j];
+            }
+            zMean[j] = mean;
+            innovation[j] = measured[j] - mean;
+        }
+
+        // S = sum Wc dz dz' + R, Pxz = sum Wc dx dz'
+        for (int j = 0; j < count; j++) {
+            for (int k = 0; k <= j; k++) {
+                double sum = 0;
+                for (int i = 0; i < points; i++) {
+                    sum += weightCov[i] * (predicted[i * maxZ + j] - zMean[j]) * (predicted[i * maxZ + k] - zMean[k]);
+                }
+                S[j * count + k] = S[k * count + j] = sum;
+            }
+            S[j * count + j] += noise[j];
+        }
+        for (int r = 0; r < n; r++) {
+            for (int j = 0; j < count; j++) {
+                double sum = 0;
+                for (int i = 0; i < points; i++) {
+                    sum += weightCov[i] * (sigma[i * n + r] - x.data[r]) * (predicted[i * maxZ + j] - zMean[j]);
+                }
+                crossCov[r * count + j] = sum;
+            }
+        }
+
+        // K = Pxz S^(-1), row by row: S k' = Pxz(r)'
+        if (!cholesky(S, count, sqrtS)) {
+            return false;
+        }
+        for (int r = 0; r < n; r++) {
+            for (int j = 0; j < count; j++) {
+                double sum = crossCov[r * count + j];
+                for (int k = 0; k < j; k++) {
+                    sum -= sqrtS[j * count + k] * column[k];
+                }
+                column[j] = sum / sqrtS[j * count + j];
+            }
+            for (int j = count - 1; j >= 0; j--) {
+                double sum = column[j];
+                for (int k = j + 1; k < count; k++) {
+                    sum -= sqrtS[k * count + j] * K[r * count + k];
+                }
+                K[r * count + j] = sum / sqrtS[j * count + j];
+            }
+        }
+
+        // x = x + K z, P = P - K S K' = P - K Pxz'
+        double[] p = P.data;
+        for (int r = 0; r < n; r++) {
+            double sum = 0;
+            for (int j = 0; j < count; j++) {
+                sum += K[r * count + j] * innovation[j];
+            }
+            x.data[r] += sum;
+        }
+        for (int r = 0; r < n; r++) {
+            for (int c = 0; c < n; c++) {
+                double sum = 0;
+                for (int j = 0; j < count; j++) {
+                    sum += K[r * count + j] * crossCov[c * count + j];
+                }
+                p[r * n + c] -= sum;
+            }
+        }
+        symmetrize();
+        return true;
+    }
+
+    // residuals at the corrected state, in map units for ranges and in dB for RSSI
+    private void collectEstimate(int count) {
+        int n = dimenX;
+        estimate.setPosition(getX(), getY());
+        estimate.setCovariance(P.data[0], P.data[1], P.data[n + 1]);
+        estimate.beginAnchors();
+        for (int j = 0; j < count; j++) {
+            double residual = measured[j] - measure(j, x.data[0], x.data[1]);
+            if (model != null) {
+                estimate.addAnchor(model.getAccessPointX(aps[j]), model.getAccessPointY(aps[j]), residual);
+            } else {
+                estimate.addAnchor(anchorX[j], anchorY[j], residual);
+            }
+        }
+        estimate.endAnchors();
+    }
+
+    private double measure(int j, double px, double py) {
+        if (model != null) {
+            return model.expectedRssi(aps[j], (float) px, (float) py);
+        }
+        double dx = px - anchorX[j];
+        double dy = py - anchorY[j];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    // x and x +- sqrt((n + lambda) P) columns
+    private boolean sigmaPoints() {
+        int n = dimenX;
+        double[] p = P.data;
+        if (!cholesky(p, n, sqrtP)) {
+            // rounding pushed P off positive definite: symmetrize, nudge the diagonal and retry
+            symmetrize();
+            for (int i = 0; i < n; i++) {
+                p[i * n + i] += 1e-9 * Math.abs(p[i * n + i]) + 1e-9;
+            }
+            if (!cholesky(p, n, sqrtP)) {
+                return false;
+            }
+        }
+        double scale = Math.sqrt(n + lambda);
+        for (int r = 0; r < n; r++) {
+            double mean = x.data[r];
+            sigma[r] = mean;
+            for (int i = 0; i < n; i++) {
+                double offset = scale * sqrtP[r * n + i];
+                sigma[(1 + i) * n + r] = mean + offset;
+                sigma[(1 + n + i) * n + r] = mean - offset;
+            }
+        }
+        return true;
+    }
+
+    private void symmetrize() {
+        int n = dimenX;
+        double[] p = P.data;
+        for (int r = 0; r < n; r++) {
+            for (int c = r + 1; c < n; c++) {
+                double mean = (p[r * n + c] + p[c * n + r]) / 2;
+                p[r * n + c] = p[c * n + r] = mean;
+            }
+        }
+    }
+
+    /**
+     * Lower triangular L with L L' = a, both n x n row major.
+     *
+     * @return false if a is not positive definite
+     */
+    static boolean cholesky(double[] a, int n, double[] l) {
+        if (n == 2) {
+            // fast path for the static state
+            if (!(a[0] > 0)) {
+                return false;
+            }
+            double l00 = Math.sqrt(a[0]);
+            double l10 = a[2] / l00;
+            double d = a[3] - l10 * l10;
+            if (!(d > 0)) {
+                return false;
+            }
+            l[0] = l00;
+            l[1] = 0;
+            l[2] = l10;
+            l[3] = Math.sqrt(d);
+            return true;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j <= i; j++) {
+                double sum = a[i * n + j];
+                for (int k = 0; k < j; k++) {
+                    sum -= l[i * n + k] * l[j * n + k];
+                }
+                if (i == j) {
+                    if (!(sum > 0)) {
+                        return false;
+                    }
+                    l[i * n + i] = Math.sqrt(sum);
+                } else {
+                    l[i * n + j] = sum / l[j * n + j];
+                }
+            }
+            for (int j = i + 1; j < n; j++) {
+                l[i * n + j] = 0;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,39 @@
+package com.juvetic.rssi.util.formulas;
+
+/**
+ * Allocation-free random numbers for the estimators: the state is a plain long the caller keeps,
+ * so each thread or chunk can have its own and results replay from a seed.
+ */
+final class XorShift {
+
+    private XorShift() {
+    }
+
+    /**
+     * @return a well mixed, non-zero state for the seed and stream, so streams are independent
+     */
+    static long seed(long seed, long stream) {
+        // splitmix64
+        long z = seed + (stream + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return (z ^ (z >>> 31)) | 1;
+    }
+
+    /**
+     * @return the state after the current one (xorshift64*)
+     */
+    static long next(long state) {
+        state ^= state >>> 12;
+        state ^= state << 25;
+        state ^= state >>> 27;
+        return state;
+    }
+
+    /**
+     * @return uniform in [0, 1) from the top 53 bits of the scrambled state
+     */
+    static double uniform(long state) {
+        return ((state * 0x2545F4914F6CDD1DL) >>> 11) * 0x1.0p-53;
+    }
+}
@@ -1,27 +1,38 @@
 package com.juvetic.rssi.util.helper;
 
 import android.content.Context;
-import java.io.BufferedReader;
 import java.io.InputStreamReader;
+import java.io.Reader;
 
 /**
  * Created by doom on 15/4/2.
  */
 public class AssetsHelper
 {
+    /**
+     * Reads a whole text asset. Maps should not go through here, load them with
+     * {@link id.recharge.library.SVGMapView#loadMapFromAsset(String)} instead.
+     */
     public static String getContent(Context context, String fileName)
     {
         try
         {
-            InputStreamReader inputReader = new InputStreamReader(context.getResources().getAssets().open(fileName));
-            BufferedReader bufReader = new BufferedReader(inputReader);
-            String line = "";
-            String Result = "";
-            while ((line = bufReader.readLine()) != null)
-                Result += line;
-
-            System.out.print(Result);
-            return Result;
+            Reader reader = new InputStreamReader(context.getResources().getAssets().open(fileName));
+            try
+            {
+                StringBuilder result = new StringBuilder();
+                char[] buffer = new char[8192];
+                int read;
+                while ((read = reader.read(buffer)) != -1)
+                {
+                    result.append(buffer, 0, read);
+                }
+                return result.toString();
+            }
+            finally
+            {
+                reader.close();
+            }
         }
         catch (Exception e)
         {
@@ -0,0 +1,102 @@
+package com.juvetic.rssi.util.formulas;
+
+import java.io.IOException;
+import java.io.StringReader;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays synthetic sensor logs: a phone held flat, bouncing at two steps a second.
+ */
+public class PedestrianDeadReckoningTest {
+
+    private static final double UNITS_PER_METER = 100;
+
+    @Test
+    public void replay_walkingNorth_movesUp() throws IOException {
+        PedestrianDeadReckoning pdr = new PedestrianDeadReckoning(UNITS_PER_METER);
+        int samples = pdr.replay(new StringReader(walk(0, 5)));
+        double[] move = new double[3];
+        pdr.takeDisplacement(move);
+
+        assertTrue(samples > 0);
+        assertEquals(10, pdr.getStepCount(), 1);
+        // map y points down
+        assertTrue(move[1] < -5 * 0.3 * UNITS_PER_METER);
+        assertEquals(0, move[0], 0.1 * Math.abs(move[1]));
+        assertTrue(move[2] > 0);
+    }
+
+    @Test
+    public void replay_walkingEast_movesRight() throws IOException {
+        PedestrianDeadReckoning pdr = new PedestrianDeadReckoning(UNITS_PER_METER);
+        pdr.replay(new StringReader(walk(Math.PI / 2, 5)));
+        double[] move = new double[3];
+        pdr.takeDisplacement(move);
+
+        assertEquals(10, pdr.getStepCount(), 1);
+        assertTrue(move[0] > 5 * 0.3 * UNITS_PER_METER);
+        assertEquals(0, move[1], 0.1 * Math.abs(move[0]));
+    }
+
+    @Test
+    public void takeDisplacement_startsOver() throws IOException {
+        PedestrianDeadReckoning pdr = new PedestrianDeadReckoning(UNITS_PER_METER);
+        pdr.replay(new StringReader(walk(0, 2)));
+        double[] move = new double[3];
+        pdr.takeDisplacement(move);
+        pdr.takeDisplacement(move);
+
+        assertEquals(0, move[0], 0);
+        assertEquals(0, move[1], 0);
+        assertEquals(0, move[2], 0);
+    }
+
+    @Test
+    public void stopThenStart_doesNotIntegrateThePause() {
+        PedestrianDeadReckoning pdr = new PedestrianDeadReckoning(UNITS_PER_METER);
+        SensorRingBuffer buffer = new SensorRingBuffer(16);
+        pdr.start(buffer, 1000);
+        // flat, facing north, turning left at half a radian a second
+        buffer.offer(PedestrianDeadReckoning.TYPE_ACCELEROMETER, 1000000000L, 0, 0, 9.80665f);
+        buffer.offer(PedestrianDeadReckoning.TYPE_MAGNETIC_FIELD, 1000000001L, 0, 20, -40);
+        buffer.offer(PedestrianDeadReckoning.TYPE_GYROSCOPE, 1000000002L, 0, 0, 0.5f);
+        pdr.stop();
+        assertEquals(0, pdr.getHeading(), 1e-3);
+
+        // a minute later, as after onPause and onResume
+        pdr.start(buffer, 1000);
+        buffer.offer(PedestrianDeadReckoning.TYPE_GYROSCOPE, 61000000000L, 0, 0, 0.5f);
+        buffer.offer(PedestrianDeadReckoning.TYPE_GYROSCOPE, 61010000000L, 0, 0, 0.5f);
+        pdr.stop();
+        assertEquals(-0.005, pdr.getHeading(), 1e-4);
+    }
+
+    @Test(expected = IOException.class)
+    public void replay_malformedLine_throws() throws IOException {
+        new PedestrianDeadReckoning(UNITS_PER_METER).replay(new StringReader("1,2,3\n"));
+    }
+
+    // CSV log of a walk at a fixed heading, clockwise from north, at 100 Hz
+    private static String walk(double heading, int seconds) {
+        StringBuilder log = new StringBuilder("# type,timestamp,x,y,z\n");
+        long start = 1000000000L;
+        for (int i = 0; i < seconds * 100; i++) {
+            double t = i / 100.0;
+            long timestamp = start + i * 10000000L;
+            double bounce = 2.5 * Math.sin(2 * Math.PI * 2 * t);
+            line(log, PedestrianDeadReckoning.TYPE_ACCELEROMETER, timestamp, 0, 0, 9.80665 + bounce);
+            line(log, PedestrianDeadReckoning.TYPE_GYROSCOPE, timestamp + 1000, 0, 0, 0);
+            // field pointing north and down, seen from a device turned by the heading
+            line(log, PedestrianDeadReckoning.TYPE_MAGNETIC_FIELD, timestamp + 2000,
+                    -20 * Math.sin(heading), 20 * Math.cos(heading), -40);
+        }
+        return log.toString();
+    }
+
+    private static void line(StringBuilder log, int type, long timestamp, double x, double y, double z) {
+        log.append(type).append(',').append(timestamp).append(',')
+                .append((float) x).append(',').append((float) y).append(',').append((float) z).append('\n');
+    }
+}
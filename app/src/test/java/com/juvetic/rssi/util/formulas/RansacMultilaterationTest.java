@@ -0,0 +1,103 @@
+package com.juvetic.rssi.util.formulas;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Replays noisy scans in which every fourth AP is hit by multipath: the same seed must give the
+ * same fixes and inliers, whether the hypotheses are scored on one thread or split over the
+ * cores. There are far more triples than hypotheses, so a fix depends on which were drawn.
+ */
+public class RansacMultilaterationTest {
+
+    private static final int ANCHORS = 24;
+
+    private static final int HYPOTHESES = 200;
+
+    private static final int SCANS = 20;
+
+    private static final int OUTLIER_EVERY = 4;
+
+    // ranges much too long, as through walls
+    private static final float OUTLIER_ERROR = 600;
+
+    private static final float NOISE = 30;
+
+    @Test
+    public void sameSeed_belowAndAboveParallelThreshold_sameFixes() {
+        // the threshold is on the capacity, so the same scans run on one thread and on the cores
+        int serialCapacity = RansacMultilateration.PARALLEL_THRESHOLD / HYPOTHESES - 1;
+        int parallelCapacity = RansacMultilateration.PARALLEL_THRESHOLD / HYPOTHESES;
+        assertTrue(serialCapacity >= ANCHORS);
+        RansacMultilateration serial = new RansacMultilateration(serialCapacity, HYPOTHESES, 42);
+        RansacMultilateration parallel = new RansacMultilateration(parallelCapacity, HYPOTHESES, 42);
+        try {
+            float[] anchorX = new float[ANCHORS];
+            float[] anchorY = new float[ANCHORS];
+            float[][] scans = scans(anchorX, anchorY);
+            for (float[] ranges : scans) {
+                assertTrue(serial.solve(anchorX, anchorY, ranges, ANCHORS));
+                assertTrue(parallel.solve(anchorX, anchorY, ranges, ANCHORS));
+
+                assertEquals(serial.getX(), parallel.getX(), 0);
+                assertEquals(serial.getY(), parallel.getY(), 0);
+                assertEquals(serial.getInlierCount(), parallel.getInlierCount());
+                for (int a = 0; a < ANCHORS; a++) {
+                    assertEquals(serial.isInlier(a), parallel.isInlier(a));
+                    if (a % OUTLIER_EVERY == 0) {
+                        assertFalse(serial.isInlier(a));
+                    }
+                }
+            }
+        } finally {
+            serial.shutdown();
+            parallel.shutdown();
+        }
+    }
+
+    @Test
+    public void resetSeed_replaysTheSameFixes() {
+        RansacMultilateration ransac = new RansacMultilateration(ANCHORS, HYPOTHESES, 7);
+        try {
+            float[] anchorX = new float[ANCHORS];
+            float[] anchorY = new float[ANCHORS];
+            float[][] scans = scans(anchorX, anchorY);
+            float[] x = new float[SCANS];
+            float[] y = new float[SCANS];
+            for (int s = 0; s < SCANS; s++) {
+                ransac.solve(anchorX, anchorY, scans[s], ANCHORS);
+                x[s] = ransac.getX();
+                y[s] = ransac.getY();
+            }
+            ransac.resetSeed();
+            for (int s = 0; s < SCANS; s++) {
+                ransac.solve(anchorX, anchorY, scans[s], ANCHORS);
+                assertEquals(x[s], ransac.getX(), 0);
+                assertEquals(y[s], ransac.getY(), 0);
+            }
+        } finally {
+            ransac.shutdown();
+        }
+    }
+
+    // APs scattered over a 10 m x 8 m floor and a walk across it
+    private static float[][] scans(float[] anchorX, float[] anchorY) {
+        Random random = new Random(3);
+        for (int a = 0; a < ANCHORS; a++) {
+            anchorX[a] = random.nextInt(1000);
+            anchorY[a] = random.nextInt(800);
+        }
+        float[][] scans = new float[SCANS][ANCHORS];
+        for (int s = 0; s < SCANS; s++) {
+            float x = 200 + 30 * s;
+            float y = 300 + 10 * s;
+            for (int a = 0; a < ANCHORS; a++) {
+                double range = Math.hypot(x - anchorX[a], y - anchorY[a]) + NOISE * random.nextGaussian();
+                scans[s][a] = (float) (a % OUTLIER_EVERY == 0 ? range + OUTLIER_ERROR : range);
+            }
+        }
+        return scans;
+    }
+}
@@ -0,0 +1,151 @@
+package id.recharge.library.core.helper.map;
+
+import com.sun.management.ThreadMXBean;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xml.sax.InputSource;
+
+/**
+ * Parses every SVG under app/src/main/assets into a {@link SVGArrayRecorder}.
+ * <p/>
+ * One op is one pass over all documents, see {@link Counters} for the per KB
+ * figures; the gc profiler adds bytes per op. Documents the JVM parser
+ * rejects (a DOCTYPE, which is disallowed) are skipped and listed at setup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SVGParserBenchmark
+{
+    private final SVGArrayRecorder recorder = new SVGArrayRecorder();
+    private byte[][] documents;
+    private double kilobytes;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException
+    {
+        // unsupported elements would otherwise be logged on every pass
+        Logger.getLogger(SVGHandler.TAG).setLevel(java.util.logging.Level.OFF);
+
+        File dir = new File(System.getProperty("svg.assets", "../app/src/main/assets"));
+        File[] files = dir.listFiles();
+        if (files == null)
+        {
+            throw new IOException("No assets directory at " + dir.getAbsolutePath());
+        }
+        Arrays.sort(files);
+        ArrayList<byte[]> parsed = new ArrayList<byte[]>();
+        long bytes = 0;
+        for (File file : files)
+        {
+            if (!file.getName().endsWith(".svg"))
+            {
+                continue;
+            }
+            byte[] document = Files.readAllBytes(file.toPath());
+            try
+            {
+                parse(document);
+            }
+            catch (Exception e)
+            {
+                System.err.println("Skipping " + file.getName() + ": " + e.getMessage());
+                continue;
+            }
+            parsed.add(document);
+            bytes += document.length;
+        }
+        if (parsed.isEmpty())
+        {
+            throw new IOException("No parseable SVG in " + dir.getAbsolutePath());
+        }
+        documents = parsed.toArray(new byte[parsed.size()][]);
+        kilobytes = bytes / 1024.0;
+    }
+
+    @Benchmark
+    public int parseAssets(Counters counters) throws Exception
+    {
+        int draws = 0;
+        for (byte[] document : documents)
+        {
+            draws += parse(document);
+        }
+        counters.parsed(kilobytes);
+        return draws;
+    }
+
+    private int parse(byte[] document) throws Exception
+    {
+        SVGHandler handler = new SVGHandler();
+        recorder.reset();
+        handler.setSink(recorder);
+        handler.parse(new InputSource(new ByteArrayInputStream(document)));
+        return recorder.getDrawCount();
+    }
+
+    /**
+     * Reported as rates next to ops/s: kilobytes is the parse throughput in
+     * KB/s, allocatedBytes / kilobytes the allocation per KB, which is also
+     * printed after each iteration. Allocation is read from the HotSpot
+     * thread MX bean.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters
+    {
+        public double kilobytes;
+        public double allocatedBytes;
+
+        private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private long start;
+
+        @Setup(Level.Iteration)
+        public void start()
+        {
+            kilobytes = 0;
+            allocatedBytes = 0;
+            start = allocated();
+        }
+
+        @TearDown(Level.Iteration)
+        public void print()
+        {
+            System.out.printf("%.1f B allocated per KB parsed%n", allocatedBytes / kilobytes);
+        }
+
+        void parsed(double documentKilobytes)
+        {
+            kilobytes += documentKilobytes;
+            allocatedBytes = allocated() - start;
+        }
+
+        private long allocated()
+        {
+            return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package id.recharge.library;
+
+
+import id.recharge.library.core.helper.map.SVG;
+
+/**
+ * Receives the floor plans requested with
+ * {@link SVGMapManager#loadMap(String, SVGMapLoadListener)}.
+ */
+public interface SVGMapLoadListener
+{
+    /**
+     * Called on the main thread, right away when the plan was already parsed.
+     */
+    void onMapLoaded(String mapId, SVG svg);
+
+    void onMapLoadError(String mapId);
+}
@@ -0,0 +1,386 @@
+package id.recharge.library;
+
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import id.recharge.library.core.helper.map.SVG;
+import id.recharge.library.core.helper.map.SVGBuilder;
+import id.recharge.library.core.helper.map.SVGParseException;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the floor plans of a building, identified by id, parsed and ready to
+ * show with {@link SVGMapView#loadMap(SVGMapManager, String)}.
+ * <p/>
+ * Plans are parsed on a small pool of worker threads, the one asked for ahead
+ * of the floors around it, which are prefetched in the order they were added.
+ * Parsed plans stay in an LRU cache bounded by their estimated size, see
+ * {@link SVG#getApproximateSize()}, so going back to a visited floor is
+ * instant while a building with many floors only keeps what fits. An evicted
+ * plan is rebuilt from the display list cache, not parsed again.
+ * <p/>
+ * Meant to be used from the main thread and shared by the map views of an app.
+ */
+public class SVGMapManager
+{
+    private static final String TAG = "SVGMapManager";
+    private static final String MAP_CACHE_DIR = "svg-map";
+
+    private static final int PARSE_THREADS = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+    private static final int KEEP_ALIVE_SECONDS = 30;
+
+    private final Context context;
+    private final long maxBytes;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // floor order, adjacent entries are prefetched
+    private final List<String> mapIds = new ArrayList<String>();
+    private final Map<String, String> assetPaths = new HashMap<String, String>();
+    private int prefetchDistance = 1;
+
+    // guarded by this, access-ordered so the least recently shown plan is evicted first
+    private final LinkedHashMap<String, SVG> cache = new LinkedHashMap<String, SVG>(16, 0.75f, true);
+    private long cachedBytes = 0;
+    private String currentMapId;
+    // plans queued or parsing, with whoever waits for them
+    private final Map<String, List<SVGMapLoadListener>> pending = new HashMap<String, List<SVGMapLoadListener>>();
+    private long taskSequence = 0;
+    private ThreadPoolExecutor executor;
+
+    /**
+     * Creates a manager that caches up to an eighth of the heap.
+     */
+    public SVGMapManager(Context context)
+    {
+        this(context, Runtime.getRuntime().maxMemory() / 8);
+    }
+
+    /**
+     * @param maxBytes budget for parsed plans; the plan on screen is kept even
+     *                 when it alone is larger
+     */
+    public SVGMapManager(Context context, long maxBytes)
+    {
+        this.context = context.getApplicationContext();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Registers a plan. Add the floors of a building bottom to top, or in any
+     * order in which neighbours are the ones likely to be shown next.
+     *
+     * @param assetPath path of the SVG (or SVGZ) in the assets
+     */
+    public void addMap(String mapId, String assetPath)
+    {
+        if (!assetPaths.containsKey(mapId))
+        {
+            mapIds.add(mapId);
+        }
+        assetPaths.put(mapId, assetPath);
+    }
+
+    public List<String> getMapIds()
+    {
+        return new ArrayList<String>(mapIds);
+    }
+
+    /**
+     * @param floors how many floors above and below the shown one are parsed
+     *               in advance, 0 to turn prefetching off. Default 1.
+     */
+    public void setPrefetchDistance(int floors)
+    {
+        this.prefetchDistance = Math.max(0, floors);
+    }
+
+    /**
+     * Gets a plan, parsing it first if it is not cached, and starts
+     * prefetching the floors around it.
+     */
+    public void loadMap(String mapId, SVGMapLoadListener listener)
+    {
+        if (!assetPaths.containsKey(mapId))
+        {
+            throw new IllegalArgumentException("Unknown map " + mapId);
+        }
+        SVG svg;
+        synchronized (this)
+        {
+            currentMapId = mapId;
+            svg = cache.get(mapId);
+            if (svg == null)
+            {
+                List<SVGMapLoadListener> listeners = pending.get(mapId);
+                if (listeners == null)
+                {
+                    listeners = new ArrayList<SVGMapLoadListener>();
+                    pending.put(mapId, listeners);
+                    getExecutor().execute(new ParseTask(mapId, true));
+                }
+                else
+                {
+                    promote(mapId);
+                }
+                listeners.add(listener);
+            }
+            prefetchAround(mapId);
+        }
+        if (svg != null)
+        {
+            listener.onMapLoaded(mapId, svg);
+        }
+    }
+
+    /**
+     * @return the plan if it is cached, otherwise null
+     */
+    public synchronized SVG getMap(String mapId)
+    {
+        return cache.get(mapId);
+    }
+
+    /**
+     * Call from {@link ComponentCallbacks2#onTrimMemory(int)}: keeps only the
+     * plan on screen when memory runs low.
+     */
+    public synchronized void onTrimMemory(int level)
+    {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE)
+        {
+            trimTo(0);
+        }
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+        {
+            trimTo(maxBytes / 2);
+        }
+    }
+
+    /**
+     * Stops parsing and drops every cached plan. Pending listeners are not called.
+     */
+    public void shutdown()
+    {
+        synchronized (this)
+        {
+            if (executor != null)
+            {
+                executor.shutdownNow();
+                executor = null;
+            }
+            pending.clear();
+            cache.clear();
+            cachedBytes = 0;
+            currentMapId = null;
+        }
+    }
+
+    private synchronized ThreadPoolExecutor getExecutor()
+    {
+        if (executor == null)
+        {
+            executor = new ThreadPoolExecutor(PARSE_THREADS, PARSE_THREADS, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(), new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, TAG);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+            executor.allowCoreThreadTimeOut(true);
+        }
+        return executor;
+    }
+
+    // a plan that was only queued as a neighbour is now wanted on screen
+    private void promote(String mapId)
+    {
+        for (Runnable queued : getExecutor().getQueue())
+        {
+            ParseTask task = (ParseTask) queued;
+            if (!task.requested && task.mapId.equals(mapId) && getExecutor().remove(task))
+            {
+                getExecutor().execute(new ParseTask(mapId, true));
+                return;
+            }
+        }
+    }
+
+    private void prefetchAround(String mapId)
+    {
+        int index = mapIds.indexOf(mapId);
+        // floors passed on the way are not worth parsing any more
+        for (Runnable queued : getExecutor().getQueue())
+        {
+            ParseTask task = (ParseTask) queued;
+            if (!task.requested && Math.abs(mapIds.indexOf(task.mapId) - index) > prefetchDistance
+                    && getExecutor().remove(task))
+            {
+                pending.remove(task.mapId);
+            }
+        }
+        for (int distance = 1; distance <= prefetchDistance; distance++)
+        {
+            prefetch(index - distance);
+            prefetch(index + distance);
+        }
+    }
+
+    private void prefetch(int index)
+    {
+        if (index < 0 || index >= mapIds.size())
+        {
+            return;
+        }
+        String mapId = mapIds.get(index);
+        if (cache.containsKey(mapId) || pending.containsKey(mapId))
+        {
+            return;
+        }
+        pending.put(mapId, new ArrayList<SVGMapLoadListener>());
+        getExecutor().execute(new ParseTask(mapId, false));
+    }
+
+    private void put(String mapId, SVG svg)
+    {
+        SVG old = cache.put(mapId, svg);
+        if (old != null)
+        {
+            cachedBytes -= sizeOf(old);
+        }
+        cachedBytes += sizeOf(svg);
+        trimTo(maxBytes);
+    }
+
+    // evicts the least recently shown plans, never the one on screen
+    private void trimTo(long bytes)
+    {
+        Iterator<Map.Entry<String, SVG>> entries = cache.entrySet().iterator();
+        while (cachedBytes > bytes && entries.hasNext())
+        {
+            Map.Entry<String, SVG> entry = entries.next();
+            if (entry.getKey().equals(currentMapId))
+            {
+                continue;
+            }
+            cachedBytes -= sizeOf(entry.getValue());
+            entries.remove();
+        }
+    }
+
+    private static long sizeOf(SVG svg)
+    {
+        return Math.max(1, svg.getApproximateSize());
+    }
+
+    private SVG parse(String assetPath) throws IOException
+    {
+        return new SVGBuilder().readFromAsset(context.getAssets(), assetPath)
+                .setCacheDir(new File(context.getCacheDir(), MAP_CACHE_DIR))
+                .setLevelOfDetail(true)
+                .build();
+    }
+
+    /**
+     * Parses one plan; plans asked for run before prefetches, each kind in
+     * the order it was queued.
+     */
+    private class ParseTask implements Runnable, Comparable<ParseTask>
+    {
+        final String mapId;
+        final boolean requested;
+        final long sequence;
+        // read on the calling thread, plans may be added while this one parses
+        private final String assetPath;
+
+        ParseTask(String mapId, boolean requested)
+        {
+            this.mapId = mapId;
+            this.requested = requested;
+            this.assetPath = assetPaths.get(mapId);
+            this.sequence = taskSequence++;
+        }
+
+        @Override
+        public int compareTo(ParseTask other)
+        {
+            if (requested != other.requested)
+            {
+                return requested ? -1 : 1;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+
+        @Override
+        public void run()
+        {
+            SVG svg = null;
+            try
+            {
+                svg = parse(assetPath);
+            }
+            catch (IOException e)
+            {
+                Log.e(TAG, "Failed to open map " + mapId, e);
+            }
+            catch (SVGParseException e)
+            {
+                Log.e(TAG, "Failed to parse map " + mapId, e);
+            }
+            final List<SVGMapLoadListener> listeners;
+            synchronized (SVGMapManager.this)
+            {
+                listeners = pending.remove(mapId);
+                if (listeners == null)
+                {
+                    // shut down or dropped meanwhile
+                    return;
+                }
+                if (svg != null)
+                {
+                    put(mapId, svg);
+                }
+            }
+            if (listeners.isEmpty())
+            {
+                return;
+            }
+            final SVG result = svg;
+            mainHandler.post(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    for (SVGMapLoadListener listener : listeners)
+                    {
+                        if (result != null)
+                        {
+                            listener.onMapLoaded(mapId, result);
+                        }
+                        else
+                        {
+                            listener.onMapLoadError(mapId);
+                        }
+                    }
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package id.recharge.library;
+
+
+import android.graphics.Bitmap;
+
+/**
+ * Receives map snapshots requested with
+ * {@link SVGMapView#getCurrentMap(float, android.graphics.Rect, SVGMapSnapshotListener)}.
+ */
+public interface SVGMapSnapshotListener
+{
+    /**
+     * Called on the main thread. Hand the bitmap back with
+     * {@link SVGMapView#releaseSnapshot(Bitmap)} once done so it can be reused.
+     *
+     * @param bitmap the snapshot, null if it could not be drawn
+     */
+    void onSnapshotReady(Bitmap bitmap);
+}
@@ -3,14 +3,18 @@ package id.recharge.library;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.util.AttributeSet;
 import android.util.TypedValue;
 import android.view.Gravity;
 import android.widget.FrameLayout;
 import android.widget.ImageView;
 import android.widget.ImageView.ScaleType;
+import id.recharge.library.core.componet.MapAnimationScheduler;
 import id.recharge.library.core.componet.MapMainView;
 import id.recharge.library.overlay.SVGMapBaseOverlay;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.List;
 
 
@@ -68,6 +72,39 @@ public class SVGMapView extends FrameLayout
         this.mapMainView.loadMap(svgString);
     }
 
+    /**
+     * load a map streamed from svgData, plain or gzipped. The stream is closed when done.
+     */
+    public void loadMap(InputStream svgData)
+    {
+        this.mapMainView.loadMap(svgData);
+    }
+
+    /**
+     * load a map streamed from svgData, plain or gzipped. The channel is closed when done.
+     */
+    public void loadMap(FileChannel svgData)
+    {
+        this.mapMainView.loadMap(svgData);
+    }
+
+    /**
+     * load a map streamed from an asset, plain or gzipped.
+     */
+    public void loadMapFromAsset(String assetPath)
+    {
+        this.mapMainView.loadMapFromAsset(assetPath);
+    }
+
+    /**
+     * show a floor plan of the manager. Plans shown before come back without
+     * parsing, and the floors next to this one are prepared in the background.
+     */
+    public void loadMap(SVGMapManager mapManager, String mapId)
+    {
+        this.mapMainView.loadMap(mapManager, mapId);
+    }
+
     public void setBrandBitmap(Bitmap bitmap) {
         this.brandImageView.setImageBitmap(bitmap);
     }
@@ -94,6 +131,28 @@ public class SVGMapView extends FrameLayout
         this.mapMainView.getCurrentMap();
     }
 
+    /**
+     * get a snapshot of the current map without blocking the UI thread; call it on the UI thread.
+     * The overlays are recorded right away, then rendered on a worker thread into a pooled bitmap
+     * and delivered on the main thread.
+     *
+     * @param scale    scale-down factor of the output bitmap, (0, 1]
+     * @param region   region of interest in view coordinates, null for the whole view
+     * @param listener receives the snapshot
+     */
+    public void getCurrentMap(float scale, Rect region, SVGMapSnapshotListener listener)
+    {
+        this.mapMainView.getCurrentMap(scale, region, listener);
+    }
+
+    /**
+     * give a snapshot bitmap back so the next snapshot can reuse it.
+     */
+    public void releaseSnapshot(Bitmap bitmap)
+    {
+        this.mapMainView.releaseSnapshot(bitmap);
+    }
+
 
     public float getCurrentRotateDegrees()
     {
@@ -129,6 +188,15 @@ public class SVGMapView extends FrameLayout
         return this.mapMainView.getOverLays();
     }
 
+    /**
+     * @return the shared animation scheduler; overlays register their time-based
+     * animations here instead of starting their own threads.
+     */
+    public MapAnimationScheduler getAnimationScheduler()
+    {
+        return this.mapMainView.getAnimationScheduler();
+    }
+
 
 
     public void onDestroy()
@@ -0,0 +1,249 @@
+package id.recharge.library.core.componet;
+
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Single frame clock shared by every animated overlay of a {@link MapMainView}.
+ * <p/>
+ * Overlays register {@link Animation}s instead of running their own threads. On
+ * each frame all active animations are advanced in one pass and the map is
+ * redrawn once. No frame is scheduled while nothing is animating.
+ */
+public class MapAnimationScheduler
+{
+    /**
+     * Fallback frame interval for devices without {@link Choreographer} (API < 16).
+     */
+    private static final long FRAME_DELAY = 16;
+
+    public interface Animation
+    {
+        /**
+         * Advances the animation to the given frame time.
+         *
+         * @param frameTimeMillis frame time in the {@link SystemClock#uptimeMillis()} time base
+         * @return true to keep receiving frames, false when the animation has finished
+         */
+        boolean onAnimationFrame(long frameTimeMillis);
+    }
+
+    private final MapMainView mapMainView;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final List<Animation> animations = new ArrayList<Animation>();
+    private Animation[] frameAnimations = new Animation[8];
+    private FrameSource frameSource;
+    private boolean isFrameScheduled = false;
+    private boolean isPaused = false;
+
+    private final Runnable scheduleRunnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            postFrame();
+        }
+    };
+
+    public MapAnimationScheduler(MapMainView mapMainView)
+    {
+        this.mapMainView = mapMainView;
+    }
+
+    /**
+     * Starts driving an animation from the next frame. Safe to call from any thread.
+     */
+    public void start(Animation animation)
+    {
+        synchronized (animations)
+        {
+            if (!animations.contains(animation))
+            {
+                animations.add(animation);
+            }
+        }
+        scheduleFrame();
+    }
+
+    /**
+     * Stops driving an animation. Safe to call from any thread.
+     */
+    public void cancel(Animation animation)
+    {
+        synchronized (animations)
+        {
+            animations.remove(animation);
+        }
+    }
+
+    public boolean isRunning(Animation animation)
+    {
+        synchronized (animations)
+        {
+            return animations.contains(animation);
+        }
+    }
+
+    public boolean hasAnimations()
+    {
+        synchronized (animations)
+        {
+            return !animations.isEmpty();
+        }
+    }
+
+    public void onPause()
+    {
+        synchronized (animations)
+        {
+            isPaused = true;
+        }
+    }
+
+    public void onResume()
+    {
+        synchronized (animations)
+        {
+            isPaused = false;
+        }
+        scheduleFrame();
+    }
+
+    public void onDestroy()
+    {
+        synchronized (animations)
+        {
+            animations.clear();
+            isPaused = true;
+        }
+    }
+
+    private void scheduleFrame()
+    {
+        synchronized (animations)
+        {
+            if (isFrameScheduled || isPaused || animations.isEmpty())
+            {
+                return;
+            }
+            isFrameScheduled = true;
+        }
+        if (Looper.myLooper() == Looper.getMainLooper())
+        {
+            postFrame();
+        }
+        else
+        {
+            handler.post(scheduleRunnable);
+        }
+    }
+
+    // must be called on the main thread
+    private void postFrame()
+    {
+        if (frameSource == null)
+        {
+            frameSource = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? new ChoreographerFrameSource(this) : new HandlerFrameSource(this, handler);
+        }
+        frameSource.postFrame();
+    }
+
+    void doFrame(long frameTimeMillis)
+    {
+        int count;
+        synchronized (animations)
+        {
+            isFrameScheduled = false;
+            if (isPaused)
+            {
+                return;
+            }
+            count = animations.size();
+            if (frameAnimations.length < count)
+            {
+                frameAnimations = new Animation[count * 2];
+            }
+            animations.toArray(frameAnimations);
+        }
+        for (int i = 0; i < count; i++)
+        {
+            Animation animation = frameAnimations[i];
+            frameAnimations[i] = null;
+            boolean isAlive;
+            try
+            {
+                isAlive = animation.onAnimationFrame(frameTimeMillis);
+            }
+            catch (Exception e)
+            {
+                e.printStackTrace();
+                isAlive = false;
+            }
+            if (!isAlive)
+            {
+                cancel(animation);
+            }
+        }
+        if (count > 0)
+        {
+            mapMainView.refresh();
+        }
+        scheduleFrame();
+    }
+
+    private interface FrameSource
+    {
+        void postFrame();
+    }
+
+    private static class ChoreographerFrameSource implements FrameSource, Choreographer.FrameCallback
+    {
+        private final MapAnimationScheduler scheduler;
+
+        ChoreographerFrameSource(MapAnimationScheduler scheduler)
+        {
+            this.scheduler = scheduler;
+        }
+
+        @Override
+        public void postFrame()
+        {
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos)
+        {
+            scheduler.doFrame(frameTimeNanos / 1000000L);
+        }
+    }
+
+    private static class HandlerFrameSource implements FrameSource, Runnable
+    {
+        private final MapAnimationScheduler scheduler;
+        private final Handler handler;
+
+        HandlerFrameSource(MapAnimationScheduler scheduler, Handler handler)
+        {
+            this.scheduler = scheduler;
+            this.handler = handler;
+        }
+
+        @Override
+        public void postFrame()
+        {
+            handler.postDelayed(this, FRAME_DELAY);
+        }
+
+        @Override
+        public void run()
+        {
+            scheduler.doFrame(SystemClock.uptimeMillis());
+        }
+    }
+}
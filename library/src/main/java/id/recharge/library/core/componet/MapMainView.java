@@ -14,10 +14,20 @@ import android.view.MotionEvent;
 import android.view.SurfaceHolder;
 import android.view.SurfaceHolder.Callback;
 import android.view.SurfaceView;
+import id.recharge.library.SVGMapLoadListener;
+import id.recharge.library.SVGMapManager;
+import id.recharge.library.SVGMapSnapshotListener;
 import id.recharge.library.SVGMapViewListener;
 import id.recharge.library.core.helper.CommonMathHelper;
+import id.recharge.library.core.helper.map.SVG;
 import id.recharge.library.core.helper.map.SVGBuilder;
+import id.recharge.library.core.helper.map.SVGLayerListener;
+import id.recharge.library.core.helper.map.SVGParseException;
 import id.recharge.library.overlay.SVGMapBaseOverlay;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -26,12 +36,15 @@ public class MapMainView extends SurfaceView implements Callback
 {
 
     private static final String TAG = "MapMainView";
+    private static final String MAP_CACHE_DIR = "svg-map";
 
     private SVGMapViewListener mapViewListener = null;
     private SurfaceHolder surfaceHolder;
     private List<SVGMapBaseOverlay> layers;
     private MapOverlay mapOverlay;
     private SparkOverlay sparkOverlay;
+    private MapAnimationScheduler animationScheduler;
+    private final MapSnapshotter snapshotter = new MapSnapshotter();
 
     private boolean isRotationGestureEnabled = true;
     private boolean isZoomGestureEnabled = true;
@@ -39,6 +52,8 @@ public class MapMainView extends SurfaceView implements Callback
     private boolean isRotateWithTouchEventCenter = false;
     private boolean isZoomWithTouchEventCenter = false;
     private boolean isMapLoadFinsh = false;
+    // plan last asked for from a map manager, older answers are dropped
+    private String requestedMapId = null;
 
 
     private static final int TOUCH_STATE_REST = 0;
@@ -133,6 +148,7 @@ public class MapMainView extends SurfaceView implements Callback
                 MapMainView.this.mapOverlay = null;
             }
         };
+        animationScheduler = new MapAnimationScheduler(this);
         getHolder().addCallback(this);
     }
 
@@ -351,6 +367,8 @@ public class MapMainView extends SurfaceView implements Callback
 
     public void onDestroy()
     {
+        animationScheduler.onDestroy();
+        snapshotter.shutdown();
         try
         {
             for (int i = 0; i < layers.size(); i++)
@@ -366,6 +384,7 @@ public class MapMainView extends SurfaceView implements Callback
 
     public void onPause()
     {
+        animationScheduler.onPause();
         try
         {
             for (int i = 0; i < layers.size(); i++)
@@ -381,6 +400,7 @@ public class MapMainView extends SurfaceView implements Callback
 
     public void onResume()
     {
+        animationScheduler.onResume();
         try
         {
             for (int i = 0; i < layers.size(); i++)
@@ -438,6 +458,14 @@ public class MapMainView extends SurfaceView implements Callback
         return this.layers;
     }
 
+    /**
+     * @return the frame clock shared by all animated overlays of this map.
+     */
+    public MapAnimationScheduler getAnimationScheduler()
+    {
+        return this.animationScheduler;
+    }
+
     public void translateBy(float x, float y)
     {
         this.matrix.postTranslate(x, y);
@@ -469,24 +497,98 @@ public class MapMainView extends SurfaceView implements Callback
     }
 
 
-    public void loadMap(final String svgString)
+    public void loadMap(String svgString)
+    {
+        loadMap(new SVGBuilder().readFromString(svgString));
+    }
+
+    /**
+     * Loads an SVG (or SVGZ) straight from a stream, which is closed when done.
+     */
+    public void loadMap(InputStream svgData)
+    {
+        loadMap(new SVGBuilder().readFromInputStream(svgData));
+    }
+
+    /**
+     * Loads an SVG (or SVGZ) straight from a file channel, which is closed when done.
+     */
+    public void loadMap(FileChannel svgData)
+    {
+        loadMap(new SVGBuilder().readFromFileChannel(svgData));
+    }
+
+    /**
+     * Loads an SVG (or SVGZ) from the assets.
+     */
+    public void loadMapFromAsset(String assetPath)
+    {
+        SVGBuilder builder;
+        try
+        {
+            builder = new SVGBuilder().readFromAsset(getContext().getAssets(), assetPath);
+        }
+        catch (IOException e)
+        {
+            Log.e(TAG, "Failed to open map " + assetPath, e);
+            isMapLoadFinsh = false;
+            requestedMapId = null;
+            if (mapViewListener != null)
+            {
+                mapViewListener.onMapLoadError();
+            }
+            return;
+        }
+        loadMap(builder);
+    }
+
+    private void loadMap(final SVGBuilder builder)
     {
         isMapLoadFinsh = false;
+        requestedMapId = null;
         new Thread()
         {
             @Override
             public void run()
             {
                 super.run();
-                Picture picture = new SVGBuilder().readFromString(svgString).build().getPicture();
-                if (picture != null)
+                // parsed once per distinct svg, later loads replay the cached display list.
+                // While parsing, every top-level group is shown as soon as it is drawn.
+                SVG svg;
+                try
                 {
-                    if (MapMainView.this.mapOverlay == null)
-                    {
-                        MapMainView.this.mapOverlay = new MapOverlay(MapMainView.this);
-                        MapMainView.this.getOverLays().add(mapOverlay);
-                    }
-                    MapMainView.this.mapOverlay.setData(picture);
+                    svg = builder
+                            .setCacheDir(new File(getContext().getCacheDir(), MAP_CACHE_DIR))
+                            .setLevelOfDetail(true)
+                            .setLayerListener(new SVGLayerListener()
+                            {
+                                private boolean first = true;
+
+                                @Override
+                                public void onLayerParsed(Picture layer)
+                                {
+                                    if (first)
+                                    {
+                                        obtainMapOverlay().startLayers(layer);
+                                        first = false;
+                                    }
+                                    else
+                                    {
+                                        obtainMapOverlay().addLayer(layer);
+                                    }
+                                    refresh();
+                                }
+                            })
+                            .build();
+                }
+                catch (SVGParseException e)
+                {
+                    // logged by the parser
+                    svg = null;
+                }
+                if (svg != null)
+                {
+                    obtainMapOverlay().setData(svg);
                     Log.i(TAG, "mapLoadFinished");
                     if (mapViewListener != null)
                     {
@@ -505,6 +607,52 @@ public class MapMainView extends SurfaceView implements Callback
         }.start();
     }
 
+    /**
+     * Shows a plan of the manager, right away when it is already parsed.
+     */
+    public void loadMap(SVGMapManager mapManager, String mapId)
+    {
+        isMapLoadFinsh = false;
+        requestedMapId = mapId;
+        mapManager.loadMap(mapId, new SVGMapLoadListener()
+        {
+            @Override
+            public void onMapLoaded(String mapId, SVG svg)
+            {
+                if (!mapId.equals(requestedMapId))
+                {
+                    return;
+                }
+                obtainMapOverlay().setData(svg);
+                refresh();
+                if (mapViewListener != null)
+                {
+                    mapViewListener.onMapLoadComplete();
+                }
+                isMapLoadFinsh = true;
+            }
+
+            @Override
+            public void onMapLoadError(String mapId)
+            {
+                if (mapId.equals(requestedMapId) && mapViewListener != null)
+                {
+                    mapViewListener.onMapLoadError();
+                }
+            }
+        });
+    }
+
+    private MapOverlay obtainMapOverlay()
+    {
+        if (this.mapOverlay == null)
+        {
+            this.mapOverlay = new MapOverlay(this);
+            this.getOverLays().add(mapOverlay);
+        }
+        return this.mapOverlay;
+    }
+
     public void setRotationGestureEnabled(boolean enabled)
     {
         this.isRotationGestureEnabled = enabled;
@@ -544,23 +692,38 @@ public class MapMainView extends SurfaceView implements Callback
 
     public void getCurrentMap()
     {
-        try
+        getCurrentMap(1f, null, new SVGMapSnapshotListener()
         {
-            Bitmap bitmap = Bitmap.createBitmap(getWidth(), getHeight(), Bitmap.Config.ARGB_8888);
-            Canvas bitCanvas = new Canvas(bitmap);
-            for (SVGMapBaseOverlay layer : layers)
-            {
-                layer.draw(bitCanvas, matrix, currentZoom, currentRotateDegrees);
-            }
-            if (mapViewListener != null)
+            @Override
+            public void onSnapshotReady(Bitmap bitmap)
             {
-                mapViewListener.onGetCurrentMap(bitmap);
+                if (mapViewListener != null && bitmap != null)
+                {
+                    mapViewListener.onGetCurrentMap(bitmap);
+                }
             }
-        }
-        catch (Exception e)
-        {
-            e.printStackTrace();
-        }
+        });
+    }
+
+    /**
+     * Records the current map, renders it on a worker thread and delivers it on the main thread.
+     * Call on the main thread, which also draws the overlays on screen.
+     *
+     * @param scale    scale-down factor of the output bitmap, (0, 1]
+     * @param region   region of interest in view coordinates, null for the whole view
+     * @param listener receives the bitmap; return it with {@link #releaseSnapshot(Bitmap)}
+     */
+    public void getCurrentMap(float scale, Rect region, SVGMapSnapshotListener listener)
+    {
+        snapshotter.snapshot(layers, matrix, currentZoom, currentRotateDegrees, getWidth(), getHeight(), scale, region, listener);
+    }
+
+    /**
+     * Hands a snapshot bitmap back to the pool; it must not be used afterwards.
+     */
+    public void releaseSnapshot(Bitmap bitmap)
+    {
+        snapshotter.release(bitmap);
     }
 
     /**
@@ -572,7 +735,7 @@ public class MapMainView extends SurfaceView implements Callback
     {
         Matrix m = new Matrix();
         m.set(matrix);
-        RectF mapRect = new RectF(0, 0, this.mapOverlay.getFloorMap().getWidth(), this.mapOverlay.getFloorMap().getHeight());
+        RectF mapRect = new RectF(0, 0, this.mapOverlay.getMapWidth(), this.mapOverlay.getMapHeight());
         m.mapRect(mapRect);
         float width = mapRect.width();
         float height = mapRect.height();
@@ -686,8 +849,8 @@ public class MapMainView extends SurfaceView implements Callback
      */
     public boolean withFloorPlan(float x, float y) {
         float[] goal = getMapCoordinateWithScreenCoordinate(x, y);
-        return goal[0] > 0 && goal[0] < mapOverlay.getFloorMap().getWidth() && goal[1] > 0
-                && goal[1] < mapOverlay.getFloorMap().getHeight();
+        return goal[0] > 0 && goal[0] < mapOverlay.getMapWidth() && goal[1] > 0
+                && goal[1] < mapOverlay.getMapHeight();
     }
 
 }
@@ -7,13 +7,23 @@ import android.graphics.Picture;
 import android.util.Log;
 import android.view.MotionEvent;
 import android.view.ViewTreeObserver;
+import id.recharge.library.core.helper.map.SVG;
 import id.recharge.library.overlay.SVGMapBaseOverlay;
+import java.util.ArrayList;
+import java.util.List;
 
 
 public class MapOverlay extends SVGMapBaseOverlay
 {
     private MapMainView mapMainView;
     private Picture floorMap;
+    // source of zoom dependent levels of detail for the floor map, if any
+    private SVG svg;
+    // parts of a map that is still loading, drawn in order until setData()
+    private final List<Picture> layers = new ArrayList<Picture>();
+    private boolean fittedToLayers;
+    private int mapWidth;
+    private int mapHeight;
     private Paint paint;
     private boolean hasMeasured;
 
@@ -28,7 +38,71 @@ public class MapOverlay extends SVGMapBaseOverlay
 
     public void setData(Picture floorMap)
     {
-        this.floorMap = floorMap;
+        setData(floorMap, null);
+    }
+
+    /**
+     * Shows a complete map, drawn at the level of detail that suits the zoom,
+     * see {@link SVG#getPicture(float)}.
+     */
+    public void setData(SVG svg)
+    {
+        setData(svg.getPicture(), svg);
+    }
+
+    private void setData(Picture floorMap, SVG svg)
+    {
+        boolean fitted;
+        synchronized (layers)
+        {
+            this.floorMap = floorMap;
+            this.svg = svg;
+            this.layers.clear();
+            this.mapWidth = floorMap.getWidth();
+            this.mapHeight = floorMap.getHeight();
+            fitted = fittedToLayers;
+            fittedToLayers = false;
+        }
+        if (fitted)
+        {
+            // already fitted when the first layer arrived, keep what the user did since
+            return;
+        }
+        fitToView();
+    }
+
+    /**
+     * Starts showing a map that is still being parsed, replacing the current
+     * one. The view is fitted to this first layer.
+     */
+    public void startLayers(Picture firstLayer)
+    {
+        synchronized (layers)
+        {
+            this.floorMap = null;
+            this.svg = null;
+            this.layers.clear();
+            this.layers.add(firstLayer);
+            this.mapWidth = firstLayer.getWidth();
+            this.mapHeight = firstLayer.getHeight();
+            this.fittedToLayers = true;
+        }
+        fitToView();
+    }
+
+    /**
+     * Adds the next layer of the map being parsed, see {@link #startLayers(Picture)}.
+     */
+    public void addLayer(Picture layer)
+    {
+        synchronized (layers)
+        {
+            this.layers.add(layer);
+        }
+    }
+
+    private void fitToView()
+    {
         if (this.mapMainView.getWidth() == 0)
         {
             ViewTreeObserver vto = this.mapMainView.getViewTreeObserver();
@@ -50,20 +124,33 @@ public class MapOverlay extends SVGMapBaseOverlay
         }
     }
 
+    /**
+     * @return the complete floor map, null while it is still loading
+     */
     public Picture getFloorMap()
     {
         return this.floorMap;
     }
 
+    public int getMapWidth()
+    {
+        return mapWidth;
+    }
+
+    public int getMapHeight()
+    {
+        return mapHeight;
+    }
+
 
     private void calcRatio()
     {
-        float zoom = getInitScale(this.mapMainView.getWidth(), this.mapMainView.getHeight(), floorMap.getWidth(), floorMap.getHeight());
+        float zoom = getInitScale(this.mapMainView.getWidth(), this.mapMainView.getHeight(), mapWidth, mapHeight);
         Log.i(TAG, zoom + " = zoom");
         this.mapMainView.setMinZoomValue(zoom);
         this.mapMainView.setCurrentZoomValue(zoom, 0, 0);
-        float deltaHeight = this.mapMainView.getHeight() - zoom * floorMap.getHeight();
-        float deltaWidth = this.mapMainView.getWidth() - zoom * floorMap.getWidth();
+        float deltaHeight = this.mapMainView.getHeight() - zoom * mapHeight;
+        float deltaWidth = this.mapMainView.getWidth() - zoom * mapWidth;
         this.mapMainView.translateBy(deltaWidth / 2, deltaHeight / 2);
         this.mapMainView.refresh();
         hasMeasured = true;
@@ -103,7 +190,12 @@ public class MapOverlay extends SVGMapBaseOverlay
     @Override
     public void onDestroy()
     {
-        this.floorMap = null;
+        synchronized (layers)
+        {
+            this.floorMap = null;
+            this.svg = null;
+            this.layers.clear();
+        }
     }
 
     @Override
@@ -111,9 +203,23 @@ public class MapOverlay extends SVGMapBaseOverlay
     {
         canvas.save();
         canvas.setMatrix(matrix);
-        if (floorMap != null)
+        synchronized (layers)
         {
-            canvas.drawPicture(floorMap);
+            if (svg != null)
+            {
+                canvas.drawPicture(svg.getPicture(currentZoom));
+            }
+            else if (floorMap != null)
+            {
+                canvas.drawPicture(floorMap);
+            }
+            else
+            {
+                for (int i = 0; i < layers.size(); i++)
+                {
+                    canvas.drawPicture(layers.get(i));
+                }
+            }
         }
         canvas.restore();
     }
@@ -0,0 +1,220 @@
+package id.recharge.library.core.componet;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Picture;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import id.recharge.library.SVGMapSnapshotListener;
+import id.recharge.library.overlay.SVGMapBaseOverlay;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Takes map snapshots: the overlays are recorded into a Picture on the
+ * calling thread, the same thread that draws them on screen, so their state
+ * is never read while it changes. The picture is then rendered on a worker
+ * thread into a bitmap taken from a small reusable pool, and delivered on the
+ * main thread.
+ */
+class MapSnapshotter
+{
+    private static final String TAG = "MapSnapshotter";
+
+    private static final int POOL_SIZE = 2;
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<Bitmap> pool = new ArrayList<Bitmap>(POOL_SIZE);
+    private ExecutorService executor;
+
+    /**
+     * Records the visible layers and queues the rendering. Call on the main
+     * thread, which draws the layers in {@link MapMainView#refresh()}; the map
+     * can keep moving while the snapshot renders. The listener gets null if
+     * the layers could not be drawn.
+     *
+     * @param scale  scale-down factor applied to the output, (0, 1]
+     * @param region region of interest in screen coordinates, or null for the whole view
+     */
+    void snapshot(List<SVGMapBaseOverlay> layers, Matrix matrix, float currentZoom, float currentRotateDegrees,
+                  int viewWidth, int viewHeight, float scale, Rect region, final SVGMapSnapshotListener listener)
+    {
+        final SVGMapBaseOverlay[] snapshotLayers;
+        synchronized (layers)
+        {
+            snapshotLayers = layers.toArray(new SVGMapBaseOverlay[layers.size()]);
+        }
+        int left = region == null ? 0 : Math.max(0, region.left);
+        int top = region == null ? 0 : Math.max(0, region.top);
+        int right = region == null ? viewWidth : Math.min(viewWidth, region.right);
+        int bottom = region == null ? viewHeight : Math.min(viewHeight, region.bottom);
+        final int width = Math.max(1, Math.round((right - left) * scale));
+        final int height = Math.max(1, Math.round((bottom - top) * scale));
+
+        // bake crop and scale into the map matrix: overlays call canvas.setMatrix()
+        Matrix snapshotMatrix = new Matrix(matrix);
+        snapshotMatrix.postTranslate(-left, -top);
+        snapshotMatrix.postScale(scale, scale);
+
+        final Picture picture = new Picture();
+        if (!record(picture, snapshotLayers, width, height, snapshotMatrix, currentZoom * scale, currentRotateDegrees))
+        {
+            deliver(listener, null);
+            return;
+        }
+
+        getExecutor().execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Bitmap bitmap = null;
+                try
+                {
+                    bitmap = obtain(width, height);
+                    new Canvas(bitmap).drawPicture(picture);
+                }
+                catch (Exception e)
+                {
+                    Log.e(TAG, "Failed to render snapshot", e);
+                    // a half-drawn bitmap is no snapshot
+                    release(bitmap);
+                    bitmap = null;
+                }
+                deliver(listener, bitmap);
+            }
+        });
+    }
+
+    /**
+     * Returns a snapshot bitmap to the pool.
+     */
+    void release(Bitmap bitmap)
+    {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable())
+        {
+            return;
+        }
+        synchronized (pool)
+        {
+            if (pool.size() < POOL_SIZE && !pool.contains(bitmap))
+            {
+                pool.add(bitmap);
+                return;
+            }
+        }
+        bitmap.recycle();
+    }
+
+    void shutdown()
+    {
+        synchronized (this)
+        {
+            if (executor != null)
+            {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+        synchronized (pool)
+        {
+            for (Bitmap bitmap : pool)
+            {
+                bitmap.recycle();
+            }
+            pool.clear();
+        }
+    }
+
+    /**
+     * Draws the layers into the picture.
+     *
+     * @return false if a layer failed to draw
+     */
+    private static boolean record(Picture picture, SVGMapBaseOverlay[] layers, int width, int height,
+                                  Matrix matrix, float zoom, float rotateDegrees)
+    {
+        Canvas canvas = picture.beginRecording(width, height);
+        try
+        {
+            for (SVGMapBaseOverlay layer : layers)
+            {
+                if (layer.isVisible)
+                {
+                    layer.draw(canvas, matrix, zoom, rotateDegrees);
+                }
+            }
+            return true;
+        }
+        catch (Exception e)
+        {
+            Log.e(TAG, "Failed to record snapshot", e);
+            return false;
+        }
+        finally
+        {
+            picture.endRecording();
+        }
+    }
+
+    private void deliver(final SVGMapSnapshotListener listener, final Bitmap bitmap)
+    {
+        mainHandler.post(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                listener.onSnapshotReady(bitmap);
+            }
+        });
+    }
+
+    private synchronized ExecutorService getExecutor()
+    {
+        if (executor == null)
+        {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory()
+            {
+                @Override
+                public Thread newThread(Runnable r)
+                {
+                    Thread thread = new Thread(r, TAG);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private Bitmap obtain(int width, int height)
+    {
+        synchronized (pool)
+        {
+            for (int i = pool.size() - 1; i >= 0; i--)
+            {
+                Bitmap bitmap = pool.get(i);
+                if (bitmap.getWidth() == width && bitmap.getHeight() == height)
+                {
+                    pool.remove(i);
+                    bitmap.eraseColor(Color.TRANSPARENT);
+                    return bitmap;
+                }
+            }
+            // the view was resized or a different region asked for, drop stale sizes
+            for (Bitmap bitmap : pool)
+            {
+                bitmap.recycle();
+            }
+            pool.clear();
+        }
+        return Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    }
+}
@@ -8,7 +8,7 @@ import android.graphics.PointF;
 import android.view.MotionEvent;
 import id.recharge.library.overlay.SVGMapBaseOverlay;
 
-public class SparkOverlay extends SVGMapBaseOverlay
+public class SparkOverlay extends SVGMapBaseOverlay implements MapAnimationScheduler.Animation
 {
     private static final float STEP = 2f;
     private static final long delayTime = 40;
@@ -16,13 +16,12 @@ public class SparkOverlay extends SVGMapBaseOverlay
     private MapMainView mapMainView;
     private float totalRadius;
     private int repeatTimes = 3;
-    private int currentRadius = 0;
-    private int currentRepeatTime = 0;
+    private float currentRadius = 0;
     private Paint paint;
     private PointF centerPoint;
-    private int alphaStep = 0;
-    private int currentAlpha = 255;
-    private DrawThread drawThread = new DrawThread();
+    private int startAlpha = 255;
+    private long cycleDuration;
+    private long startTime = -1;
 
     public SparkOverlay(MapMainView mapMainView, float radius, PointF centerPoint, int color, int repeatTimes)
     {
@@ -32,8 +31,9 @@ public class SparkOverlay extends SVGMapBaseOverlay
     private void initLayer(MapMainView mapMainView, float radius, PointF centerPoint, int color, int repeatTimes)
     {
         this.totalRadius = radius;
-        this.currentAlpha = color >>> 24;
-        this.alphaStep = (int) (currentAlpha / (this.totalRadius / STEP));
+        this.startAlpha = color >>> 24;
+        // keep the pace of the old thread: STEP units of radius every delayTime ms
+        this.cycleDuration = Math.max(delayTime, (long) (this.totalRadius / STEP * delayTime));
         this.repeatTimes = repeatTimes;
         this.mapMainView = mapMainView;
         this.centerPoint = centerPoint;
@@ -42,48 +42,32 @@ public class SparkOverlay extends SVGMapBaseOverlay
         this.paint.setColor(color);
         this.paint.setAntiAlias(true);
         this.paint.setStyle(Style.FILL_AND_STROKE);
-        drawThread.start();
+        mapMainView.getAnimationScheduler().start(this);
     }
 
-    private class DrawThread extends Thread
+    @Override
+    public boolean onAnimationFrame(long frameTimeMillis)
     {
-        @Override
-        public void run()
+        if (startTime < 0)
+        {
+            startTime = frameTimeMillis;
+        }
+        long elapsed = frameTimeMillis - startTime;
+        if (elapsed >= cycleDuration * repeatTimes)
         {
-            super.run();
-            while (currentRepeatTime != repeatTimes)
-            {
-                if (currentRepeatTime < repeatTimes)
-                {
-                    if (currentRadius >= totalRadius)
-                    {
-                        currentRadius = 0;
-                        currentRepeatTime++;
-                    }
-                    else
-                    {
-                        currentRadius += STEP;
-                        currentAlpha -= alphaStep;
-                        paint.setAlpha(currentAlpha);
-                        mapMainView.refresh();
-                    }
-                }
-                try
-                {
-                    Thread.sleep(delayTime);
-                }
-                catch (InterruptedException e)
-                {
-                    e.printStackTrace();
-                }
-            }
-            mapMainView.getOverLays().remove(SparkOverlay.this);
+            mapMainView.getOverLays().remove(this);
+            return false;
         }
+        float progress = (elapsed % cycleDuration) / (float) cycleDuration;
+        currentRadius = totalRadius * progress;
+        paint.setAlpha((int) (startAlpha * (1 - progress)));
+        return true;
     }
 
     @Override
     public void onDestroy()
     {
+        mapMainView.getAnimationScheduler().cancel(this);
     }
 
     @Override
@@ -95,10 +79,6 @@ public class SparkOverlay extends SVGMapBaseOverlay
     @Override
     public void onResume()
     {
-        if (!drawThread.isAlive())
-        {
-            new DrawThread().start();
-        }
     }
 
     @Override
@@ -11,25 +11,43 @@ package id.recharge.library.core.helper.map;
  */
 /**
  * Parses numbers from SVG text. Based on the Batik Number Parser (Apache 2 License).
+ * <p/>
+ * An instance can be {@link #reset(String, int) reset} onto new text and reused, so parsing a whole document only
+ * allocates when the character or number buffers have to grow.
  * 
  * @author Apache Software Foundation, Larva Labs LLC
  */
 public class ParserHelper {
 
-	private final char[] s;
-	private final int n;
+	private char[] s;
+	private int n;
 	private char current;
 	public int pos;
 
+	// numbers read by parseNumbers()
+	private float[] numbers = new float[16];
+	private int numberCount;
+
+	public ParserHelper() {
+		this.s = new char[64];
+	}
+
 	public ParserHelper(String str, int pos) {
-		try {
-			this.s = str.toCharArray();
-		} catch (Exception e) {
-			throw new RuntimeException(e);
+		this.s = new char[str.length()];
+		reset(str, pos);
+	}
+
+	/**
+	 * Points the parser at new text, reusing the character buffer when it is large enough.
+	 */
+	public void reset(String str, int pos) {
+		n = str.length();
+		if (s.length < n) {
+			s = new char[Math.max(n, s.length * 2)];
 		}
+		str.getChars(0, n, s, 0);
 		this.pos = pos;
-		n = s.length;
-		current = s[pos];
+		current = pos < n ? s[pos] : '\0';
 	}
 
 	private char read() {
@@ -383,6 +401,48 @@ public class ParserHelper {
 		return f;
 	}
 
+	/**
+	 * Reads a list of numbers separated by whitespace and/or commas, starting at start, into the number buffer. Stops
+	 * at the first character that can not be part of a number, such as a path command or a closing parenthesis, and
+	 * leaves {@link #pos} there.
+	 * 
+	 * @return the number of numbers read, see {@link #getNumber(int)}
+	 */
+	public int parseNumbers(String str, int start) {
+		reset(str, start);
+		numberCount = 0;
+		while (pos < n) {
+			char c = s[pos];
+			if ((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.') {
+				if (numberCount == numbers.length) {
+					float[] grown = new float[numbers.length * 2];
+					System.arraycopy(numbers, 0, grown, 0, numberCount);
+					numbers = grown;
+				}
+				numbers[numberCount++] = parseFloat();
+			} else if (c == ',' || Character.isWhitespace(c)) {
+				advance();
+			} else {
+				break;
+			}
+		}
+		return numberCount;
+	}
+
+	/**
+	 * @return a number read by the last {@link #parseNumbers(String, int)} call
+	 */
+	public float getNumber(int index) {
+		if (index >= numberCount) {
+			throw new IndexOutOfBoundsException("Number " + index + " of " + numberCount);
+		}
+		return numbers[index];
+	}
+
+	public int getNumberCount() {
+		return numberCount;
+	}
+
 	public int nextFlag() {
 		skipWhitespace();
 		int flag = current - '0';
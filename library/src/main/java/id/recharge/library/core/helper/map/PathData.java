@@ -0,0 +1,263 @@
+package id.recharge.library.core.helper.map;
+
+/**
+ * Path geometry as a flat list of verbs and absolute coordinates.
+ * <p/>
+ * {@code android.graphics.Path} can not be read back once built, so the
+ * parser records path data here first and hands it to its {@link SVGSink}.
+ * This is what gets written into the display list cache, and the picture
+ * recorder builds its paths from it.
+ */
+public class PathData
+{
+    public static final byte MOVE_TO = 0;
+    public static final byte LINE_TO = 1;
+    public static final byte QUAD_TO = 2;
+    public static final byte CUBIC_TO = 3;
+    public static final byte CLOSE = 4;
+
+    private static final int[] COORDS_PER_VERB = {2, 2, 4, 6, 0};
+
+    private byte[] verbs;
+    private int verbCount = 0;
+    private float[] coords;
+    private int coordCount = 0;
+
+    public PathData()
+    {
+        this(16);
+    }
+
+    public PathData(int verbCapacity)
+    {
+        this.verbs = new byte[verbCapacity];
+        this.coords = new float[verbCapacity * 2];
+    }
+
+    public void reset()
+    {
+        verbCount = 0;
+        coordCount = 0;
+    }
+
+    public void moveTo(float x, float y)
+    {
+        addVerb(MOVE_TO);
+        coords[coordCount++] = x;
+        coords[coordCount++] = y;
+    }
+
+    public void lineTo(float x, float y)
+    {
+        addVerb(LINE_TO);
+        coords[coordCount++] = x;
+        coords[coordCount++] = y;
+    }
+
+    public void quadTo(float x1, float y1, float x, float y)
+    {
+        addVerb(QUAD_TO);
+        coords[coordCount++] = x1;
+        coords[coordCount++] = y1;
+        coords[coordCount++] = x;
+        coords[coordCount++] = y;
+    }
+
+    public void cubicTo(float x1, float y1, float x2, float y2, float x, float y)
+    {
+        addVerb(CUBIC_TO);
+        coords[coordCount++] = x1;
+        coords[coordCount++] = y1;
+        coords[coordCount++] = x2;
+        coords[coordCount++] = y2;
+        coords[coordCount++] = x;
+        coords[coordCount++] = y;
+    }
+
+    public void close()
+    {
+        addVerb(CLOSE);
+    }
+
+    /**
+     * Appends an SVG elliptical arc from (lastX, lastY) to (x, y) as cubic
+     * segments of at most 90 degrees each.
+     * <p/>
+     * See http://www.w3.org/TR/SVG/implnote.html#ArcImplementationNotes
+     */
+    public void arcTo(float lastX, float lastY, float rx, float ry, float theta, boolean largeArc, boolean sweep, float x, float y)
+    {
+        if (rx == 0 || ry == 0)
+        {
+            lineTo(x, y);
+            return;
+        }
+        if (x == lastX && y == lastY)
+        {
+            return; // nothing to draw
+        }
+        double radiusX = Math.abs(rx);
+        double radiusY = Math.abs(ry);
+        double phi = Math.toRadians(theta);
+        double cos = Math.cos(phi);
+        double sin = Math.sin(phi);
+
+        // endpoint to center parameterization
+        double dx2 = (lastX - x) / 2.0;
+        double dy2 = (lastY - y) / 2.0;
+        double x1p = cos * dx2 + sin * dy2;
+        double y1p = -sin * dx2 + cos * dy2;
+        double lambda = (x1p * x1p) / (radiusX * radiusX) + (y1p * y1p) / (radiusY * radiusY);
+        if (lambda > 1)
+        {
+            double scale = Math.sqrt(lambda);
+            radiusX *= scale;
+            radiusY *= scale;
+        }
+        double rxs = radiusX * radiusX;
+        double rys = radiusY * radiusY;
+        double denominator = rxs * y1p * y1p + rys * x1p * x1p;
+        double coefficient = denominator == 0 ? 0 : Math.sqrt(Math.max(0, (rxs * rys - denominator) / denominator));
+        if (largeArc == sweep)
+        {
+            coefficient = -coefficient;
+        }
+        double cxp = coefficient * radiusX * y1p / radiusY;
+        double cyp = -coefficient * radiusY * x1p / radiusX;
+        double cx = cos * cxp - sin * cyp + (lastX + x) / 2.0;
+        double cy = sin * cxp + cos * cyp + (lastY + y) / 2.0;
+
+        double ux = (x1p - cxp) / radiusX;
+        double uy = (y1p - cyp) / radiusY;
+        double vx = (-x1p - cxp) / radiusX;
+        double vy = (-y1p - cyp) / radiusY;
+        double start = Math.atan2(uy, ux);
+        double extent = Math.atan2(ux * vy - uy * vx, ux * vx + uy * vy);
+        if (!sweep && extent > 0)
+        {
+            extent -= 2 * Math.PI;
+        }
+        else if (sweep && extent < 0)
+        {
+            extent += 2 * Math.PI;
+        }
+
+        int segments = Math.max(1, (int) Math.ceil(Math.abs(extent) / (Math.PI / 2) - 1e-7));
+        double delta = extent / segments;
+        double k = 4.0 / 3.0 * Math.tan(delta / 4);
+        double angle = start;
+        double cosA = Math.cos(angle);
+        double sinA = Math.sin(angle);
+        for (int i = 0; i < segments; i++)
+        {
+            double cosB = Math.cos(angle + delta);
+            double sinB = Math.sin(angle + delta);
+            // control points on the unit circle, then scaled, rotated and moved onto the ellipse
+            double u1 = cosA - k * sinA;
+            double v1 = sinA + k * cosA;
+            double u2 = cosB + k * sinB;
+            double v2 = sinB - k * cosB;
+            float endX;
+            float endY;
+            if (i == segments - 1)
+            {
+                endX = x;
+                endY = y;
+            }
+            else
+            {
+                endX = (float) (cx + cos * radiusX * cosB - sin * radiusY * sinB);
+                endY = (float) (cy + sin * radiusX * cosB + cos * radiusY * sinB);
+            }
+            cubicTo((float) (cx + cos * radiusX * u1 - sin * radiusY * v1),
+                    (float) (cy + sin * radiusX * u1 + cos * radiusY * v1),
+                    (float) (cx + cos * radiusX * u2 - sin * radiusY * v2),
+                    (float) (cy + sin * radiusX * u2 + cos * radiusY * v2),
+                    endX, endY);
+            angle += delta;
+            cosA = cosB;
+            sinA = sinB;
+        }
+    }
+
+    public int getVerbCount()
+    {
+        return verbCount;
+    }
+
+    /**
+     * @return the verb array, valid up to {@link #getVerbCount()}
+     */
+    public byte[] getVerbs()
+    {
+        return verbs;
+    }
+
+    public int getCoordCount()
+    {
+        return coordCount;
+    }
+
+    /**
+     * @return the coordinate array, x0, y0, x1, y1, ... valid up to {@link #getCoordCount()}
+     */
+    public float[] getCoords()
+    {
+        return coords;
+    }
+
+    /**
+     * Computes the bounds of all points, control points included, the same as
+     * {@code Path.computeBounds(RectF, boolean)} with exact set to false.
+     *
+     * @param bounds receives left, top, right, bottom
+     */
+    public void computeBounds(float[] bounds)
+    {
+        if (coordCount == 0)
+        {
+            bounds[0] = bounds[1] = bounds[2] = bounds[3] = 0;
+            return;
+        }
+        float left = coords[0];
+        float top = coords[1];
+        float right = left;
+        float bottom = top;
+        for (int i = 2; i < coordCount; i += 2)
+        {
+            float x = coords[i];
+            float y = coords[i + 1];
+            left = Math.min(left, x);
+            right = Math.max(right, x);
+            top = Math.min(top, y);
+            bottom = Math.max(bottom, y);
+        }
+        bounds[0] = left;
+        bounds[1] = top;
+        bounds[2] = right;
+        bounds[3] = bottom;
+    }
+
+    static int coordsPerVerb(byte verb)
+    {
+        return COORDS_PER_VERB[verb];
+    }
+
+    private void addVerb(byte verb)
+    {
+        if (verbCount == verbs.length)
+        {
+            byte[] grown = new byte[verbs.length * 2];
+            System.arraycopy(verbs, 0, grown, 0, verbCount);
+            verbs = grown;
+        }
+        verbs[verbCount++] = verb;
+        int needed = coordCount + 6;
+        if (needed > coords.length)
+        {
+            float[] grown = new float[Math.max(needed, coords.length * 2)];
+            System.arraycopy(coords, 0, grown, 0, coordCount);
+            coords = grown;
+        }
+    }
+}
@@ -21,6 +21,11 @@ import android.graphics.drawable.PictureDrawable;
  */
 public class SVG {
 
+	/**
+	 * How far, in screen pixels, a simplified level may stray from the full picture.
+	 */
+	private static final float MAX_LEVEL_ERROR = 1f;
+
 	/**
 	 * The parsed Picture object.
 	 */
@@ -39,6 +44,17 @@ public class SVG {
 
 	private PictureDrawable drawable = null;
 
+	/**
+	 * Estimated memory held by the picture, see {@link #getApproximateSize()}.
+	 */
+	private int approximateSize = 0;
+
+	/**
+	 * Simplified versions of the picture, coarsest last, and the tolerance in document units each was simplified to.
+	 */
+	private Picture[] levels = null;
+	private float[] levelTolerances = null;
+
 	/**
 	 * Construct a new SVG.
 	 * 
@@ -59,6 +75,15 @@ public class SVG {
 		this.limits = limits;
 	}
 
+	void setApproximateSize(int approximateSize) {
+		this.approximateSize = approximateSize;
+	}
+
+	void setLevels(Picture[] levels, float[] levelTolerances) {
+		this.levels = levels;
+		this.levelTolerances = levelTolerances;
+	}
+
 	/**
 	 * Get a {@link android.graphics.drawable.Drawable} of the SVG.
 	 * 
@@ -80,6 +105,23 @@ public class SVG {
 		return picture;
 	}
 
+	/**
+	 * Get the picture to draw at a zoom level: the coarsest level of detail that stays within a pixel of the full
+	 * picture, or the full picture when it was built without levels, see {@link SVGBuilder#setLevelOfDetail(boolean)}.
+	 * 
+	 * @param zoom screen pixels per document unit.
+	 * @return the picture.
+	 */
+	public Picture getPicture(float zoom) {
+		Picture result = picture;
+		if (levels != null) {
+			for (int i = 0; i < levels.length && levelTolerances[i] * zoom <= MAX_LEVEL_ERROR; i++) {
+				result = levels[i];
+			}
+		}
+		return result;
+	}
+
 	/**
 	 * Gets the bounding rectangle for the SVG, if one was specified.
 	 * 
@@ -98,4 +140,15 @@ public class SVG {
 	public RectF getLimits() {
 		return limits;
 	}
+
+	/**
+	 * Gets an estimate of the memory the recorded picture holds, from the draw calls and path geometry that went into
+	 * it. Pictures do not report their size, so this is meant for weighing SVGs against each other in a cache, not as
+	 * an exact figure.
+	 * 
+	 * @return the estimated size in bytes.
+	 */
+	public int getApproximateSize() {
+		return approximateSize;
+	}
 }
@@ -0,0 +1,325 @@
+package id.recharge.library.core.helper.map;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * {@link SVGSink} that records into growable primitive arrays, so the parser
+ * can run on the plain JVM, in tests, benchmarks and tools, without Android.
+ * <p/>
+ * Every call appends one op. Its int operands go to {@link #getInts()} and
+ * its float operands to {@link #getFloats()}, both in call order:
+ * <ul>
+ * <li>BEGIN: width, height (ints)
+ * <li>RESTORE_TO_COUNT: count (int)
+ * <li>CONCAT: scaleX, skewX, transX, skewY, scaleY, transY (floats)
+ * <li>TRANSLATE: dx, dy (floats)
+ * <li>CLIP_RECT, DRAW_RECT, DRAW_OVAL: left, top, right, bottom (floats)
+ * <li>DRAW_ROUND_RECT: left, top, right, bottom, rx, ry (floats)
+ * <li>DRAW_LINE: x1, y1, x2, y2 (floats)
+ * <li>DRAW_PATH: verb count, coordinate count (ints), the verbs appended to
+ * {@link #getVerbs()} and the coordinates to the floats
+ * <li>DRAW_LAST_PATH: draws the previous path again, no geometry
+ * </ul>
+ * Draw ops take a paint index as their first int. Paints are interned by
+ * value, so a document only keeps as many as it has distinct styles.
+ * {@link #reset()} keeps the arrays, so a recorder reused across parses stops
+ * allocating once it has grown.
+ */
+public final class SVGArrayRecorder implements SVGSink
+{
+    public static final byte OP_BEGIN = 1;
+    public static final byte OP_END = 2;
+    public static final byte OP_SAVE = 3;
+    public static final byte OP_RESTORE = 4;
+    public static final byte OP_RESTORE_TO_COUNT = 5;
+    public static final byte OP_CONCAT = 6;
+    public static final byte OP_TRANSLATE = 7;
+    public static final byte OP_CLIP_RECT = 8;
+    public static final byte OP_DRAW_RECT = 9;
+    public static final byte OP_DRAW_ROUND_RECT = 10;
+    public static final byte OP_DRAW_OVAL = 11;
+    public static final byte OP_DRAW_LINE = 12;
+    public static final byte OP_DRAW_PATH = 13;
+    public static final byte OP_DRAW_LAST_PATH = 14;
+
+    private byte[] ops = new byte[256];
+    private int opCount = 0;
+    private int[] ints = new int[256];
+    private int intCount = 0;
+    private float[] floats = new float[1024];
+    private int floatCount = 0;
+    private byte[] verbs = new byte[256];
+    private int verbCount = 0;
+
+    private final ArrayList<SVGPaint> paints = new ArrayList<SVGPaint>();
+    private final HashMap<SVGPaint, Integer> paintIndices = new HashMap<SVGPaint, Integer>();
+
+    private final float[] values = new float[9];
+    private PathData lastPath;
+    private int saveCount = 1;
+    private int drawCount = 0;
+
+    /**
+     * Forgets the recording, keeping the arrays for the next one.
+     */
+    public void reset()
+    {
+        opCount = 0;
+        intCount = 0;
+        floatCount = 0;
+        verbCount = 0;
+        paints.clear();
+        paintIndices.clear();
+        lastPath = null;
+        saveCount = 1;
+        drawCount = 0;
+    }
+
+    @Override
+    public void begin(int width, int height)
+    {
+        op(OP_BEGIN);
+        ints(2);
+        ints[intCount++] = width;
+        ints[intCount++] = height;
+        saveCount = 1;
+    }
+
+    @Override
+    public void end()
+    {
+        op(OP_END);
+    }
+
+    @Override
+    public int save()
+    {
+        op(OP_SAVE);
+        return saveCount++;
+    }
+
+    @Override
+    public void restore()
+    {
+        op(OP_RESTORE);
+        if (saveCount > 1)
+        {
+            saveCount--;
+        }
+    }
+
+    @Override
+    public void restoreToCount(int count)
+    {
+        op(OP_RESTORE_TO_COUNT);
+        ints(1);
+        ints[intCount++] = count;
+        saveCount = Math.max(1, Math.min(saveCount, count));
+    }
+
+    @Override
+    public void concat(SVGMatrix matrix)
+    {
+        op(OP_CONCAT);
+        matrix.getValues(values);
+        floats(6);
+        System.arraycopy(values, 0, floats, floatCount, 6);
+        floatCount += 6;
+    }
+
+    @Override
+    public void translate(float dx, float dy)
+    {
+        op(OP_TRANSLATE);
+        floats(2);
+        floats[floatCount++] = dx;
+        floats[floatCount++] = dy;
+    }
+
+    @Override
+    public void clipRect(float left, float top, float right, float bottom)
+    {
+        op(OP_CLIP_RECT);
+        putRect(left, top, right, bottom);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, SVGPaint paint)
+    {
+        draw(OP_DRAW_RECT, paint);
+        putRect(left, top, right, bottom);
+    }
+
+    @Override
+    public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, SVGPaint paint)
+    {
+        draw(OP_DRAW_ROUND_RECT, paint);
+        putRect(left, top, right, bottom);
+        floats(2);
+        floats[floatCount++] = rx;
+        floats[floatCount++] = ry;
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, SVGPaint paint)
+    {
+        draw(OP_DRAW_OVAL, paint);
+        putRect(left, top, right, bottom);
+    }
+
+    @Override
+    public void drawLine(float x1, float y1, float x2, float y2, SVGPaint paint)
+    {
+        draw(OP_DRAW_LINE, paint);
+        putRect(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void drawPath(PathData path, SVGPaint paint)
+    {
+        if (path == lastPath)
+        {
+            draw(OP_DRAW_LAST_PATH, paint);
+            return;
+        }
+        draw(OP_DRAW_PATH, paint);
+        int pathVerbs = path.getVerbCount();
+        int pathCoords = path.getCoordCount();
+        ints(2);
+        ints[intCount++] = pathVerbs;
+        ints[intCount++] = pathCoords;
+        if (verbCount + pathVerbs > verbs.length)
+        {
+            verbs = grow(verbs, verbCount + pathVerbs);
+        }
+        System.arraycopy(path.getVerbs(), 0, verbs, verbCount, pathVerbs);
+        verbCount += pathVerbs;
+        floats(pathCoords);
+        System.arraycopy(path.getCoords(), 0, floats, floatCount, pathCoords);
+        floatCount += pathCoords;
+        lastPath = path;
+    }
+
+    public int getOpCount()
+    {
+        return opCount;
+    }
+
+    /**
+     * @return the ops, one of the OP_ constants each, valid up to {@link #getOpCount()}
+     */
+    public byte[] getOps()
+    {
+        return ops;
+    }
+
+    public int getIntCount()
+    {
+        return intCount;
+    }
+
+    public int[] getInts()
+    {
+        return ints;
+    }
+
+    public int getFloatCount()
+    {
+        return floatCount;
+    }
+
+    public float[] getFloats()
+    {
+        return floats;
+    }
+
+    public int getVerbCount()
+    {
+        return verbCount;
+    }
+
+    /**
+     * @return the path verbs of all DRAW_PATH ops, see {@link PathData}
+     */
+    public byte[] getVerbs()
+    {
+        return verbs;
+    }
+
+    public int getDrawCount()
+    {
+        return drawCount;
+    }
+
+    public int getPaintCount()
+    {
+        return paints.size();
+    }
+
+    public SVGPaint getPaint(int index)
+    {
+        return paints.get(index);
+    }
+
+    private void draw(byte op, SVGPaint paint)
+    {
+        op(op);
+        Integer index = paintIndices.get(paint);
+        if (index == null)
+        {
+            SVGPaint copy = new SVGPaint(paint);
+            index = paints.size();
+            paints.add(copy);
+            paintIndices.put(copy, index);
+        }
+        ints(1);
+        ints[intCount++] = index;
+        drawCount++;
+    }
+
+    private void putRect(float left, float top, float right, float bottom)
+    {
+        floats(4);
+        floats[floatCount++] = left;
+        floats[floatCount++] = top;
+        floats[floatCount++] = right;
+        floats[floatCount++] = bottom;
+    }
+
+    private void op(byte op)
+    {
+        if (opCount == ops.length)
+        {
+            ops = grow(ops, opCount + 1);
+        }
+        ops[opCount++] = op;
+    }
+
+    private void ints(int count)
+    {
+        if (intCount + count > ints.length)
+        {
+            int[] grown = new int[Math.max(ints.length * 2, intCount + count)];
+            System.arraycopy(ints, 0, grown, 0, intCount);
+            ints = grown;
+        }
+    }
+
+    private void floats(int count)
+    {
+        if (floatCount + count > floats.length)
+        {
+            float[] grown = new float[Math.max(floats.length * 2, floatCount + count)];
+            System.arraycopy(floats, 0, grown, 0, floatCount);
+            floats = grown;
+        }
+    }
+
+    private static byte[] grow(byte[] array, int needed)
+    {
+        byte[] grown = new byte[Math.max(array.length * 2, needed)];
+        System.arraycopy(array, 0, grown, 0, array.length);
+        return grown;
+    }
+}
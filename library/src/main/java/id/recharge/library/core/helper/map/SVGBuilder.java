@@ -3,11 +3,17 @@ package id.recharge.library.core.helper.map;
 import android.content.res.AssetManager;
 import android.content.res.Resources;
 import android.graphics.ColorFilter;
+import android.graphics.Picture;
 import android.util.Log;
 import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.zip.GZIPInputStream;
 import org.xml.sax.InputSource;
 
@@ -20,6 +26,11 @@ import org.xml.sax.InputSource;
  */
 public class SVGBuilder
 {
+    // simplification tolerances of the levels of detail, as fractions of the
+    // document size: each level is used while the document spans at most
+    // 1 / fraction pixels, i.e. about 4x and 1x a phone screen
+    static final float[] LEVEL_FRACTIONS = {1f / 4096, 1f / 1024};
+
     private InputStream data;
     private Integer searchColor = null;
     private Integer replaceColor = null;
@@ -27,6 +38,9 @@ public class SVGBuilder
     private boolean whiteMode = false;
     private boolean overideOpacity = false;
     private boolean closeInputStream = true;
+    private File cacheDir = null;
+    private SVGLayerListener layerListener = null;
+    private boolean levelOfDetail = false;
 
     /**
      * Parse SVG data from an input stream.
@@ -41,6 +55,20 @@ public class SVGBuilder
         return this;
     }
 
+    /**
+     * Parse SVG data from a file channel, read from its current position.
+     * The channel is closed when done unless
+     * {@link #setCloseInputStreamWhenDone(boolean)} says otherwise.
+     *
+     * @param svgData the channel, with SVG XML data in UTF-8 character
+     *                encoding, or gzipped.
+     */
+    public SVGBuilder readFromFileChannel(FileChannel svgData)
+    {
+        this.data = Channels.newInputStream(svgData);
+        return this;
+    }
+
     /**
      * Parse SVG data from a string.
      *
@@ -158,6 +186,46 @@ public class SVGBuilder
         return this;
     }
 
+    /**
+     * Caches the parsed result as a binary display list in the given
+     * directory, keyed by a hash of the SVG content and the parsing options.
+     * Later builds of the same content replay the cached file instead of
+     * parsing the XML. Ignored when a colour filter is set.<br>
+     * <em>(default is null, no caching)</em>
+     */
+    public SVGBuilder setCacheDir(File cacheDir)
+    {
+        this.cacheDir = cacheDir;
+        return this;
+    }
+
+    /**
+     * Also records simplified versions of the picture for drawing zoomed out,
+     * see {@link SVG#getPicture(float)}: paths are reduced with
+     * Douglas-Peucker and elements below a pixel at that zoom are left out.
+     * Costs a little more parsing time and memory.<br>
+     * <em>(default is false)</em>
+     */
+    public SVGBuilder setLevelOfDetail(boolean levelOfDetail)
+    {
+        this.levelOfDetail = levelOfDetail;
+        return this;
+    }
+
+    /**
+     * Parses with a streaming pull parser and reports each top-level group
+     * to the listener as soon as it has been drawn, so a large SVG can be
+     * shown while it is still loading. {@link #build()} still returns the
+     * whole SVG at the end. A build served from the display list cache
+     * returns directly without calling the listener.<br>
+     * <em>(default is null, the whole document is parsed before anything is returned)</em>
+     */
+    public SVGBuilder setLayerListener(SVGLayerListener layerListener)
+    {
+        this.layerListener = layerListener;
+        return this;
+    }
+
     /**
      * Loads, reads, parses the SVG (or SVGZ).
      *
@@ -173,17 +241,9 @@ public class SVGBuilder
 
         try
         {
-            final SVGParser.SVGHandler handler = new SVGParser.SVGHandler();
+            final SVGHandler handler = new SVGHandler();
             handler.setColorSwap(searchColor, replaceColor, overideOpacity);
             handler.setWhiteMode(whiteMode);
-            if (strokeColorFilter != null)
-            {
-                handler.strokePaint.setColorFilter(strokeColorFilter);
-            }
-            if (fillColorFilter != null)
-            {
-                handler.fillPaint.setColorFilter(fillColorFilter);
-            }
 
             // SVGZ support (based on
             // https://github.com/josefpavlik/svg-android/commit/fc0522b2e1):
@@ -209,7 +269,12 @@ public class SVGBuilder
                 throw new SVGParseException(ioe);
             }
 
-            final SVG svg = SVGParser.parse(new InputSource(data), handler);
+            if (cacheDir != null && strokeColorFilter == null && fillColorFilter == null)
+            {
+                return buildCached(handler);
+            }
+
+            final SVG svg = parse(data, handler, null);
             return svg;
 
         }
@@ -228,4 +293,156 @@ public class SVGBuilder
             }
         }
     }
+
+    private SVG parse(InputStream in, SVGHandler handler, SVGSink mirror)
+    {
+        SVGPictureRecorder recorder = new SVGPictureRecorder();
+        recorder.setColorFilters(fillColorFilter, strokeColorFilter);
+        SVGPictureRecorder[] levelRecorders = null;
+        SVGDetailSink[] levelSinks = null;
+        if (levelOfDetail)
+        {
+            // the levels see the whole document as the mirror does
+            levelRecorders = new SVGPictureRecorder[LEVEL_FRACTIONS.length];
+            levelSinks = new SVGDetailSink[LEVEL_FRACTIONS.length];
+            SVGSink[] mirrors = new SVGSink[LEVEL_FRACTIONS.length + (mirror == null ? 0 : 1)];
+            for (int i = 0; i < LEVEL_FRACTIONS.length; i++)
+            {
+                levelRecorders[i] = new SVGPictureRecorder();
+                levelRecorders[i].setColorFilters(fillColorFilter, strokeColorFilter);
+                levelSinks[i] = new SVGDetailSink(levelRecorders[i], LEVEL_FRACTIONS[i]);
+                mirrors[i] = levelSinks[i];
+            }
+            if (mirror != null)
+            {
+                mirrors[LEVEL_FRACTIONS.length] = mirror;
+            }
+            mirror = new SVGTeeSink(mirrors);
+        }
+        handler.setMirror(mirror);
+
+        SVG svg;
+        if (layerListener != null)
+        {
+            svg = SVGParser.parseStreaming(in, handler, recorder, layerListener);
+        }
+        else
+        {
+            svg = SVGParser.parse(new InputSource(in), handler, recorder);
+        }
+        if (levelRecorders != null)
+        {
+            Picture[] levels = new Picture[levelRecorders.length];
+            float[] tolerances = new float[levelRecorders.length];
+            int size = svg.getApproximateSize();
+            for (int i = 0; i < levels.length; i++)
+            {
+                levels[i] = levelRecorders[i].getPicture();
+                tolerances[i] = levelSinks[i].getTolerance();
+                size += levelRecorders[i].getApproximateSize();
+            }
+            svg.setLevels(levels, tolerances);
+            svg.setApproximateSize(size);
+        }
+        return svg;
+    }
+
+    private SVG buildCached(SVGHandler handler)
+    {
+        byte[] content;
+        try
+        {
+            content = readFully(data);
+        }
+        catch (IOException ioe)
+        {
+            throw new SVGParseException(ioe);
+        }
+
+        String key = cacheKey(content);
+        File file = key == null ? null : new File(cacheDir, key + SVGDisplayList.FILE_EXTENSION);
+        if (file != null && file.isFile())
+        {
+            try
+            {
+                return SVGDisplayList.read(file, levelOfDetail ? LEVEL_FRACTIONS : null);
+            }
+            catch (IOException e)
+            {
+                Log.w(SVGParser.TAG, "Discarding unreadable display list " + file, e);
+                file.delete();
+            }
+        }
+
+        SVGDisplayListWriter displayList = new SVGDisplayListWriter();
+        final SVG svg = parse(new ByteArrayInputStream(content), handler, displayList);
+        if (file != null && displayList.isComplete())
+        {
+            try
+            {
+                if (!cacheDir.isDirectory() && !cacheDir.mkdirs())
+                {
+                    throw new IOException("Could not create " + cacheDir);
+                }
+                displayList.write(file, svg.getBounds(), svg.getLimits());
+            }
+            catch (IOException e)
+            {
+                Log.w(SVGParser.TAG, "Failed to cache display list " + file, e);
+            }
+        }
+        return svg;
+    }
+
+    // content hash plus every option that changes the recorded paints
+    private String cacheKey(byte[] content)
+    {
+        MessageDigest digest;
+        try
+        {
+            digest = MessageDigest.getInstance("SHA-1");
+        }
+        catch (NoSuchAlgorithmException e)
+        {
+            Log.w(SVGParser.TAG, "SHA-1 unavailable, display list cache disabled", e);
+            return null;
+        }
+        digest.update(content);
+        String options = searchColor + "," + replaceColor + "," + overideOpacity + "," + whiteMode;
+        digest.update(options.getBytes());
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest())
+        {
+            key.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return key.toString();
+    }
+
+    // sized from available(), which is the whole remaining length for files
+    // and uncompressed assets, so the content is usually read without a copy
+    private static byte[] readFully(InputStream in) throws IOException
+    {
+        byte[] content = new byte[Math.max(in.available(), 8192)];
+        int length = 0;
+        int read;
+        while ((read = in.read(content, length, content.length - length)) != -1)
+        {
+            length += read;
+            if (length == content.length)
+            {
+                int next = in.read();
+                if (next == -1)
+                {
+                    return content;
+                }
+                byte[] grown = new byte[content.length * 2];
+                System.arraycopy(content, 0, grown, 0, length);
+                content = grown;
+                content[length++] = (byte) next;
+            }
+        }
+        byte[] trimmed = new byte[length];
+        System.arraycopy(content, 0, trimmed, 0, length);
+        return trimmed;
+    }
 }
@@ -0,0 +1,348 @@
+package id.recharge.library.core.helper.map;
+
+/**
+ * Reduces the drawing of an SVG to one level of detail: paths are simplified
+ * with Douglas-Peucker and elements smaller than the tolerance are dropped.
+ * <p/>
+ * The tolerance is a fraction of the document size, in document units after
+ * all transforms, so the level stays within a pixel of the original while the
+ * whole document spans at most 1 / fraction pixels on screen. The filter
+ * follows the save, restore and concat calls of the drawing to convert it to
+ * the local units of each element.
+ */
+final class SVGDetailFilter
+{
+    private final float fraction;
+    private float tolerance;
+
+    // scale of the current transform, one entry per save
+    private float[] scales = new float[16];
+    private int depth = 0;
+
+    private final float[] values = new float[9];
+    private final float[] bounds = new float[4];
+
+    // points of the current run of lines, and which of them survive
+    private float[] run = new float[64];
+    private int runCount = 0;
+    private boolean[] keep = new boolean[32];
+    private int[] stack = new int[64];
+
+    private int keptCoords = 0;
+
+    /**
+     * @param fraction tolerance as a fraction of the larger document side
+     */
+    SVGDetailFilter(float fraction)
+    {
+        this.fraction = fraction;
+    }
+
+    /**
+     * @return the tolerance in document units, set by {@link #begin(int, int)}
+     */
+    float getTolerance()
+    {
+        return tolerance;
+    }
+
+    /**
+     * @return coordinates in the paths kept so far
+     */
+    int getKeptCoordCount()
+    {
+        return keptCoords;
+    }
+
+    void begin(int width, int height)
+    {
+        tolerance = Math.max(width, height) * fraction;
+        depth = 0;
+        scales[0] = 1;
+        keptCoords = 0;
+    }
+
+    void save()
+    {
+        if (depth + 1 == scales.length)
+        {
+            float[] grown = new float[scales.length * 2];
+            System.arraycopy(scales, 0, grown, 0, scales.length);
+            scales = grown;
+        }
+        scales[depth + 1] = scales[depth];
+        depth++;
+    }
+
+    void restore()
+    {
+        if (depth > 0)
+        {
+            depth--;
+        }
+    }
+
+    /**
+     * @param count save count as returned by the canvas, 1 being the initial state
+     */
+    void restoreToCount(int count)
+    {
+        depth = Math.max(0, Math.min(depth, count - 1));
+    }
+
+    void concat(SVGMatrix matrix)
+    {
+        matrix.getValues(values);
+        concat(values);
+    }
+
+    /**
+     * @param values 9 matrix values as from {@code android.graphics.Matrix#getValues(float[])}
+     */
+    void concat(float[] values)
+    {
+        float determinant = values[0] * values[4] - values[1] * values[3];
+        scales[depth] *= (float) Math.sqrt(Math.abs(determinant));
+    }
+
+    /**
+     * @param strokeWidth 0 for fills
+     * @return whether a shape with these local bounds is at least the tolerance
+     * across once transformed
+     */
+    boolean isVisible(float left, float top, float right, float bottom, float strokeWidth)
+    {
+        float size = Math.max(Math.abs(right - left), Math.abs(bottom - top)) + strokeWidth;
+        return size * scales[depth] >= tolerance;
+    }
+
+    /**
+     * Simplifies the path data, see {@link #simplify(byte[], int, float[], int, float, PathData)}.
+     */
+    boolean simplify(PathData src, float strokeWidth, PathData dst)
+    {
+        return simplify(src.getVerbs(), src.getVerbCount(), src.getCoords(), 0, strokeWidth, dst);
+    }
+
+    /**
+     * Writes a simplified copy of a path: runs of lines are reduced with
+     * Douglas-Peucker and curves flat within the tolerance become lines.
+     *
+     * @param strokeWidth 0 for fills
+     * @return false, leaving dst empty, when the path is too small to draw
+     */
+    boolean simplify(byte[] verbs, int verbCount, float[] coords, int coordOffset, float strokeWidth, PathData dst)
+    {
+        dst.reset();
+        computeBounds(coords, coordOffset, verbs, verbCount);
+        if (!isVisible(bounds[0], bounds[1], bounds[2], bounds[3], strokeWidth))
+        {
+            return false;
+        }
+        float local = tolerance / scales[depth];
+        float squared = local * local;
+        int c = coordOffset;
+        float startX = 0;
+        float startY = 0;
+        // a path without a leading move starts at the origin, as on a canvas
+        startRun(0, 0);
+        for (int i = 0; i < verbCount; i++)
+        {
+            byte verb = verbs[i];
+            switch (verb)
+            {
+            case PathData.MOVE_TO:
+                flush(dst, squared);
+                startX = coords[c];
+                startY = coords[c + 1];
+                dst.moveTo(startX, startY);
+                startRun(startX, startY);
+                break;
+            case PathData.LINE_TO:
+                addToRun(coords[c], coords[c + 1]);
+                break;
+            case PathData.QUAD_TO:
+                if (isFlat(coords, c, 1, squared))
+                {
+                    addToRun(coords[c + 2], coords[c + 3]);
+                }
+                else
+                {
+                    flush(dst, squared);
+                    dst.quadTo(coords[c], coords[c + 1], coords[c + 2], coords[c + 3]);
+                    startRun(coords[c + 2], coords[c + 3]);
+                }
+                break;
+            case PathData.CUBIC_TO:
+                if (isFlat(coords, c, 2, squared))
+                {
+                    addToRun(coords[c + 4], coords[c + 5]);
+                }
+                else
+                {
+                    flush(dst, squared);
+                    dst.cubicTo(coords[c], coords[c + 1], coords[c + 2], coords[c + 3], coords[c + 4], coords[c + 5]);
+                    startRun(coords[c + 4], coords[c + 5]);
+                }
+                break;
+            case PathData.CLOSE:
+                flush(dst, squared);
+                dst.close();
+                startRun(startX, startY);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown path verb " + verb);
+            }
+            c += PathData.coordsPerVerb(verb);
+        }
+        flush(dst, squared);
+        keptCoords += dst.getCoordCount();
+        return true;
+    }
+
+    private void computeBounds(float[] coords, int coordOffset, byte[] verbs, int verbCount)
+    {
+        int end = coordOffset;
+        for (int i = 0; i < verbCount; i++)
+        {
+            end += PathData.coordsPerVerb(verbs[i]);
+        }
+        if (end == coordOffset)
+        {
+            bounds[0] = bounds[1] = bounds[2] = bounds[3] = 0;
+            return;
+        }
+        float left = coords[coordOffset];
+        float top = coords[coordOffset + 1];
+        float right = left;
+        float bottom = top;
+        for (int i = coordOffset + 2; i < end; i += 2)
+        {
+            left = Math.min(left, coords[i]);
+            right = Math.max(right, coords[i]);
+            top = Math.min(top, coords[i + 1]);
+            bottom = Math.max(bottom, coords[i + 1]);
+        }
+        bounds[0] = left;
+        bounds[1] = top;
+        bounds[2] = right;
+        bounds[3] = bottom;
+    }
+
+    // the control points lie within the tolerance of the chord from the last point
+    private boolean isFlat(float[] coords, int c, int controlPoints, float squared)
+    {
+        float x0 = run[runCount * 2 - 2];
+        float y0 = run[runCount * 2 - 1];
+        float x1 = coords[c + controlPoints * 2];
+        float y1 = coords[c + controlPoints * 2 + 1];
+        for (int i = 0; i < controlPoints; i++)
+        {
+            if (distanceSquared(coords[c + i * 2], coords[c + i * 2 + 1], x0, y0, x1, y1) > squared)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void startRun(float x, float y)
+    {
+        runCount = 0;
+        addToRun(x, y);
+    }
+
+    private void addToRun(float x, float y)
+    {
+        if (runCount * 2 + 2 > run.length)
+        {
+            float[] grown = new float[run.length * 2];
+            System.arraycopy(run, 0, grown, 0, runCount * 2);
+            run = grown;
+        }
+        run[runCount * 2] = x;
+        run[runCount * 2 + 1] = y;
+        runCount++;
+    }
+
+    // emits the lines of the run after its first point, which is already in dst
+    private void flush(PathData dst, float squared)
+    {
+        if (runCount < 2)
+        {
+            return;
+        }
+        if (keep.length < runCount)
+        {
+            keep = new boolean[Math.max(runCount, keep.length * 2)];
+        }
+        for (int i = 0; i < runCount; i++)
+        {
+            keep[i] = false;
+        }
+        keep[0] = true;
+        keep[runCount - 1] = true;
+        int top = 0;
+        top = push(top, 0, runCount - 1);
+        while (top > 0)
+        {
+            int last = stack[--top];
+            int first = stack[--top];
+            float x0 = run[first * 2];
+            float y0 = run[first * 2 + 1];
+            float x1 = run[last * 2];
+            float y1 = run[last * 2 + 1];
+            float farthest = squared;
+            int index = -1;
+            for (int i = first + 1; i < last; i++)
+            {
+                float d = distanceSquared(run[i * 2], run[i * 2 + 1], x0, y0, x1, y1);
+                if (d > farthest)
+                {
+                    farthest = d;
+                    index = i;
+                }
+            }
+            if (index >= 0)
+            {
+                keep[index] = true;
+                top = push(top, first, index);
+                top = push(top, index, last);
+            }
+        }
+        for (int i = 1; i < runCount; i++)
+        {
+            if (keep[i])
+            {
+                dst.lineTo(run[i * 2], run[i * 2 + 1]);
+            }
+        }
+        runCount = 0;
+    }
+
+    private int push(int top, int first, int last)
+    {
+        if (top + 2 > stack.length)
+        {
+            int[] grown = new int[stack.length * 2];
+            System.arraycopy(stack, 0, grown, 0, top);
+            stack = grown;
+        }
+        stack[top++] = first;
+        stack[top++] = last;
+        return top;
+    }
+
+    // squared distance from (x, y) to the segment (x0, y0) - (x1, y1)
+    private static float distanceSquared(float x, float y, float x0, float y0, float x1, float y1)
+    {
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float length = dx * dx + dy * dy;
+        float t = length == 0 ? 0 : ((x - x0) * dx + (y - y0) * dy) / length;
+        t = Math.max(0, Math.min(1, t));
+        float px = x0 + t * dx - x;
+        float py = y0 + t * dy - y;
+        return px * px + py * py;
+    }
+}
@@ -0,0 +1,142 @@
+package id.recharge.library.core.helper.map;
+
+/**
+ * {@link SVGSink} that passes a reduced level of detail on to another sink,
+ * see {@link SVGDetailFilter}.
+ */
+final class SVGDetailSink implements SVGSink
+{
+    private final SVGSink sink;
+    private final SVGDetailFilter filter;
+
+    // simplified paths alternate between two buffers, so the sink sees the
+    // same instance again only when the parser passed the same path again
+    private final PathData[] paths = {new PathData(), new PathData()};
+    private int pathIndex = 0;
+    private PathData lastSource;
+    private boolean lastVisible;
+
+    SVGDetailSink(SVGSink sink, float fraction)
+    {
+        this.sink = sink;
+        this.filter = new SVGDetailFilter(fraction);
+    }
+
+    /**
+     * @return the tolerance in document units
+     */
+    float getTolerance()
+    {
+        return filter.getTolerance();
+    }
+
+    @Override
+    public void begin(int width, int height)
+    {
+        filter.begin(width, height);
+        lastSource = null;
+        sink.begin(width, height);
+    }
+
+    @Override
+    public void end()
+    {
+        sink.end();
+    }
+
+    @Override
+    public int save()
+    {
+        filter.save();
+        return sink.save();
+    }
+
+    @Override
+    public void restore()
+    {
+        filter.restore();
+        sink.restore();
+    }
+
+    @Override
+    public void restoreToCount(int count)
+    {
+        filter.restoreToCount(count);
+        sink.restoreToCount(count);
+    }
+
+    @Override
+    public void concat(SVGMatrix matrix)
+    {
+        filter.concat(matrix);
+        sink.concat(matrix);
+    }
+
+    @Override
+    public void translate(float dx, float dy)
+    {
+        sink.translate(dx, dy);
+    }
+
+    @Override
+    public void clipRect(float left, float top, float right, float bottom)
+    {
+        sink.clipRect(left, top, right, bottom);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, SVGPaint paint)
+    {
+        if (filter.isVisible(left, top, right, bottom, strokeWidth(paint)))
+        {
+            sink.drawRect(left, top, right, bottom, paint);
+        }
+    }
+
+    @Override
+    public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, SVGPaint paint)
+    {
+        if (filter.isVisible(left, top, right, bottom, strokeWidth(paint)))
+        {
+            sink.drawRoundRect(left, top, right, bottom, rx, ry, paint);
+        }
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, SVGPaint paint)
+    {
+        if (filter.isVisible(left, top, right, bottom, strokeWidth(paint)))
+        {
+            sink.drawOval(left, top, right, bottom, paint);
+        }
+    }
+
+    @Override
+    public void drawLine(float x1, float y1, float x2, float y2, SVGPaint paint)
+    {
+        if (filter.isVisible(x1, y1, x2, y2, strokeWidth(paint)))
+        {
+            sink.drawLine(x1, y1, x2, y2, paint);
+        }
+    }
+
+    @Override
+    public void drawPath(PathData path, SVGPaint paint)
+    {
+        if (path != lastSource)
+        {
+            lastSource = path;
+            pathIndex ^= 1;
+            lastVisible = filter.simplify(path, strokeWidth(paint), paths[pathIndex]);
+        }
+        if (lastVisible)
+        {
+            sink.drawPath(paths[pathIndex], paint);
+        }
+    }
+
+    private static float strokeWidth(SVGPaint paint)
+    {
+        return paint.getStyle() == SVGPaint.STYLE_STROKE ? paint.getStrokeWidth() : 0;
+    }
+}
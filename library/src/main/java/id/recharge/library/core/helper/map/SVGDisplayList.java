@@ -0,0 +1,495 @@
+package id.recharge.library.core.helper.map;
+
+import android.graphics.Canvas;
+import android.graphics.DashPathEffect;
+import android.graphics.LinearGradient;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Picture;
+import android.graphics.RadialGradient;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Compact binary form of a parsed SVG: the canvas calls the parser made, with
+ * path geometry, paints and transforms, so a floor plan can be turned back
+ * into a {@link Picture} without touching the XML again.
+ * <p/>
+ * Layout, big endian: header (magic, version, bounds, limits), gradient table,
+ * paint table, then the op stream. Written by {@link SVGDisplayListWriter},
+ * read back from a memory-mapped file by {@link #read(File)}.
+ */
+public final class SVGDisplayList
+{
+    public static final String FILE_EXTENSION = ".svgdl";
+
+    static final int MAGIC = 0x5356444C; // "SVDL"
+    static final int VERSION = 1;
+
+    static final byte OP_BEGIN = 1;
+    static final byte OP_END = 2;
+    static final byte OP_SAVE = 3;
+    static final byte OP_RESTORE = 4;
+    static final byte OP_RESTORE_TO_COUNT = 5;
+    static final byte OP_CONCAT = 6;
+    static final byte OP_TRANSLATE = 7;
+    static final byte OP_CLIP_RECT = 8;
+    static final byte OP_DRAW_RECT = 9;
+    static final byte OP_DRAW_ROUND_RECT = 10;
+    static final byte OP_DRAW_OVAL = 11;
+    static final byte OP_DRAW_LINE = 12;
+    static final byte OP_DRAW_PATH = 13;
+    // draws the previous path again with another paint (fill, then stroke)
+    static final byte OP_DRAW_LAST_PATH = 14;
+
+    static final int PAINT_ANTI_ALIAS = 1;
+
+    private SVGDisplayList()
+    {
+    }
+
+    /**
+     * Memory-maps a display list file and replays it into a new picture.
+     *
+     * @throws IOException if the file can not be read or is not a display list of this version
+     */
+    public static SVG read(File file) throws IOException
+    {
+        return read(file, null);
+    }
+
+    /**
+     * Replays a display list file, also into a simplified picture per level
+     * of detail, see {@link SVGBuilder#setLevelOfDetail(boolean)}.
+     *
+     * @param levelFractions tolerance of each level as a fraction of the document size, or null for none
+     */
+    static SVG read(File file, float[] levelFractions) throws IOException
+    {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try
+        {
+            FileChannel channel = input.getChannel();
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return read(buffer, levelFractions);
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    static SVG read(ByteBuffer buffer, float[] levelFractions) throws IOException
+    {
+        SVGDetailFilter[] filters = new SVGDetailFilter[levelFractions == null ? 0 : levelFractions.length];
+        for (int i = 0; i < filters.length; i++)
+        {
+            filters[i] = new SVGDetailFilter(levelFractions[i]);
+        }
+        try
+        {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION)
+            {
+                throw new IOException("Not a display list of version " + VERSION);
+            }
+            RectF bounds = readOptionalRect(buffer);
+            RectF limits = readOptionalRect(buffer);
+            GradientDef[] gradients = new GradientDef[buffer.getInt()];
+            for (int i = 0; i < gradients.length; i++)
+            {
+                gradients[i] = readGradient(buffer);
+            }
+            Paint[] paints = new Paint[buffer.getInt()];
+            for (int i = 0; i < paints.length; i++)
+            {
+                paints[i] = readPaint(buffer, gradients);
+            }
+            Picture[] pictures = replay(buffer, paints, filters);
+            SVG svg = new SVG(pictures[0], bounds);
+            // the picture holds about what the list encodes, a level mostly its path geometry
+            int size = buffer.capacity();
+            if (filters.length > 0)
+            {
+                Picture[] levels = new Picture[filters.length];
+                float[] tolerances = new float[filters.length];
+                for (int i = 0; i < filters.length; i++)
+                {
+                    levels[i] = pictures[i + 1];
+                    tolerances[i] = filters[i].getTolerance();
+                    size += filters[i].getKeptCoordCount() * 4;
+                }
+                svg.setLevels(levels, tolerances);
+            }
+            svg.setApproximateSize(size);
+            if (limits != null)
+            {
+                svg.setLimits(limits);
+            }
+            return svg;
+        }
+        catch (BufferUnderflowException e)
+        {
+            throw new IOException("Truncated display list", e);
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IOException("Corrupt display list", e);
+        }
+    }
+
+    // pictures[0] gets everything, pictures[i + 1] what filters[i] keeps
+    private static Picture[] replay(ByteBuffer buffer, Paint[] paints, SVGDetailFilter[] filters) throws IOException
+    {
+        int levels = filters.length + 1;
+        Picture[] pictures = new Picture[levels];
+        Canvas[] canvases = new Canvas[levels];
+        RectF rect = new RectF();
+        Matrix matrix = new Matrix();
+        float[] values = new float[9];
+        byte[] verbs = new byte[64];
+        float[] coords = new float[128];
+        PathData simplified = new PathData();
+        // null at a level that left the last path out
+        Path[] lastPaths = new Path[levels];
+        boolean hasPath = false;
+        while (true)
+        {
+            byte op = buffer.get();
+            if (op == OP_BEGIN)
+            {
+                int width = buffer.getInt();
+                int height = buffer.getInt();
+                for (int i = 0; i < levels; i++)
+                {
+                    pictures[i] = new Picture();
+                    canvases[i] = pictures[i].beginRecording(width, height);
+                }
+                for (SVGDetailFilter filter : filters)
+                {
+                    filter.begin(width, height);
+                }
+                continue;
+            }
+            if (op == OP_END)
+            {
+                for (int i = 0; i < levels; i++)
+                {
+                    if (canvases[i] == null)
+                    {
+                        pictures[i] = new Picture();
+                    }
+                    else
+                    {
+                        pictures[i].endRecording();
+                    }
+                }
+                return pictures;
+            }
+            if (canvases[0] == null)
+            {
+                throw new IOException("Display list op " + op + " before begin");
+            }
+            switch (op)
+            {
+            case OP_SAVE:
+                for (Canvas canvas : canvases)
+                {
+                    canvas.save();
+                }
+                for (SVGDetailFilter filter : filters)
+                {
+                    filter.save();
+                }
+                break;
+            case OP_RESTORE:
+                for (Canvas canvas : canvases)
+                {
+                    canvas.restore();
+                }
+                for (SVGDetailFilter filter : filters)
+                {
+                    filter.restore();
+                }
+                break;
+            case OP_RESTORE_TO_COUNT:
+            {
+                int count = buffer.getInt();
+                for (Canvas canvas : canvases)
+                {
+                    canvas.restoreToCount(count);
+                }
+                for (SVGDetailFilter filter : filters)
+                {
+                    filter.restoreToCount(count);
+                }
+                break;
+            }
+            case OP_CONCAT:
+                buffer.asFloatBuffer().get(values, 0, 9);
+                buffer.position(buffer.position() + 9 * 4);
+                matrix.setValues(values);
+                for (Canvas canvas : canvases)
+                {
+                    canvas.concat(matrix);
+                }
+                for (SVGDetailFilter filter : filters)
+                {
+                    filter.concat(values);
+                }
+                break;
+            case OP_TRANSLATE:
+            {
+                float dx = buffer.getFloat();
+                float dy = buffer.getFloat();
+                for (Canvas canvas : canvases)
+                {
+                    canvas.translate(dx, dy);
+                }
+                break;
+            }
+            case OP_CLIP_RECT:
+                readRect(buffer, rect);
+                for (Canvas canvas : canvases)
+                {
+                    canvas.clipRect(rect);
+                }
+                break;
+            case OP_DRAW_RECT:
+            {
+                Paint paint = paints[buffer.getInt()];
+                readRect(buffer, rect);
+                for (int i = 0; i < levels; i++)
+                {
+                    if (i == 0 || isVisible(filters[i - 1], rect, paint))
+                    {
+                        canvases[i].drawRect(rect, paint);
+                    }
+                }
+                break;
+            }
+            case OP_DRAW_ROUND_RECT:
+            {
+                Paint paint = paints[buffer.getInt()];
+                readRect(buffer, rect);
+                float rx = buffer.getFloat();
+                float ry = buffer.getFloat();
+                for (int i = 0; i < levels; i++)
+                {
+                    if (i == 0 || isVisible(filters[i - 1], rect, paint))
+                    {
+                        canvases[i].drawRoundRect(rect, rx, ry, paint);
+                    }
+                }
+                break;
+            }
+            case OP_DRAW_OVAL:
+            {
+                Paint paint = paints[buffer.getInt()];
+                readRect(buffer, rect);
+                for (int i = 0; i < levels; i++)
+                {
+                    if (i == 0 || isVisible(filters[i - 1], rect, paint))
+                    {
+                        canvases[i].drawOval(rect, paint);
+                    }
+                }
+                break;
+            }
+            case OP_DRAW_LINE:
+            {
+                Paint paint = paints[buffer.getInt()];
+                readRect(buffer, rect);
+                for (int i = 0; i < levels; i++)
+                {
+                    if (i == 0 || isVisible(filters[i - 1], rect, paint))
+                    {
+                        canvases[i].drawLine(rect.left, rect.top, rect.right, rect.bottom, paint);
+                    }
+                }
+                break;
+            }
+            case OP_DRAW_PATH:
+            {
+                Paint paint = paints[buffer.getInt()];
+                int verbCount = buffer.getInt();
+                int coordCount = buffer.getInt();
+                if (verbs.length < verbCount)
+                {
+                    verbs = new byte[verbCount];
+                }
+                if (coords.length < coordCount)
+                {
+                    coords = new float[coordCount];
+                }
+                buffer.get(verbs, 0, verbCount);
+                buffer.asFloatBuffer().get(coords, 0, coordCount);
+                buffer.position(buffer.position() + coordCount * 4);
+                lastPaths[0] = SVGPictureRecorder.buildPath(verbs, verbCount, coords, 0);
+                for (int i = 1; i < levels; i++)
+                {
+                    lastPaths[i] = filters[i - 1].simplify(verbs, verbCount, coords, 0, strokeWidth(paint), simplified)
+                            ? SVGPictureRecorder.buildPath(simplified.getVerbs(), simplified.getVerbCount(), simplified.getCoords(), 0)
+                            : null;
+                }
+                hasPath = true;
+                drawLastPaths(canvases, lastPaths, paint);
+                break;
+            }
+            case OP_DRAW_LAST_PATH:
+            {
+                Paint paint = paints[buffer.getInt()];
+                if (!hasPath)
+                {
+                    throw new IOException("Display list reuses a path before drawing one");
+                }
+                drawLastPaths(canvases, lastPaths, paint);
+                break;
+            }
+            default:
+                throw new IOException("Unknown display list op " + op);
+            }
+        }
+    }
+
+    private static void drawLastPaths(Canvas[] canvases, Path[] lastPaths, Paint paint)
+    {
+        for (int i = 0; i < canvases.length; i++)
+        {
+            if (lastPaths[i] != null)
+            {
+                canvases[i].drawPath(lastPaths[i], paint);
+            }
+        }
+    }
+
+    private static boolean isVisible(SVGDetailFilter filter, RectF rect, Paint paint)
+    {
+        return filter.isVisible(rect.left, rect.top, rect.right, rect.bottom, strokeWidth(paint));
+    }
+
+    private static float strokeWidth(Paint paint)
+    {
+        return paint.getStyle() == Paint.Style.STROKE ? paint.getStrokeWidth() : 0;
+    }
+
+    private static void readRect(ByteBuffer buffer, RectF rect)
+    {
+        rect.set(buffer.getFloat(), buffer.getFloat(), buffer.getFloat(), buffer.getFloat());
+    }
+
+    private static RectF readOptionalRect(ByteBuffer buffer)
+    {
+        if (buffer.get() == 0)
+        {
+            return null;
+        }
+        RectF rect = new RectF();
+        readRect(buffer, rect);
+        return rect;
+    }
+
+    private static GradientDef readGradient(ByteBuffer buffer)
+    {
+        GradientDef gradient = new GradientDef();
+        gradient.linear = buffer.get() != 0;
+        for (int i = 0; i < gradient.geometry.length; i++)
+        {
+            gradient.geometry[i] = buffer.getFloat();
+        }
+        gradient.colors = new int[buffer.getInt()];
+        for (int i = 0; i < gradient.colors.length; i++)
+        {
+            gradient.colors[i] = buffer.getInt();
+        }
+        gradient.positions = new float[buffer.getInt()];
+        for (int i = 0; i < gradient.positions.length; i++)
+        {
+            gradient.positions[i] = buffer.getFloat();
+        }
+        gradient.tileMode = Shader.TileMode.values()[buffer.get()];
+        return gradient;
+    }
+
+    private static Paint readPaint(ByteBuffer buffer, GradientDef[] gradients)
+    {
+        Paint paint = new Paint();
+        int flags = buffer.get();
+        paint.setAntiAlias((flags & PAINT_ANTI_ALIAS) != 0);
+        paint.setStyle(Paint.Style.values()[buffer.get()]);
+        paint.setColor(buffer.getInt());
+        paint.setStrokeWidth(buffer.getFloat());
+        paint.setStrokeCap(Paint.Cap.values()[buffer.get()]);
+        paint.setStrokeJoin(Paint.Join.values()[buffer.get()]);
+        paint.setStrokeMiter(buffer.getFloat());
+        int dashCount = buffer.getInt();
+        if (dashCount > 0)
+        {
+            float[] intervals = new float[dashCount];
+            for (int i = 0; i < dashCount; i++)
+            {
+                intervals[i] = buffer.getFloat();
+            }
+            paint.setPathEffect(new DashPathEffect(intervals, buffer.getFloat()));
+        }
+        int gradientIndex = buffer.getInt();
+        if (gradientIndex >= 0)
+        {
+            float[] values = new float[9];
+            for (int i = 0; i < values.length; i++)
+            {
+                values[i] = buffer.getFloat();
+            }
+            paint.setShader(gradients[gradientIndex].getShader(values));
+        }
+        return paint;
+    }
+
+    private static class GradientDef
+    {
+        boolean linear;
+        // x1, y1, x2, y2 for linear gradients, cx, cy, r, 0 for radial ones
+        final float[] geometry = new float[4];
+        int[] colors;
+        float[] positions;
+        Shader.TileMode tileMode;
+        // built per local matrix, paints that differ only in colour share them
+        final ArrayList<float[]> localMatrices = new ArrayList<float[]>(1);
+        final ArrayList<Shader> shaders = new ArrayList<Shader>(1);
+
+        Shader getShader(float[] localMatrix)
+        {
+            for (int i = 0; i < localMatrices.size(); i++)
+            {
+                if (Arrays.equals(localMatrices.get(i), localMatrix))
+                {
+                    return shaders.get(i);
+                }
+            }
+            Shader shader = createShader();
+            Matrix matrix = new Matrix();
+            matrix.setValues(localMatrix);
+            shader.setLocalMatrix(matrix);
+            localMatrices.add(localMatrix);
+            shaders.add(shader);
+            return shader;
+        }
+
+        private Shader createShader()
+        {
+            if (linear)
+            {
+                return new LinearGradient(geometry[0], geometry[1], geometry[2], geometry[3], colors, positions, tileMode);
+            }
+            return new RadialGradient(geometry[0], geometry[1], geometry[2], colors, positions, tileMode);
+        }
+    }
+}
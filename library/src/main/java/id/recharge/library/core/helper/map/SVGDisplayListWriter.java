@@ -0,0 +1,365 @@
+package id.recharge.library.core.helper.map;
+
+import android.graphics.RectF;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * {@link SVGSink} that records the drawing of {@link SVGHandler} into the
+ * {@link SVGDisplayList} format.
+ * <p/>
+ * Paints are interned into a table by their serialized state, so each op only
+ * carries a paint index. Gradients go into their own table the first time a
+ * paint uses them.
+ */
+final class SVGDisplayListWriter implements SVGSink
+{
+    private final Buffer ops = new Buffer(4096);
+    private final Buffer gradientTable = new Buffer(256);
+    private final Buffer paintTable = new Buffer(256);
+    private final Buffer scratch = new Buffer(128);
+
+    private final HashMap<ByteBuffer, Integer> paintIndices = new HashMap<ByteBuffer, Integer>();
+    private final IdentityHashMap<SVGGradient, Integer> gradientIndices = new IdentityHashMap<SVGGradient, Integer>();
+
+    private final float[] values = new float[9];
+
+    private PathData lastPath;
+    private int saveCount = 1;
+    private boolean began = false;
+    private boolean ended = false;
+
+    @Override
+    public void begin(int width, int height)
+    {
+        began = true;
+        saveCount = 1;
+        op(SVGDisplayList.OP_BEGIN, 8);
+        ops.buffer.putInt(width);
+        ops.buffer.putInt(height);
+    }
+
+    @Override
+    public void end()
+    {
+        ended = true;
+        op(SVGDisplayList.OP_END, 0);
+    }
+
+    @Override
+    public int save()
+    {
+        op(SVGDisplayList.OP_SAVE, 0);
+        return saveCount++;
+    }
+
+    @Override
+    public void restore()
+    {
+        op(SVGDisplayList.OP_RESTORE, 0);
+        if (saveCount > 1)
+        {
+            saveCount--;
+        }
+    }
+
+    @Override
+    public void restoreToCount(int count)
+    {
+        op(SVGDisplayList.OP_RESTORE_TO_COUNT, 4);
+        ops.buffer.putInt(count);
+        saveCount = Math.max(1, Math.min(saveCount, count));
+    }
+
+    @Override
+    public void concat(SVGMatrix matrix)
+    {
+        matrix.getValues(values);
+        op(SVGDisplayList.OP_CONCAT, 9 * 4);
+        for (float value : values)
+        {
+            ops.buffer.putFloat(value);
+        }
+    }
+
+    @Override
+    public void translate(float dx, float dy)
+    {
+        op(SVGDisplayList.OP_TRANSLATE, 8);
+        ops.buffer.putFloat(dx);
+        ops.buffer.putFloat(dy);
+    }
+
+    @Override
+    public void clipRect(float left, float top, float right, float bottom)
+    {
+        op(SVGDisplayList.OP_CLIP_RECT, 16);
+        putRect(left, top, right, bottom);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, SVGPaint paint)
+    {
+        int paintIndex = paintIndex(paint);
+        op(SVGDisplayList.OP_DRAW_RECT, 4 + 16);
+        ops.buffer.putInt(paintIndex);
+        putRect(left, top, right, bottom);
+    }
+
+    @Override
+    public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, SVGPaint paint)
+    {
+        int paintIndex = paintIndex(paint);
+        op(SVGDisplayList.OP_DRAW_ROUND_RECT, 4 + 16 + 8);
+        ops.buffer.putInt(paintIndex);
+        putRect(left, top, right, bottom);
+        ops.buffer.putFloat(rx);
+        ops.buffer.putFloat(ry);
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, SVGPaint paint)
+    {
+        int paintIndex = paintIndex(paint);
+        op(SVGDisplayList.OP_DRAW_OVAL, 4 + 16);
+        ops.buffer.putInt(paintIndex);
+        putRect(left, top, right, bottom);
+    }
+
+    @Override
+    public void drawLine(float x1, float y1, float x2, float y2, SVGPaint paint)
+    {
+        int paintIndex = paintIndex(paint);
+        op(SVGDisplayList.OP_DRAW_LINE, 4 + 16);
+        ops.buffer.putInt(paintIndex);
+        putRect(x1, y1, x2, y2);
+    }
+
+    @Override
+    public void drawPath(PathData path, SVGPaint paint)
+    {
+        int paintIndex = paintIndex(paint);
+        if (path == lastPath)
+        {
+            op(SVGDisplayList.OP_DRAW_LAST_PATH, 4);
+            ops.buffer.putInt(paintIndex);
+            return;
+        }
+        int verbCount = path.getVerbCount();
+        int coordCount = path.getCoordCount();
+        op(SVGDisplayList.OP_DRAW_PATH, 12 + verbCount + coordCount * 4);
+        ops.buffer.putInt(paintIndex);
+        ops.buffer.putInt(verbCount);
+        ops.buffer.putInt(coordCount);
+        ops.buffer.put(path.getVerbs(), 0, verbCount);
+        float[] coords = path.getCoords();
+        for (int i = 0; i < coordCount; i++)
+        {
+            ops.buffer.putFloat(coords[i]);
+        }
+        lastPath = path;
+    }
+
+    /**
+     * @return true if a whole document was recorded
+     */
+    boolean isComplete()
+    {
+        return began && ended;
+    }
+
+    /**
+     * Writes the display list to a temporary file next to the target and
+     * renames it into place, so readers never see a partial file.
+     */
+    void write(File file, RectF bounds, RectF limits) throws IOException
+    {
+        Buffer header = new Buffer(64);
+        header.ensure(8 + 2 * 17 + 8);
+        header.buffer.putInt(SVGDisplayList.MAGIC);
+        header.buffer.putInt(SVGDisplayList.VERSION);
+        putOptionalRect(header.buffer, bounds);
+        putOptionalRect(header.buffer, limits);
+        header.buffer.putInt(gradientIndices.size());
+
+        ByteBuffer paintCount = ByteBuffer.allocate(4);
+        paintCount.putInt(paintIndices.size());
+
+        File temp = new File(file.getPath() + ".tmp");
+        FileOutputStream output = new FileOutputStream(temp);
+        try
+        {
+            FileChannel channel = output.getChannel();
+            write(channel, header.buffer);
+            write(channel, gradientTable.buffer);
+            write(channel, paintCount);
+            write(channel, paintTable.buffer);
+            write(channel, ops.buffer);
+        }
+        finally
+        {
+            output.close();
+        }
+        if (!temp.renameTo(file))
+        {
+            temp.delete();
+            throw new IOException("Could not move display list to " + file);
+        }
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException
+    {
+        ByteBuffer content = buffer.duplicate();
+        content.flip();
+        while (content.hasRemaining())
+        {
+            channel.write(content);
+        }
+    }
+
+    private static void putOptionalRect(ByteBuffer buffer, RectF rect)
+    {
+        if (rect == null)
+        {
+            buffer.put((byte) 0);
+            return;
+        }
+        buffer.put((byte) 1);
+        buffer.putFloat(rect.left);
+        buffer.putFloat(rect.top);
+        buffer.putFloat(rect.right);
+        buffer.putFloat(rect.bottom);
+    }
+
+    private void op(byte op, int payload)
+    {
+        ops.ensure(1 + payload);
+        ops.buffer.put(op);
+    }
+
+    private void putRect(float left, float top, float right, float bottom)
+    {
+        ops.buffer.putFloat(left);
+        ops.buffer.putFloat(top);
+        ops.buffer.putFloat(right);
+        ops.buffer.putFloat(bottom);
+    }
+
+    // serializes the paint into scratch and interns it into the paint table
+    private int paintIndex(SVGPaint paint)
+    {
+        float[] dash = paint.getDashIntervals();
+        SVGGradient gradient = paint.getGradient();
+        int gradientIndex = gradient == null ? -1 : gradientIndex(gradient);
+
+        Buffer out = scratch;
+        out.buffer.clear();
+        out.ensure(1 + 1 + 4 + 4 + 1 + 1 + 4 + 4 + (dash == null ? 0 : (dash.length + 1) * 4) + 4 + 9 * 4);
+        out.buffer.put((byte) SVGDisplayList.PAINT_ANTI_ALIAS);
+        out.buffer.put((byte) paint.getStyle());
+        out.buffer.putInt(paint.getColor());
+        out.buffer.putFloat(paint.getStrokeWidth());
+        out.buffer.put((byte) paint.getStrokeCap());
+        out.buffer.put((byte) paint.getStrokeJoin());
+        out.buffer.putFloat(paint.getStrokeMiter());
+        if (dash == null)
+        {
+            out.buffer.putInt(0);
+        }
+        else
+        {
+            // intervals followed by the phase
+            out.buffer.putInt(dash.length);
+            for (float value : dash)
+            {
+                out.buffer.putFloat(value);
+            }
+            out.buffer.putFloat(paint.getDashPhase());
+        }
+        out.buffer.putInt(gradientIndex);
+        if (gradientIndex >= 0)
+        {
+            paint.getGradientMatrix().getValues(values);
+            for (float value : values)
+            {
+                out.buffer.putFloat(value);
+            }
+        }
+
+        out.buffer.flip();
+        Integer index = paintIndices.get(out.buffer);
+        if (index != null)
+        {
+            return index;
+        }
+        byte[] record = new byte[out.buffer.remaining()];
+        out.buffer.get(record);
+        index = paintIndices.size();
+        paintIndices.put(ByteBuffer.wrap(record), index);
+        paintTable.ensure(record.length);
+        paintTable.buffer.put(record);
+        return index;
+    }
+
+    // appends the gradient to the gradient table the first time it is used
+    private int gradientIndex(SVGGradient gradient)
+    {
+        Integer index = gradientIndices.get(gradient);
+        if (index != null)
+        {
+            return index;
+        }
+        int[] colors = gradient.getColors();
+        float[] positions = gradient.getPositions();
+        float[] geometry = gradient.getGeometry();
+        Buffer out = gradientTable;
+        out.ensure(1 + 4 * 4 + 8 + colors.length * 4 + positions.length * 4 + 1);
+        out.buffer.put((byte) (gradient.isLinear() ? 1 : 0));
+        for (int i = 0; i < 4; i++)
+        {
+            out.buffer.putFloat(i < geometry.length ? geometry[i] : 0);
+        }
+        out.buffer.putInt(colors.length);
+        for (int color : colors)
+        {
+            out.buffer.putInt(color);
+        }
+        out.buffer.putInt(positions.length);
+        for (float position : positions)
+        {
+            out.buffer.putFloat(position);
+        }
+        out.buffer.put((byte) gradient.getSpread());
+        index = gradientIndices.size();
+        gradientIndices.put(gradient, index);
+        return index;
+    }
+
+    // growable write buffer
+    private static class Buffer
+    {
+        ByteBuffer buffer;
+
+        Buffer(int capacity)
+        {
+            buffer = ByteBuffer.allocate(capacity);
+        }
+
+        void ensure(int bytes)
+        {
+            if (buffer.remaining() >= bytes)
+            {
+                return;
+            }
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
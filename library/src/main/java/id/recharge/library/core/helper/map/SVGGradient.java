@@ -0,0 +1,150 @@
+package id.recharge.library.core.helper.map;
+
+import java.util.ArrayList;
+
+/**
+ * A linear or radial gradient definition from the SVG, resolved against the
+ * gradient it links to. Sinks turn it into whatever shader their platform
+ * uses; one instance is shared by every paint that fills with it, so it can
+ * be used as a cache key.
+ */
+public final class SVGGradient
+{
+    // same order as android.graphics.Shader.TileMode
+    public static final int SPREAD_PAD = 0;
+    public static final int SPREAD_REPEAT = 1;
+    public static final int SPREAD_REFLECT = 2;
+
+    String id;
+    String xlink;
+    boolean linear;
+    float x1, y1, x2, y2;
+    float x, y, radius;
+    ArrayList<Float> positionList = new ArrayList<Float>();
+    ArrayList<Integer> colorList = new ArrayList<Integer>();
+    SVGMatrix matrix = null;
+    boolean boundingBox = false;
+    int spread = SPREAD_PAD;
+
+    // filled in when the gradient element ends
+    private int[] colors;
+    private float[] positions;
+
+    SVGGradient()
+    {
+    }
+
+    SVGGradient createChild(SVGGradient g)
+    {
+        SVGGradient child = new SVGGradient();
+        child.id = g.id;
+        child.xlink = id;
+        child.linear = g.linear;
+        child.x1 = g.x1;
+        child.x2 = g.x2;
+        child.y1 = g.y1;
+        child.y2 = g.y2;
+        child.x = g.x;
+        child.y = g.y;
+        child.radius = g.radius;
+        child.positionList = positionList;
+        child.colorList = colorList;
+        child.matrix = matrix;
+        if (g.matrix != null)
+        {
+            if (matrix == null)
+            {
+                child.matrix = g.matrix;
+            }
+            else
+            {
+                SVGMatrix m = new SVGMatrix(matrix);
+                m.preConcat(g.matrix);
+                child.matrix = m;
+            }
+        }
+        child.boundingBox = g.boundingBox;
+        child.spread = g.spread;
+        return child;
+    }
+
+    void resolve()
+    {
+        colors = new int[colorList.size()];
+        for (int i = 0; i < colors.length; i++)
+        {
+            colors[i] = colorList.get(i);
+        }
+        positions = new float[positionList.size()];
+        for (int i = 0; i < positions.length; i++)
+        {
+            positions[i] = positionList.get(i);
+        }
+    }
+
+    public boolean isLinear()
+    {
+        return linear;
+    }
+
+    /**
+     * @return x1, y1, x2, y2 of a linear gradient, cx, cy, r of a radial one
+     */
+    public float[] getGeometry()
+    {
+        return linear ? new float[]{x1, y1, x2, y2} : new float[]{x, y, radius};
+    }
+
+    public float getX1()
+    {
+        return x1;
+    }
+
+    public float getY1()
+    {
+        return y1;
+    }
+
+    public float getX2()
+    {
+        return x2;
+    }
+
+    public float getY2()
+    {
+        return y2;
+    }
+
+    public float getCenterX()
+    {
+        return x;
+    }
+
+    public float getCenterY()
+    {
+        return y;
+    }
+
+    public float getRadius()
+    {
+        return radius;
+    }
+
+    public int[] getColors()
+    {
+        return colors;
+    }
+
+    public float[] getPositions()
+    {
+        return positions;
+    }
+
+    /**
+     * @return one of the SPREAD_ constants
+     */
+    public int getSpread()
+    {
+        return spread;
+    }
+}
@@ -0,0 +1,1737 @@
+package id.recharge.library.core.helper.map;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.StringTokenizer;
+import java.util.logging.Logger;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXNotRecognizedException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more contributor license agreements. See the NOTICE
+ * file distributed with this work for additional information regarding copyright ownership. The ASF licenses this file
+ * to You under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with the
+ * License. You may obtain a copy of the License at http://www.apache.org/licenses/LICENSE-2.0 Unless required by
+ * applicable law or agreed to in writing, software distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+
+/**
+ * Turns the elements of an SVG document into drawing calls on an {@link SVGSink}. Uses no Android classes, so the
+ * parser runs and can be benchmarked on a plain JVM; {@link SVGParser} wires it to a picture for the app. Warnings go
+ * to java.util.logging, which Android forwards to logcat.
+ *
+ * @author Larva Labs, LLC
+ */
+class SVGHandler extends DefaultHandler
+{
+
+	static final String TAG = "SVGAndroid";
+
+	private static final Logger LOG = Logger.getLogger(TAG);
+
+	private static boolean DISALLOW_DOCTYPE_DECL = true;
+
+	private static final int WHITE = 0xFFFFFFFF;
+	private static final int BLACK = 0xFF000000;
+	private static final int TRANSPARENT = 0;
+
+	private SVGSink sink;
+	// sees the whole document as one recording, for the display list cache
+	private SVGSink mirror;
+
+	// progressive loading: the sink is ended and begun again after each top-level group
+	private boolean layered = false;
+	private int recordingWidth;
+	private int recordingHeight;
+	private int drawCount = 0;
+	private Float limitsAdjustmentX, limitsAdjustmentY;
+
+	final LinkedList<LayerAttributes> layerAttributeStack = new LinkedList<LayerAttributes>();
+
+	SVGPaint strokePaint;
+	boolean strokeSet = false;
+	final LinkedList<SVGPaint> strokePaintStack = new LinkedList<SVGPaint>();
+	final LinkedList<Boolean> strokeSetStack = new LinkedList<Boolean>();
+
+	SVGPaint fillPaint;
+	boolean fillSet = false;
+	final LinkedList<SVGPaint> fillPaintStack = new LinkedList<SVGPaint>();
+	final LinkedList<Boolean> fillSetStack = new LinkedList<Boolean>();
+
+	// Scratch rect, left, top, right, bottom (so we aren't constantly making new ones)
+	final float[] rect = new float[4];
+	// Number and path parser shared by every element of the document
+	final ParserHelper parserHelper = new ParserHelper();
+
+	// Attributes of the current element by id, style sets by style text and colours by colour text
+	final SVGNames.AttributeIndex attributes = new SVGNames.AttributeIndex();
+	final HashMap<String, StyleSet> styleCache = new HashMap<String, StyleSet>();
+	final HashMap<String, Integer> colorCache = new HashMap<String, Integer>();
+	// left, top, right, bottom of the "bounds" layer, if there is one
+	float[] bounds = null;
+	final float[] limits = {Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY, Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY};
+
+	Integer searchColor = null;
+	Integer replaceColor = null;
+	Float opacityMultiplier = null;
+
+	boolean whiteMode = false;
+
+	Integer canvasRestoreCount;
+
+	final LinkedList<Boolean> transformStack = new LinkedList<Boolean>();
+	final LinkedList<SVGMatrix> matrixStack = new LinkedList<SVGMatrix>();
+
+	final HashMap<String, SVGGradient> gradientMap = new HashMap<String, SVGGradient>();
+	SVGGradient gradient = null;
+
+	public SVGHandler()
+	{
+		strokePaint = new SVGPaint(SVGPaint.STYLE_STROKE);
+		fillPaint = new SVGPaint(SVGPaint.STYLE_FILL);
+		matrixStack.addFirst(new SVGMatrix());
+		layerAttributeStack.addFirst(new LayerAttributes(1f, null));
+	}
+
+	void setSink(SVGSink sink)
+	{
+		this.sink = sink;
+	}
+
+	/**
+	 * @param mirror a second sink that gets every call made to the main one, except the layer splits
+	 */
+	void setMirror(SVGSink mirror)
+	{
+		this.mirror = mirror;
+	}
+
+	/**
+	 * Ends and begins the main sink again after every top-level group that drew something, so a recorder can hand
+	 * out each group as soon as it is parsed.
+	 */
+	void setLayered(boolean layered)
+	{
+		this.layered = layered;
+	}
+
+	/**
+	 * Parses the document with the platform SAX parser, drawing into the sink.
+	 */
+	void parse(InputSource data) throws ParserConfigurationException, SAXException, IOException
+	{
+		SAXParserFactory spf = SAXParserFactory.newInstance();
+		// the handler matches local names, on by default on Android but not on the JVM
+		spf.setNamespaceAware(true);
+		SAXParser sp = spf.newSAXParser();
+		XMLReader xr = sp.getXMLReader();
+		xr.setContentHandler(this);
+		xr.setFeature("http://xml.org/sax/features/validation", false);
+		if (DISALLOW_DOCTYPE_DECL)
+		{
+			try
+			{
+				xr.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+			}
+			catch (SAXNotRecognizedException e)
+			{
+				DISALLOW_DOCTYPE_DECL = false;
+			}
+		}
+		xr.parse(data);
+	}
+
+	/**
+	 * Ends the current recording at a top-level group boundary and carries
+	 * on in a new one with the same root clip and translation. The mirror is
+	 * not told: it keeps recording the document as a single picture.
+	 */
+	private void publishLayer()
+	{
+		if (drawCount == 0)
+		{
+			return;
+		}
+		drawCount = 0;
+		if (canvasRestoreCount != null)
+		{
+			sink.restoreToCount(canvasRestoreCount);
+		}
+		sink.end();
+
+		sink.begin(recordingWidth, recordingHeight);
+		if (canvasRestoreCount != null)
+		{
+			canvasRestoreCount = sink.save();
+			sink.clipRect(0f, 0f, recordingWidth, recordingHeight);
+			sink.translate(limitsAdjustmentX, limitsAdjustmentY);
+		}
+	}
+
+	public void setColorSwap(Integer searchColor, Integer replaceColor, boolean overideOpacity)
+	{
+		this.searchColor = searchColor;
+		this.replaceColor = replaceColor;
+		if (replaceColor != null && overideOpacity)
+		{
+			opacityMultiplier = ((replaceColor >> 24) & 0x000000FF) / 255f;
+		}
+		else
+		{
+			opacityMultiplier = null;
+		}
+	}
+
+	public void setWhiteMode(boolean whiteMode)
+	{
+		this.whiteMode = whiteMode;
+	}
+
+	@Override
+	public void startDocument() throws SAXException
+	{
+		// Set up prior to parsing a doc
+	}
+
+	@Override
+	public void endDocument() throws SAXException
+	{
+		// Clean up after parsing a doc
+	}
+
+	private final SVGMatrix gradMatrix = new SVGMatrix();
+
+	private boolean doFill(Properties atts, float[] bounding_box)
+	{
+		if ("none".equals(atts.getString(SVGNames.ATTR_DISPLAY)))
+		{
+			return false;
+		}
+		if (whiteMode)
+		{
+			fillPaint.setGradient(null, null);
+			fillPaint.setColor(WHITE);
+			return true;
+		}
+		String fillString = atts.getString(SVGNames.ATTR_FILL);
+		if (fillString != null)
+		{
+			if (fillString.startsWith("url(#"))
+			{
+
+				// It's a gradient fill, look it up in our map
+				String id = fillString.substring("url(#".length(), fillString.length() - 1);
+				SVGGradient g = gradientMap.get(id);
+				if (g != null)
+				{
+					// Util.debug("Found shader!");
+					if (g.matrix == null)
+					{
+						gradMatrix.reset();
+					}
+					else
+					{
+						gradMatrix.set(g.matrix);
+					}
+					if (g.boundingBox && bounding_box != null)
+					{
+						// Log.d("svg", "gradient is bounding box");
+						gradMatrix.preTranslate(bounding_box[0], bounding_box[1]);
+						gradMatrix.preScale(bounding_box[2] - bounding_box[0], bounding_box[3] - bounding_box[1]);
+					}
+					fillPaint.setGradient(g, gradMatrix);
+					return true;
+				}
+				else
+				{
+					LOG.warning("Didn't find shader, using black: " + id);
+					fillPaint.setGradient(null, null);
+					doColor(atts, BLACK, true, fillPaint);
+					return true;
+				}
+			}
+			else if (fillString.equalsIgnoreCase("none"))
+			{
+				fillPaint.setGradient(null, null);
+				fillPaint.setColor(TRANSPARENT);
+				return true;
+			}
+			else
+			{
+				fillPaint.setGradient(null, null);
+				Integer color = atts.getColor(SVGNames.ATTR_FILL);
+				if (color != null)
+				{
+					doColor(atts, color, true, fillPaint);
+					return true;
+				}
+				else
+				{
+					LOG.warning("Unrecognized fill color, using black: " + fillString);
+					doColor(atts, BLACK, true, fillPaint);
+					return true;
+				}
+			}
+		}
+		else
+		{
+			if (fillSet)
+			{
+				// If fill is set, inherit from parent
+				return fillPaint.getColor() != TRANSPARENT; // optimization
+			}
+			else
+			{
+				// Default is black fill
+				fillPaint.setGradient(null, null);
+				fillPaint.setColor(BLACK);
+				return true;
+			}
+		}
+	}
+
+	private boolean doStroke(Properties atts)
+	{
+		if (whiteMode)
+		{
+			// Never stroke in white mode
+			return false;
+		}
+		if ("none".equals(atts.getString(SVGNames.ATTR_DISPLAY)))
+		{
+			return false;
+		}
+
+		// Check for other stroke attributes
+		Float width = atts.getFloat(SVGNames.ATTR_STROKE_WIDTH);
+		if (width != null)
+		{
+			strokePaint.setStrokeWidth(width);
+		}
+
+		String linecap = atts.getString(SVGNames.ATTR_STROKE_LINECAP);
+		if ("round".equals(linecap))
+		{
+			strokePaint.setStrokeCap(SVGPaint.CAP_ROUND);
+		}
+		else if ("square".equals(linecap))
+		{
+			strokePaint.setStrokeCap(SVGPaint.CAP_SQUARE);
+		}
+		else if ("butt".equals(linecap))
+		{
+			strokePaint.setStrokeCap(SVGPaint.CAP_BUTT);
+		}
+
+		String linejoin = atts.getString(SVGNames.ATTR_STROKE_LINEJOIN);
+		if ("miter".equals(linejoin))
+		{
+			strokePaint.setStrokeJoin(SVGPaint.JOIN_MITER);
+		}
+		else if ("round".equals(linejoin))
+		{
+			strokePaint.setStrokeJoin(SVGPaint.JOIN_ROUND);
+		}
+		else if ("bevel".equals(linejoin))
+		{
+			strokePaint.setStrokeJoin(SVGPaint.JOIN_BEVEL);
+		}
+
+		pathStyleHelper(atts.getString(SVGNames.ATTR_STROKE_DASHARRAY), atts.getString(SVGNames.ATTR_STROKE_DASHOFFSET));
+
+		String strokeString = atts.getAttr(SVGNames.ATTR_STROKE);
+		if (strokeString != null)
+		{
+			if (strokeString.equalsIgnoreCase("none"))
+			{
+				strokePaint.setColor(TRANSPARENT);
+				return false;
+			}
+			else
+			{
+				Integer color = atts.getColor(SVGNames.ATTR_STROKE);
+				if (color != null)
+				{
+					doColor(atts, color, false, strokePaint);
+					return true;
+				}
+				else
+				{
+					LOG.warning("Unrecognized stroke color, using none: " + strokeString);
+					strokePaint.setColor(TRANSPARENT);
+					return false;
+				}
+			}
+		}
+		else
+		{
+			if (strokeSet)
+			{
+				// Inherit from parent
+				return strokePaint.getColor() != TRANSPARENT; // optimization
+			}
+			else
+			{
+				// Default is none
+				strokePaint.setColor(TRANSPARENT);
+				return false;
+			}
+		}
+	}
+
+	private SVGGradient doGradient(boolean isLinear)
+	{
+		SVGGradient gradient = new SVGGradient();
+		gradient.id = attributes.get(SVGNames.ATTR_ID);
+		gradient.linear = isLinear;
+		if (isLinear)
+		{
+			gradient.x1 = getFloatAttr(SVGNames.ATTR_X1, 0f);
+			gradient.x2 = getFloatAttr(SVGNames.ATTR_X2, 1f);
+			gradient.y1 = getFloatAttr(SVGNames.ATTR_Y1, 0f);
+			gradient.y2 = getFloatAttr(SVGNames.ATTR_Y2, 0f);
+		}
+		else
+		{
+			gradient.x = getFloatAttr(SVGNames.ATTR_CX, 0f);
+			gradient.y = getFloatAttr(SVGNames.ATTR_CY, 0f);
+			gradient.radius = getFloatAttr(SVGNames.ATTR_R, 0f);
+		}
+		String transform = attributes.get(SVGNames.ATTR_GRADIENT_TRANSFORM);
+		if (transform != null)
+		{
+			gradient.matrix = parseTransform(transform, parserHelper);
+		}
+		String spreadMethod = attributes.get(SVGNames.ATTR_SPREAD_METHOD);
+		if (spreadMethod == null)
+		{
+			spreadMethod = "pad";
+		}
+
+		gradient.spread = (spreadMethod.equals("reflect")) ? SVGGradient.SPREAD_REFLECT : (spreadMethod.equals("repeat")) ? SVGGradient.SPREAD_REPEAT : SVGGradient.SPREAD_PAD;
+
+		String unit = attributes.get(SVGNames.ATTR_GRADIENT_UNITS);
+		if (unit == null)
+		{
+			unit = "objectBoundingBox";
+		}
+		gradient.boundingBox = !unit.equals("userSpaceOnUse");
+
+		String xlink = attributes.get(SVGNames.ATTR_HREF);
+		if (xlink != null)
+		{
+			if (xlink.startsWith("#"))
+			{
+				xlink = xlink.substring(1);
+			}
+			gradient.xlink = xlink;
+		}
+		return gradient;
+	}
+
+	private void doColor(Properties atts, Integer color, boolean fillMode, SVGPaint paint)
+	{
+		int c = (0xFFFFFF & color) | 0xFF000000;
+		if (searchColor != null && searchColor.intValue() == c)
+		{
+			c = replaceColor;
+		}
+		paint.setGradient(null, null);
+		paint.setColor(c);
+		Float opacityAttr = atts.getFloat(SVGNames.ATTR_OPACITY);
+		if (opacityAttr == null)
+		{
+			opacityAttr = atts.getFloat(fillMode ? SVGNames.ATTR_FILL_OPACITY : SVGNames.ATTR_STROKE_OPACITY);
+		}
+
+		float opacity = opacityAttr != null ? opacityAttr : 1f;
+		opacity *= currentLayerAttributes().opacity;
+		if (opacityMultiplier != null)
+		{
+			opacity *= opacityMultiplier;
+		}
+		paint.setAlpha((int) (255f * opacity));
+	}
+
+	/**
+	 * set the path style (if any) stroke-dasharray="n1,n2,..."
+	 * stroke-dashoffset=n
+	 */
+	private void pathStyleHelper(String style, String offset)
+	{
+		if (style == null)
+		{
+			return;
+		}
+
+		if (style.equals("none"))
+		{
+			strokePaint.setDash(null, 0);
+			return;
+		}
+
+		StringTokenizer st = new StringTokenizer(style, " ,");
+		int count = st.countTokens();
+		float[] intervals = new float[(count & 1) == 1 ? count * 2 : count];
+		float max = 0;
+		float current = 1f;
+		int i = 0;
+		while (st.hasMoreTokens())
+		{
+			intervals[i++] = current = toFloat(st.nextToken(), current);
+			max += current;
+		}
+
+		// in svg speak, we double the intervals on an odd count
+		for (int start = 0; i < intervals.length; i++, start++)
+		{
+			max += intervals[i] = intervals[start];
+		}
+
+		float off = 0f;
+		if (offset != null)
+		{
+			try
+			{
+				off = Float.parseFloat(offset) % max;
+			}
+			catch (NumberFormatException e)
+			{
+				// ignore
+			}
+		}
+
+		strokePaint.setDash(intervals, off);
+	}
+
+	private static float toFloat(String s, float dflt)
+	{
+		float result = dflt;
+		try
+		{
+			result = Float.parseFloat(s);
+		}
+		catch (NumberFormatException e)
+		{
+			// ignore
+		}
+		return result;
+	}
+
+	private boolean hidden = false;
+	private int hiddenLevel = 0;
+	private boolean boundsMode = false;
+
+	private void doLimits2(float x, float y)
+	{
+		if (x < limits[0])
+		{
+			limits[0] = x;
+		}
+		if (x > limits[2])
+		{
+			limits[2] = x;
+		}
+		if (y < limits[1])
+		{
+			limits[1] = y;
+		}
+		if (y > limits[3])
+		{
+			limits[3] = y;
+		}
+	}
+
+	private final float[] tmpLimitRect = new float[4];
+
+	private void doLimits(float[] box, SVGPaint paint)
+	{
+		SVGMatrix m = matrixStack.getLast();
+		m.mapRect(tmpLimitRect, box);
+		float width2 = (paint == null) ? 0 : paint.getStrokeWidth() / 2;
+		doLimits2(tmpLimitRect[0] - width2, tmpLimitRect[1] - width2);
+		doLimits2(tmpLimitRect[2] + width2, tmpLimitRect[3] + width2);
+	}
+
+	private void doLimits(float[] box)
+	{
+		doLimits(box, null);
+	}
+
+	private void pushTransform()
+	{
+		final String transform = attributes.get(SVGNames.ATTR_TRANSFORM);
+		boolean pushed = transform != null;
+		transformStack.addLast(pushed);
+		if (pushed)
+		{
+			final SVGMatrix matrix = parseTransform(transform, parserHelper);
+			save();
+			concat(matrix);
+			matrix.postConcat(matrixStack.getLast());
+			matrixStack.addLast(matrix);
+		}
+
+	}
+
+	private void popTransform()
+	{
+		if (transformStack.removeLast())
+		{
+			restore();
+			matrixStack.removeLast();
+		}
+	}
+
+	// Sink calls go through here so they can be mirrored
+
+	private void beginRecording(int width, int height)
+	{
+		recordingWidth = width;
+		recordingHeight = height;
+		sink.begin(width, height);
+		if (mirror != null)
+		{
+			mirror.begin(width, height);
+		}
+	}
+
+	private void endRecording()
+	{
+		sink.end();
+		if (mirror != null)
+		{
+			mirror.end();
+		}
+	}
+
+	private int save()
+	{
+		if (mirror != null)
+		{
+			mirror.save();
+		}
+		return sink.save();
+	}
+
+	private void restore()
+	{
+		if (mirror != null)
+		{
+			mirror.restore();
+		}
+		sink.restore();
+	}
+
+	private void restoreToCount(int count)
+	{
+		if (mirror != null)
+		{
+			mirror.restoreToCount(count);
+		}
+		sink.restoreToCount(count);
+	}
+
+	private void concat(SVGMatrix matrix)
+	{
+		if (mirror != null)
+		{
+			mirror.concat(matrix);
+		}
+		sink.concat(matrix);
+	}
+
+	private void translate(float dx, float dy)
+	{
+		if (mirror != null)
+		{
+			mirror.translate(dx, dy);
+		}
+		sink.translate(dx, dy);
+	}
+
+	private void clipRect(float left, float top, float right, float bottom)
+	{
+		if (mirror != null)
+		{
+			mirror.clipRect(left, top, right, bottom);
+		}
+		sink.clipRect(left, top, right, bottom);
+	}
+
+	private void drawRect(float[] rect, SVGPaint paint)
+	{
+		if (mirror != null)
+		{
+			mirror.drawRect(rect[0], rect[1], rect[2], rect[3], paint);
+		}
+		sink.drawRect(rect[0], rect[1], rect[2], rect[3], paint);
+		drawCount++;
+	}
+
+	private void drawRoundRect(float[] rect, float rx, float ry, SVGPaint paint)
+	{
+		if (mirror != null)
+		{
+			mirror.drawRoundRect(rect[0], rect[1], rect[2], rect[3], rx, ry, paint);
+		}
+		sink.drawRoundRect(rect[0], rect[1], rect[2], rect[3], rx, ry, paint);
+		drawCount++;
+	}
+
+	private void drawOval(float[] rect, SVGPaint paint)
+	{
+		if (mirror != null)
+		{
+			mirror.drawOval(rect[0], rect[1], rect[2], rect[3], paint);
+		}
+		sink.drawOval(rect[0], rect[1], rect[2], rect[3], paint);
+		drawCount++;
+	}
+
+	private void drawLine(float x1, float y1, float x2, float y2, SVGPaint paint)
+	{
+		if (mirror != null)
+		{
+			mirror.drawLine(x1, y1, x2, y2, paint);
+		}
+		sink.drawLine(x1, y1, x2, y2, paint);
+		drawCount++;
+	}
+
+	private void drawPath(PathData data, SVGPaint paint)
+	{
+		if (mirror != null)
+		{
+			mirror.drawPath(data, paint);
+		}
+		sink.drawPath(data, paint);
+		drawCount++;
+	}
+
+	private static void setRect(float[] rect, float left, float top, float right, float bottom)
+	{
+		rect[0] = left;
+		rect[1] = top;
+		rect[2] = right;
+		rect[3] = bottom;
+	}
+
+	@Override
+	public void startElement(String namespaceURI, String localName, String qName, Attributes atts) throws SAXException
+	{
+		final int tag = SVGNames.tagId(localName);
+		attributes.load(atts);
+		// Reset paint opacity
+		strokePaint.setAlpha(255);
+		fillPaint.setAlpha(255);
+		// Ignore everything but rectangles in bounds mode
+		if (boundsMode)
+		{
+			if (tag == SVGNames.TAG_RECT)
+			{
+				Float x = getFloatAttr(SVGNames.ATTR_X);
+				if (x == null)
+				{
+					x = 0f;
+				}
+				Float y = getFloatAttr(SVGNames.ATTR_Y);
+				if (y == null)
+				{
+					y = 0f;
+				}
+				Float width = getFloatAttr(SVGNames.ATTR_WIDTH);
+				Float height = getFloatAttr(SVGNames.ATTR_HEIGHT);
+				bounds = new float[] { x, y, x + width, y + height };
+			}
+			return;
+		}
+		if (tag == SVGNames.TAG_SVG)
+		{
+			boolean recording = false;
+			String viewboxStr = attributes.get(SVGNames.ATTR_VIEW_BOX);
+			if (viewboxStr != null)
+			{
+				String[] dims = viewboxStr.replace(',', ' ').split("\\s+");
+				if (dims.length == 4)
+				{
+					Float x1 = parseFloatValue(dims[0], null);
+					Float y1 = parseFloatValue(dims[1], null);
+					Float x2 = parseFloatValue(dims[2], null);
+					Float y2 = parseFloatValue(dims[3], null);
+					if (x1 != null && x2 != null && y1 != null && y2 != null)
+					{
+						float width = (float) Math.ceil(x2 - x1);
+						float height = (float) Math.ceil(y2 - y1);
+						beginRecording((int) width, (int) height);
+						recording = true;
+						canvasRestoreCount = save();
+						clipRect(0f, 0f, width, height);
+						limitsAdjustmentX = -x1;
+						limitsAdjustmentY = -y1;
+						translate(limitsAdjustmentX, limitsAdjustmentY);
+					}
+				}
+			}
+			// No viewbox
+			if (!recording)
+			{
+				int width = (int) (float) Math.ceil(getFloatAttr(SVGNames.ATTR_WIDTH));
+				int height = (int) (float) Math.ceil(getFloatAttr(SVGNames.ATTR_HEIGHT));
+				beginRecording(width, height);
+				canvasRestoreCount = null;
+			}
+
+		}
+		else if (tag == SVGNames.TAG_DEFS)
+		{
+			// Ignore
+		}
+		else if (tag == SVGNames.TAG_LINEAR_GRADIENT)
+		{
+			gradient = doGradient(true);
+		}
+		else if (tag == SVGNames.TAG_RADIAL_GRADIENT)
+		{
+			gradient = doGradient(false);
+		}
+		else if (tag == SVGNames.TAG_STOP)
+		{
+			if (gradient != null)
+			{
+				final Properties props = properties();
+
+				final int colour;
+				final Integer stopColour = props.getColor(SVGNames.ATTR_STOP_COLOR);
+				if (stopColour == null)
+				{
+					colour = 0;
+				}
+				else
+				{
+					float alpha = props.getFloat(SVGNames.ATTR_STOP_OPACITY, 1) * currentLayerAttributes().opacity;
+					int alphaInt = Math.round(255 * alpha);
+					colour = stopColour.intValue() | (alphaInt << 24);
+				}
+				gradient.colorList.add(colour);
+
+				float offset = props.getFloat(SVGNames.ATTR_OFFSET, 0);
+				gradient.positionList.add(offset);
+			}
+		}
+		else if (tag == SVGNames.TAG_G)
+		{
+			final Properties props = properties();
+
+			// Check to see if this is the "bounds" layer
+			if ("bounds".equalsIgnoreCase(attributes.get(SVGNames.ATTR_ID)))
+			{
+				boundsMode = true;
+			}
+			if (hidden)
+			{
+				hiddenLevel++;
+				// Util.debug("Hidden up: " + hiddenLevel);
+			}
+			// Go in to hidden mode if display is "none"
+			if ("none".equals(attributes.get(SVGNames.ATTR_DISPLAY)) || "none".equals(props.getString(SVGNames.ATTR_DISPLAY)))
+			{
+				if (!hidden)
+				{
+					hidden = true;
+					hiddenLevel = 1;
+					// Util.debug("Hidden up: " + hiddenLevel);
+				}
+			}
+
+			// Create layer attributes
+			final float opacity = props.getFloat(SVGNames.ATTR_OPACITY, 1f);
+			LayerAttributes curLayerAttr = currentLayerAttributes();
+			String id = attributes.get(SVGNames.ATTR_ID);
+			LayerAttributes newLayerAttr = new LayerAttributes(curLayerAttr.opacity * opacity, id != null ? id : curLayerAttr.id);
+			layerAttributeStack.addLast(newLayerAttr);
+
+			pushTransform();
+			fillPaintStack.addLast(new SVGPaint(fillPaint));
+			strokePaintStack.addLast(new SVGPaint(strokePaint));
+			fillSetStack.addLast(fillSet);
+			strokeSetStack.addLast(strokeSet);
+
+			doFill(props, null); // Added by mrn but a boundingBox is now
+									// required by josef.
+			doStroke(props);
+
+			fillSet |= (props.getString(SVGNames.ATTR_FILL) != null);
+			strokeSet |= (props.getString(SVGNames.ATTR_STROKE) != null);
+
+		}
+		else if (!hidden && tag == SVGNames.TAG_RECT)
+		{
+			Float x = getFloatAttr(SVGNames.ATTR_X);
+			if (x == null)
+			{
+				x = 0f;
+			}
+			Float y = getFloatAttr(SVGNames.ATTR_Y);
+			if (y == null)
+			{
+				y = 0f;
+			}
+			Float width = getFloatAttr(SVGNames.ATTR_WIDTH);
+			Float height = getFloatAttr(SVGNames.ATTR_HEIGHT);
+			Float rx = getFloatAttr(SVGNames.ATTR_RX, 0f);
+			Float ry = getFloatAttr(SVGNames.ATTR_RY, 0f);
+			pushTransform();
+			Properties props = properties();
+			setRect(rect, x, y, x + width, y + height);
+			if (doFill(props, rect))
+			{
+				setRect(rect, x, y, x + width, y + height);
+				if (rx <= 0f && ry <= 0f)
+				{
+					drawRect(rect, fillPaint);
+				}
+				else
+				{
+					drawRoundRect(rect, rx, ry, fillPaint);
+				}
+				doLimits(rect);
+			}
+			if (doStroke(props))
+			{
+				setRect(rect, x, y, x + width, y + height);
+				if (rx <= 0f && ry <= 0f)
+				{
+					drawRect(rect, strokePaint);
+				}
+				else
+				{
+					drawRoundRect(rect, rx, ry, strokePaint);
+				}
+				doLimits(rect, strokePaint);
+			}
+			popTransform();
+		}
+		else if (!hidden && tag == SVGNames.TAG_LINE)
+		{
+			Float x1 = getFloatAttr(SVGNames.ATTR_X1);
+			Float x2 = getFloatAttr(SVGNames.ATTR_X2);
+			Float y1 = getFloatAttr(SVGNames.ATTR_Y1);
+			Float y2 = getFloatAttr(SVGNames.ATTR_Y2);
+			Properties props = properties();
+			if (doStroke(props))
+			{
+				pushTransform();
+				setRect(rect, x1, y1, x2, y2);
+				drawLine(x1, y1, x2, y2, strokePaint);
+				doLimits(rect, strokePaint);
+				popTransform();
+			}
+		}
+		else if (!hidden && (tag == SVGNames.TAG_CIRCLE || tag == SVGNames.TAG_ELLIPSE))
+		{
+			Float centerX, centerY, radiusX, radiusY;
+
+			centerX = getFloatAttr(SVGNames.ATTR_CX);
+			centerY = getFloatAttr(SVGNames.ATTR_CY);
+			if (tag == SVGNames.TAG_ELLIPSE)
+			{
+				radiusX = getFloatAttr(SVGNames.ATTR_RX);
+				radiusY = getFloatAttr(SVGNames.ATTR_RY);
+
+			}
+			else
+			{
+				radiusX = radiusY = getFloatAttr(SVGNames.ATTR_R);
+			}
+			if (centerX != null && centerY != null && radiusX != null && radiusY != null)
+			{
+				pushTransform();
+				Properties props = properties();
+				setRect(rect, centerX - radiusX, centerY - radiusY, centerX + radiusX, centerY + radiusY);
+				if (doFill(props, rect))
+				{
+					drawOval(rect, fillPaint);
+					doLimits(rect);
+				}
+				if (doStroke(props))
+				{
+					drawOval(rect, strokePaint);
+					doLimits(rect, strokePaint);
+				}
+				popTransform();
+			}
+		}
+		else if (!hidden && (tag == SVGNames.TAG_POLYGON || tag == SVGNames.TAG_POLYLINE))
+		{
+			String points = attributes.get(SVGNames.ATTR_POINTS);
+			if (points != null)
+			{
+				int count = parserHelper.parseNumbers(points, 0);
+				if (count > 1)
+				{
+					// Read the points out before pushTransform(), which parses the transform into the same helper
+					PathData p = new PathData(count / 2 + 1);
+					p.moveTo(parserHelper.getNumber(0), parserHelper.getNumber(1));
+					for (int i = 2; i + 1 < count; i += 2)
+					{
+						float x = parserHelper.getNumber(i);
+						float y = parserHelper.getNumber(i + 1);
+						p.lineTo(x, y);
+					}
+					// Don't close a polyline
+					if (tag == SVGNames.TAG_POLYGON)
+					{
+						p.close();
+					}
+					pushTransform();
+					Properties props = properties();
+					p.computeBounds(rect);
+					if (doFill(props, rect))
+					{
+						drawPath(p, fillPaint);
+						doLimits(rect);
+					}
+					if (doStroke(props))
+					{
+						drawPath(p, strokePaint);
+						doLimits(rect, strokePaint);
+					}
+					popTransform();
+				}
+			}
+		}
+		else if (!hidden && tag == SVGNames.TAG_PATH)
+		{
+			PathData p = doPath(attributes.get(SVGNames.ATTR_D), parserHelper);
+			pushTransform();
+			Properties props = properties();
+			p.computeBounds(rect);
+			if (doFill(props, rect))
+			{
+				drawPath(p, fillPaint);
+				doLimits(rect);
+			}
+			if (doStroke(props))
+			{
+				drawPath(p, strokePaint);
+				doLimits(rect, strokePaint);
+			}
+			popTransform();
+		}
+		else if (!hidden)
+		{
+			LOG.warning("UNRECOGNIZED SVG COMMAND: " + localName);
+		}
+	}
+
+	/**
+	 * @return the presentation attributes and style of the current element
+	 */
+	private Properties properties()
+	{
+		StyleSet styles = null;
+		String style = attributes.get(SVGNames.ATTR_STYLE);
+		if (style != null)
+		{
+			styles = styleCache.get(style);
+			if (styles == null)
+			{
+				styles = new StyleSet(style);
+				styleCache.put(style, styles);
+			}
+		}
+		return new Properties(attributes, styles, colorCache);
+	}
+
+	private Float getFloatAttr(int id)
+	{
+		return parseFloatValue(attributes.get(id), null);
+	}
+
+	private Float getFloatAttr(int id, Float defaultValue)
+	{
+		return parseFloatValue(attributes.get(id), defaultValue);
+	}
+
+	private float getFloatAttr(int id, float defaultValue)
+	{
+		return parseFloatValue(attributes.get(id), defaultValue);
+	}
+
+	public LayerAttributes currentLayerAttributes()
+	{
+		return layerAttributeStack.getLast();
+	}
+
+	/**
+	 * @return the id of the innermost group around the element being drawn that has one, or null
+	 */
+	String currentGroupId()
+	{
+		return currentLayerAttributes().id;
+	}
+
+	@Override
+	public void characters(char ch[], int start, int length)
+	{
+		// no-op
+	}
+
+	@Override
+	public void endElement(String namespaceURI, String localName, String qName) throws SAXException
+	{
+		final int tag = SVGNames.tagId(localName);
+		if (tag == SVGNames.TAG_SVG)
+		{
+			if (canvasRestoreCount != null)
+			{
+				restoreToCount(canvasRestoreCount);
+			}
+			if (limitsAdjustmentX != null)
+			{
+				limits[0] += limitsAdjustmentX;
+				limits[2] += limitsAdjustmentX;
+			}
+			if (limitsAdjustmentY != null)
+			{
+				limits[1] += limitsAdjustmentY;
+				limits[3] += limitsAdjustmentY;
+			}
+			endRecording();
+		}
+		else if (tag == SVGNames.TAG_LINEAR_GRADIENT || tag == SVGNames.TAG_RADIAL_GRADIENT)
+		{
+			if (gradient.id != null)
+			{
+				if (gradient.xlink != null)
+				{
+					SVGGradient parent = gradientMap.get(gradient.xlink);
+					if (parent != null)
+					{
+						gradient = parent.createChild(gradient);
+					}
+				}
+				gradient.resolve();
+				if (gradient.getColors().length == 0)
+				{
+					LOG.fine("Gradient without stops: " + gradient.id);
+				}
+				gradientMap.put(gradient.id, gradient);
+			}
+		}
+		else if (tag == SVGNames.TAG_G)
+		{
+			if (boundsMode)
+			{
+				boundsMode = false;
+			}
+			// Break out of hidden mode
+			if (hidden)
+			{
+				hiddenLevel--;
+				// Util.debug("Hidden down: " + hiddenLevel);
+				if (hiddenLevel == 0)
+				{
+					hidden = false;
+				}
+			}
+			// // Clear gradient map
+			// gradientRefMap.clear();
+			popTransform();
+			fillPaint = fillPaintStack.removeLast();
+			fillSet = fillSetStack.removeLast();
+			strokePaint = strokePaintStack.removeLast();
+			strokeSet = strokeSetStack.removeLast();
+			if (!layerAttributeStack.isEmpty())
+			{
+				layerAttributeStack.removeLast();
+			}
+			// only the root attributes left: a top-level group just ended
+			if (layered && layerAttributeStack.size() == 1)
+			{
+				publishLayer();
+			}
+		}
+	}
+
+	/**
+	 * Parse a list of transforms such as: foo(n,n,n...) bar(n,n,n..._ ...)
+	 * Delimiters are whitespaces or commas
+	 */
+	static SVGMatrix parseTransform(String s, ParserHelper ph)
+	{
+		SVGMatrix matrix = new SVGMatrix();
+		int n = s.length();
+		int start = 0;
+		while (true)
+		{
+			while (start < n && (s.charAt(start) == ',' || Character.isWhitespace(s.charAt(start))))
+			{
+				start++;
+			}
+			if (start >= n)
+			{
+				break;
+			}
+			parseTransformItem(s, start, matrix, ph);
+			// Log.i(TAG, "Transformed: (" + s + ") " + matrix);
+			final int rparen = s.indexOf(')', start);
+			if (rparen < 0)
+			{
+				break;
+			}
+			start = rparen + 1;
+		}
+		return matrix;
+	}
+
+	private static SVGMatrix parseTransformItem(String s, int start, SVGMatrix matrix, ParserHelper ph)
+	{
+		if (s.startsWith("matrix(", start))
+		{
+			if (ph.parseNumbers(s, start + "matrix(".length()) == 6)
+			{
+				SVGMatrix mat = new SVGMatrix();
+				mat.setValues(
+						// Row 1
+						ph.getNumber(0), ph.getNumber(2), ph.getNumber(4),
+						// Row 2
+						ph.getNumber(1), ph.getNumber(3), ph.getNumber(5));
+				matrix.preConcat(mat);
+			}
+		}
+		else if (s.startsWith("translate(", start))
+		{
+			int count = ph.parseNumbers(s, start + "translate(".length());
+			if (count > 0)
+			{
+				float tx = ph.getNumber(0);
+				float ty = 0;
+				if (count > 1)
+				{
+					ty = ph.getNumber(1);
+				}
+				matrix.preTranslate(tx, ty);
+			}
+		}
+		else if (s.startsWith("scale(", start))
+		{
+			int count = ph.parseNumbers(s, start + "scale(".length());
+			if (count > 0)
+			{
+				float sx = ph.getNumber(0);
+				float sy = sx;
+				if (count > 1)
+				{
+					sy = ph.getNumber(1);
+				}
+				matrix.preScale(sx, sy);
+			}
+		}
+		else if (s.startsWith("skewX(", start))
+		{
+			if (ph.parseNumbers(s, start + "skewX(".length()) > 0)
+			{
+				float angle = ph.getNumber(0);
+				matrix.preSkew((float) Math.tan(angle), 0);
+			}
+		}
+		else if (s.startsWith("skewY(", start))
+		{
+			if (ph.parseNumbers(s, start + "skewY(".length()) > 0)
+			{
+				float angle = ph.getNumber(0);
+				matrix.preSkew(0, (float) Math.tan(angle));
+			}
+		}
+		else if (s.startsWith("rotate(", start))
+		{
+			int count = ph.parseNumbers(s, start + "rotate(".length());
+			if (count > 0)
+			{
+				float angle = ph.getNumber(0);
+				float cx = 0;
+				float cy = 0;
+				if (count > 2)
+				{
+					cx = ph.getNumber(1);
+					cy = ph.getNumber(2);
+				}
+				matrix.preTranslate(-cx, -cy);
+				matrix.preRotate(angle);
+				matrix.preTranslate(cx, cy);
+			}
+		}
+		else
+		{
+			LOG.warning("Invalid transform (" + s.substring(start) + ")");
+		}
+		return matrix;
+	}
+
+	/**
+	 * This is where the hard-to-parse paths are handled. Uppercase rules are
+	 * absolute positions, lowercase are relative. Types of path rules:
+	 * <p/>
+	 * <ol>
+	 * <li>M/m - (x y)+ - Move to (without drawing)
+	 * <li>Z/z - (no params) - Close path (back to starting point)
+	 * <li>L/l - (x y)+ - Line to
+	 * <li>H/h - x+ - Horizontal ine to
+	 * <li>V/v - y+ - Vertical line to
+	 * <li>C/c - (x1 y1 x2 y2 x y)+ - Cubic bezier to
+	 * <li>S/s - (x2 y2 x y)+ - Smooth cubic bezier to (shorthand that assumes
+	 * the x2, y2 from previous C/S is the x1, y1 of this bezier)
+	 * <li>Q/q - (x1 y1 x y)+ - Quadratic bezier to
+	 * <li>T/t - (x y)+ - Smooth quadratic bezier to (assumes previous control
+	 * point is "reflection" of last one w.r.t. to current point)
+	 * </ol>
+	 * <p/>
+	 * Numbers are separate by whitespace, comma or nothing at all (!) if they
+	 * are self-delimiting, (ie. begin with a - sign)
+	 * 
+	 * @param s
+	 *            the path string from the XML
+	 * @param ph
+	 *            parser reused between paths
+	 */
+	static PathData doPath(String s, ParserHelper ph)
+	{
+		int n = s.length();
+		ph.reset(s, 0);
+		ph.skipWhitespace();
+		PathData p = new PathData();
+		float lastX = 0;
+		float lastY = 0;
+		float lastX1 = 0;
+		float lastY1 = 0;
+		float subPathStartX = 0;
+		float subPathStartY = 0;
+		char prevCmd = 0;
+		while (ph.pos < n)
+		{
+			char cmd = s.charAt(ph.pos);
+			switch (cmd)
+			{
+			case '-':
+			case '+':
+			case '0':
+			case '1':
+			case '2':
+			case '3':
+			case '4':
+			case '5':
+			case '6':
+			case '7':
+			case '8':
+			case '9':
+				if (prevCmd == 'm' || prevCmd == 'M')
+				{
+					cmd = (char) ((prevCmd) - 1);
+					break;
+				}
+				else if (("lhvcsqta").indexOf(Character.toLowerCase(prevCmd)) >= 0)
+				{
+					cmd = prevCmd;
+					break;
+				}
+			default:
+			{
+				ph.advance();
+				prevCmd = cmd;
+			}
+			}
+
+			boolean wasCurve = false;
+			switch (cmd)
+			{
+			case 'M':
+			case 'm':
+			{
+				float x = ph.nextFloat();
+				float y = ph.nextFloat();
+				if (cmd == 'm')
+				{
+					subPathStartX += x;
+					subPathStartY += y;
+					lastX += x;
+					lastY += y;
+					p.moveTo(lastX, lastY);
+				}
+				else
+				{
+					subPathStartX = x;
+					subPathStartY = y;
+					p.moveTo(x, y);
+					lastX = x;
+					lastY = y;
+				}
+				break;
+			}
+			case 'Z':
+			case 'z':
+			{
+				p.close();
+				p.moveTo(subPathStartX, subPathStartY);
+				lastX = subPathStartX;
+				lastY = subPathStartY;
+				lastX1 = subPathStartX;
+				lastY1 = subPathStartY;
+				wasCurve = true;
+				break;
+			}
+			case 'T':
+			case 't':
+				// todo - smooth quadratic Bezier (two parameters)
+			case 'L':
+			case 'l':
+			{
+				float x = ph.nextFloat();
+				float y = ph.nextFloat();
+				if (cmd == 'l')
+				{
+					lastX += x;
+					lastY += y;
+					p.lineTo(lastX, lastY);
+				}
+				else
+				{
+					p.lineTo(x, y);
+					lastX = x;
+					lastY = y;
+				}
+				break;
+			}
+			case 'H':
+			case 'h':
+			{
+				float x = ph.nextFloat();
+				if (cmd == 'h')
+				{
+					lastX += x;
+					p.lineTo(lastX, lastY);
+				}
+				else
+				{
+					p.lineTo(x, lastY);
+					lastX = x;
+				}
+				break;
+			}
+			case 'V':
+			case 'v':
+			{
+				float y = ph.nextFloat();
+				if (cmd == 'v')
+				{
+					lastY += y;
+					p.lineTo(lastX, lastY);
+				}
+				else
+				{
+					p.lineTo(lastX, y);
+					lastY = y;
+				}
+				break;
+			}
+			case 'C':
+			case 'c':
+			{
+				wasCurve = true;
+				float x1 = ph.nextFloat();
+				float y1 = ph.nextFloat();
+				float x2 = ph.nextFloat();
+				float y2 = ph.nextFloat();
+				float x = ph.nextFloat();
+				float y = ph.nextFloat();
+				if (cmd == 'c')
+				{
+					x1 += lastX;
+					x2 += lastX;
+					x += lastX;
+					y1 += lastY;
+					y2 += lastY;
+					y += lastY;
+				}
+				p.cubicTo(x1, y1, x2, y2, x, y);
+				lastX1 = x2;
+				lastY1 = y2;
+				lastX = x;
+				lastY = y;
+				break;
+			}
+			case 'Q':
+			case 'q':
+				// todo - quadratic Bezier (four parameters)
+			case 'S':
+			case 's':
+			{
+				wasCurve = true;
+				float x2 = ph.nextFloat();
+				float y2 = ph.nextFloat();
+				float x = ph.nextFloat();
+				float y = ph.nextFloat();
+				if (Character.isLowerCase(cmd))
+				{
+					x2 += lastX;
+					x += lastX;
+					y2 += lastY;
+					y += lastY;
+				}
+				float x1 = 2 * lastX - lastX1;
+				float y1 = 2 * lastY - lastY1;
+				p.cubicTo(x1, y1, x2, y2, x, y);
+				lastX1 = x2;
+				lastY1 = y2;
+				lastX = x;
+				lastY = y;
+				break;
+			}
+			case 'A':
+			case 'a':
+			{
+				float rx = ph.nextFloat();
+				float ry = ph.nextFloat();
+				float theta = ph.nextFloat();
+				int largeArc = ph.nextFlag();
+				int sweepArc = ph.nextFlag();
+				float x = ph.nextFloat();
+				float y = ph.nextFloat();
+				if (cmd == 'a')
+				{
+					x += lastX;
+					y += lastY;
+				}
+				p.arcTo(lastX, lastY, rx, ry, theta, largeArc != 0, sweepArc != 0, x, y);
+				lastX = x;
+				lastY = y;
+				break;
+			}
+			default:
+				LOG.warning("Invalid path command: " + cmd);
+				ph.advance();
+			}
+			if (!wasCurve)
+			{
+				lastX1 = lastX;
+				lastY1 = lastY;
+			}
+			ph.skipWhitespace();
+		}
+		return p;
+	}
+
+	private static Float parseFloatValue(String str, Float defaultValue) {
+		if (str == null) {
+			return defaultValue;
+		} else if (str.endsWith("px")) {
+			str = str.substring(0, str.length() - 2);
+		} else if (str.endsWith("%")) {
+			str = str.substring(0, str.length() - 1);
+			return Float.parseFloat(str) / 100;
+		}
+		// Log.d(TAG, "Float parsing '" + name + "=" + v + "'");
+		return Float.parseFloat(str);
+	}
+
+	/**
+	 * A style attribute tokenized in place into values by attribute id. Instances are cached per style text, so
+	 * elements with identical styles share one StyleSet and its parsed floats.
+	 */
+	private static class StyleSet {
+
+		private static final Object NO_VALUE = new Object();
+
+		final String[] values = new String[SVGNames.ATTRIBUTE_COUNT];
+
+		// parsed floats, filled on first use
+		private final Object[] floats = new Object[SVGNames.ATTRIBUTE_COUNT];
+
+		private StyleSet(String string) {
+			int n = string.length();
+			int start = 0;
+			while (start < n) {
+				int end = string.indexOf(';', start);
+				if (end < 0) {
+					end = n;
+				}
+				int colon = string.indexOf(':', start);
+				if (colon > start && colon < end) {
+					int id = SVGNames.attributeId(string, trimStart(string, start, colon), trimEnd(string, start, colon));
+					if (id != SVGNames.UNKNOWN) {
+						int valueStart = trimStart(string, colon + 1, end);
+						int valueEnd = trimEnd(string, colon + 1, end);
+						values[id] = string.substring(valueStart, valueEnd);
+					}
+				}
+				start = end + 1;
+			}
+		}
+
+		private static int trimStart(String s, int start, int end) {
+			while (start < end && s.charAt(start) <= ' ') {
+				start++;
+			}
+			return start;
+		}
+
+		private static int trimEnd(String s, int start, int end) {
+			while (end > start && s.charAt(end - 1) <= ' ') {
+				end--;
+			}
+			return end;
+		}
+
+		public String getStyle(int id) {
+			return values[id];
+		}
+
+		public Float getFloat(int id) {
+			Object f = floats[id];
+			if (f == null) {
+				try {
+					f = Float.parseFloat(values[id]);
+				} catch (NumberFormatException nfe) {
+					f = NO_VALUE;
+				}
+				floats[id] = f;
+			}
+			return f == NO_VALUE ? null : (Float) f;
+		}
+	}
+
+	private static class Properties {
+
+		StyleSet styles;
+
+		SVGNames.AttributeIndex atts;
+
+		HashMap<String, Integer> colorCache;
+
+		private Properties(SVGNames.AttributeIndex atts, StyleSet styles, HashMap<String, Integer> colorCache) {
+			this.atts = atts;
+			this.styles = styles;
+			this.colorCache = colorCache;
+		}
+
+		public String getAttr(int id) {
+			String v = null;
+			if (styles != null) {
+				v = styles.getStyle(id);
+			}
+			if (v == null) {
+				v = atts.get(id);
+			}
+			return v;
+		}
+
+		public String getString(int id) {
+			return getAttr(id);
+		}
+
+		private static Integer rgb(int r, int g, int b) {
+			return ((r & 0xff) << 16) | ((g & 0xff) << 8) | (b & 0xff);
+		}
+
+		private static int parseNum(String v) throws NumberFormatException {
+			v = v.trim();
+			if (v.endsWith("%")) {
+				v = v.substring(0, v.length() - 1);
+				return Math.round(Float.parseFloat(v) / 100 * 255);
+			}
+			return Integer.parseInt(v);
+		}
+
+		/**
+		 * Colours are cached by their text, most plans only use a handful of them.
+		 */
+		public Integer getColor(int id) {
+			String v = getAttr(id);
+			if (v == null) {
+				return null;
+			}
+			Integer color = colorCache.get(v);
+			if (color == null && !colorCache.containsKey(v)) {
+				color = parseColor(v);
+				colorCache.put(v, color);
+			}
+			return color;
+		}
+
+		private static Integer parseColor(String v) {
+			if (v.startsWith("#")) {
+				try {
+					int c = Integer.parseInt(v.substring(1), 16);
+					return v.length() == 4 ? hex3Tohex6(c) : c;
+				} catch (NumberFormatException nfe) {
+					return null;
+				}
+			} else if (v.startsWith("rgb(") && v.endsWith(")")) {
+				String values[] = v.substring(4, v.length() - 1).split(",");
+				try {
+					return rgb(parseNum(values[0]), parseNum(values[1]), parseNum(values[2]));
+				} catch (NumberFormatException nfe) {
+					return null;
+				} catch (ArrayIndexOutOfBoundsException e) {
+					return null;
+				}
+			} else {
+				return SVGColors.mapColour(v);
+			}
+		}
+
+		// convert 0xRGB into 0xRRGGBB
+		private static int hex3Tohex6(int x) {
+			return (x & 0xF00) << 8 | (x & 0xF00) << 12 | (x & 0xF0) << 4 | (x & 0xF0) << 8 | (x & 0xF) << 4 | (x
+					& 0xF);
+		}
+
+		public float getFloat(int id, float defaultValue) {
+			Float f = getFloat(id);
+			return f == null ? defaultValue : f;
+		}
+
+		public Float getFloat(int id, Float defaultValue) {
+			Float f = getFloat(id);
+			return f == null ? defaultValue : f;
+		}
+
+		public Float getFloat(int id) {
+			if (styles != null && styles.getStyle(id) != null) {
+				return styles.getFloat(id);
+			}
+			String v = atts.get(id);
+			if (v == null) {
+				return null;
+			}
+			try {
+				return Float.parseFloat(v);
+			} catch (NumberFormatException nfe) {
+				return null;
+			}
+		}
+	}
+
+	private static class LayerAttributes {
+
+		public final float opacity;
+		// id of the innermost enclosing group that has one
+		public final String id;
+
+		public LayerAttributes(float opacity, String id) {
+			this.opacity = opacity;
+			this.id = id;
+		}
+	}
+}
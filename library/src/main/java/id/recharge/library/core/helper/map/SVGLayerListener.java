@@ -0,0 +1,19 @@
+package id.recharge.library.core.helper.map;
+
+import android.graphics.Picture;
+
+/**
+ * Receives an SVG in parts while it is being parsed, see
+ * {@link SVGBuilder#setLayerListener(SVGLayerListener)}.
+ */
+public interface SVGLayerListener
+{
+    /**
+     * Called on the parsing thread each time a top-level group has been
+     * drawn. Layers come in document order and all have the size of the whole
+     * document, so drawing them one over the other gives the SVG parsed so far.
+     *
+     * @param layer finished recording, safe to draw from any thread
+     */
+    void onLayerParsed(Picture layer);
+}
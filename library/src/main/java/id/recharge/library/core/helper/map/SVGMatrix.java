@@ -0,0 +1,197 @@
+package id.recharge.library.core.helper.map;
+
+/**
+ * 2D affine transform with the same conventions as
+ * {@code android.graphics.Matrix}, so the parser can track transforms without
+ * the framework class.
+ * <p/>
+ * A point maps to (scaleX * x + skewX * y + transX, skewY * x + scaleY * y + transY).
+ */
+public final class SVGMatrix
+{
+    private float scaleX = 1;
+    private float skewX = 0;
+    private float transX = 0;
+    private float skewY = 0;
+    private float scaleY = 1;
+    private float transY = 0;
+
+    public SVGMatrix()
+    {
+    }
+
+    public SVGMatrix(SVGMatrix src)
+    {
+        set(src);
+    }
+
+    public void reset()
+    {
+        setValues(1, 0, 0, 0, 1, 0);
+    }
+
+    public void set(SVGMatrix src)
+    {
+        setValues(src.scaleX, src.skewX, src.transX, src.skewY, src.scaleY, src.transY);
+    }
+
+    public void setValues(float scaleX, float skewX, float transX, float skewY, float scaleY, float transY)
+    {
+        this.scaleX = scaleX;
+        this.skewX = skewX;
+        this.transX = transX;
+        this.skewY = skewY;
+        this.scaleY = scaleY;
+        this.transY = transY;
+    }
+
+    public boolean isIdentity()
+    {
+        return scaleX == 1 && skewX == 0 && transX == 0 && skewY == 0 && scaleY == 1 && transY == 0;
+    }
+
+    /**
+     * Copies the matrix out as 9 values in the order of
+     * {@code android.graphics.Matrix#getValues(float[])}.
+     */
+    public void getValues(float[] values)
+    {
+        values[0] = scaleX;
+        values[1] = skewX;
+        values[2] = transX;
+        values[3] = skewY;
+        values[4] = scaleY;
+        values[5] = transY;
+        values[6] = 0;
+        values[7] = 0;
+        values[8] = 1;
+    }
+
+    /**
+     * this = this * m, m is applied first
+     */
+    public void preConcat(SVGMatrix m)
+    {
+        concat(this, m);
+    }
+
+    /**
+     * this = m * this, m is applied last
+     */
+    public void postConcat(SVGMatrix m)
+    {
+        concat(m, this);
+    }
+
+    public void preTranslate(float dx, float dy)
+    {
+        transX += scaleX * dx + skewX * dy;
+        transY += skewY * dx + scaleY * dy;
+    }
+
+    public void preScale(float sx, float sy)
+    {
+        scaleX *= sx;
+        skewY *= sx;
+        skewX *= sy;
+        scaleY *= sy;
+    }
+
+    public void preSkew(float kx, float ky)
+    {
+        preConcat(1, kx, ky, 1);
+    }
+
+    /**
+     * @param degrees clockwise in screen coordinates, as with the framework matrix
+     */
+    public void preRotate(float degrees)
+    {
+        double radians = Math.toRadians(degrees);
+        float sin = (float) Math.sin(radians);
+        float cos = (float) Math.cos(radians);
+        preConcat(cos, -sin, sin, cos);
+    }
+
+    /**
+     * Maps the rectangle src (left, top, right, bottom) and stores the bounds
+     * of the result in dst, which may be the same array.
+     */
+    public void mapRect(float[] dst, float[] src)
+    {
+        float left = src[0];
+        float top = src[1];
+        float right = src[2];
+        float bottom = src[3];
+        float x0 = mapX(left, top);
+        float y0 = mapY(left, top);
+        float x1 = mapX(right, top);
+        float y1 = mapY(right, top);
+        float x2 = mapX(right, bottom);
+        float y2 = mapY(right, bottom);
+        float x3 = mapX(left, bottom);
+        float y3 = mapY(left, bottom);
+        dst[0] = Math.min(Math.min(x0, x1), Math.min(x2, x3));
+        dst[1] = Math.min(Math.min(y0, y1), Math.min(y2, y3));
+        dst[2] = Math.max(Math.max(x0, x1), Math.max(x2, x3));
+        dst[3] = Math.max(Math.max(y0, y1), Math.max(y2, y3));
+    }
+
+    public float mapX(float x, float y)
+    {
+        return scaleX * x + skewX * y + transX;
+    }
+
+    public float mapY(float x, float y)
+    {
+        return skewY * x + scaleY * y + transY;
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof SVGMatrix))
+        {
+            return false;
+        }
+        SVGMatrix m = (SVGMatrix) o;
+        return scaleX == m.scaleX && skewX == m.skewX && transX == m.transX
+                && skewY == m.skewY && scaleY == m.scaleY && transY == m.transY;
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int h = Float.floatToIntBits(scaleX);
+        h = 31 * h + Float.floatToIntBits(skewX);
+        h = 31 * h + Float.floatToIntBits(transX);
+        h = 31 * h + Float.floatToIntBits(skewY);
+        h = 31 * h + Float.floatToIntBits(scaleY);
+        return 31 * h + Float.floatToIntBits(transY);
+    }
+
+    // this = this * linear part (a b; c d), no translation
+    private void preConcat(float a, float b, float c, float d)
+    {
+        float sx = scaleX * a + skewX * c;
+        float kx = scaleX * b + skewX * d;
+        float ky = skewY * a + scaleY * c;
+        float sy = skewY * b + scaleY * d;
+        scaleX = sx;
+        skewX = kx;
+        skewY = ky;
+        scaleY = sy;
+    }
+
+    // this = a * b
+    private void concat(SVGMatrix a, SVGMatrix b)
+    {
+        float sx = a.scaleX * b.scaleX + a.skewX * b.skewY;
+        float kx = a.scaleX * b.skewX + a.skewX * b.scaleY;
+        float tx = a.scaleX * b.transX + a.skewX * b.transY + a.transX;
+        float ky = a.skewY * b.scaleX + a.scaleY * b.skewY;
+        float sy = a.skewY * b.skewX + a.scaleY * b.scaleY;
+        float ty = a.skewY * b.transX + a.scaleY * b.transY + a.transY;
+        setValues(sx, kx, tx, ky, sy, ty);
+    }
+}
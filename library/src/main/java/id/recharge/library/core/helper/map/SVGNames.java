@@ -0,0 +1,187 @@
+package id.recharge.library.core.helper.map;
+
+import org.xml.sax.Attributes;
+
+/**
+ * Interned ids of the element tags and attribute / style property names
+ * {@link SVGParser} understands, so the handler can compare ints instead of
+ * strings and resolve attributes by index instead of scanning them.
+ * <p/>
+ * Names are looked up in small open-addressing tables straight from a region
+ * of the source text, so tokenizing a style string needs no substrings for
+ * the property names.
+ */
+final class SVGNames
+{
+    static final int UNKNOWN = -1;
+
+    static final int TAG_SVG = 0;
+    static final int TAG_DEFS = 1;
+    static final int TAG_LINEAR_GRADIENT = 2;
+    static final int TAG_RADIAL_GRADIENT = 3;
+    static final int TAG_STOP = 4;
+    static final int TAG_G = 5;
+    static final int TAG_RECT = 6;
+    static final int TAG_LINE = 7;
+    static final int TAG_CIRCLE = 8;
+    static final int TAG_ELLIPSE = 9;
+    static final int TAG_POLYGON = 10;
+    static final int TAG_POLYLINE = 11;
+    static final int TAG_PATH = 12;
+
+    private static final String[] TAGS = {
+            "svg", "defs", "linearGradient", "radialGradient", "stop", "g", "rect", "line", "circle", "ellipse",
+            "polygon", "polyline", "path"};
+
+    static final int ATTR_ID = 0;
+    static final int ATTR_STYLE = 1;
+    static final int ATTR_TRANSFORM = 2;
+    static final int ATTR_DISPLAY = 3;
+    static final int ATTR_OPACITY = 4;
+    static final int ATTR_FILL = 5;
+    static final int ATTR_FILL_OPACITY = 6;
+    static final int ATTR_STROKE = 7;
+    static final int ATTR_STROKE_OPACITY = 8;
+    static final int ATTR_STROKE_WIDTH = 9;
+    static final int ATTR_STROKE_LINECAP = 10;
+    static final int ATTR_STROKE_LINEJOIN = 11;
+    static final int ATTR_STROKE_DASHARRAY = 12;
+    static final int ATTR_STROKE_DASHOFFSET = 13;
+    static final int ATTR_X = 14;
+    static final int ATTR_Y = 15;
+    static final int ATTR_WIDTH = 16;
+    static final int ATTR_HEIGHT = 17;
+    static final int ATTR_RX = 18;
+    static final int ATTR_RY = 19;
+    static final int ATTR_X1 = 20;
+    static final int ATTR_Y1 = 21;
+    static final int ATTR_X2 = 22;
+    static final int ATTR_Y2 = 23;
+    static final int ATTR_CX = 24;
+    static final int ATTR_CY = 25;
+    static final int ATTR_R = 26;
+    static final int ATTR_D = 27;
+    static final int ATTR_POINTS = 28;
+    static final int ATTR_VIEW_BOX = 29;
+    static final int ATTR_OFFSET = 30;
+    static final int ATTR_STOP_COLOR = 31;
+    static final int ATTR_STOP_OPACITY = 32;
+    static final int ATTR_GRADIENT_TRANSFORM = 33;
+    static final int ATTR_GRADIENT_UNITS = 34;
+    static final int ATTR_SPREAD_METHOD = 35;
+    static final int ATTR_HREF = 36;
+
+    private static final String[] ATTRIBUTES = {
+            "id", "style", "transform", "display", "opacity", "fill", "fill-opacity", "stroke", "stroke-opacity",
+            "stroke-width", "stroke-linecap", "stroke-linejoin", "stroke-dasharray", "stroke-dashoffset", "x", "y",
+            "width", "height", "rx", "ry", "x1", "y1", "x2", "y2", "cx", "cy", "r", "d", "points", "viewBox",
+            "offset", "stop-color", "stop-opacity", "gradientTransform", "gradientUnits", "spreadMethod", "href"};
+
+    static final int ATTRIBUTE_COUNT = ATTRIBUTES.length;
+
+    private static final int[] TAG_TABLE = buildTable(TAGS);
+    private static final int[] ATTRIBUTE_TABLE = buildTable(ATTRIBUTES);
+
+    private SVGNames()
+    {
+    }
+
+    static int tagId(String name)
+    {
+        return lookup(TAGS, TAG_TABLE, name, 0, name.length());
+    }
+
+    static int attributeId(String name)
+    {
+        return lookup(ATTRIBUTES, ATTRIBUTE_TABLE, name, 0, name.length());
+    }
+
+    /**
+     * @return the id of the attribute named by s[start, end), or {@link #UNKNOWN}
+     */
+    static int attributeId(String s, int start, int end)
+    {
+        return lookup(ATTRIBUTES, ATTRIBUTE_TABLE, s, start, end);
+    }
+
+    private static int hash(String s, int start, int end)
+    {
+        int h = 0;
+        for (int i = start; i < end; i++)
+        {
+            h = 31 * h + s.charAt(i);
+        }
+        return h ^ (h >>> 7);
+    }
+
+    // open addressing with linear probing, slots hold id + 1, 0 when empty
+    private static int[] buildTable(String[] names)
+    {
+        int size = Integer.highestOneBit(names.length * 4);
+        int[] table = new int[size];
+        for (int id = 0; id < names.length; id++)
+        {
+            int slot = hash(names[id], 0, names[id].length()) & (size - 1);
+            while (table[slot] != 0)
+            {
+                slot = (slot + 1) & (size - 1);
+            }
+            table[slot] = id + 1;
+        }
+        return table;
+    }
+
+    private static int lookup(String[] names, int[] table, String s, int start, int end)
+    {
+        int length = end - start;
+        int mask = table.length - 1;
+        int slot = hash(s, start, end) & mask;
+        while (table[slot] != 0)
+        {
+            int id = table[slot] - 1;
+            String name = names[id];
+            if (name.length() == length && s.regionMatches(start, name, 0, length))
+            {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return UNKNOWN;
+    }
+
+    /**
+     * Attribute values of the current element by attribute id, filled in one
+     * pass over the SAX attributes and reused from element to element.
+     */
+    static final class AttributeIndex
+    {
+        private final String[] values = new String[ATTRIBUTE_COUNT];
+        private final int[] present = new int[ATTRIBUTE_COUNT];
+        private int presentCount = 0;
+
+        void load(Attributes attributes)
+        {
+            for (int i = 0; i < presentCount; i++)
+            {
+                values[present[i]] = null;
+            }
+            presentCount = 0;
+            int n = attributes.getLength();
+            for (int i = 0; i < n; i++)
+            {
+                int id = attributeId(attributes.getLocalName(i));
+                // the first occurrence wins, as with a linear scan
+                if (id != UNKNOWN && values[id] == null)
+                {
+                    values[id] = attributes.getValue(i);
+                    present[presentCount++] = id;
+                }
+            }
+        }
+
+        String get(int id)
+        {
+            return values[id];
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package id.recharge.library.core.helper.map;
+
+import java.util.Arrays;
+
+/**
+ * How a shape is filled or stroked, as plain values: the subset of
+ * {@code android.graphics.Paint} the parser sets. Drawing is always
+ * anti-aliased.
+ * <p/>
+ * The parser reuses and mutates its paints, so a sink that keeps one past the
+ * draw call must copy it.
+ */
+public final class SVGPaint
+{
+    // same order as android.graphics.Paint.Style, Cap and Join
+    public static final int STYLE_FILL = 0;
+    public static final int STYLE_STROKE = 1;
+
+    public static final int CAP_BUTT = 0;
+    public static final int CAP_ROUND = 1;
+    public static final int CAP_SQUARE = 2;
+
+    public static final int JOIN_MITER = 0;
+    public static final int JOIN_ROUND = 1;
+    public static final int JOIN_BEVEL = 2;
+
+    private int style;
+    private int color = 0xFF000000;
+    private float strokeWidth = 0;
+    private int strokeCap = CAP_BUTT;
+    private int strokeJoin = JOIN_MITER;
+    private float strokeMiter = 4;
+    // never modified once set, so copies share it
+    private float[] dashIntervals = null;
+    private float dashPhase = 0;
+    private SVGGradient gradient = null;
+    private final SVGMatrix gradientMatrix = new SVGMatrix();
+
+    public SVGPaint(int style)
+    {
+        this.style = style;
+    }
+
+    public SVGPaint(SVGPaint src)
+    {
+        set(src);
+    }
+
+    public void set(SVGPaint src)
+    {
+        style = src.style;
+        color = src.color;
+        strokeWidth = src.strokeWidth;
+        strokeCap = src.strokeCap;
+        strokeJoin = src.strokeJoin;
+        strokeMiter = src.strokeMiter;
+        dashIntervals = src.dashIntervals;
+        dashPhase = src.dashPhase;
+        gradient = src.gradient;
+        gradientMatrix.set(src.gradientMatrix);
+    }
+
+    public int getStyle()
+    {
+        return style;
+    }
+
+    /**
+     * @return the colour as ARGB
+     */
+    public int getColor()
+    {
+        return color;
+    }
+
+    public void setColor(int color)
+    {
+        this.color = color;
+    }
+
+    /**
+     * Replaces the alpha of the colour, keeping its RGB.
+     */
+    public void setAlpha(int alpha)
+    {
+        color = (color & 0x00FFFFFF) | ((alpha & 0xFF) << 24);
+    }
+
+    public float getStrokeWidth()
+    {
+        return strokeWidth;
+    }
+
+    public void setStrokeWidth(float strokeWidth)
+    {
+        this.strokeWidth = strokeWidth;
+    }
+
+    public int getStrokeCap()
+    {
+        return strokeCap;
+    }
+
+    public void setStrokeCap(int strokeCap)
+    {
+        this.strokeCap = strokeCap;
+    }
+
+    public int getStrokeJoin()
+    {
+        return strokeJoin;
+    }
+
+    public void setStrokeJoin(int strokeJoin)
+    {
+        this.strokeJoin = strokeJoin;
+    }
+
+    public float getStrokeMiter()
+    {
+        return strokeMiter;
+    }
+
+    /**
+     * @return the dash intervals, or null for a solid line. Must not be modified.
+     */
+    public float[] getDashIntervals()
+    {
+        return dashIntervals;
+    }
+
+    public float getDashPhase()
+    {
+        return dashPhase;
+    }
+
+    /**
+     * @param intervals on and off lengths, taken over by the paint, or null for a solid line
+     */
+    public void setDash(float[] intervals, float phase)
+    {
+        dashIntervals = intervals;
+        dashPhase = intervals == null ? 0 : phase;
+    }
+
+    /**
+     * @return the gradient the shape is filled with, or null for the plain colour
+     */
+    public SVGGradient getGradient()
+    {
+        return gradient;
+    }
+
+    /**
+     * @return the local matrix of the gradient, identity when there is none
+     */
+    public SVGMatrix getGradientMatrix()
+    {
+        return gradientMatrix;
+    }
+
+    public void setGradient(SVGGradient gradient, SVGMatrix matrix)
+    {
+        this.gradient = gradient;
+        if (gradient == null || matrix == null)
+        {
+            gradientMatrix.reset();
+        }
+        else
+        {
+            gradientMatrix.set(matrix);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof SVGPaint))
+        {
+            return false;
+        }
+        SVGPaint p = (SVGPaint) o;
+        return style == p.style && color == p.color && strokeWidth == p.strokeWidth && strokeCap == p.strokeCap
+                && strokeJoin == p.strokeJoin && strokeMiter == p.strokeMiter
+                && Arrays.equals(dashIntervals, p.dashIntervals) && dashPhase == p.dashPhase
+                && gradient == p.gradient && gradientMatrix.equals(p.gradientMatrix);
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int h = style;
+        h = 31 * h + color;
+        h = 31 * h + Float.floatToIntBits(strokeWidth);
+        h = 31 * h + strokeCap;
+        h = 31 * h + strokeJoin;
+        h = 31 * h + Arrays.hashCode(dashIntervals);
+        h = 31 * h + System.identityHashCode(gradient);
+        return 31 * h + gradientMatrix.hashCode();
+    }
+}
@@ -0,0 +1,359 @@
+package id.recharge.library.core.helper.map;
+
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.DashPathEffect;
+import android.graphics.LinearGradient;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.graphics.Picture;
+import android.graphics.RadialGradient;
+import android.graphics.RectF;
+import android.graphics.Shader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * {@link SVGSink} that draws into an Android {@link Picture}.
+ * <p/>
+ * Every distinct style becomes one {@link Paint}, shared by all draws that use
+ * it and never changed afterwards, and every gradient one shader per local
+ * matrix it is drawn with. With a layer listener every
+ * {@link #end()} that follows a draw hands the finished picture out, and the
+ * next {@link #begin(int, int)} starts another one, see
+ * {@link SVGHandler#setLayered(boolean)}.
+ */
+final class SVGPictureRecorder implements SVGSink
+{
+    private static final Paint.Style[] STYLES = Paint.Style.values();
+    private static final Paint.Cap[] CAPS = Paint.Cap.values();
+    private static final Paint.Join[] JOINS = Paint.Join.values();
+    private static final Shader.TileMode[] TILE_MODES = Shader.TileMode.values();
+
+    // rough cost of one recorded call: op, operands and the flattened paint
+    private static final int STATE_OP_SIZE = 16;
+    private static final int DRAW_OP_SIZE = 64;
+
+    private Picture picture;
+    private Canvas canvas;
+    private int width;
+    private int height;
+    private int drawCount = 0;
+    private int approximateSize = 0;
+
+    private SVGLayerListener layerListener;
+    private final ArrayList<Picture> layers = new ArrayList<Picture>();
+
+    private ColorFilter fillColorFilter;
+    private ColorFilter strokeColorFilter;
+
+    private final Matrix matrix = new Matrix();
+    private final float[] values = new float[9];
+    private final RectF rect = new RectF();
+    // keyed by copies, the parser keeps changing its paints
+    private final HashMap<SVGPaint, Paint> paints = new HashMap<SVGPaint, Paint>();
+    private final IdentityHashMap<SVGGradient, ArrayList<GradientShader>> shaders = new IdentityHashMap<SVGGradient, ArrayList<GradientShader>>();
+
+    private float[] lastDash;
+    private float lastDashPhase;
+    private DashPathEffect lastDashEffect;
+
+    // fill and stroke of one element share the same Path
+    private PathData lastPathData;
+    private Path lastPath;
+
+    void setLayerListener(SVGLayerListener layerListener)
+    {
+        this.layerListener = layerListener;
+    }
+
+    void setColorFilters(ColorFilter fillColorFilter, ColorFilter strokeColorFilter)
+    {
+        this.fillColorFilter = fillColorFilter;
+        this.strokeColorFilter = strokeColorFilter;
+    }
+
+    /**
+     * @return estimated bytes held by everything recorded so far, see
+     * {@link SVG#getApproximateSize()}
+     */
+    int getApproximateSize()
+    {
+        return approximateSize;
+    }
+
+    /**
+     * @return the recorded picture, or all published layers drawn into one
+     */
+    Picture getPicture()
+    {
+        if (layers.isEmpty())
+        {
+            return picture;
+        }
+        if (layers.size() == 1)
+        {
+            return layers.get(0);
+        }
+        Picture whole = new Picture();
+        Canvas wholeCanvas = whole.beginRecording(width, height);
+        for (Picture layer : layers)
+        {
+            wholeCanvas.drawPicture(layer);
+        }
+        whole.endRecording();
+        return whole;
+    }
+
+    @Override
+    public void begin(int width, int height)
+    {
+        this.width = width;
+        this.height = height;
+        picture = new Picture();
+        canvas = picture.beginRecording(width, height);
+        drawCount = 0;
+    }
+
+    @Override
+    public void end()
+    {
+        picture.endRecording();
+        if (layerListener != null && drawCount > 0)
+        {
+            layers.add(picture);
+            layerListener.onLayerParsed(picture);
+        }
+    }
+
+    @Override
+    public int save()
+    {
+        approximateSize += STATE_OP_SIZE;
+        return canvas.save();
+    }
+
+    @Override
+    public void restore()
+    {
+        approximateSize += STATE_OP_SIZE;
+        canvas.restore();
+    }
+
+    @Override
+    public void restoreToCount(int count)
+    {
+        approximateSize += STATE_OP_SIZE;
+        canvas.restoreToCount(count);
+    }
+
+    @Override
+    public void concat(SVGMatrix m)
+    {
+        approximateSize += STATE_OP_SIZE;
+        canvas.concat(toMatrix(m));
+    }
+
+    @Override
+    public void translate(float dx, float dy)
+    {
+        approximateSize += STATE_OP_SIZE;
+        canvas.translate(dx, dy);
+    }
+
+    @Override
+    public void clipRect(float left, float top, float right, float bottom)
+    {
+        approximateSize += STATE_OP_SIZE;
+        canvas.clipRect(left, top, right, bottom);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, SVGPaint p)
+    {
+        rect.set(left, top, right, bottom);
+        canvas.drawRect(rect, toPaint(p));
+        drawCount++;
+        approximateSize += DRAW_OP_SIZE;
+    }
+
+    @Override
+    public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, SVGPaint p)
+    {
+        rect.set(left, top, right, bottom);
+        canvas.drawRoundRect(rect, rx, ry, toPaint(p));
+        drawCount++;
+        approximateSize += DRAW_OP_SIZE;
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, SVGPaint p)
+    {
+        rect.set(left, top, right, bottom);
+        canvas.drawOval(rect, toPaint(p));
+        drawCount++;
+        approximateSize += DRAW_OP_SIZE;
+    }
+
+    @Override
+    public void drawLine(float x1, float y1, float x2, float y2, SVGPaint p)
+    {
+        canvas.drawLine(x1, y1, x2, y2, toPaint(p));
+        drawCount++;
+        approximateSize += DRAW_OP_SIZE;
+    }
+
+    @Override
+    public void drawPath(PathData data, SVGPaint p)
+    {
+        if (data != lastPathData)
+        {
+            lastPathData = data;
+            lastPath = toPath(data);
+            approximateSize += data.getVerbCount() + data.getCoordCount() * 4;
+        }
+        canvas.drawPath(lastPath, toPaint(p));
+        drawCount++;
+        approximateSize += DRAW_OP_SIZE;
+    }
+
+    private Matrix toMatrix(SVGMatrix m)
+    {
+        m.getValues(values);
+        matrix.setValues(values);
+        return matrix;
+    }
+
+    private Paint toPaint(SVGPaint p)
+    {
+        Paint paint = paints.get(p);
+        if (paint == null)
+        {
+            SVGPaint key = new SVGPaint(p);
+            paint = createPaint(key);
+            paints.put(key, paint);
+        }
+        return paint;
+    }
+
+    private Paint createPaint(SVGPaint p)
+    {
+        Paint paint = new Paint();
+        paint.setAntiAlias(true);
+        paint.setStyle(STYLES[p.getStyle()]);
+        paint.setColor(p.getColor());
+        paint.setStrokeWidth(p.getStrokeWidth());
+        paint.setStrokeCap(CAPS[p.getStrokeCap()]);
+        paint.setStrokeJoin(JOINS[p.getStrokeJoin()]);
+        paint.setStrokeMiter(p.getStrokeMiter());
+        float[] dash = p.getDashIntervals();
+        if (dash != null)
+        {
+            if (dash != lastDash || p.getDashPhase() != lastDashPhase)
+            {
+                lastDash = dash;
+                lastDashPhase = p.getDashPhase();
+                lastDashEffect = new DashPathEffect(dash, lastDashPhase);
+            }
+            paint.setPathEffect(lastDashEffect);
+        }
+        SVGGradient gradient = p.getGradient();
+        if (gradient != null)
+        {
+            paint.setShader(getShader(gradient, p.getGradientMatrix()));
+        }
+        paint.setColorFilter(p.getStyle() == SVGPaint.STYLE_FILL ? fillColorFilter : strokeColorFilter);
+        return paint;
+    }
+
+    private Shader getShader(SVGGradient gradient, SVGMatrix localMatrix)
+    {
+        ArrayList<GradientShader> built = shaders.get(gradient);
+        if (built == null)
+        {
+            built = new ArrayList<GradientShader>(1);
+            shaders.put(gradient, built);
+        }
+        // a gradient is mostly drawn with one or two matrices, bounding box units aside
+        for (GradientShader candidate : built)
+        {
+            if (candidate.localMatrix.equals(localMatrix))
+            {
+                return candidate.shader;
+            }
+        }
+        Shader shader = createShader(gradient);
+        if (!localMatrix.isIdentity())
+        {
+            shader.setLocalMatrix(toMatrix(localMatrix));
+        }
+        built.add(new GradientShader(new SVGMatrix(localMatrix), shader));
+        return shader;
+    }
+
+    private static Shader createShader(SVGGradient g)
+    {
+        Shader.TileMode tileMode = TILE_MODES[g.getSpread()];
+        if (g.isLinear())
+        {
+            return new LinearGradient(g.getX1(), g.getY1(), g.getX2(), g.getY2(), g.getColors(), g.getPositions(), tileMode);
+        }
+        return new RadialGradient(g.getCenterX(), g.getCenterY(), g.getRadius(), g.getColors(), g.getPositions(), tileMode);
+    }
+
+    static Path toPath(PathData data)
+    {
+        return buildPath(data.getVerbs(), data.getVerbCount(), data.getCoords(), 0);
+    }
+
+    /**
+     * Builds a {@link Path} from raw verbs and coordinates starting at coordOffset.
+     */
+    static Path buildPath(byte[] verbs, int verbCount, float[] coords, int coordOffset)
+    {
+        Path path = new Path();
+        int c = coordOffset;
+        for (int i = 0; i < verbCount; i++)
+        {
+            switch (verbs[i])
+            {
+            case PathData.MOVE_TO:
+                path.moveTo(coords[c], coords[c + 1]);
+                c += 2;
+                break;
+            case PathData.LINE_TO:
+                path.lineTo(coords[c], coords[c + 1]);
+                c += 2;
+                break;
+            case PathData.QUAD_TO:
+                path.quadTo(coords[c], coords[c + 1], coords[c + 2], coords[c + 3]);
+                c += 4;
+                break;
+            case PathData.CUBIC_TO:
+                path.cubicTo(coords[c], coords[c + 1], coords[c + 2], coords[c + 3], coords[c + 4], coords[c + 5]);
+                c += 6;
+                break;
+            case PathData.CLOSE:
+                path.close();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown path verb " + verbs[i]);
+            }
+        }
+        return path;
+    }
+
+    private static final class GradientShader
+    {
+        final SVGMatrix localMatrix;
+        final Shader shader;
+
+        GradientShader(SVGMatrix localMatrix, Shader shader)
+        {
+            this.localMatrix = localMatrix;
+            this.shader = shader;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+package id.recharge.library.core.helper.map;
+
+/**
+ * Receives the drawing the parser makes of an SVG: a canvas-like sequence of
+ * state and draw calls in plain values, with no framework types. The Android
+ * picture, the display list cache and plain JVM recorders all implement it.
+ * <p/>
+ * Calls come between {@link #begin(int, int)} and {@link #end()}. Save counts
+ * follow the canvas convention: 1 after begin, and {@link #save()} returns the
+ * count before saving. Paints and path data are reused by the parser, so a
+ * sink has to copy what it keeps; a {@link PathData} is passed again unchanged
+ * when an element is both filled and stroked.
+ */
+public interface SVGSink
+{
+    void begin(int width, int height);
+
+    void end();
+
+    int save();
+
+    void restore();
+
+    void restoreToCount(int count);
+
+    void concat(SVGMatrix matrix);
+
+    void translate(float dx, float dy);
+
+    void clipRect(float left, float top, float right, float bottom);
+
+    void drawRect(float left, float top, float right, float bottom, SVGPaint paint);
+
+    void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, SVGPaint paint);
+
+    void drawOval(float left, float top, float right, float bottom, SVGPaint paint);
+
+    void drawLine(float x1, float y1, float x2, float y2, SVGPaint paint);
+
+    void drawPath(PathData path, SVGPaint paint);
+}
@@ -0,0 +1,135 @@
+package id.recharge.library.core.helper.map;
+
+/**
+ * {@link SVGSink} that passes every call on to several sinks, in order. The
+ * save count returned is the first sink's; all sinks see the same calls, so
+ * theirs agree.
+ */
+final class SVGTeeSink implements SVGSink
+{
+    private final SVGSink[] sinks;
+
+    SVGTeeSink(SVGSink... sinks)
+    {
+        this.sinks = sinks;
+    }
+
+    @Override
+    public void begin(int width, int height)
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.begin(width, height);
+        }
+    }
+
+    @Override
+    public void end()
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.end();
+        }
+    }
+
+    @Override
+    public int save()
+    {
+        int count = sinks[0].save();
+        for (int i = 1; i < sinks.length; i++)
+        {
+            sinks[i].save();
+        }
+        return count;
+    }
+
+    @Override
+    public void restore()
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.restore();
+        }
+    }
+
+    @Override
+    public void restoreToCount(int count)
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.restoreToCount(count);
+        }
+    }
+
+    @Override
+    public void concat(SVGMatrix matrix)
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.concat(matrix);
+        }
+    }
+
+    @Override
+    public void translate(float dx, float dy)
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.translate(dx, dy);
+        }
+    }
+
+    @Override
+    public void clipRect(float left, float top, float right, float bottom)
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.clipRect(left, top, right, bottom);
+        }
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, SVGPaint paint)
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.drawRect(left, top, right, bottom, paint);
+        }
+    }
+
+    @Override
+    public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, SVGPaint paint)
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.drawRoundRect(left, top, right, bottom, rx, ry, paint);
+        }
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, SVGPaint paint)
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.drawOval(left, top, right, bottom, paint);
+        }
+    }
+
+    @Override
+    public void drawLine(float x1, float y1, float x2, float y2, SVGPaint paint)
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.drawLine(x1, y1, x2, y2, paint);
+        }
+    }
+
+    @Override
+    public void drawPath(PathData path, SVGPaint paint)
+    {
+        for (SVGSink sink : sinks)
+        {
+            sink.drawPath(path, paint);
+        }
+    }
+}
@@ -0,0 +1,371 @@
+package id.recharge.library.core.helper.map;
+
+import org.xml.sax.InputSource;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * {@link SVGSink} that keeps only the walls of a floor plan, as straight
+ * segments in document coordinates, and indexes them in a {@link WallIndex}.
+ * <p/>
+ * Which shapes are walls is up to a {@link Selector}, usually the id of the
+ * group (layer) they are in or their stroke color. Outlines of rectangles and
+ * ovals, lines and paths become segments; curves are split into short chords.
+ * Plain Java, so it runs on the JVM for tools and tests as well.
+ */
+public final class SVGWallExtractor implements SVGSink
+{
+    /**
+     * Chords per curve and per quarter of an oval.
+     */
+    private static final int CURVE_SEGMENTS = 4;
+
+    private static final int NO_SHAPE = 0;
+    private static final int SHAPE_RECT = 1;
+    private static final int SHAPE_OVAL = 2;
+    private static final int SHAPE_LINE = 3;
+
+    /**
+     * Decides which shapes of the plan are walls or obstacles.
+     */
+    public interface Selector
+    {
+        /**
+         * @param groupId id of the innermost enclosing group that has one, or null
+         * @param paint   fill or stroke the shape is drawn with
+         */
+        boolean isWall(String groupId, SVGPaint paint);
+    }
+
+    /**
+     * Every shape is a wall.
+     */
+    public static final Selector ALL = new Selector()
+    {
+        @Override
+        public boolean isWall(String groupId, SVGPaint paint)
+        {
+            return true;
+        }
+    };
+
+    /**
+     * @return a selector for the shapes inside groups with one of these ids
+     */
+    public static Selector groups(String... groupIds)
+    {
+        final HashSet<String> ids = new HashSet<String>(Arrays.asList(groupIds));
+        return new Selector()
+        {
+            @Override
+            public boolean isWall(String groupId, SVGPaint paint)
+            {
+                return groupId != null && ids.contains(groupId);
+            }
+        };
+    }
+
+    /**
+     * @param color RGB of the stroke, alpha is ignored
+     * @return a selector for the shapes stroked in this color
+     */
+    public static Selector strokes(final int color)
+    {
+        return new Selector()
+        {
+            @Override
+            public boolean isWall(String groupId, SVGPaint paint)
+            {
+                return paint.getStyle() == SVGPaint.STYLE_STROKE && paint.getGradient() == null
+                        && (paint.getColor() & 0xffffff) == (color & 0xffffff);
+            }
+        };
+    }
+
+    /**
+     * Parses a plan and indexes its walls.
+     *
+     * @throws SVGParseException if the document cannot be read or parsed
+     */
+    public static WallIndex extract(InputStream in, Selector selector) throws SVGParseException
+    {
+        SVGHandler handler = new SVGHandler();
+        SVGWallExtractor extractor = new SVGWallExtractor(handler, selector);
+        handler.setSink(extractor);
+        try
+        {
+            handler.parse(new InputSource(in));
+        }
+        catch (Exception e)
+        {
+            throw new SVGParseException(e);
+        }
+        return extractor.toIndex();
+    }
+
+    private final SVGHandler handler;
+    private final Selector selector;
+
+    // current transform, one entry per save
+    private SVGMatrix[] matrices = {new SVGMatrix()};
+    private int depth = 0;
+
+    private float[] segments = new float[256];
+    private int segmentCount = 0;
+
+    // the parser draws a shape twice when it is both filled and stroked
+    private PathData lastPath;
+    private int lastShape = NO_SHAPE;
+    private final float[] lastBounds = new float[4];
+
+    private SVGWallExtractor(SVGHandler handler, Selector selector)
+    {
+        this.handler = handler;
+        this.selector = selector;
+    }
+
+    /**
+     * @return the walls found so far
+     */
+    WallIndex toIndex()
+    {
+        return new WallIndex(Arrays.copyOf(segments, segmentCount * 4), segmentCount);
+    }
+
+    @Override
+    public void begin(int width, int height)
+    {
+        depth = 0;
+        matrices[0].reset();
+    }
+
+    @Override
+    public void end()
+    {
+    }
+
+    @Override
+    public int save()
+    {
+        if (depth + 1 == matrices.length)
+        {
+            SVGMatrix[] grown = Arrays.copyOf(matrices, matrices.length * 2);
+            for (int i = matrices.length; i < grown.length; i++)
+            {
+                grown[i] = new SVGMatrix();
+            }
+            matrices = grown;
+        }
+        matrices[depth + 1].set(matrices[depth]);
+        lastShape = NO_SHAPE;
+        return ++depth;
+    }
+
+    @Override
+    public void restore()
+    {
+        if (depth > 0)
+        {
+            depth--;
+        }
+        lastShape = NO_SHAPE;
+    }
+
+    @Override
+    public void restoreToCount(int count)
+    {
+        depth = Math.max(0, Math.min(depth, count - 1));
+        lastShape = NO_SHAPE;
+    }
+
+    @Override
+    public void concat(SVGMatrix matrix)
+    {
+        matrices[depth].preConcat(matrix);
+        lastShape = NO_SHAPE;
+    }
+
+    @Override
+    public void translate(float dx, float dy)
+    {
+        matrices[depth].preTranslate(dx, dy);
+        lastShape = NO_SHAPE;
+    }
+
+    @Override
+    public void clipRect(float left, float top, float right, float bottom)
+    {
+        // walls outside the view box still block signals
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, SVGPaint paint)
+    {
+        if (isWall(paint) && isNewShape(SHAPE_RECT, left, top, right, bottom))
+        {
+            addRect(left, top, right, bottom);
+        }
+    }
+
+    @Override
+    public void drawRoundRect(float left, float top, float right, float bottom, float rx, float ry, SVGPaint paint)
+    {
+        if (isWall(paint) && isNewShape(SHAPE_RECT, left, top, right, bottom))
+        {
+            // rounded corners are well within the accuracy of any position estimate
+            addRect(left, top, right, bottom);
+        }
+    }
+
+    @Override
+    public void drawOval(float left, float top, float right, float bottom, SVGPaint paint)
+    {
+        if (!isWall(paint) || !isNewShape(SHAPE_OVAL, left, top, right, bottom))
+        {
+            return;
+        }
+        float cx = (left + right) / 2;
+        float cy = (top + bottom) / 2;
+        float rx = (right - left) / 2;
+        float ry = (bottom - top) / 2;
+        int chords = CURVE_SEGMENTS * 4;
+        float lastX = cx + rx;
+        float lastY = cy;
+        for (int i = 1; i <= chords; i++)
+        {
+            double angle = 2 * Math.PI * i / chords;
+            float x = cx + rx * (float) Math.cos(angle);
+            float y = cy + ry * (float) Math.sin(angle);
+            addSegment(lastX, lastY, x, y);
+            lastX = x;
+            lastY = y;
+        }
+    }
+
+    @Override
+    public void drawLine(float x1, float y1, float x2, float y2, SVGPaint paint)
+    {
+        if (isWall(paint) && isNewShape(SHAPE_LINE, x1, y1, x2, y2))
+        {
+            addSegment(x1, y1, x2, y2);
+        }
+    }
+
+    @Override
+    public void drawPath(PathData path, SVGPaint paint)
+    {
+        if (path == lastPath || !isWall(paint))
+        {
+            return;
+        }
+        lastPath = path;
+        byte[] verbs = path.getVerbs();
+        float[] coords = path.getCoords();
+        int c = 0;
+        float startX = 0;
+        float startY = 0;
+        float x = 0;
+        float y = 0;
+        for (int i = 0; i < path.getVerbCount(); i++)
+        {
+            byte verb = verbs[i];
+            switch (verb)
+            {
+            case PathData.MOVE_TO:
+                x = startX = coords[c];
+                y = startY = coords[c + 1];
+                break;
+            case PathData.LINE_TO:
+                addSegment(x, y, coords[c], coords[c + 1]);
+                x = coords[c];
+                y = coords[c + 1];
+                break;
+            case PathData.QUAD_TO:
+                for (int k = 1; k <= CURVE_SEGMENTS; k++)
+                {
+                    float t = (float) k / CURVE_SEGMENTS;
+                    float u = 1 - t;
+                    float nx = u * u * x + 2 * u * t * coords[c] + t * t * coords[c + 2];
+                    float ny = u * u * y + 2 * u * t * coords[c + 1] + t * t * coords[c + 3];
+                    addSegment(x, y, nx, ny);
+                    x = nx;
+                    y = ny;
+                }
+                break;
+            case PathData.CUBIC_TO:
+                float x0 = x;
+                float y0 = y;
+                for (int k = 1; k <= CURVE_SEGMENTS; k++)
+                {
+                    float t = (float) k / CURVE_SEGMENTS;
+                    float u = 1 - t;
+                    float nx = u * u * u * x0 + 3 * u * u * t * coords[c] + 3 * u * t * t * coords[c + 2] + t * t * t * coords[c + 4];
+                    float ny = u * u * u * y0 + 3 * u * u * t * coords[c + 1] + 3 * u * t * t * coords[c + 3] + t * t * t * coords[c + 5];
+                    addSegment(x, y, nx, ny);
+                    x = nx;
+                    y = ny;
+                }
+                break;
+            case PathData.CLOSE:
+                addSegment(x, y, startX, startY);
+                x = startX;
+                y = startY;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown path verb " + verb);
+            }
+            c += PathData.coordsPerVerb(verb);
+        }
+    }
+
+    private boolean isWall(SVGPaint paint)
+    {
+        return selector.isWall(handler.currentGroupId(), paint);
+    }
+
+    // false for the second draw of the shape just added
+    private boolean isNewShape(int shape, float left, float top, float right, float bottom)
+    {
+        if (shape == lastShape && left == lastBounds[0] && top == lastBounds[1] && right == lastBounds[2]
+                && bottom == lastBounds[3])
+        {
+            return false;
+        }
+        lastShape = shape;
+        lastBounds[0] = left;
+        lastBounds[1] = top;
+        lastBounds[2] = right;
+        lastBounds[3] = bottom;
+        return true;
+    }
+
+    private void addRect(float left, float top, float right, float bottom)
+    {
+        addSegment(left, top, right, top);
+        addSegment(right, top, right, bottom);
+        addSegment(right, bottom, left, bottom);
+        addSegment(left, bottom, left, top);
+    }
+
+    // adds a segment given in local coordinates
+    private void addSegment(float x1, float y1, float x2, float y2)
+    {
+        if (x1 == x2 && y1 == y2)
+        {
+            return;
+        }
+        if (segmentCount * 4 + 4 > segments.length)
+        {
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        }
+        SVGMatrix matrix = matrices[depth];
+        int s = segmentCount * 4;
+        segments[s] = matrix.mapX(x1, y1);
+        segments[s + 1] = matrix.mapY(x1, y1);
+        segments[s + 2] = matrix.mapX(x2, y2);
+        segments[s + 3] = matrix.mapY(x2, y2);
+        segmentCount++;
+    }
+}
@@ -0,0 +1,434 @@
+package id.recharge.library.core.helper.map;
+
+/**
+ * Wall segments of a floor plan in a packed float array, indexed by a uniform
+ * grid for crossing and nearest-wall queries.
+ * <p/>
+ * Segment i is x1, y1, x2, y2 at {@code getSegments()[4 * i]}, in map
+ * coordinates, the same as the picture of the plan. Queries walk only the grid
+ * cells they touch, allocate nothing and do not change the index, so any
+ * number of threads can run them at once.
+ */
+public final class WallIndex
+{
+    // share of a cell by which segments are also indexed into the cells around
+    private static final float MARGIN = 1e-3f;
+
+    private final float[] segments;
+    private final int segmentCount;
+
+    private final float left;
+    private final float top;
+    private final float cellSize;
+    private final int columns;
+    private final int rows;
+    // segments of cell c are cellSegments[cellStart[c]] until cellStart[c + 1]
+    private final int[] cellStart;
+    private final int[] cellSegments;
+
+    /**
+     * Indexes segments with a cell size that puts a few segments in a cell.
+     */
+    public WallIndex(float[] segments, int segmentCount)
+    {
+        this(segments, segmentCount, 0);
+    }
+
+    /**
+     * @param segments     x1, y1, x2, y2 per segment, kept by the index
+     * @param segmentCount number of segments in the array
+     * @param cellSize     side of a grid cell in map units, or 0 to pick one
+     */
+    public WallIndex(float[] segments, int segmentCount, float cellSize)
+    {
+        this.segments = segments;
+        this.segmentCount = segmentCount;
+
+        float minX = Float.POSITIVE_INFINITY;
+        float minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY;
+        float maxY = Float.NEGATIVE_INFINITY;
+        double length = 0;
+        for (int i = 0; i < segmentCount * 4; i += 4)
+        {
+            minX = Math.min(minX, Math.min(segments[i], segments[i + 2]));
+            maxX = Math.max(maxX, Math.max(segments[i], segments[i + 2]));
+            minY = Math.min(minY, Math.min(segments[i + 1], segments[i + 3]));
+            maxY = Math.max(maxY, Math.max(segments[i + 1], segments[i + 3]));
+            length += Math.hypot(segments[i + 2] - segments[i], segments[i + 3] - segments[i + 1]);
+        }
+        if (segmentCount == 0)
+        {
+            minX = minY = maxX = maxY = 0;
+        }
+        if (cellSize <= 0)
+        {
+            // about as long as the average segment, but no finer than ~4 segments per cell on average
+            double area = Math.max(1e-6, (maxX - minX) * (double) (maxY - minY));
+            cellSize = (float) Math.max(length / Math.max(1, segmentCount), Math.sqrt(area * 4 / Math.max(1, segmentCount)));
+            cellSize = Math.max(cellSize, 1e-3f);
+        }
+        this.left = minX;
+        this.top = minY;
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (int) Math.floor((maxX - minX) / cellSize) + 1);
+        this.rows = Math.max(1, (int) Math.floor((maxY - minY) / cellSize) + 1);
+
+        // count, then fill, the cells every segment touches
+        int[] start = new int[columns * rows + 1];
+        for (int i = 0; i < segmentCount; i++)
+        {
+            addToCells(i, start, null);
+        }
+        int total = 0;
+        for (int c = 0; c < columns * rows; c++)
+        {
+            int count = start[c];
+            start[c] = total;
+            total += count;
+        }
+        start[columns * rows] = total;
+        this.cellStart = start;
+        this.cellSegments = new int[total];
+        int[] fill = new int[columns * rows];
+        System.arraycopy(start, 0, fill, 0, fill.length);
+        for (int i = 0; i < segmentCount; i++)
+        {
+            addToCells(i, fill, cellSegments);
+        }
+    }
+
+    public int getSegmentCount()
+    {
+        return segmentCount;
+    }
+
+    /**
+     * @return x1, y1, x2, y2 per segment, valid up to 4 * {@link #getSegmentCount()}. Must not be modified.
+     */
+    public float[] getSegments()
+    {
+        return segments;
+    }
+
+    /**
+     * @return whether the segment from (x1, y1) to (x2, y2) crosses or touches any wall
+     */
+    public boolean intersects(float x1, float y1, float x2, float y2)
+    {
+        return crossings(x1, y1, x2, y2, true) > 0;
+    }
+
+    /**
+     * @return how many wall segments the segment from (x1, y1) to (x2, y2)
+     * crosses. A wall drawn as a filled outline counts twice.
+     */
+    public int countCrossings(float x1, float y1, float x2, float y2)
+    {
+        return crossings(x1, y1, x2, y2, false);
+    }
+
+    /**
+     * @return the index of the wall segment nearest to (x, y) within
+     * maxDistance, or -1 if there is none
+     */
+    public int nearest(float x, float y, float maxDistance)
+    {
+        int best = -1;
+        float bestSquared = maxDistance * maxDistance;
+        int column = clamp((int) Math.floor((x - left) / cellSize), columns);
+        int row = clamp((int) Math.floor((y - top) / cellSize), rows);
+        // distance from the point to the border of its cell, 0 if it lies outside the grid
+        float inset = Math.max(0, Math.min(Math.min(x - (left + column * cellSize), left + (column + 1) * cellSize - x),
+                Math.min(y - (top + row * cellSize), top + (row + 1) * cellSize - y)));
+        int maxRing = Math.max(columns, rows);
+        for (int ring = 0; ring <= maxRing; ring++)
+        {
+            // no cell of this ring or beyond is closer
+            float reach = inset + (ring - 1) * cellSize;
+            if (ring > 0 && reach * reach > bestSquared)
+            {
+                break;
+            }
+            for (int r = row - ring; r <= row + ring; r++)
+            {
+                if (r < 0 || r >= rows)
+                {
+                    continue;
+                }
+                boolean edgeRow = r == row - ring || r == row + ring;
+                int step = edgeRow ? 1 : 2 * ring;
+                for (int c = column - ring; c <= column + ring; c += Math.max(1, step))
+                {
+                    if (c < 0 || c >= columns)
+                    {
+                        continue;
+                    }
+                    int cell = r * columns + c;
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++)
+                    {
+                        int s = cellSegments[k] * 4;
+                        float d = distanceSquared(x, y, segments[s], segments[s + 1], segments[s + 2], segments[s + 3]);
+                        if (d <= bestSquared)
+                        {
+                            bestSquared = d;
+                            best = cellSegments[k];
+                        }
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return the distance from (x, y) to the nearest wall, or maxDistance if
+     * none is closer
+     */
+    public float distanceToNearest(float x, float y, float maxDistance)
+    {
+        int index = nearest(x, y, maxDistance);
+        if (index < 0)
+        {
+            return maxDistance;
+        }
+        int s = index * 4;
+        return (float) Math.sqrt(distanceSquared(x, y, segments[s], segments[s + 1], segments[s + 2], segments[s + 3]));
+    }
+
+    // walks the cells along the query segment; a crossing is counted in the
+    // first cell whose stretch of the query [enter, exit] holds it, so segments
+    // in several cells count once, also when they cross on a cell border
+    private int crossings(float x1, float y1, float x2, float y2, boolean any)
+    {
+        int count = 0;
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        // only the part of the query inside the grid can meet a wall
+        float right = left + columns * cellSize;
+        float bottom = top + rows * cellSize;
+        float enter = 0;
+        float exit = 1;
+        if (dx != 0)
+        {
+            float a = (left - x1) / dx;
+            float b = (right - x1) / dx;
+            enter = Math.max(enter, Math.min(a, b));
+            exit = Math.min(exit, Math.max(a, b));
+        }
+        else if (x1 < left || x1 > right)
+        {
+            return 0;
+        }
+        if (dy != 0)
+        {
+            float a = (top - y1) / dy;
+            float b = (bottom - y1) / dy;
+            enter = Math.max(enter, Math.min(a, b));
+            exit = Math.min(exit, Math.max(a, b));
+        }
+        else if (y1 < top || y1 > bottom)
+        {
+            return 0;
+        }
+        if (enter > exit)
+        {
+            return 0;
+        }
+        float startX = x1 + enter * dx;
+        float startY = y1 + enter * dy;
+        float endX = x1 + exit * dx;
+        float endY = y1 + exit * dy;
+        int column = clamp((int) Math.floor((startX - left) / cellSize), columns);
+        int row = clamp((int) Math.floor((startY - top) / cellSize), rows);
+        int endColumn = clamp((int) Math.floor((endX - left) / cellSize), columns);
+        int endRow = clamp((int) Math.floor((endY - top) / cellSize), rows);
+        int stepX = dx > 0 ? 1 : (dx < 0 ? -1 : 0);
+        int stepY = dy > 0 ? 1 : (dy < 0 ? -1 : 0);
+        // parameter along the query at which the next column or row boundary is crossed
+        float deltaX = stepX == 0 ? Float.POSITIVE_INFINITY : cellSize / Math.abs(dx);
+        float deltaY = stepY == 0 ? Float.POSITIVE_INFINITY : cellSize / Math.abs(dy);
+        float nextX = stepX == 0 ? Float.POSITIVE_INFINITY
+                : ((left + (column + (stepX > 0 ? 1 : 0)) * cellSize) - x1) / dx;
+        float nextY = stepY == 0 ? Float.POSITIVE_INFINITY
+                : ((top + (row + (stepY > 0 ? 1 : 0)) * cellSize) - y1) / dy;
+        int steps = Math.abs(endColumn - column) + Math.abs(endRow - row);
+        // the cells before, which share the current cell's enter parameter when
+        // the one right before was only touched at a corner
+        int previous = -1;
+        int beforePrevious = -1;
+        float previousEnter = Float.NaN;
+        // the query from 0 to 1 is checked by the crossing test itself
+        float cellEnter = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i <= steps; i++)
+        {
+            int cell = row * columns + column;
+            float cellExit = i == steps ? Float.POSITIVE_INFINITY : Math.min(nextX, nextY);
+            for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++)
+            {
+                int segment = cellSegments[k];
+                float t = crossing(x1, y1, dx, dy, segment * 4);
+                if (!(t >= cellEnter && t <= cellExit))
+                {
+                    continue;
+                }
+                if (t == cellEnter && (contains(previous, segment)
+                        || (previousEnter == cellEnter && contains(beforePrevious, segment))))
+                {
+                    // on the border, counted in a cell before
+                    continue;
+                }
+                if (any)
+                {
+                    return 1;
+                }
+                count++;
+            }
+            beforePrevious = previous;
+            previous = cell;
+            previousEnter = cellEnter;
+            cellEnter = cellExit;
+            if (nextX < nextY)
+            {
+                column = clamp(column + stepX, columns);
+                nextX += deltaX;
+            }
+            else
+            {
+                row = clamp(row + stepY, rows);
+                nextY += deltaY;
+            }
+        }
+        return count;
+    }
+
+    // parameter along the query at which it meets segment s, NaN if it does not
+    private float crossing(float x1, float y1, float dx, float dy, int s)
+    {
+        float sx = segments[s];
+        float sy = segments[s + 1];
+        float ex = segments[s + 2] - sx;
+        float ey = segments[s + 3] - sy;
+        float denominator = dx * ey - dy * ex;
+        if (denominator == 0)
+        {
+            // parallel, collinear overlaps are not counted as crossings
+            return Float.NaN;
+        }
+        float qx = sx - x1;
+        float qy = sy - y1;
+        float t = (qx * ey - qy * ex) / denominator;
+        float u = (qx * dy - qy * dx) / denominator;
+        if (t < 0 || t > 1 || u < 0 || u > 1)
+        {
+            return Float.NaN;
+        }
+        return t;
+    }
+
+    private boolean contains(int cell, int segment)
+    {
+        if (cell < 0)
+        {
+            return false;
+        }
+        for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++)
+        {
+            if (cellSegments[k] == segment)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // counts segment i in every cell it touches, or writes it into them; cells
+    // are widened by a margin so a crossing computed on a border, or rounded
+    // just across it, finds the segment on either side
+    private void addToCells(int i, int[] counters, int[] cells)
+    {
+        int s = i * 4;
+        float x1 = segments[s];
+        float y1 = segments[s + 1];
+        float x2 = segments[s + 2];
+        float y2 = segments[s + 3];
+        float margin = cellSize * MARGIN;
+        int firstColumn = clamp((int) Math.floor((Math.min(x1, x2) - margin - left) / cellSize), columns);
+        int lastColumn = clamp((int) Math.floor((Math.max(x1, x2) + margin - left) / cellSize), columns);
+        int firstRow = clamp((int) Math.floor((Math.min(y1, y2) - margin - top) / cellSize), rows);
+        int lastRow = clamp((int) Math.floor((Math.max(y1, y2) + margin - top) / cellSize), rows);
+        for (int row = firstRow; row <= lastRow; row++)
+        {
+            float cellTop = top + row * cellSize;
+            for (int column = firstColumn; column <= lastColumn; column++)
+            {
+                float cellLeft = left + column * cellSize;
+                if (meets(x1, y1, x2 - x1, y2 - y1, cellLeft - margin, cellTop - margin,
+                        cellLeft + cellSize + margin, cellTop + cellSize + margin))
+                {
+                    addToCell(i, row * columns + column, counters, cells);
+                }
+            }
+        }
+    }
+
+    // whether the segment from (x, y) to (x + dx, y + dy) meets the rectangle
+    private static boolean meets(float x, float y, float dx, float dy, float minX, float minY, float maxX, float maxY)
+    {
+        float enter = 0;
+        float exit = 1;
+        if (dx != 0)
+        {
+            float a = (minX - x) / dx;
+            float b = (maxX - x) / dx;
+            enter = Math.max(enter, Math.min(a, b));
+            exit = Math.min(exit, Math.max(a, b));
+        }
+        else if (x < minX || x > maxX)
+        {
+            return false;
+        }
+        if (dy != 0)
+        {
+            float a = (minY - y) / dy;
+            float b = (maxY - y) / dy;
+            enter = Math.max(enter, Math.min(a, b));
+            exit = Math.min(exit, Math.max(a, b));
+        }
+        else if (y < minY || y > maxY)
+        {
+            return false;
+        }
+        return enter <= exit;
+    }
+
+    private static void addToCell(int i, int cell, int[] counters, int[] cells)
+    {
+        if (cells == null)
+        {
+            counters[cell]++;
+        }
+        else
+        {
+            cells[counters[cell]++] = i;
+        }
+    }
+
+    private static int clamp(int index, int size)
+    {
+        return index < 0 ? 0 : (index >= size ? size - 1 : index);
+    }
+
+    // squared distance from (x, y) to the segment (x0, y0) - (x1, y1)
+    private static float distanceSquared(float x, float y, float x0, float y0, float x1, float y1)
+    {
+        float dx = x1 - x0;
+        float dy = y1 - y0;
+        float length = dx * dx + dy * dy;
+        float t = length == 0 ? 0 : ((x - x0) * dx + (y - y0) * dy) / length;
+        t = Math.max(0, Math.min(1, t));
+        float px = x0 + t * dx - x;
+        float py = y0 + t * dy - y;
+        return px * px + py * py;
+    }
+}
@@ -0,0 +1,146 @@
+package id.recharge.library.overlay;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import id.recharge.library.SVGMapView;
+
+/**
+ * Uncertainty ellipse around the position reported by one estimator: the
+ * 1-sigma contour of its covariance by default, filled translucent and
+ * outlined in the estimator's colour.
+ * <p/>
+ * The ellipse is given in map units and drawn through the map matrix, so it
+ * grows and shrinks with the zoom like the plan; only the outline keeps a
+ * fixed width on screen.
+ */
+public class SVGMapEllipseOverlay extends SVGMapBaseOverlay
+{
+    private static final float DEFAULT_LINE_WIDTH = 1.5f; // dp
+    private static final int FILL_ALPHA = 0x30;
+    private static final int LINE_ALPHA = 0xC0;
+
+    private final Object lock = new Object();
+
+    private float centerX, centerY;
+    private float semiMajor, semiMinor;
+    private float degrees;
+    private boolean hasEllipse = false;
+    private float sigmas = 1;
+
+    private final float lineWidth;
+    private final Paint fillPaint;
+    private final Paint linePaint;
+    private final RectF oval = new RectF();
+
+    /**
+     * @param filter estimator name, picks the same colour as {@link SVGMapLocationOverlay}
+     */
+    public SVGMapEllipseOverlay(SVGMapView svgMapView, String filter)
+    {
+        this.showLevel = LOCATION_LEVEL - 2;
+        int color = SVGMapLocationOverlay.getFilterColor(filter);
+        this.lineWidth = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_LINE_WIDTH, svgMapView.getResources().getDisplayMetrics());
+        this.fillPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.fillPaint.setStyle(Paint.Style.FILL);
+        this.fillPaint.setColor(color);
+        this.fillPaint.setAlpha(FILL_ALPHA);
+        this.linePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.linePaint.setStyle(Paint.Style.STROKE);
+        this.linePaint.setColor(color);
+        this.linePaint.setAlpha(LINE_ALPHA);
+    }
+
+    /**
+     * @param x         center, in map units
+     * @param y         center, in map units
+     * @param semiMajor standard deviation along the major axis, in map units
+     * @param semiMinor standard deviation along the minor axis, in map units
+     * @param degrees   angle from the x axis to the major axis, towards y
+     */
+    public void setEllipse(float x, float y, float semiMajor, float semiMinor, float degrees)
+    {
+        synchronized (lock)
+        {
+            this.centerX = x;
+            this.centerY = y;
+            this.semiMajor = semiMajor;
+            this.semiMinor = semiMinor;
+            this.degrees = degrees;
+            // no fix, or nothing known about it: draw nothing rather than the whole screen
+            this.hasEllipse = !Float.isNaN(x) && !Float.isNaN(y)
+                    && !Float.isNaN(semiMajor) && !Float.isInfinite(semiMajor)
+                    && !Float.isNaN(semiMinor) && !Float.isInfinite(semiMinor);
+        }
+    }
+
+    public void clear()
+    {
+        synchronized (lock)
+        {
+            hasEllipse = false;
+        }
+    }
+
+    /**
+     * @param sigmas standard deviations from the center to the contour, 1 by default; about
+     *               2.45 contains 95% of a Gaussian in two dimensions
+     */
+    public void setSigmas(float sigmas)
+    {
+        this.sigmas = sigmas;
+    }
+
+    @Override
+    public void onDestroy()
+    {
+
+    }
+
+    @Override
+    public void onPause()
+    {
+
+    }
+
+    @Override
+    public void onResume()
+    {
+
+    }
+
+    @Override
+    public void onTap(MotionEvent event)
+    {
+
+    }
+
+    @Override
+    public void draw(Canvas canvas, Matrix matrix, float currentZoom, float currentRotateDegrees)
+    {
+        if (!isVisible)
+        {
+            return;
+        }
+        synchronized (lock)
+        {
+            if (!hasEllipse)
+            {
+                return;
+            }
+            float a = semiMajor * sigmas;
+            float b = semiMinor * sigmas;
+            oval.set(centerX - a, centerY - b, centerX + a, centerY + b);
+            linePaint.setStrokeWidth(currentZoom > 0 ? lineWidth / currentZoom : lineWidth);
+            canvas.save();
+            canvas.concat(matrix);
+            canvas.rotate(degrees, centerX, centerY);
+            canvas.drawOval(oval, fillPaint);
+            canvas.drawOval(oval, linePaint);
+            canvas.restore();
+        }
+    }
+}
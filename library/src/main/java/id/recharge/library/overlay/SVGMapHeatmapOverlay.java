@@ -0,0 +1,279 @@
+package id.recharge.library.overlay;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.view.MotionEvent;
+
+/**
+ * Live signal strength heatmap of one access point over the floor plan.
+ * <p/>
+ * Samples are accumulated into a low resolution grid aligned with the SVG
+ * coordinate space. Each sample only touches the cells under its splat kernel,
+ * and only the dirty part of the cached colour-mapped bitmap is re-rendered on
+ * the next draw. Use one overlay per access point.
+ */
+public class SVGMapHeatmapOverlay extends SVGMapBaseOverlay
+{
+    private static final int DEFAULT_MIN_RSSI = -90;
+    private static final int DEFAULT_MAX_RSSI = -30;
+    private static final int LUT_SIZE = 256;
+    private static final int MAX_ALPHA = 0xB0;
+
+    private final Object lock = new Object();
+
+    private final float mapWidth;
+    private final float mapHeight;
+    private final float cellSize;
+    private final int gridWidth;
+    private final int gridHeight;
+
+    // weighted RSSI sum and weight sum per cell
+    private final float[] rssiSum;
+    private final float[] weightSum;
+
+    private final int kernelRadius;
+    private final float[] kernel;
+
+    private float minRssi = DEFAULT_MIN_RSSI;
+    private float maxRssi = DEFAULT_MAX_RSSI;
+    private final int[] colorLut = new int[LUT_SIZE];
+
+    private Bitmap bitmap;
+    private int[] rowPixels;
+    private final Rect dirty = new Rect();
+    private final Rect source = new Rect();
+    private final RectF destination = new RectF();
+    private final Paint bitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+
+    /**
+     * @param mapWidth     width of the floor plan in SVG units
+     * @param mapHeight    height of the floor plan in SVG units
+     * @param cellSize     grid cell size in SVG units
+     * @param kernelRadius splat radius in cells
+     */
+    public SVGMapHeatmapOverlay(float mapWidth, float mapHeight, float cellSize, int kernelRadius)
+    {
+        this.showLevel = MAP_LEVEL + 1;
+        this.mapWidth = mapWidth;
+        this.mapHeight = mapHeight;
+        this.cellSize = cellSize;
+        this.gridWidth = Math.max(1, (int) Math.ceil(mapWidth / cellSize));
+        this.gridHeight = Math.max(1, (int) Math.ceil(mapHeight / cellSize));
+        this.rssiSum = new float[gridWidth * gridHeight];
+        this.weightSum = new float[gridWidth * gridHeight];
+        this.kernelRadius = kernelRadius;
+        this.kernel = buildKernel(kernelRadius);
+        this.rowPixels = new int[gridWidth];
+        buildColorLut();
+        dirty.setEmpty();
+    }
+
+    private static float[] buildKernel(int radius)
+    {
+        int size = radius * 2 + 1;
+        float[] kernel = new float[size * size];
+        float sigma = Math.max(radius, 1) / 2f;
+        for (int dy = -radius; dy <= radius; dy++)
+        {
+            for (int dx = -radius; dx <= radius; dx++)
+            {
+                float d2 = dx * dx + dy * dy;
+                kernel[(dy + radius) * size + dx + radius] = d2 > radius * radius + 1 ? 0 : (float) Math.exp(-d2 / (2 * sigma * sigma));
+            }
+        }
+        return kernel;
+    }
+
+    private void buildColorLut()
+    {
+        // weak (blue) -> strong (red)
+        float[] hsv = {0, 1, 1};
+        for (int i = 0; i < LUT_SIZE; i++)
+        {
+            hsv[0] = 240f * (1 - i / (float) (LUT_SIZE - 1));
+            colorLut[i] = Color.HSVToColor(hsv) & 0x00FFFFFF;
+        }
+    }
+
+    /**
+     * Sets the RSSI range mapped onto the colour scale.
+     */
+    public void setRssiRange(float minRssi, float maxRssi)
+    {
+        synchronized (lock)
+        {
+            this.minRssi = minRssi;
+            this.maxRssi = maxRssi;
+            dirty.set(0, 0, gridWidth, gridHeight);
+        }
+    }
+
+    /**
+     * Splats one (position, RSSI) sample into the grid.
+     *
+     * @param x    map x coordinate
+     * @param y    map y coordinate
+     * @param rssi received signal strength in dBm
+     */
+    public void addSample(float x, float y, float rssi)
+    {
+        int cx = (int) (x / cellSize);
+        int cy = (int) (y / cellSize);
+        int left = Math.max(0, cx - kernelRadius);
+        int top = Math.max(0, cy - kernelRadius);
+        int right = Math.min(gridWidth - 1, cx + kernelRadius);
+        int bottom = Math.min(gridHeight - 1, cy + kernelRadius);
+        if (left > right || top > bottom)
+        {
+            return;
+        }
+        int size = kernelRadius * 2 + 1;
+        synchronized (lock)
+        {
+            for (int gy = top; gy <= bottom; gy++)
+            {
+                int kernelRow = (gy - cy + kernelRadius) * size + kernelRadius - cx;
+                int row = gy * gridWidth;
+                for (int gx = left; gx <= right; gx++)
+                {
+                    float w = kernel[kernelRow + gx];
+                    if (w > 0)
+                    {
+                        rssiSum[row + gx] += w * rssi;
+                        weightSum[row + gx] += w;
+                    }
+                }
+            }
+            if (dirty.isEmpty())
+            {
+                dirty.set(left, top, right + 1, bottom + 1);
+            }
+            else
+            {
+                dirty.union(left, top, right + 1, bottom + 1);
+            }
+        }
+    }
+
+    /**
+     * @return the averaged RSSI of the cell containing the point, or NaN when unsurveyed.
+     */
+    public float getRssi(float x, float y)
+    {
+        int cx = (int) (x / cellSize);
+        int cy = (int) (y / cellSize);
+        if (cx < 0 || cy < 0 || cx >= gridWidth || cy >= gridHeight)
+        {
+            return Float.NaN;
+        }
+        synchronized (lock)
+        {
+            int i = cy * gridWidth + cx;
+            return weightSum[i] > 0 ? rssiSum[i] / weightSum[i] : Float.NaN;
+        }
+    }
+
+    public void clear()
+    {
+        synchronized (lock)
+        {
+            for (int i = 0; i < rssiSum.length; i++)
+            {
+                rssiSum[i] = 0;
+                weightSum[i] = 0;
+            }
+            dirty.set(0, 0, gridWidth, gridHeight);
+        }
+    }
+
+    // re-render the dirty cells into the cached bitmap
+    private void renderDirty()
+    {
+        if (bitmap == null)
+        {
+            bitmap = Bitmap.createBitmap(gridWidth, gridHeight, Bitmap.Config.ARGB_8888);
+            dirty.set(0, 0, gridWidth, gridHeight);
+        }
+        if (dirty.isEmpty())
+        {
+            return;
+        }
+        float scale = (LUT_SIZE - 1) / (maxRssi - minRssi);
+        int width = dirty.width();
+        for (int gy = dirty.top; gy < dirty.bottom; gy++)
+        {
+            int row = gy * gridWidth;
+            for (int gx = dirty.left; gx < dirty.right; gx++)
+            {
+                float w = weightSum[row + gx];
+                int pixel = 0;
+                if (w > 0)
+                {
+                    int level = (int) ((rssiSum[row + gx] / w - minRssi) * scale);
+                    level = level < 0 ? 0 : level >= LUT_SIZE ? LUT_SIZE - 1 : level;
+                    int alpha = (int) (MAX_ALPHA * Math.min(1f, w));
+                    pixel = (alpha << 24) | colorLut[level];
+                }
+                rowPixels[gx - dirty.left] = pixel;
+            }
+            bitmap.setPixels(rowPixels, 0, width, dirty.left, gy, width, 1);
+        }
+        dirty.setEmpty();
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        synchronized (lock)
+        {
+            if (bitmap != null)
+            {
+                bitmap.recycle();
+                bitmap = null;
+            }
+        }
+    }
+
+    @Override
+    public void onPause()
+    {
+
+    }
+
+    @Override
+    public void onResume()
+    {
+
+    }
+
+    @Override
+    public void onTap(MotionEvent event)
+    {
+
+    }
+
+    @Override
+    public void draw(Canvas canvas, Matrix matrix, float currentZoom, float currentRotateDegrees)
+    {
+        if (!isVisible)
+        {
+            return;
+        }
+        synchronized (lock)
+        {
+            renderDirty();
+            source.set(0, 0, gridWidth, gridHeight);
+            destination.set(0, 0, gridWidth * cellSize, gridHeight * cellSize);
+            canvas.save();
+            canvas.setMatrix(matrix);
+            canvas.clipRect(0, 0, mapWidth, mapHeight);
+            canvas.drawBitmap(bitmap, source, destination, bitmapPaint);
+            canvas.restore();
+        }
+    }
+}
@@ -26,6 +26,10 @@ public class SVGMapLocationOverlay extends SVGMapBaseOverlay {
 
     private static final int DEFAULT_LOCATION_COLOR_3 = 0xFFC9A03E;
 
+    private static final int DEFAULT_LOCATION_COLOR_4 = 0xFF3EC95A;
+
+    private static final int DEFAULT_LOCATION_COLOR_5 = 0xFF3E5AC9;
+
     private static final int DEFAULT_LOCATION_SHADOW_COLOR = 0xFF909090;
 
     private static final int DEFAULT_INDICATOR_ARC_COLOR = 0xFFFA4A8D;
@@ -79,20 +83,7 @@ public class SVGMapLocationOverlay extends SVGMapBaseOverlay {
         locationPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         locationPaint.setAntiAlias(true);
         locationPaint.setStyle(Paint.Style.FILL);
-        switch (filter) {
-            case "kalman1":
-                locationPaint.setColor(DEFAULT_LOCATION_COLOR_1);
-                break;
-            case "kalman2":
-                locationPaint.setColor(DEFAULT_LOCATION_COLOR_2);
-                break;
-            case "feedback":
-                locationPaint.setColor(DEFAULT_LOCATION_COLOR_3);
-                break;
-            default:
-                locationPaint.setColor(DEFAULT_LOCATION_COLOR);
-                break;
-        }
+        locationPaint.setColor(getFilterColor(filter));
         locationPaint.setShadowLayer(5, 3, 3, DEFAULT_LOCATION_SHADOW_COLOR);
         //
         defaultLocationCircleRadius = TypedValue
@@ -129,6 +120,28 @@ public class SVGMapLocationOverlay extends SVGMapBaseOverlay {
         indicatorArcPaint.setStrokeWidth(compassArcWidth);
     }
 
+    /**
+     * @param filter estimator name ("kalman1", "kalman2", "feedback", "particle", "ukf" or
+     *               "default")
+     * @return the colour used to draw positions of that estimator
+     */
+    public static int getFilterColor(String filter) {
+        switch (filter) {
+            case "kalman1":
+                return DEFAULT_LOCATION_COLOR_1;
+            case "kalman2":
+                return DEFAULT_LOCATION_COLOR_2;
+            case "feedback":
+                return DEFAULT_LOCATION_COLOR_3;
+            case "particle":
+                return DEFAULT_LOCATION_COLOR_4;
+            case "ukf":
+                return DEFAULT_LOCATION_COLOR_5;
+            default:
+                return DEFAULT_LOCATION_COLOR;
+        }
+    }
+
     public void setIndicatorArrowBitmap(Bitmap bitmap) {
         this.compassIndicatorArrowBitmap = bitmap;
     }
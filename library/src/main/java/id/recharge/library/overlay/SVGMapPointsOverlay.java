@@ -0,0 +1,267 @@
+package id.recharge.library.overlay;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import id.recharge.library.SVGMapView;
+
+/**
+ * Draws a large number of small markers (historical fixes, surveyed reference
+ * points, ...) in a handful of batched draw calls.
+ * <p/>
+ * Coordinates are kept in map space in one growable array with a colour index
+ * per point. On each draw they are transformed with a single
+ * {@link Matrix#mapPoints} call, off-screen points are culled and the rest are
+ * drawn with one {@link Canvas#drawPoints} call per colour.
+ */
+public class SVGMapPointsOverlay extends SVGMapBaseOverlay
+{
+    private static final int MAX_COLORS = 256;
+    private static final int INITIAL_CAPACITY = 256;
+    private static final float DEFAULT_POINT_RADIUS = 3;
+
+    private final Object lock = new Object();
+
+    // map coordinates, x0 y0 x1 y1 ...
+    private float[] points = new float[INITIAL_CAPACITY * 2];
+    private byte[] colorIndices = new byte[INITIAL_CAPACITY];
+    private int pointCount = 0;
+
+    private Paint[] paints = new Paint[4];
+    private int colorCount = 0;
+    private float pointRadius;
+
+    // scratch buffers reused between frames
+    private float[] screenPoints = new float[0];
+    private float[] batchedPoints = new float[0];
+    private final int[] colorOffsets = new int[MAX_COLORS + 1];
+
+    public SVGMapPointsOverlay(SVGMapView svgMapView)
+    {
+        this.showLevel = LOCATION_LEVEL - 1;
+        this.pointRadius = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_POINT_RADIUS, svgMapView.getResources().getDisplayMetrics());
+    }
+
+    /**
+     * Registers a marker colour.
+     *
+     * @param color ARGB colour
+     * @return the colour index to pass to {@link #addPoint(float, float, int)}
+     */
+    public int addColor(int color)
+    {
+        synchronized (lock)
+        {
+            if (colorCount == MAX_COLORS)
+            {
+                throw new IllegalStateException("At most " + MAX_COLORS + " colors are supported");
+            }
+            if (colorCount == paints.length)
+            {
+                Paint[] grown = new Paint[paints.length * 2];
+                System.arraycopy(paints, 0, grown, 0, colorCount);
+                paints = grown;
+            }
+            Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+            paint.setColor(color);
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeCap(Paint.Cap.ROUND);
+            paint.setStrokeWidth(pointRadius * 2);
+            paints[colorCount] = paint;
+            return colorCount++;
+        }
+    }
+
+    /**
+     * @param radius marker radius in screen pixels
+     */
+    public void setPointRadius(float radius)
+    {
+        synchronized (lock)
+        {
+            this.pointRadius = radius;
+            for (int i = 0; i < colorCount; i++)
+            {
+                paints[i].setStrokeWidth(radius * 2);
+            }
+        }
+    }
+
+    public void addPoint(float x, float y, int colorIndex)
+    {
+        synchronized (lock)
+        {
+            checkColorIndex(colorIndex);
+            ensureCapacity(pointCount + 1);
+            points[pointCount * 2] = x;
+            points[pointCount * 2 + 1] = y;
+            colorIndices[pointCount] = (byte) colorIndex;
+            pointCount++;
+        }
+    }
+
+    /**
+     * Adds many points of the same colour at once.
+     *
+     * @param xy         map coordinates as x0, y0, x1, y1, ...
+     * @param colorIndex index returned by {@link #addColor(int)}
+     */
+    public void addPoints(float[] xy, int colorIndex)
+    {
+        synchronized (lock)
+        {
+            checkColorIndex(colorIndex);
+            int count = xy.length / 2;
+            ensureCapacity(pointCount + count);
+            System.arraycopy(xy, 0, points, pointCount * 2, count * 2);
+            for (int i = 0; i < count; i++)
+            {
+                colorIndices[pointCount + i] = (byte) colorIndex;
+            }
+            pointCount += count;
+        }
+    }
+
+    public int size()
+    {
+        synchronized (lock)
+        {
+            return pointCount;
+        }
+    }
+
+    public void clear()
+    {
+        synchronized (lock)
+        {
+            pointCount = 0;
+        }
+    }
+
+    private void checkColorIndex(int colorIndex)
+    {
+        if (colorIndex < 0 || colorIndex >= colorCount)
+        {
+            throw new IllegalArgumentException("Unknown color index " + colorIndex);
+        }
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= colorIndices.length)
+        {
+            return;
+        }
+        int newCapacity = Math.max(capacity, colorIndices.length * 2);
+        float[] newPoints = new float[newCapacity * 2];
+        System.arraycopy(points, 0, newPoints, 0, pointCount * 2);
+        points = newPoints;
+        byte[] newIndices = new byte[newCapacity];
+        System.arraycopy(colorIndices, 0, newIndices, 0, pointCount);
+        colorIndices = newIndices;
+    }
+
+    @Override
+    public void onDestroy()
+    {
+
+    }
+
+    @Override
+    public void onPause()
+    {
+
+    }
+
+    @Override
+    public void onResume()
+    {
+
+    }
+
+    @Override
+    public void onTap(MotionEvent event)
+    {
+
+    }
+
+    @Override
+    public void draw(Canvas canvas, Matrix matrix, float currentZoom, float currentRotateDegrees)
+    {
+        if (!isVisible)
+        {
+            return;
+        }
+        synchronized (lock)
+        {
+            if (pointCount == 0)
+            {
+                return;
+            }
+            int length = pointCount * 2;
+            if (screenPoints.length < length)
+            {
+                screenPoints = new float[points.length];
+                batchedPoints = new float[points.length];
+            }
+            matrix.mapPoints(screenPoints, 0, points, 0, pointCount);
+
+            float left = -pointRadius;
+            float top = -pointRadius;
+            float right = canvas.getWidth() + pointRadius;
+            float bottom = canvas.getHeight() + pointRadius;
+
+            // counting pass: visible points per colour
+            int[] offsets = colorOffsets;
+            for (int c = 0; c <= colorCount; c++)
+            {
+                offsets[c] = 0;
+            }
+            for (int i = 0; i < pointCount; i++)
+            {
+                float x = screenPoints[i * 2];
+                float y = screenPoints[i * 2 + 1];
+                if (x >= left && x <= right && y >= top && y <= bottom)
+                {
+                    offsets[(colorIndices[i] & 0xFF) + 1]++;
+                }
+                else
+                {
+                    // mark as culled
+                    screenPoints[i * 2] = Float.NaN;
+                }
+            }
+            for (int c = 0; c < colorCount; c++)
+            {
+                offsets[c + 1] += offsets[c];
+            }
+
+            // scatter pass: group visible points by colour
+            for (int i = 0; i < pointCount; i++)
+            {
+                float x = screenPoints[i * 2];
+                if (x != x)
+                {
+                    continue;
+                }
+                int slot = offsets[colorIndices[i] & 0xFF]++;
+                batchedPoints[slot * 2] = x;
+                batchedPoints[slot * 2 + 1] = screenPoints[i * 2 + 1];
+            }
+
+            // offsets[c] now holds the end of colour c, which is the start of c + 1
+            int start = 0;
+            for (int c = 0; c < colorCount; c++)
+            {
+                int end = offsets[c];
+                if (end > start)
+                {
+                    canvas.drawPoints(batchedPoints, start * 2, (end - start) * 2, paints[c]);
+                }
+                start = end;
+            }
+        }
+    }
+}
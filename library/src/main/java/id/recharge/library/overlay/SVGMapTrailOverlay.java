@@ -0,0 +1,190 @@
+package id.recharge.library.overlay;
+
+import android.graphics.Canvas;
+import android.graphics.Matrix;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import id.recharge.library.SVGMapView;
+
+/**
+ * Polyline of the last N positions reported by one estimator.
+ * <p/>
+ * Positions live in a primitive ring buffer, so memory and redraw cost stay
+ * bounded however long the session runs. Before drawing, the polyline is
+ * decimated with a radial distance threshold of a few screen pixels, converted
+ * to map units with the current zoom, and drawn through a reused {@link Path}.
+ */
+public class SVGMapTrailOverlay extends SVGMapBaseOverlay
+{
+    private static final int DEFAULT_CAPACITY = 200;
+    private static final float DEFAULT_TOLERANCE = 2; // dp
+    private static final float DEFAULT_LINE_WIDTH = 2; // dp
+    private static final int TRAIL_ALPHA = 0xA0;
+
+    private final Object lock = new Object();
+
+    private final float[] xs;
+    private final float[] ys;
+    private int head = 0; // index of the oldest position
+    private int count = 0;
+
+    private float pixelTolerance;
+    private final Paint paint;
+    private final Path path = new Path();
+    private float[] kept;
+
+    public SVGMapTrailOverlay(SVGMapView svgMapView, String filter)
+    {
+        this(svgMapView, filter, DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param filter   estimator name, picks the same colour as {@link SVGMapLocationOverlay}
+     * @param capacity number of positions kept
+     */
+    public SVGMapTrailOverlay(SVGMapView svgMapView, String filter, int capacity)
+    {
+        this.showLevel = LOCATION_LEVEL - 1;
+        this.xs = new float[capacity];
+        this.ys = new float[capacity];
+        this.kept = new float[capacity * 2];
+        this.pixelTolerance = TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_TOLERANCE, svgMapView.getResources().getDisplayMetrics());
+        this.paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        this.paint.setStyle(Paint.Style.STROKE);
+        this.paint.setStrokeJoin(Paint.Join.ROUND);
+        this.paint.setStrokeCap(Paint.Cap.ROUND);
+        this.paint.setStrokeWidth(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, DEFAULT_LINE_WIDTH, svgMapView.getResources().getDisplayMetrics()));
+        this.paint.setColor(SVGMapLocationOverlay.getFilterColor(filter));
+        this.paint.setAlpha(TRAIL_ALPHA);
+    }
+
+    /**
+     * Appends a position, dropping the oldest one once the trail is full.
+     */
+    public void addPosition(float x, float y)
+    {
+        synchronized (lock)
+        {
+            int capacity = xs.length;
+            int tail = (head + count) % capacity;
+            xs[tail] = x;
+            ys[tail] = y;
+            if (count < capacity)
+            {
+                count++;
+            }
+            else
+            {
+                head = (head + 1) % capacity;
+            }
+        }
+    }
+
+    public int size()
+    {
+        synchronized (lock)
+        {
+            return count;
+        }
+    }
+
+    public void clear()
+    {
+        synchronized (lock)
+        {
+            head = 0;
+            count = 0;
+        }
+    }
+
+    /**
+     * @param pixels decimation threshold in screen pixels
+     */
+    public void setTolerance(float pixels)
+    {
+        this.pixelTolerance = pixels;
+    }
+
+    // radial distance decimation into 'kept', returns the number of points kept
+    private int decimate(float tolerance)
+    {
+        int capacity = xs.length;
+        float tolerance2 = tolerance * tolerance;
+        int first = head;
+        float lastX = xs[first];
+        float lastY = ys[first];
+        kept[0] = lastX;
+        kept[1] = lastY;
+        int keptCount = 1;
+        for (int i = 1; i < count; i++)
+        {
+            int index = (head + i) % capacity;
+            float x = xs[index];
+            float y = ys[index];
+            float dx = x - lastX;
+            float dy = y - lastY;
+            // always keep the newest position so the trail ends at the marker
+            if (dx * dx + dy * dy >= tolerance2 || i == count - 1)
+            {
+                kept[keptCount * 2] = x;
+                kept[keptCount * 2 + 1] = y;
+                keptCount++;
+                lastX = x;
+                lastY = y;
+            }
+        }
+        return keptCount;
+    }
+
+    @Override
+    public void onDestroy()
+    {
+
+    }
+
+    @Override
+    public void onPause()
+    {
+
+    }
+
+    @Override
+    public void onResume()
+    {
+
+    }
+
+    @Override
+    public void onTap(MotionEvent event)
+    {
+
+    }
+
+    @Override
+    public void draw(Canvas canvas, Matrix matrix, float currentZoom, float currentRotateDegrees)
+    {
+        if (!isVisible)
+        {
+            return;
+        }
+        synchronized (lock)
+        {
+            if (count < 2)
+            {
+                return;
+            }
+            float tolerance = currentZoom > 0 ? pixelTolerance / currentZoom : 0;
+            int keptCount = decimate(tolerance);
+            matrix.mapPoints(kept, 0, kept, 0, keptCount);
+            path.rewind();
+            path.moveTo(kept[0], kept[1]);
+            for (int i = 1; i < keptCount; i++)
+            {
+                path.lineTo(kept[i * 2], kept[i * 2 + 1]);
+            }
+            canvas.drawPath(path, paint);
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package id.recharge.library.core.helper.map;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Parses small documents into an {@link SVGArrayRecorder} on the JVM and checks the geometry that reaches the sink.
+ */
+public class SVGHandlerTest
+{
+    private static final float EPSILON = 1e-6f;
+
+    private static final float[] SQUARE_AND_TAIL = {0, 0, 10, 0, 10, 10, 0, 10, 20, 20};
+
+    @Test
+    public void polygon_withTransform_keepsItsPoints() throws Exception
+    {
+        Recording recording = parse("<polygon transform=\"translate(5,5)\" points=\"0,0 10,0 10,10 0,10 20,20\"/>");
+        assertArrayEquals(SQUARE_AND_TAIL, recording.coords, EPSILON);
+        assertArrayEquals(new byte[]{PathData.MOVE_TO, PathData.LINE_TO, PathData.LINE_TO, PathData.LINE_TO,
+                PathData.LINE_TO, PathData.CLOSE}, recording.verbs);
+        assertArrayEquals(new float[]{1, 0, 5, 0, 1, 5}, recording.concat, EPSILON);
+    }
+
+    @Test
+    public void polyline_withTransform_keepsItsPoints() throws Exception
+    {
+        Recording recording = parse("<polyline transform=\"scale(2)\" points=\"0,0 10,0 10,10 0,10 20,20\"/>");
+        assertArrayEquals(SQUARE_AND_TAIL, recording.coords, EPSILON);
+        assertArrayEquals(new byte[]{PathData.MOVE_TO, PathData.LINE_TO, PathData.LINE_TO, PathData.LINE_TO,
+                PathData.LINE_TO}, recording.verbs);
+        assertArrayEquals(new float[]{2, 0, 0, 0, 2, 0}, recording.concat, EPSILON);
+    }
+
+    @Test
+    public void polygon_withFewerPointsThanTransformNumbers_keepsItsPoints() throws Exception
+    {
+        Recording recording = parse("<polygon transform=\"matrix(1,0,0,1,3,4)\" points=\"1,2 7,8\"/>");
+        assertArrayEquals(new float[]{1, 2, 7, 8}, recording.coords, EPSILON);
+        assertArrayEquals(new float[]{1, 0, 3, 0, 1, 4}, recording.concat, EPSILON);
+    }
+
+    @Test
+    public void polygon_withoutTransform_drawsWithoutConcat() throws Exception
+    {
+        Recording recording = parse("<polygon points=\"0,0 10,0 10,10 0,10 20,20\"/>");
+        assertArrayEquals(SQUARE_AND_TAIL, recording.coords, EPSILON);
+        assertEquals(null, recording.concat);
+    }
+
+    private static Recording parse(String shape) throws Exception
+    {
+        String document = "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"100\" height=\"100\">"
+                + shape.replace("/>", " fill=\"#000000\"/>") + "</svg>";
+        SVGArrayRecorder recorder = new SVGArrayRecorder();
+        SVGHandler handler = new SVGHandler();
+        handler.setSink(recorder);
+        handler.parse(new InputSource(new StringReader(document)));
+        return new Recording(recorder);
+    }
+
+    /**
+     * The first path drawn and the last transform concatenated before it.
+     */
+    private static final class Recording
+    {
+        float[] concat;
+        float[] coords;
+        byte[] verbs;
+
+        Recording(SVGArrayRecorder recorder)
+        {
+            int ints = 0;
+            int floats = 0;
+            for (int i = 0; i < recorder.getOpCount(); i++)
+            {
+                switch (recorder.getOps()[i])
+                {
+                    case SVGArrayRecorder.OP_BEGIN:
+                        ints += 2;
+                        break;
+                    case SVGArrayRecorder.OP_RESTORE_TO_COUNT:
+                        ints += 1;
+                        break;
+                    case SVGArrayRecorder.OP_CONCAT:
+                        concat = Arrays.copyOfRange(recorder.getFloats(), floats, floats + 6);
+                        floats += 6;
+                        break;
+                    case SVGArrayRecorder.OP_TRANSLATE:
+                        floats += 2;
+                        break;
+                    case SVGArrayRecorder.OP_CLIP_RECT:
+                        floats += 4;
+                        break;
+                    case SVGArrayRecorder.OP_DRAW_RECT:
+                    case SVGArrayRecorder.OP_DRAW_OVAL:
+                    case SVGArrayRecorder.OP_DRAW_LINE:
+                        ints += 1;
+                        floats += 4;
+                        break;
+                    case SVGArrayRecorder.OP_DRAW_ROUND_RECT:
+                        ints += 1;
+                        floats += 6;
+                        break;
+                    case SVGArrayRecorder.OP_DRAW_LAST_PATH:
+                        ints += 1;
+                        break;
+                    case SVGArrayRecorder.OP_DRAW_PATH:
+                        int verbCount = recorder.getInts()[ints + 1];
+                        int coordCount = recorder.getInts()[ints + 2];
+                        coords = Arrays.copyOfRange(recorder.getFloats(), floats, floats + coordCount);
+                        verbs = Arrays.copyOf(recorder.getVerbs(), verbCount);
+                        return;
+                    default:
+                        break;
+                }
+            }
+            throw new AssertionError("No path drawn");
+        }
+    }
+}
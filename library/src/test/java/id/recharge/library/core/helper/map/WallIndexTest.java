@@ -0,0 +1,78 @@
+package id.recharge.library.core.helper.map;
+
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the grid's crossing counts with a check of every wall, for rays through grid corners
+ * and along grid lines.
+ */
+public class WallIndexTest
+{
+    @Test
+    public void countCrossings_throughGridCorner_countsEveryWall()
+    {
+        // the diagonals cross the ray at (50,50), a corner of four cells
+        float[] walls = {0, 0, 100, 100, 0, 100, 100, 0, 50, 0, 50, 100};
+        WallIndex index = new WallIndex(walls, 3, 10);
+        assertEquals(3, index.countCrossings(0, 50, 100, 50));
+        assertEquals(3, index.countCrossings(100, 50, 0, 50));
+        // along a diagonal, through the corner of every cell, the other two walls are crossed
+        assertEquals(2, index.countCrossings(100, 100, 0, 0));
+    }
+
+    @Test
+    public void countCrossings_onGridLines_matchesEveryWall()
+    {
+        Random random = new Random(5);
+        int walls = 40;
+        float[] segments = new float[walls * 4];
+        for (int build = 0; build < 50; build++)
+        {
+            // whole numbers, so ends and crossings fall on the grid lines of cells of 10
+            for (int i = 0; i < segments.length; i++)
+            {
+                segments[i] = random.nextInt(11) * 10;
+            }
+            WallIndex index = new WallIndex(segments, walls, 10);
+            for (int query = 0; query < 200; query++)
+            {
+                float x1 = random.nextInt(21) * 5;
+                float y1 = random.nextInt(21) * 5;
+                float x2 = random.nextInt(21) * 5;
+                float y2 = random.nextInt(21) * 5;
+                int expected = bruteForce(segments, walls, x1, y1, x2, y2);
+                assertEquals(expected, index.countCrossings(x1, y1, x2, y2));
+                assertEquals(expected > 0, index.intersects(x1, y1, x2, y2));
+            }
+        }
+    }
+
+    private static int bruteForce(float[] segments, int walls, float x1, float y1, float x2, float y2)
+    {
+        int count = 0;
+        float dx = x2 - x1;
+        float dy = y2 - y1;
+        for (int i = 0; i < walls * 4; i += 4)
+        {
+            float ex = segments[i + 2] - segments[i];
+            float ey = segments[i + 3] - segments[i + 1];
+            float denominator = dx * ey - dy * ex;
+            if (denominator == 0)
+            {
+                continue;
+            }
+            float qx = segments[i] - x1;
+            float qy = segments[i + 1] - y1;
+            float t = (qx * ey - qy * ex) / denominator;
+            float u = (qx * dy - qy * dx) / denominator;
+            if (t >= 0 && t <= 1 && u >= 0 && u <= 1)
+            {
+                count++;
+            }
+        }
+        return count;
+    }
+}